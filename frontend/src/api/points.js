@@ -17,13 +17,14 @@ export const pointsApi = {
   },
 
   /**
-   * 获取积分历史
+   * 分页获取积分历史（按日期倒序）
    * @param {string} userId - 用户ID
-   * @returns {Promise} 积分历史列表
+   * @param {string} [pageToken] - 分页令牌，第一页不传
+   * @returns {Promise} 分页结果 { items, nextPageToken, hasMore }
    */
-  getPointsHistory(userId) {
+  getPointsHistory(userId, pageToken) {
     return request.get('/points/history', {
-      params: { userId }
+      params: { userId, pageToken }
     })
   },
 
@@ -17,12 +17,15 @@ export const sleepApi = {
   },
 
   /**
-   * 获取用户所有睡眠记录
+   * 分页获取用户睡眠记录（按睡眠日期倒序）
    * @param {string} userId - 用户ID
-   * @returns {Promise} 睡眠记录列表
+   * @param {string} [pageToken] - 分页令牌，第一页不传
+   * @returns {Promise} 分页结果 { items, nextPageToken, hasMore }
    */
-  getSleepHistory(userId) {
-    return request.get(`/sleep/data/user/${userId}`)
+  getSleepHistory(userId, pageToken) {
+    return request.get(`/sleep/data/user/${userId}`, {
+      params: { pageToken }
+    })
   },
 
   /**
@@ -6,11 +6,13 @@ export const usePointsStore = defineStore('points', () => {
   // 状态
   const currentPoints = ref(0)
   const pointsHistory = ref([])
+  const pointsHistoryNextPageToken = ref(null)
   const loading = ref(false)
   const error = ref(null)
 
   // 计算属性
   const hasPoints = computed(() => currentPoints.value > 0)
+  const hasMorePointsHistory = computed(() => pointsHistoryNextPageToken.value !== null)
   const pointsLevel = computed(() => {
     if (currentPoints.value >= 1000) return { level: '睡眠大师', color: 'text-purple-600' }
     if (currentPoints.value >= 500) return { level: '睡眠专家', color: 'text-blue-600' }
@@ -52,13 +54,18 @@ export const usePointsStore = defineStore('points', () => {
     }
   }
 
-  const fetchPointsHistory = async (userId) => {
+  // 获取积分历史第一页；loadMore 为 true 时按下一页令牌追加
+  const fetchPointsHistory = async (userId, loadMore = false) => {
     try {
       loading.value = true
       error.value = null
-      const response = await pointsApi.getPointsHistory(userId)
-      pointsHistory.value = response.data || []
-      return response.data
+      const pageToken = loadMore ? pointsHistoryNextPageToken.value : undefined
+      const response = await pointsApi.getPointsHistory(userId, pageToken)
+      const page = response.data || {}
+      const items = page.items || []
+      pointsHistory.value = loadMore ? [...pointsHistory.value, ...items] : items
+      pointsHistoryNextPageToken.value = page.nextPageToken || null
+      return page
     } catch (err) {
       error.value = err.message
       throw err
@@ -100,6 +107,7 @@ export const usePointsStore = defineStore('points', () => {
   const clearData = () => {
     currentPoints.value = 0
     pointsHistory.value = []
+    pointsHistoryNextPageToken.value = null
     error.value = null
   }
 
@@ -111,6 +119,7 @@ export const usePointsStore = defineStore('points', () => {
     error,
     // 计算属性
     hasPoints,
+    hasMorePointsHistory,
     pointsLevel,
     // 方法
     getPointsColor,
@@ -6,11 +6,13 @@ export const useSleepStore = defineStore('sleep', () => {
   // 状态
   const sleepData = ref(null)
   const sleepHistory = ref([])
+  const sleepHistoryNextPageToken = ref(null)
   const loading = ref(false)
   const error = ref(null)
 
   // 计算属性
   const hasSleepData = computed(() => sleepData.value !== null)
+  const hasMoreSleepHistory = computed(() => sleepHistoryNextPageToken.value !== null)
   const sleepScore = computed(() => sleepData.value?.sleepScore || 0)
   const totalSleepDuration = computed(() => sleepData.value?.totalSleepDuration || 0)
   const deepSleepDuration = computed(() => sleepData.value?.deepSleepDuration || 0)
@@ -60,13 +62,18 @@ export const useSleepStore = defineStore('sleep', () => {
     }
   }
 
-  const fetchSleepHistory = async (userId) => {
+  // 获取睡眠记录第一页；loadMore 为 true 时按下一页令牌追加
+  const fetchSleepHistory = async (userId, loadMore = false) => {
     try {
       loading.value = true
       error.value = null
-      const response = await sleepApi.getSleepHistory(userId)
-      sleepHistory.value = response.data
-      return response.data
+      const pageToken = loadMore ? sleepHistoryNextPageToken.value : undefined
+      const response = await sleepApi.getSleepHistory(userId, pageToken)
+      const page = response.data || {}
+      const items = page.items || []
+      sleepHistory.value = loadMore ? [...sleepHistory.value, ...items] : items
+      sleepHistoryNextPageToken.value = page.nextPageToken || null
+      return page
     } catch (err) {
       error.value = err.message
       throw err
@@ -107,6 +114,7 @@ export const useSleepStore = defineStore('sleep', () => {
   const clearData = () => {
     sleepData.value = null
     sleepHistory.value = []
+    sleepHistoryNextPageToken.value = null
     error.value = null
   }
 
@@ -131,6 +139,7 @@ export const useSleepStore = defineStore('sleep', () => {
     error,
     // 计算属性
     hasSleepData,
+    hasMoreSleepHistory,
     sleepScore,
     totalSleepDuration,
     deepSleepDuration,
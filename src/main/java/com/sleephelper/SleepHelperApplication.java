@@ -3,6 +3,7 @@ package com.sleephelper;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 睡眠助手应用程序启动类
@@ -12,6 +13,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  */
 @SpringBootApplication
 @MapperScan("com.sleephelper.mapper")
+@EnableScheduling
 public class SleepHelperApplication {
 
     public static void main(String[] args) {
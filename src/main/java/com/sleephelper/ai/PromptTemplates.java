@@ -9,6 +9,11 @@ package com.sleephelper.ai;
  */
 public class PromptTemplates {
 
+    /**
+     * 睡眠报告模板版本，修改报告模板时递增，已保存的报告随之失效
+     */
+    public static final String SLEEP_REPORT_TEMPLATE_VERSION = "1";
+
     /**
      * 睡眠报告生成 Prompt 模板
      */
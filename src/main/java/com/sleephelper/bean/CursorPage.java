@@ -0,0 +1,55 @@
+package com.sleephelper.bean;
+
+import com.sleephelper.common.DatePageToken;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class CursorPage<T> {
+
+    /**
+     * 当前页记录
+     */
+    private List<T> items = new ArrayList<>();
+
+    /**
+     * 下一页令牌，没有更多数据时为null
+     */
+    private String nextPageToken;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 根据多查询一条的结果构造分页
+     * 查询时按 pageSize + 1 取数，多出的一条只用于判断是否还有下一页
+     *
+     * @param rows 查询结果（最多 pageSize + 1 条）
+     * @param pageSize 每页条数
+     * @param cursorExtractor 从记录中取游标日期
+     * @return CursorPage 分页结果
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int pageSize, Function<T, LocalDate> cursorExtractor) {
+        CursorPage<T> page = new CursorPage<>();
+        if (rows.size() > pageSize) {
+            page.setItems(new ArrayList<>(rows.subList(0, pageSize)));
+            page.setHasMore(true);
+            page.setNextPageToken(DatePageToken.encode(cursorExtractor.apply(rows.get(pageSize - 1))));
+        } else {
+            page.setItems(rows);
+        }
+        return page;
+    }
+}
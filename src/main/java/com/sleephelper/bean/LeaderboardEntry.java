@@ -0,0 +1,36 @@
+package com.sleephelper.bean;
+
+import lombok.Data;
+
+/**
+ * 积分排行榜条目
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class LeaderboardEntry {
+
+    /**
+     * 名次（从1开始，积分相同按用户ID升序排列）
+     */
+    private long rank;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 周期内积分
+     */
+    private long points;
+
+    public LeaderboardEntry() {}
+
+    public LeaderboardEntry(long rank, String userId, long points) {
+        this.rank = rank;
+        this.userId = userId;
+        this.points = points;
+    }
+}
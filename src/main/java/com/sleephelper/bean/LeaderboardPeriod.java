@@ -0,0 +1,85 @@
+package com.sleephelper.bean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * 积分排行榜周期
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum LeaderboardPeriod {
+
+    /**
+     * 日榜（按积分日期）
+     */
+    DAILY {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        public LocalDate endOf(LocalDate periodStart) {
+            return periodStart.plusDays(1);
+        }
+    },
+
+    /**
+     * 周榜（自然周，周一至周日）
+     */
+    WEEKLY {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date.with(DayOfWeek.MONDAY);
+        }
+
+        @Override
+        public LocalDate endOf(LocalDate periodStart) {
+            return periodStart.plusWeeks(1);
+        }
+    },
+
+    /**
+     * 总榜（累计积分，不分周期）
+     */
+    ALL_TIME {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return null;
+        }
+
+        @Override
+        public LocalDate endOf(LocalDate periodStart) {
+            return null;
+        }
+    };
+
+    /**
+     * 日期所在周期的起始日期
+     *
+     * @param date 日期
+     * @return LocalDate 当日或周一，总榜返回null
+     */
+    public abstract LocalDate startOf(LocalDate date);
+
+    /**
+     * 周期的结束日期（不含）
+     *
+     * @param periodStart 周期起始日期
+     * @return LocalDate 次日或下周一，总榜返回null
+     */
+    public abstract LocalDate endOf(LocalDate periodStart);
+
+    /**
+     * 日期是否落在以 periodStart 开始的周期内，总榜始终为true
+     *
+     * @param periodStart 周期起始日期
+     * @param date 日期
+     * @return boolean 是否在周期内
+     */
+    public boolean contains(LocalDate periodStart, LocalDate date) {
+        return periodStart == null || (!date.isBefore(periodStart) && date.isBefore(endOf(periodStart)));
+    }
+}
@@ -0,0 +1,20 @@
+package com.sleephelper.bean;
+
+import com.sleephelper.entity.SleepAnalysisSummary;
+import lombok.Data;
+
+/**
+ * 睡眠数据已提交事件
+ * 睡眠数据（新增或更新）所在事务提交后在进程内发布，携带已写入的数据，消费方无需再查询数据库
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class NightRecordedEvent {
+
+    /**
+     * 已写入数据库的睡眠数据
+     */
+    private final SleepAnalysisSummary sleepData;
+}
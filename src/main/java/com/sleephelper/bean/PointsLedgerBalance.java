@@ -0,0 +1,64 @@
+package com.sleephelper.bean;
+
+import lombok.Data;
+
+/**
+ * 用户积分流水余额
+ * 由最近一次快照加上快照之后的流水得出
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class PointsLedgerBalance {
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 累计获得积分
+     */
+    private long earnedTotal;
+
+    /**
+     * 累计铸造上链数量
+     */
+    private long mintedTotal;
+
+    /**
+     * 累计销毁数量
+     */
+    private long burnedTotal;
+
+    /**
+     * 累计过期积分
+     */
+    private long expiredTotal;
+
+    /**
+     * 可铸造积分（获得 - 铸造 - 过期）
+     */
+    private long availablePoints;
+
+    /**
+     * 链上持有数量（铸造 - 销毁）
+     */
+    private long onChainPoints;
+
+    /**
+     * 已读取到的最大流水ID
+     */
+    private long lastEntryId;
+
+    /**
+     * 快照覆盖到的流水ID，没有快照时为0
+     */
+    private long snapshotEntryId;
+
+    /**
+     * 快照之后读取的流水条数
+     */
+    private int tailEntryCount;
+}
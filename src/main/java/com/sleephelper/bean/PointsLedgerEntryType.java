@@ -0,0 +1,31 @@
+package com.sleephelper.bean;
+
+/**
+ * 积分流水类型
+ * 积分的流向为 获得 → 铸造上链 → 链上销毁，未上链的获得积分到期后过期，各类型数量均记为正数
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum PointsLedgerEntryType {
+
+    /**
+     * 睡眠积分生成，来源标识为积分日期
+     */
+    EARNED,
+
+    /**
+     * 铸造上链，来源标识为交易哈希
+     */
+    MINTED,
+
+    /**
+     * 链上销毁，来源标识为交易哈希
+     */
+    BURNED,
+
+    /**
+     * 积分过期，来源标识为积分日期
+     */
+    EXPIRED
+}
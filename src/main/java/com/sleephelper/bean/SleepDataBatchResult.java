@@ -0,0 +1,132 @@
+package com.sleephelper.bean;
+
+import com.sleephelper.entity.SleepAnalysisSummary;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 睡眠数据批量写入结果类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepDataBatchResult {
+
+    /**
+     * 提交的记录总数
+     */
+    private int total;
+
+    /**
+     * 写入成功数量（含新增、更新及数据未变化）
+     */
+    private int successCount;
+
+    /**
+     * 校验未通过数量
+     */
+    private int invalidCount;
+
+    /**
+     * 写入失败数量
+     */
+    private int failedCount;
+
+    /**
+     * 实际执行的分片数（每个分片一次数据库往返）
+     */
+    private int chunkCount;
+
+    /**
+     * 逐行结果，顺序与请求中的记录顺序一致
+     */
+    private List<RowResult> rows = new ArrayList<>();
+
+    /**
+     * 记录单行结果并累加计数
+     *
+     * @param row 单行结果
+     */
+    public void addRow(RowResult row) {
+        rows.add(row);
+        switch (row.getStatus()) {
+            case INVALID:
+                invalidCount++;
+                break;
+            case FAILED:
+                failedCount++;
+                break;
+            default:
+                successCount++;
+                break;
+        }
+    }
+
+    /**
+     * 单行写入结果
+     */
+    @Data
+    public static class RowResult {
+
+        /**
+         * 记录在请求中的下标（从0开始）
+         */
+        private int index;
+
+        /**
+         * 用户ID
+         */
+        private String userId;
+
+        /**
+         * 睡眠日期
+         */
+        private LocalDate dateOfSleep;
+
+        /**
+         * 写入状态
+         */
+        private SleepDataRowStatus status;
+
+        /**
+         * 新增记录的主键ID
+         */
+        private Long id;
+
+        /**
+         * 失败原因
+         */
+        private String message;
+
+        public RowResult() {}
+
+        public RowResult(int index, String userId, LocalDate dateOfSleep, SleepDataRowStatus status, Long id, String message) {
+            this.index = index;
+            this.userId = userId;
+            this.dateOfSleep = dateOfSleep;
+            this.status = status;
+            this.id = id;
+            this.message = message;
+        }
+
+        /**
+         * 根据写入的记录构造单行结果（下标由调用方设置）
+         *
+         * @param sleepData 睡眠数据对象
+         * @param status 写入状态
+         * @param message 失败原因，成功时为null
+         * @return RowResult 单行结果
+         */
+        public static RowResult of(SleepAnalysisSummary sleepData, SleepDataRowStatus status, String message) {
+            boolean written = status != SleepDataRowStatus.INVALID && status != SleepDataRowStatus.FAILED;
+            return new RowResult(0,
+                    sleepData != null ? sleepData.getUserId() : null,
+                    sleepData != null ? sleepData.getDateOfSleep() : null,
+                    status, written ? sleepData.getId() : null, message);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.sleephelper.bean;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 睡眠数据流式导入结果类
+ * 只保留计数器和被拒绝行的位置，内存占用与导入文件大小无关
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepDataImportResult {
+
+    /**
+     * 已读取的非空行数
+     */
+    private long lineCount;
+
+    /**
+     * 已读取的字节数
+     */
+    private long bytesRead;
+
+    /**
+     * 写入成功数量
+     */
+    private long successCount;
+
+    /**
+     * 被拒绝数量（JSON解析失败或校验未通过）
+     */
+    private long rejectedCount;
+
+    /**
+     * 写入数据库失败数量
+     */
+    private long failedCount;
+
+    /**
+     * 已提交的分片数
+     */
+    private long batchCount;
+
+    /**
+     * 被拒绝行的明细（最多保留配置的条数）
+     */
+    private List<RejectedLine> rejectedLines = new ArrayList<>();
+
+    /**
+     * 被拒绝行明细是否因超出上限而被截断
+     */
+    private boolean rejectedLinesTruncated;
+
+    /**
+     * 被拒绝行明细
+     */
+    @Data
+    public static class RejectedLine {
+
+        /**
+         * 行号（从1开始）
+         */
+        private long lineNumber;
+
+        /**
+         * 该行在请求体中的起始字节偏移量
+         */
+        private long byteOffset;
+
+        /**
+         * 拒绝原因
+         */
+        private String reason;
+
+        public RejectedLine() {}
+
+        public RejectedLine(long lineNumber, long byteOffset, String reason) {
+            this.lineNumber = lineNumber;
+            this.byteOffset = byteOffset;
+            this.reason = reason;
+        }
+    }
+}
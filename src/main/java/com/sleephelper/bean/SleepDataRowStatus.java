@@ -0,0 +1,35 @@
+package com.sleephelper.bean;
+
+/**
+ * 睡眠数据单行写入结果状态
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum SleepDataRowStatus {
+
+    /**
+     * 新增成功
+     */
+    INSERTED,
+
+    /**
+     * 记录已存在且数据有变化，已更新
+     */
+    UPDATED,
+
+    /**
+     * 记录已存在且数据完全相同，未做修改
+     */
+    UNCHANGED,
+
+    /**
+     * 参数校验未通过，未写入数据库
+     */
+    INVALID,
+
+    /**
+     * 写入数据库失败（如唯一键冲突）
+     */
+    FAILED
+}
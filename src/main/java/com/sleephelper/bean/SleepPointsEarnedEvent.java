@@ -0,0 +1,31 @@
+package com.sleephelper.bean;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 睡眠积分已生成事件
+ * 新的积分记录写入后在进程内发布，监听方在事务提交后处理
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepPointsEarnedEvent {
+
+    /**
+     * 用户ID
+     */
+    private final String userId;
+
+    /**
+     * 积分日期
+     */
+    private final LocalDate date;
+
+    /**
+     * 本次生成的积分
+     */
+    private final int points;
+}
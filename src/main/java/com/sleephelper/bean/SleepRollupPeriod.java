@@ -0,0 +1,59 @@
+package com.sleephelper.bean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * 睡眠数据汇总周期
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum SleepRollupPeriod {
+
+    /**
+     * 自然周（周一至周日）
+     */
+    WEEK {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date.with(DayOfWeek.MONDAY);
+        }
+
+        @Override
+        public LocalDate endOf(LocalDate periodStart) {
+            return periodStart.plusDays(6);
+        }
+    },
+
+    /**
+     * 自然月
+     */
+    MONTH {
+        @Override
+        public LocalDate startOf(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate endOf(LocalDate periodStart) {
+            return periodStart.plusMonths(1).minusDays(1);
+        }
+    };
+
+    /**
+     * 日期所在周期的起始日期
+     *
+     * @param date 日期
+     * @return LocalDate 周一或每月1日
+     */
+    public abstract LocalDate startOf(LocalDate date);
+
+    /**
+     * 周期的结束日期（含）
+     *
+     * @param periodStart 周期起始日期
+     * @return LocalDate 周日或月末
+     */
+    public abstract LocalDate endOf(LocalDate periodStart);
+}
@@ -0,0 +1,125 @@
+package com.sleephelper.bean;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户睡眠数据滚动统计结果类
+ * 每个窗口以今天为终点
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepRollupStats {
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 各窗口统计，按窗口天数升序
+     */
+    private List<Window> windows = new ArrayList<>();
+
+    /**
+     * 单个窗口的统计
+     */
+    @Data
+    public static class Window {
+
+        /**
+         * 窗口天数
+         */
+        private int windowDays;
+
+        /**
+         * 窗口起点（含）
+         */
+        private LocalDate windowStart;
+
+        /**
+         * 窗口终点（含），即今天
+         */
+        private LocalDate windowEnd;
+
+        /**
+         * 各指标统计，键为指标名（TOTAL_SLEEP/DEEP_SLEEP/REM_SLEEP/SLEEP_SCORE）
+         */
+        private Map<String, MetricStats> metrics = new LinkedHashMap<>();
+    }
+
+    /**
+     * 单个指标的统计
+     */
+    @Data
+    public static class MetricStats {
+
+        /**
+         * 有值的晚数
+         */
+        private long count;
+
+        /**
+         * 总和
+         */
+        private long sum;
+
+        /**
+         * 平均值，无数据时为null
+         */
+        private Double average;
+
+        /**
+         * 最小值，无数据时为null
+         */
+        private Integer min;
+
+        /**
+         * 最大值，无数据时为null
+         */
+        private Integer max;
+
+        /**
+         * 总体方差，无数据时为null
+         */
+        private Double variance;
+
+        /**
+         * 总体标准差，无数据时为null
+         */
+        private Double stdDev;
+
+        /**
+         * 根据计数、总和、平方和计算统计值
+         *
+         * @param count 计数
+         * @param sum 总和
+         * @param sumOfSquares 平方和
+         * @param min 最小值
+         * @param max 最大值
+         * @return MetricStats 指标统计
+         */
+        public static MetricStats of(long count, long sum, long sumOfSquares, Integer min, Integer max) {
+            MetricStats stats = new MetricStats();
+            stats.setCount(count);
+            stats.setSum(sum);
+            if (count > 0) {
+                double average = (double) sum / count;
+                double variance = Math.max(0, (double) sumOfSquares / count - average * average);
+                stats.setAverage(average);
+                stats.setMin(min);
+                stats.setMax(max);
+                stats.setVariance(variance);
+                stats.setStdDev(Math.sqrt(variance));
+            }
+            return stats;
+        }
+    }
+}
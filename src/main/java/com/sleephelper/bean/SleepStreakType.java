@@ -0,0 +1,20 @@
+package com.sleephelper.bean;
+
+/**
+ * 睡眠连续达标类型（按名称排序，与查询结果、加锁顺序一致）
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum SleepStreakType {
+
+    /**
+     * 规律睡眠：总睡眠时长不低于配置的分钟数
+     */
+    CONSISTENT_SLEEP,
+
+    /**
+     * 好眠：睡眠评分不低于配置的阈值
+     */
+    GOOD_NIGHT
+}
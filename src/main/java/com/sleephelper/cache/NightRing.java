@@ -0,0 +1,265 @@
+package com.sleephelper.cache;
+
+import java.time.LocalDate;
+
+/**
+ * 单个用户最近N晚睡眠数据的环形存储
+ * 日期以epochDay表示，槽位 = epochDay mod N，窗口为 [latestDay - N + 1, latestDay]；
+ * 时长按short、评分按byte存储，总睡眠时长为0表示该晚无数据，其余字段-1表示缺失
+ * 所有方法对实例加锁，查询与聚合只读基本类型数组，不产生对象分配
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class NightRing {
+
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    private final int capacity;
+
+    private final short[] totalSleep;
+
+    private final short[] deepSleep;
+
+    private final short[] remSleep;
+
+    private final byte[] sleepScore;
+
+    /**
+     * 窗口内最新一晚的epochDay
+     */
+    private int latestDay = NO_DAY;
+
+    /**
+     * 与环形存储一起常驻内存的滚动统计聚合，由写入回调在持有本实例锁时维护，未计算时为null
+     */
+    private RollingAggregate[] aggregates;
+
+    public NightRing(int capacity) {
+        this.capacity = capacity;
+        this.totalSleep = new short[capacity];
+        this.deepSleep = new short[capacity];
+        this.remSleep = new short[capacity];
+        this.sleepScore = new byte[capacity];
+    }
+
+    /**
+     * 估算单个环形存储占用的堆内存（字节，按64位JVM开启压缩指针估算）
+     *
+     * @param capacity 保存的晚数
+     * @return long 字节数
+     */
+    public static long estimateBytes(int capacity) {
+        long object = align(12 + 4 + 4 + 4 * 4);
+        long shortArray = align(16 + 2L * capacity);
+        long byteArray = align(16 + (long) capacity);
+        return object + 3 * shortArray + byteArray;
+    }
+
+    /**
+     * 按存储精度换算一晚的各指标值，与写入后通过 get 读出的值一致
+     *
+     * @param total 总睡眠时长（分钟）
+     * @param deep 深度睡眠时长（分钟），可为null
+     * @param rem REM睡眠时长（分钟），可为null
+     * @param score 睡眠评分，可为null
+     * @return int[] 以 SleepMetric.ordinal() 为下标的指标值，缺失为-1；总睡眠时长为0表示该晚无数据
+     */
+    public static int[] normalize(int total, Integer deep, Integer rem, Integer score) {
+        int[] values = new int[SleepMetric.values().length];
+        values[SleepMetric.TOTAL_SLEEP.ordinal()] = toShort(total);
+        values[SleepMetric.DEEP_SLEEP.ordinal()] = deep != null ? toShort(deep) : -1;
+        values[SleepMetric.REM_SLEEP.ordinal()] = rem != null ? toShort(rem) : -1;
+        values[SleepMetric.SLEEP_SCORE.ordinal()] = score != null ? toScore(score) : -1;
+        return values;
+    }
+
+    /**
+     * 写入或覆盖一晚的数据；早于窗口的数据直接忽略
+     *
+     * @param epochDay 睡眠日期
+     * @param total 总睡眠时长（分钟），必须大于0
+     * @param deep 深度睡眠时长（分钟），可为null
+     * @param rem REM睡眠时长（分钟），可为null
+     * @param score 睡眠评分，可为null
+     */
+    public synchronized void put(int epochDay, int total, Integer deep, Integer rem, Integer score) {
+        if (total <= 0) {
+            return;
+        }
+        if (latestDay == NO_DAY) {
+            latestDay = epochDay;
+        } else if (epochDay > latestDay) {
+            // 窗口前移，清空新进入窗口的槽位（最多清空一整圈）
+            long steps = Math.min((long) epochDay - latestDay, capacity);
+            for (long i = 1; i <= steps; i++) {
+                totalSleep[slot(epochDay - steps + i)] = 0;
+            }
+            latestDay = epochDay;
+        } else if (epochDay <= latestDay - capacity) {
+            return;
+        }
+        int slot = slot(epochDay);
+        totalSleep[slot] = toShort(total);
+        deepSleep[slot] = deep != null ? toShort(deep) : -1;
+        remSleep[slot] = rem != null ? toShort(rem) : -1;
+        sleepScore[slot] = score != null ? (byte) toScore(score) : -1;
+    }
+
+    /**
+     * 遍历 [fromDay, toDay] 内有数据的夜晚（按日期升序）
+     *
+     * @param fromDay 起始epochDay（含）
+     * @param toDay 结束epochDay（含）
+     * @param visitor 回调
+     */
+    public synchronized void forEach(int fromDay, int toDay, NightVisitor visitor) {
+        if (latestDay == NO_DAY) {
+            return;
+        }
+        int from = Math.max(fromDay, latestDay - capacity + 1);
+        int to = Math.min(toDay, latestDay);
+        for (int day = from; day <= to; day++) {
+            int slot = slot(day);
+            if (totalSleep[slot] != 0) {
+                visitor.visit(day, totalSleep[slot], deepSleep[slot], remSleep[slot], sleepScore[slot]);
+            }
+        }
+    }
+
+    /**
+     * 统计区间内某指标有值的夜晚数
+     */
+    public synchronized int count(SleepMetric metric, int fromDay, int toDay) {
+        int count = 0;
+        if (latestDay == NO_DAY) {
+            return 0;
+        }
+        int to = Math.min(toDay, latestDay);
+        for (int day = Math.max(fromDay, latestDay - capacity + 1); day <= to; day++) {
+            if (value(metric, slot(day)) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 区间内某指标求和（缺失值不计入）
+     */
+    public synchronized long sum(SleepMetric metric, int fromDay, int toDay) {
+        long sum = 0;
+        if (latestDay == NO_DAY) {
+            return 0;
+        }
+        int to = Math.min(toDay, latestDay);
+        for (int day = Math.max(fromDay, latestDay - capacity + 1); day <= to; day++) {
+            int value = value(metric, slot(day));
+            if (value >= 0) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 区间内某指标最小值，无数据时返回-1
+     */
+    public synchronized int min(SleepMetric metric, int fromDay, int toDay) {
+        int min = -1;
+        if (latestDay == NO_DAY) {
+            return min;
+        }
+        int to = Math.min(toDay, latestDay);
+        for (int day = Math.max(fromDay, latestDay - capacity + 1); day <= to; day++) {
+            int value = value(metric, slot(day));
+            if (value >= 0 && (min < 0 || value < min)) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * 区间内某指标最大值，无数据时返回-1
+     */
+    public synchronized int max(SleepMetric metric, int fromDay, int toDay) {
+        int max = -1;
+        if (latestDay == NO_DAY) {
+            return max;
+        }
+        int to = Math.min(toDay, latestDay);
+        for (int day = Math.max(fromDay, latestDay - capacity + 1); day <= to; day++) {
+            max = Math.max(max, value(metric, slot(day)));
+        }
+        return max;
+    }
+
+    /**
+     * 读取某一晚的指标值
+     *
+     * @param metric 指标
+     * @param epochDay 睡眠日期
+     * @return int 指标值，该晚不在窗口内、无数据或指标缺失时返回-1
+     */
+    public synchronized int get(SleepMetric metric, int epochDay) {
+        if (latestDay == NO_DAY || epochDay > latestDay || epochDay <= latestDay - capacity) {
+            return -1;
+        }
+        return value(metric, slot(epochDay));
+    }
+
+    /**
+     * 窗口内最新一晚的日期，无数据时返回null
+     */
+    public synchronized LocalDate getLatestDate() {
+        return latestDay == NO_DAY ? null : LocalDate.ofEpochDay(latestDay);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized RollingAggregate[] getAggregates() {
+        return aggregates;
+    }
+
+    public synchronized void setAggregates(RollingAggregate[] aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * 读取槽位上的指标值，该晚无数据或指标缺失时返回-1
+     */
+    private int value(SleepMetric metric, int slot) {
+        if (totalSleep[slot] == 0) {
+            return -1;
+        }
+        switch (metric) {
+            case TOTAL_SLEEP:
+                return totalSleep[slot];
+            case DEEP_SLEEP:
+                return deepSleep[slot];
+            case REM_SLEEP:
+                return remSleep[slot];
+            default:
+                return sleepScore[slot];
+        }
+    }
+
+    private int slot(long epochDay) {
+        return (int) Math.floorMod(epochDay, (long) capacity);
+    }
+
+    private static short toShort(int value) {
+        return (short) Math.max(0, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static int toScore(int value) {
+        return Math.max(0, Math.min(100, value));
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
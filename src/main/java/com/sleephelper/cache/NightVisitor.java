@@ -0,0 +1,23 @@
+package com.sleephelper.cache;
+
+/**
+ * 逐晚遍历睡眠记录的回调
+ * 参数均为基本类型，遍历过程不产生对象分配
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@FunctionalInterface
+public interface NightVisitor {
+
+    /**
+     * 访问一晚的睡眠记录
+     *
+     * @param epochDay 睡眠日期（距1970-01-01的天数）
+     * @param totalSleepDuration 总睡眠时长（分钟）
+     * @param deepSleepDuration 深度睡眠时长（分钟），缺失时为-1
+     * @param remSleepDuration REM睡眠时长（分钟），缺失时为-1
+     * @param sleepScore 睡眠评分，缺失时为-1
+     */
+    void visit(int epochDay, int totalSleepDuration, int deepSleepDuration, int remSleepDuration, int sleepScore);
+}
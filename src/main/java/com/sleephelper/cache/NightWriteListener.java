@@ -0,0 +1,23 @@
+package com.sleephelper.cache;
+
+/**
+ * 最近睡眠数据写入回调
+ * 回调在持有该用户环形存储锁的情况下执行，同一用户的回调串行
+ * 回调期间同一用户的其他写入和查询都在等待，回调中不应访问数据库等慢操作
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface NightWriteListener {
+
+    /**
+     * 写入一晚数据之前调用，此时环形存储仍是写入前的状态；未加载的用户加载后调用，
+     * 加载结果可能已包含本次写入，此时按覆盖同一晚处理
+     *
+     * @param userId 用户ID
+     * @param ring 写入前的环形存储
+     * @param epochDay 睡眠日期
+     * @param values 按存储精度换算后的指标值，见 NightRing.normalize
+     */
+    void beforePut(String userId, NightRing ring, int epochDay, int[] values);
+}
@@ -0,0 +1,301 @@
+package com.sleephelper.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按用户保存最近N晚睡眠数据的内存时间序列
+ * 用户首次被访问时从数据库加载最近N晚，之后由睡眠数据写入实时更新；
+ * 常驻用户数超过上限后按访问频率淘汰，堆占用可按 用户数上限 × 单用户占用 预估。
+ * 加载在任何锁之外执行，完成后以 putIfAbsent 发布；加载期间该用户有写入时，
+ * 查询结果可能不含该写入，此时不发布，下次访问重新加载
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Component
+public class RecentNightsStore {
+
+    /**
+     * 每个用户的缓存条目、用户ID字符串等额外开销估算（字节）
+     */
+    private static final long PER_USER_OVERHEAD_BYTES = 64 + 56;
+
+    /**
+     * 未加载用户写入计数的分段数
+     */
+    private static final int WRITE_STRIPES = 1024;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper;
+
+    /**
+     * 常驻内存的环形存储
+     */
+    private Cache<String, NightRing> rings;
+
+    /**
+     * 未加载用户的写入计数，按用户ID哈希分段；加载前后计数不同说明加载期间可能漏掉写入
+     */
+    private final AtomicLongArray unloadedWrites = new AtomicLongArray(WRITE_STRIPES);
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+    private final AtomicLong discardedLoadCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        rings = Caffeine.newBuilder()
+                .maximumSize(sleepDataConfig.getRecentNightsMaxUsers())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 记录一条已写入数据库的睡眠数据
+     * 只更新已加载的用户；未加载的用户下次访问时会从数据库加载到最新数据
+     *
+     * @param sleepData 睡眠数据
+     */
+    public void record(SleepAnalysisSummary sleepData) {
+        if (!isRecordable(sleepData)) {
+            return;
+        }
+        NightRing ring = loadedRing(sleepData.getUserId());
+        if (ring != null) {
+            put(ring, sleepData);
+        }
+    }
+
+    /**
+     * 记录一条已写入数据库的睡眠数据，并在写入前通知回调
+     * 未加载的用户先在锁外从数据库加载，再在环形存储上重放本次写入（加载结果已包含本次写入时按覆盖处理）
+     *
+     * @param sleepData 睡眠数据
+     * @param listener 写入回调
+     */
+    public void record(SleepAnalysisSummary sleepData, NightWriteListener listener) {
+        if (!isRecordable(sleepData)) {
+            return;
+        }
+        String userId = sleepData.getUserId();
+        NightRing ring = loadedRing(userId);
+        if (ring == null) {
+            ring = loadAndPublish(userId);
+        }
+        synchronized (ring) {
+            int[] values = NightRing.normalize(sleepData.getTotalSleepDuration(),
+                    sleepData.getDeepSleepDuration(), sleepData.getRemSleepDuration(), sleepData.getSleepScore());
+            listener.beforePut(userId, ring, (int) sleepData.getDateOfSleep().toEpochDay(), values);
+            put(ring, sleepData);
+        }
+    }
+
+    /**
+     * 遍历用户在 [from, to] 内有数据的夜晚（按日期升序，只覆盖最近N晚）
+     *
+     * @param userId 用户ID
+     * @param from 起始日期（含）
+     * @param to 结束日期（含）
+     * @param visitor 回调
+     */
+    public void forEachNight(String userId, LocalDate from, LocalDate to, NightVisitor visitor) {
+        ring(userId).forEach((int) from.toEpochDay(), (int) to.toEpochDay(), visitor);
+    }
+
+    /**
+     * 读取用户某一晚的睡眠数据（只覆盖最近N晚）
+     * 内存序列在提交后异步更新，刚写入的数据可能尚未计入，调用方在返回null时应回退到数据库查询
+     *
+     * @param userId 用户ID
+     * @param date 睡眠日期
+     * @return SleepAnalysisSummary 只包含用户ID、日期和各指标；该晚不在内存序列中时返回null
+     */
+    public SleepAnalysisSummary getNight(String userId, LocalDate date) {
+        SleepAnalysisSummary[] night = new SleepAnalysisSummary[1];
+        forEachNight(userId, date, date, (epochDay, total, deep, rem, score) -> {
+            SleepAnalysisSummary found = new SleepAnalysisSummary();
+            found.setUserId(userId);
+            found.setDateOfSleep(date);
+            found.setTotalSleepDuration(total);
+            found.setDeepSleepDuration(deep >= 0 ? deep : null);
+            found.setRemSleepDuration(rem >= 0 ? rem : null);
+            found.setSleepScore(score >= 0 ? score : null);
+            night[0] = found;
+        });
+        return night[0];
+    }
+
+    /**
+     * 统计区间内某指标有值的夜晚数
+     */
+    public int count(String userId, SleepMetric metric, LocalDate from, LocalDate to) {
+        return ring(userId).count(metric, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * 区间内某指标求和
+     */
+    public long sum(String userId, SleepMetric metric, LocalDate from, LocalDate to) {
+        return ring(userId).sum(metric, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * 区间内某指标最小值，无数据时返回-1
+     */
+    public int min(String userId, SleepMetric metric, LocalDate from, LocalDate to) {
+        return ring(userId).min(metric, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * 区间内某指标最大值，无数据时返回-1
+     */
+    public int max(String userId, SleepMetric metric, LocalDate from, LocalDate to) {
+        return ring(userId).max(metric, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * 区间内某指标平均值，无数据时返回0
+     */
+    public double average(String userId, SleepMetric metric, LocalDate from, LocalDate to) {
+        NightRing ring = ring(userId);
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int count = ring.count(metric, fromDay, toDay);
+        return count == 0 ? 0 : (double) ring.sum(metric, fromDay, toDay) / count;
+    }
+
+    /**
+     * 计算用户以指定日期为终点的窗口聚合（窗口天数不超过保存的晚数）
+     *
+     * @param userId 用户ID
+     * @param windowDays 窗口天数
+     * @param windowEnd 窗口终点（含）
+     * @return RollingAggregate 窗口聚合
+     */
+    public RollingAggregate aggregate(String userId, int windowDays, LocalDate windowEnd) {
+        NightRing ring = ring(userId);
+        synchronized (ring) {
+            return RollingAggregate.fromRing(ring, windowDays, (int) windowEnd.toEpochDay());
+        }
+    }
+
+    /**
+     * 移除用户的内存数据，下次查询时重新从数据库加载
+     *
+     * @param userId 用户ID
+     */
+    public void evict(String userId) {
+        rings.invalidate(userId);
+    }
+
+    /**
+     * 内存占用统计
+     *
+     * @return Map 用户数、单用户占用、总占用估算等
+     */
+    public Map<String, Object> getStats() {
+        int days = sleepDataConfig.getRecentNightsDays();
+        long bytesPerUser = NightRing.estimateBytes(days) + PER_USER_OVERHEAD_BYTES;
+        long users = rings.estimatedSize();
+        CacheStats cacheStats = rings.stats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("days", days);
+        stats.put("users", users);
+        stats.put("maxUsers", sleepDataConfig.getRecentNightsMaxUsers());
+        stats.put("estimatedBytesPerUser", bytesPerUser);
+        stats.put("estimatedTotalBytes", bytesPerUser * users);
+        stats.put("estimatedMaxBytes", bytesPerUser * sleepDataConfig.getRecentNightsMaxUsers());
+        stats.put("loadCount", loadCount.get());
+        stats.put("discardedLoadCount", discardedLoadCount.get());
+        stats.put("hitCount", cacheStats.hitCount());
+        stats.put("missCount", cacheStats.missCount());
+        stats.put("evictionCount", cacheStats.evictionCount());
+        return stats;
+    }
+
+    /**
+     * 获取用户的环形存储，未加载时从数据库加载最近N晚
+     */
+    private NightRing ring(String userId) {
+        NightRing ring = rings.getIfPresent(userId);
+        return ring != null ? ring : loadAndPublish(userId);
+    }
+
+    /**
+     * 已加载用户的环形存储；未加载时登记一次未加载写入，再确认一次是否已被并发加载发布
+     */
+    private NightRing loadedRing(String userId) {
+        NightRing ring = rings.getIfPresent(userId);
+        if (ring != null) {
+            return ring;
+        }
+        unloadedWrites.incrementAndGet(stripe(userId));
+        return rings.getIfPresent(userId);
+    }
+
+    /**
+     * 在锁外加载并发布环形存储
+     * 加载期间同一分段有未加载写入时撤回发布，返回的环形存储只供本次使用
+     */
+    private NightRing loadAndPublish(String userId) {
+        int stripe = stripe(userId);
+        long writesBefore = unloadedWrites.get(stripe);
+        NightRing loaded = load(userId);
+        NightRing existing = rings.asMap().putIfAbsent(userId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (unloadedWrites.get(stripe) != writesBefore) {
+            rings.asMap().remove(userId, loaded);
+            discardedLoadCount.incrementAndGet();
+            log.debug("加载期间有并发写入，放弃发布用户最近睡眠数据，用户ID：{}", userId);
+        }
+        return loaded;
+    }
+
+    private static int stripe(String userId) {
+        return (userId.hashCode() & 0x7fffffff) % WRITE_STRIPES;
+    }
+
+    private NightRing load(String userId) {
+        int days = sleepDataConfig.getRecentNightsDays();
+        NightRing ring = new NightRing(days);
+        List<SleepAnalysisSummary> recent = sleepAnalysisSummaryMapper.selectPageByUserId(userId, null, null, null, days);
+        for (SleepAnalysisSummary sleepData : recent) {
+            put(ring, sleepData);
+        }
+        loadCount.incrementAndGet();
+        log.debug("加载用户最近睡眠数据到内存，用户ID：{}，记录数：{}", userId, recent.size());
+        return ring;
+    }
+
+    private static boolean isRecordable(SleepAnalysisSummary sleepData) {
+        return sleepData.getUserId() != null && sleepData.getDateOfSleep() != null
+                && sleepData.getTotalSleepDuration() != null;
+    }
+
+    private static void put(NightRing ring, SleepAnalysisSummary sleepData) {
+        ring.put((int) sleepData.getDateOfSleep().toEpochDay(), sleepData.getTotalSleepDuration(),
+                sleepData.getDeepSleepDuration(), sleepData.getRemSleepDuration(), sleepData.getSleepScore());
+    }
+}
@@ -0,0 +1,282 @@
+package com.sleephelper.cache;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 单个用户在一个滚动窗口内各睡眠指标的增量聚合
+ * 窗口以该用户最新一晚为终点，覆盖 [windowEnd - windowDays + 1, windowEnd]；
+ * 每个指标保存计数、总和、平方和及最小/最大值，平均值和方差由这三项直接算出。
+ * 新增或覆盖一晚只做常数次加减；窗口前移时减去移出窗口的夜晚，每晚只会移出一次；
+ * 只有移除的值恰好是最小或最大值时，才在环形存储上重新扫描一遍窗口求最值
+ * 非线程安全，由调用方持有对应用户环形存储的锁
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class RollingAggregate {
+
+    /**
+     * 窗口内没有数据时的窗口终点
+     */
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    private static final SleepMetric[] METRICS = SleepMetric.values();
+
+    private static final int TOTAL = SleepMetric.TOTAL_SLEEP.ordinal();
+
+    private final int windowDays;
+
+    private int windowEnd;
+
+    private final long[] count = new long[METRICS.length];
+
+    private final long[] sum = new long[METRICS.length];
+
+    private final long[] sumOfSquares = new long[METRICS.length];
+
+    /**
+     * 最小值，无数据时为-1
+     */
+    private final int[] min = new int[METRICS.length];
+
+    /**
+     * 最大值，无数据时为-1
+     */
+    private final int[] max = new int[METRICS.length];
+
+    public RollingAggregate(int windowDays) {
+        this(windowDays, NO_DAY);
+    }
+
+    /**
+     * 恢复已保存的聚合时使用，各指标的值随后通过 restore 设置
+     *
+     * @param windowDays 窗口天数
+     * @param windowEnd 窗口终点（epochDay）
+     */
+    public RollingAggregate(int windowDays, int windowEnd) {
+        this.windowDays = windowDays;
+        this.windowEnd = windowEnd;
+        Arrays.fill(min, -1);
+        Arrays.fill(max, -1);
+    }
+
+    /**
+     * 按环形存储中的数据完整计算一次窗口聚合
+     *
+     * @param ring 用户的环形存储，容量不能小于窗口天数
+     * @param windowDays 窗口天数
+     * @return RollingAggregate 窗口以环形存储中最新一晚为终点
+     */
+    public static RollingAggregate fromRing(NightRing ring, int windowDays) {
+        LocalDate latest = ring.getLatestDate();
+        if (latest == null) {
+            return new RollingAggregate(windowDays);
+        }
+        return fromRing(ring, windowDays, (int) latest.toEpochDay());
+    }
+
+    /**
+     * 按环形存储中的数据计算以指定日期为终点的窗口聚合
+     * 调用方持有环形存储的锁时结果为一致快照
+     *
+     * @param ring 用户的环形存储，容量不能小于窗口天数
+     * @param windowDays 窗口天数
+     * @param windowEnd 窗口终点（epochDay）
+     * @return RollingAggregate 窗口内没有数据时各指标为空
+     */
+    public static RollingAggregate fromRing(NightRing ring, int windowDays, int windowEnd) {
+        RollingAggregate aggregate = new RollingAggregate(windowDays, windowEnd);
+        for (int day = aggregate.getWindowStart(); day <= windowEnd; day++) {
+            for (SleepMetric metric : METRICS) {
+                aggregate.add(metric.ordinal(), ring.get(metric, day));
+            }
+        }
+        return aggregate;
+    }
+
+    /**
+     * 恢复某个指标的已保存状态
+     *
+     * @param metric 指标
+     * @param count 计数
+     * @param sum 总和
+     * @param sumOfSquares 平方和
+     * @param min 最小值，无数据时为-1
+     * @param max 最大值，无数据时为-1
+     */
+    public void restore(SleepMetric metric, long count, long sum, long sumOfSquares, int min, int max) {
+        int m = metric.ordinal();
+        this.count[m] = count;
+        this.sum[m] = sum;
+        this.sumOfSquares[m] = sumOfSquares;
+        this.min[m] = min;
+        this.max[m] = max;
+    }
+
+    /**
+     * 窗口终点是否与环形存储的最新一晚一致，不一致说明聚合已过期，需要重新计算
+     *
+     * @param ring 用户的环形存储
+     * @return boolean 是否一致
+     */
+    public boolean isAlignedWith(NightRing ring) {
+        LocalDate latest = ring.getLatestDate();
+        return latest == null ? windowEnd == NO_DAY : windowEnd == latest.toEpochDay();
+    }
+
+    /**
+     * 应用一晚数据的写入（新增或覆盖）
+     *
+     * @param before 写入前的环形存储，用于读取被覆盖的旧值和移出窗口的夜晚
+     * @param day 睡眠日期
+     * @param values 按存储精度换算后的指标值，见 NightRing.normalize
+     */
+    public void apply(NightRing before, int day, int[] values) {
+        if (values[TOTAL] <= 0) {
+            return;
+        }
+        if (windowEnd == NO_DAY) {
+            windowEnd = day;
+            addAll(values);
+            return;
+        }
+        int staleExtremes = 0;
+        if (day > windowEnd) {
+            if ((long) day - windowEnd >= windowDays) {
+                reset();
+            } else {
+                for (int leaving = getWindowStart(); leaving <= day - windowDays; leaving++) {
+                    staleExtremes |= removeAll(before, leaving);
+                }
+            }
+            windowEnd = day;
+        } else if (day >= getWindowStart()) {
+            staleExtremes = removeAll(before, day);
+        } else {
+            // 早于窗口的补录数据不影响聚合
+            return;
+        }
+        addAll(values);
+        if (staleExtremes != 0) {
+            recomputeExtremes(before, day, values, staleExtremes);
+        }
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    /**
+     * 窗口终点（epochDay），无数据时为 NO_DAY
+     */
+    public int getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * 窗口起点（epochDay，含）
+     */
+    public int getWindowStart() {
+        return windowEnd - windowDays + 1;
+    }
+
+    public long getCount(SleepMetric metric) {
+        return count[metric.ordinal()];
+    }
+
+    public long getSum(SleepMetric metric) {
+        return sum[metric.ordinal()];
+    }
+
+    public long getSumOfSquares(SleepMetric metric) {
+        return sumOfSquares[metric.ordinal()];
+    }
+
+    public int getMin(SleepMetric metric) {
+        return min[metric.ordinal()];
+    }
+
+    public int getMax(SleepMetric metric) {
+        return max[metric.ordinal()];
+    }
+
+    private void addAll(int[] values) {
+        for (int m = 0; m < METRICS.length; m++) {
+            add(m, values[m]);
+        }
+    }
+
+    private void add(int m, int value) {
+        if (value < 0) {
+            return;
+        }
+        count[m]++;
+        sum[m] += value;
+        sumOfSquares[m] += (long) value * value;
+        if (min[m] < 0 || value < min[m]) {
+            min[m] = value;
+        }
+        if (value > max[m]) {
+            max[m] = value;
+        }
+    }
+
+    /**
+     * 减去环形存储中某一晚的各指标值
+     *
+     * @return int 被移除的值恰好是最小或最大值的指标位掩码
+     */
+    private int removeAll(NightRing before, int day) {
+        int staleExtremes = 0;
+        for (SleepMetric metric : METRICS) {
+            int value = before.get(metric, day);
+            if (value < 0) {
+                continue;
+            }
+            int m = metric.ordinal();
+            count[m]--;
+            sum[m] -= value;
+            sumOfSquares[m] -= (long) value * value;
+            if (value == min[m] || value == max[m]) {
+                staleExtremes |= 1 << m;
+            }
+        }
+        return staleExtremes;
+    }
+
+    /**
+     * 重新扫描窗口求最值，被写入的那一晚以新值计算
+     */
+    private void recomputeExtremes(NightRing before, int day, int[] values, int staleExtremes) {
+        for (SleepMetric metric : METRICS) {
+            int m = metric.ordinal();
+            if ((staleExtremes & (1 << m)) == 0) {
+                continue;
+            }
+            int lo = -1;
+            int hi = -1;
+            for (int d = getWindowStart(); d <= windowEnd; d++) {
+                int value = d == day ? values[m] : before.get(metric, d);
+                if (value < 0) {
+                    continue;
+                }
+                if (lo < 0 || value < lo) {
+                    lo = value;
+                }
+                hi = Math.max(hi, value);
+            }
+            min[m] = lo;
+            max[m] = hi;
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumOfSquares, 0);
+        Arrays.fill(min, -1);
+        Arrays.fill(max, -1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.sleephelper.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 睡眠数据本地缓存
+ * 缓存按用户ID+睡眠日期查询的结果，容量有界（W-TinyLFU淘汰）并带写入后过期时间；
+ * 只缓存存在的记录，不存在的查询不占用缓存容量
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Component
+public class SleepDataCache {
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    /**
+     * 缓存实例，未开启缓存时为null
+     */
+    private Cache<String, SleepAnalysisSummary> cache;
+
+    @PostConstruct
+    public void init() {
+        if (Boolean.TRUE.equals(sleepDataConfig.getCacheEnabled())) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(sleepDataConfig.getCacheMaxSize())
+                    .expireAfterWrite(Duration.ofSeconds(sleepDataConfig.getCacheTtlSeconds()))
+                    .recordStats()
+                    .build();
+            log.info("睡眠数据本地缓存已开启，最大条目数：{}，存活时间：{}秒",
+                    sleepDataConfig.getCacheMaxSize(), sleepDataConfig.getCacheTtlSeconds());
+        }
+    }
+
+    /**
+     * 读取缓存，未命中时调用loader查询并写入缓存
+     *
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @param loader 未命中时的查询方法
+     * @return SleepAnalysisSummary 睡眠数据，不存在时返回null
+     */
+    public SleepAnalysisSummary get(String userId, LocalDate dateOfSleep, Supplier<SleepAnalysisSummary> loader) {
+        if (cache == null) {
+            return loader.get();
+        }
+        return cache.get(key(userId, dateOfSleep), k -> loader.get());
+    }
+
+    /**
+     * 使缓存中的记录失效，写入数据后调用
+     *
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     */
+    public void invalidate(String userId, LocalDate dateOfSleep) {
+        if (cache != null && userId != null && dateOfSleep != null) {
+            cache.invalidate(key(userId, dateOfSleep));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @return Map 命中、未命中、淘汰次数等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cache != null);
+        if (cache == null) {
+            return stats;
+        }
+        CacheStats cacheStats = cache.stats();
+        stats.put("size", cache.estimatedSize());
+        stats.put("maxSize", sleepDataConfig.getCacheMaxSize());
+        stats.put("ttlSeconds", sleepDataConfig.getCacheTtlSeconds());
+        stats.put("hitCount", cacheStats.hitCount());
+        stats.put("missCount", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictionCount", cacheStats.evictionCount());
+        stats.put("loadSuccessCount", cacheStats.loadSuccessCount());
+        stats.put("loadFailureCount", cacheStats.loadFailureCount());
+        stats.put("averageLoadPenaltyMillis", cacheStats.averageLoadPenalty() / 1_000_000.0);
+        return stats;
+    }
+
+    private static String key(String userId, LocalDate dateOfSleep) {
+        return userId + '|' + dateOfSleep;
+    }
+}
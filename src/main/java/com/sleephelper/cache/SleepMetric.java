@@ -0,0 +1,30 @@
+package com.sleephelper.cache;
+
+/**
+ * 睡眠指标
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public enum SleepMetric {
+
+    /**
+     * 总睡眠时长（分钟）
+     */
+    TOTAL_SLEEP,
+
+    /**
+     * 深度睡眠时长（分钟）
+     */
+    DEEP_SLEEP,
+
+    /**
+     * REM睡眠时长（分钟）
+     */
+    REM_SLEEP,
+
+    /**
+     * 睡眠评分（0-100分）
+     */
+    SLEEP_SCORE
+}
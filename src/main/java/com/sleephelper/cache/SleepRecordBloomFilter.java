@@ -0,0 +1,350 @@
+package com.sleephelper.cache;
+
+import com.sleephelper.common.BloomFilter;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepPoints;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import com.sleephelper.mapper.SleepPointsMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 睡眠数据、睡眠积分记录的用户ID+日期布隆过滤器
+ * 查询前先判断记录是否可能存在，一定不存在时直接返回，不再访问数据库
+ * 应用启动后在后台线程从数据库构建，构建完成前所有查询照常访问数据库；
+ * 写入方在插入（提交）之前登记键，写入失败只会多一次误判，不会漏判；
+ * 键可能先于记录提交登记、而记录在重建扫描经过之后才提交，因此重建完成时把重建开始前最近登记的键补入新过滤器，
+ * 不合并旧过滤器，已删除的键随重建清除，误判率不会随重建次数累积；
+ * 最近登记的键保留 bloom-recent-put-retention-ms（该时长需大于最长的写入事务），重建期间保留到重建开始前同样时长，
+ * 早于该时间登记的键对应的记录在重建扫描开始前已提交；过滤器未开启时不登记
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Component
+public class SleepRecordBloomFilter {
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper;
+
+    @Autowired
+    private SleepPointsMapper sleepPointsMapper;
+
+    /**
+     * 睡眠数据过滤器
+     */
+    private final KeyFilter sleepDataFilter = new KeyFilter("sleepData");
+
+    /**
+     * 睡眠积分过滤器
+     */
+    private final KeyFilter sleepPointsFilter = new KeyFilter("sleepPoints");
+
+    /**
+     * 应用启动完成后在后台构建过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getBloomEnabled())) {
+            log.info("布隆过滤器未开启");
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("启动时构建布隆过滤器失败，查询将继续访问数据库，异常信息：{}", e.getMessage(), e);
+            }
+        }, "sleep-bloom-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 从数据库重建两个过滤器，完成后替换当前过滤器
+     *
+     * @return Map 重建后的过滤器统计
+     */
+    public synchronized Map<String, Object> rebuild() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getBloomEnabled())) {
+            throw new IllegalStateException("布隆过滤器未开启");
+        }
+        long start = System.currentTimeMillis();
+        int pageSize = sleepDataConfig.getBloomBuildPageSize();
+
+        BloomFilter sleepDataNext = sleepDataFilter.beginRebuild(newFilter());
+        try {
+            long lastId = 0L;
+            List<SleepAnalysisSummary> sleepDataPage;
+            do {
+                sleepDataPage = sleepAnalysisSummaryMapper.selectKeysAfterId(lastId, pageSize);
+                for (SleepAnalysisSummary row : sleepDataPage) {
+                    sleepDataNext.put(key(row.getUserId(), row.getDateOfSleep()));
+                    lastId = row.getId();
+                }
+            } while (sleepDataPage.size() == pageSize);
+            sleepDataFilter.finishRebuild(recentPutRetentionNanos());
+        } finally {
+            sleepDataFilter.abortRebuild(sleepDataNext);
+        }
+
+        BloomFilter sleepPointsNext = sleepPointsFilter.beginRebuild(newFilter());
+        try {
+            long lastId = 0L;
+            List<SleepPoints> sleepPointsPage;
+            do {
+                sleepPointsPage = sleepPointsMapper.selectKeysAfterId(lastId, pageSize);
+                for (SleepPoints row : sleepPointsPage) {
+                    sleepPointsNext.put(key(row.getUserId(), row.getDate()));
+                    lastId = row.getId();
+                }
+            } while (sleepPointsPage.size() == pageSize);
+            sleepPointsFilter.finishRebuild(recentPutRetentionNanos());
+        } finally {
+            sleepPointsFilter.abortRebuild(sleepPointsNext);
+        }
+
+        log.info("布隆过滤器构建完成，睡眠数据键：{}，积分键：{}，耗时：{}ms",
+                sleepDataNext.getInsertions(), sleepPointsNext.getInsertions(), System.currentTimeMillis() - start);
+        warnIfOverloaded(sleepDataNext, "睡眠数据");
+        warnIfOverloaded(sleepPointsNext, "睡眠积分");
+        return getStats();
+    }
+
+    /**
+     * 睡眠数据是否可能存在
+     *
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @return boolean false表示一定不存在；过滤器未就绪时返回true
+     */
+    public boolean mightContainSleepData(String userId, LocalDate dateOfSleep) {
+        return sleepDataFilter.mightContain(key(userId, dateOfSleep));
+    }
+
+    /**
+     * 睡眠积分记录是否可能存在
+     *
+     * @param userId 用户ID
+     * @param date 积分日期
+     * @return boolean false表示一定不存在；过滤器未就绪时返回true
+     */
+    public boolean mightContainSleepPoints(String userId, LocalDate date) {
+        return sleepPointsFilter.mightContain(key(userId, date));
+    }
+
+    /**
+     * 记录新写入的睡眠数据
+     *
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     */
+    public void putSleepData(String userId, LocalDate dateOfSleep) {
+        if (isEnabled() && userId != null && dateOfSleep != null) {
+            sleepDataFilter.put(key(userId, dateOfSleep), recentPutRetentionNanos());
+        }
+    }
+
+    /**
+     * 记录新写入的睡眠积分
+     *
+     * @param userId 用户ID
+     * @param date 积分日期
+     */
+    public void putSleepPoints(String userId, LocalDate date) {
+        if (isEnabled() && userId != null && date != null) {
+            sleepPointsFilter.put(key(userId, date), recentPutRetentionNanos());
+        }
+    }
+
+    /**
+     * 过滤器统计
+     *
+     * @return Map 各过滤器的位数、哈希次数、内存占用、估算误判率及拦截次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", Boolean.TRUE.equals(sleepDataConfig.getBloomEnabled()));
+        stats.put("targetFpp", sleepDataConfig.getBloomFpp());
+        stats.put("maxMemoryBytes", sleepDataConfig.getBloomMaxMemoryBytes());
+        stats.put(sleepDataFilter.name, sleepDataFilter.getStats());
+        stats.put(sleepPointsFilter.name, sleepPointsFilter.getStats());
+        return stats;
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(sleepDataConfig.getBloomEnabled());
+    }
+
+    private BloomFilter newFilter() {
+        return BloomFilter.create(sleepDataConfig.getBloomExpectedInsertions(),
+                sleepDataConfig.getBloomFpp(), sleepDataConfig.getBloomMaxMemoryBytes());
+    }
+
+    private long recentPutRetentionNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(sleepDataConfig.getBloomRecentPutRetentionMs());
+    }
+
+    private void warnIfOverloaded(BloomFilter filter, String label) {
+        if (filter.getExpectedFpp() > sleepDataConfig.getBloomFpp()) {
+            log.warn("{}布隆过滤器估算误判率{}已超过目标值{}，请调大预期记录数或内存上限",
+                    label, filter.getExpectedFpp(), sleepDataConfig.getBloomFpp());
+        }
+    }
+
+    private static String key(String userId, LocalDate date) {
+        return userId + '|' + date.toEpochDay();
+    }
+
+    /**
+     * 单个过滤器及其重建状态
+     * 登记、开始重建、完成重建持有同一把锁，完成重建时并入的键与替换过滤器之间不会漏掉并发登记
+     */
+    private static final class KeyFilter {
+
+        private final String name;
+
+        private final Object lock = new Object();
+
+        /**
+         * 当前生效的过滤器，尚未构建完成时为null
+         */
+        private volatile BloomFilter current;
+
+        /**
+         * 重建中的过滤器，重建期间的新写入同时加入
+         */
+        private volatile BloomFilter building;
+
+        /**
+         * 当前重建开始的时间（纳秒）
+         */
+        private long buildStartedAt;
+
+        /**
+         * 最近登记的键及登记时间（纳秒），按登记时间排序；重建完成时补入新过滤器
+         */
+        private final LinkedHashMap<String, Long> recentPuts = new LinkedHashMap<>();
+
+        private final AtomicLong queryCount = new AtomicLong();
+
+        private final AtomicLong rejectedCount = new AtomicLong();
+
+        private KeyFilter(String name) {
+            this.name = name;
+        }
+
+        private BloomFilter beginRebuild(BloomFilter next) {
+            synchronized (lock) {
+                building = next;
+                buildStartedAt = System.nanoTime();
+                return next;
+            }
+        }
+
+        /**
+         * 重建失败时放弃重建中的过滤器，已完成的重建不受影响
+         */
+        private void abortRebuild(BloomFilter next) {
+            synchronized (lock) {
+                if (building == next) {
+                    building = null;
+                }
+            }
+        }
+
+        private void finishRebuild(long retentionNanos) {
+            synchronized (lock) {
+                BloomFilter next = building;
+                // 只补入重建开始前保留时长内登记的键：更早的记录在扫描前已提交，重建开始后登记的已直接加入新过滤器
+                for (Map.Entry<String, Long> entry : recentPuts.entrySet()) {
+                    long putAt = entry.getValue();
+                    if (putAt - buildStartedAt >= 0) {
+                        break;
+                    }
+                    if (buildStartedAt - putAt <= retentionNanos) {
+                        next.put(entry.getKey());
+                    }
+                }
+                current = next;
+                building = null;
+                pruneRecentPuts(System.nanoTime(), retentionNanos);
+            }
+        }
+
+        private void put(String key, long retentionNanos) {
+            long now = System.nanoTime();
+            synchronized (lock) {
+                if (current != null) {
+                    current.put(key);
+                }
+                if (building != null) {
+                    building.put(key);
+                }
+                recentPuts.remove(key);
+                recentPuts.put(key, now);
+                pruneRecentPuts(now, retentionNanos);
+            }
+        }
+
+        /**
+         * 清理超过保留时长的最近登记键；重建期间以重建开始时间为准，保留重建完成时需要补入的键（调用方持有锁）
+         */
+        private void pruneRecentPuts(long now, long retentionNanos) {
+            long horizon = building != null ? buildStartedAt : now;
+            Iterator<Long> putTimes = recentPuts.values().iterator();
+            while (putTimes.hasNext() && horizon - putTimes.next() > retentionNanos) {
+                putTimes.remove();
+            }
+        }
+
+        private boolean mightContain(String key) {
+            BloomFilter active = current;
+            if (active == null) {
+                return true;
+            }
+            queryCount.incrementAndGet();
+            if (active.mightContain(key)) {
+                return true;
+            }
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        private Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            BloomFilter active = current;
+            stats.put("ready", active != null);
+            stats.put("rebuilding", building != null);
+            stats.put("queryCount", queryCount.get());
+            stats.put("rejectedCount", rejectedCount.get());
+            synchronized (lock) {
+                stats.put("recentPuts", recentPuts.size());
+            }
+            if (active != null) {
+                stats.put("insertions", active.getInsertions());
+                stats.put("bitSize", active.getBitSize());
+                stats.put("numHashes", active.getNumHashes());
+                stats.put("memoryBytes", active.getMemoryBytes());
+                stats.put("expectedFpp", active.getExpectedFpp());
+            }
+            return stats;
+        }
+    }
+}
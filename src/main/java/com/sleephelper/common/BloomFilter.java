@@ -0,0 +1,148 @@
+package com.sleephelper.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的布隆过滤器
+ * mightContain 返回false时元素一定不存在；返回true时可能存在（误判率由位数组大小和哈希次数决定）
+ * 位数组按 预期元素数 + 目标误判率 计算，超出内存上限时按上限截断，实际误判率可通过 getExpectedFpp 查看
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int numHashes;
+
+    private final AtomicLong insertions = new AtomicLong();
+
+    private BloomFilter(long bitSize, int numHashes) {
+        this.bits = new AtomicLongArray((int) (bitSize >>> 6));
+        this.bitSize = bitSize;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * 创建布隆过滤器
+     *
+     * @param expectedInsertions 预期元素数
+     * @param fpp 目标误判率（0-1之间）
+     * @param maxMemoryBytes 位数组内存上限（字节）
+     * @return BloomFilter 布隆过滤器
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp, long maxMemoryBytes) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("误判率必须在0-1之间");
+        }
+        long n = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-n * Math.log(fpp) / (LN2 * LN2));
+        // 位数组按long对齐，且不超过内存上限和数组长度上限
+        long maxBits = Math.min(Math.max(64, maxMemoryBytes * 8), (long) Integer.MAX_VALUE * 64) & ~63L;
+        long bitSize = Math.min((Math.max(64, optimalBits) + 63) & ~63L, maxBits);
+        int numHashes = (int) Math.max(1, Math.round((double) bitSize / n * LN2));
+        return new BloomFilter(bitSize, Math.min(numHashes, 30));
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param key 元素
+     */
+    public void put(String key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1L;
+        long combined = hash1;
+        for (int i = 0; i < numHashes; i++) {
+            setBit((combined & Long.MAX_VALUE) % bitSize);
+            combined += hash2;
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @param key 元素
+     * @return boolean false表示一定不存在，true表示可能存在
+     */
+    public boolean mightContain(String key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1L;
+        long combined = hash1;
+        for (int i = 0; i < numHashes; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+            combined += hash2;
+        }
+        return true;
+    }
+
+    /**
+     * 按已添加元素数估算当前误判率
+     *
+     * @return double 误判率
+     */
+    public double getExpectedFpp() {
+        double fillRatio = 1 - Math.exp(-(double) numHashes * insertions.get() / bitSize);
+        return Math.pow(fillRatio, numHashes);
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getMemoryBytes() {
+        return bitSize >>> 3;
+    }
+
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * FNV-1a 64位哈希，再经过一轮混淆使高低位分布均匀
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
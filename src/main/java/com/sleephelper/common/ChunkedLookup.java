@@ -0,0 +1,49 @@
+package com.sleephelper.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 分片批量查询工具类
+ * 把键去重后按固定大小切分，每片执行一次 IN 列表查询，结果按键汇总；
+ * 控制单条SQL的参数个数，同时把逐个查询的N次往返降为 N/分片大小 次
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class ChunkedLookup {
+
+    private ChunkedLookup() {}
+
+    /**
+     * 分片查询并按键汇总
+     *
+     * @param keys 查询键，null和重复的键会被忽略
+     * @param chunkSize 每片键数（必须大于0）
+     * @param query 按一片键查询，入参不为空
+     * @param keyOf 取结果行的键
+     * @return 键到结果行的映射，没有结果的键不在映射中；同一键有多行时保留第一行
+     */
+    public static <K, V> Map<K, V> lookup(Collection<K> keys, int chunkSize,
+                                          Function<List<K>, List<V>> query, Function<V, K> keyOf) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<K> distinct = new LinkedHashSet<>(keys);
+        distinct.remove(null);
+        Map<K, V> result = new HashMap<>(distinct.size() * 4 / 3 + 1);
+        for (List<K> chunk : ListPartitioner.partition(new ArrayList<>(distinct), chunkSize)) {
+            for (V row : query.apply(chunk)) {
+                result.putIfAbsent(keyOf.apply(row), row);
+            }
+        }
+        return result;
+    }
+}
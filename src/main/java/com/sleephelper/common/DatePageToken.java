@@ -0,0 +1,48 @@
+package com.sleephelper.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 按日期分页的分页令牌编解码工具
+ * 令牌内容为上一页最后一条记录的日期，下一页从该日期之前继续查询（keyset分页，无OFFSET扫描）
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class DatePageToken {
+
+    private DatePageToken() {}
+
+    /**
+     * 将游标日期编码为分页令牌
+     *
+     * @param cursor 上一页最后一条记录的日期
+     * @return String 分页令牌（URL安全的Base64）
+     */
+    public static String encode(LocalDate cursor) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析分页令牌
+     *
+     * @param pageToken 分页令牌，为空表示第一页
+     * @return LocalDate 游标日期，第一页返回null
+     * @throws IllegalArgumentException 令牌格式不正确
+     */
+    public static LocalDate decode(String pageToken) {
+        if (pageToken == null || pageToken.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            byte[] decoded = Base64.getUrlDecoder().decode(pageToken.trim());
+            return LocalDate.parse(new String(decoded, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("分页令牌无效");
+        }
+    }
+}
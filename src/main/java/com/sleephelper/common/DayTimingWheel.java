@@ -0,0 +1,165 @@
+package com.sleephelper.common;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 按天计时的分层时间轮
+ * 第0层每格1天，第i层每格 wheelSize^i 天，超出当前层覆盖范围的到期日放入上一层（按需创建）；
+ * 时钟每前进一天，只取出当天到格的格子：上层格子的到期日逐层下放，第0层格子中的到期日即为到期；
+ * 登记和每天推进都是 O(层数)，与登记的到期日数量无关
+ * 以纪元日（LocalDate.toEpochDay）表示日期，同一到期日重复登记只保留一次；非线程安全，由调用方加锁
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class DayTimingWheel {
+
+    private final int wheelSize;
+
+    private final List<Set<Long>[]> levels = new ArrayList<>();
+
+    /**
+     * 已到期、等待取出的到期日（登记时已不晚于当前日期，或推进时到期）
+     */
+    private final TreeSet<Long> due = new TreeSet<>();
+
+    /**
+     * 当前日期（纪元日），不晚于该日期的到期日视为到期
+     */
+    private long currentDay;
+
+    /**
+     * 已登记、尚未取出的到期日
+     */
+    private final Set<Long> pending = new HashSet<>();
+
+    /**
+     * @param wheelSize 每层格数（必须大于1）
+     * @param currentDay 当前日期（纪元日）
+     */
+    public DayTimingWheel(int wheelSize, long currentDay) {
+        if (wheelSize <= 1) {
+            throw new IllegalArgumentException("时间轮每层格数必须大于1：" + wheelSize);
+        }
+        this.wheelSize = wheelSize;
+        this.currentDay = currentDay;
+    }
+
+    /**
+     * 登记到期日
+     *
+     * @param expiryDay 到期日（纪元日）
+     * @return 是否新登记（已登记过时返回false）
+     */
+    public boolean add(long expiryDay) {
+        if (!pending.add(expiryDay)) {
+            return false;
+        }
+        place(expiryDay);
+        return true;
+    }
+
+    /**
+     * 把时钟推进到指定日期，并取出全部已到期的到期日
+     *
+     * @param day 目标日期（纪元日），早于当前日期时不推进
+     * @return 已到期的到期日，升序
+     */
+    public List<Long> advanceTo(long day) {
+        while (currentDay < day) {
+            currentDay++;
+            long tickDays = 1;
+            for (int level = 1; level < levels.size(); level++) {
+                tickDays *= wheelSize;
+            }
+            // 从最高层往下处理到格的格子，下放的到期日落入更低层或直接到期
+            for (int level = levels.size() - 1; level >= 0; level--) {
+                if (Math.floorMod(currentDay, tickDays) == 0) {
+                    int index = (int) Math.floorMod(Math.floorDiv(currentDay, tickDays), (long) wheelSize);
+                    Set<Long> bucket = levels.get(level)[index];
+                    if (bucket != null) {
+                        levels.get(level)[index] = null;
+                        for (Long expiryDay : bucket) {
+                            place(expiryDay);
+                        }
+                    }
+                }
+                tickDays /= wheelSize;
+            }
+        }
+        List<Long> expired = new ArrayList<>(due);
+        pending.removeAll(due);
+        due.clear();
+        return expired;
+    }
+
+    /**
+     * 清空全部到期日并把时钟设为指定日期
+     *
+     * @param day 当前日期（纪元日）
+     */
+    public void reset(long day) {
+        levels.clear();
+        due.clear();
+        pending.clear();
+        currentDay = day;
+    }
+
+    /**
+     * @return 当前日期（纪元日）
+     */
+    public long getCurrentDay() {
+        return currentDay;
+    }
+
+    /**
+     * @return 已登记、尚未取出的到期日数
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return 已创建的层数
+     */
+    public int levelCount() {
+        return levels.size();
+    }
+
+    /**
+     * 把到期日放入所在层的格子，不晚于当前日期时直接到期
+     */
+    private void place(long expiryDay) {
+        if (expiryDay <= currentDay) {
+            due.add(expiryDay);
+            return;
+        }
+        long tickDays = 1;
+        for (int level = 0; ; level++) {
+            // 当前层覆盖 [当前格起点, 当前格起点 + tickDays * wheelSize)
+            long levelStart = currentDay - Math.floorMod(currentDay, tickDays);
+            if (expiryDay < levelStart + tickDays * wheelSize) {
+                int index = (int) Math.floorMod(Math.floorDiv(expiryDay, tickDays), (long) wheelSize);
+                bucket(level, index).add(expiryDay);
+                return;
+            }
+            tickDays = Math.multiplyExact(tickDays, (long) wheelSize);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Long> bucket(int level, int index) {
+        while (levels.size() <= level) {
+            levels.add(new Set[wheelSize]);
+        }
+        Set<Long>[] wheel = levels.get(level);
+        if (wheel[index] == null) {
+            wheel[index] = new HashSet<>();
+        }
+        return wheel[index];
+    }
+}
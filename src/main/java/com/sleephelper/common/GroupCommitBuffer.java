@@ -0,0 +1,226 @@
+package com.sleephelper.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 写后缓冲（组提交）
+ * 调用方把记录放入有界队列后立即拿到一个Future，后台刷写线程每隔N毫秒或攒够M条记录
+ * 调用一次批量写入函数（通常对应一个事务），再按顺序完成各条记录的Future
+ * 队列满或已关闭时 offer 返回null，由调用方走同步写入
+ *
+ * @param <T> 记录类型
+ * @param <R> 单条写入结果类型
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+public class GroupCommitBuffer<T, R> {
+
+    private final String name;
+
+    private final BlockingQueue<PendingWrite<T, R>> queue;
+
+    private final int capacity;
+
+    private final int maxBatchSize;
+
+    private final long flushIntervalMillis;
+
+    /**
+     * 批量写入函数：入参为一组记录，返回与入参顺序一致的单条结果
+     */
+    private final Function<List<T>, List<R>> batchWriter;
+
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong flushedRowCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile int lastBatchSize;
+
+    public GroupCommitBuffer(String name, int capacity, int maxBatchSize, long flushIntervalMillis,
+                             Function<List<T>, List<R>> batchWriter) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchWriter = batchWriter;
+        this.flusher = new Thread(this::runFlushLoop, name + "-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 提交一条记录
+     *
+     * @param item 记录
+     * @return CompletableFuture 记录所在分组提交后完成；队列已满或已关闭时返回null
+     */
+    public CompletableFuture<R> offer(T item) {
+        if (!running) {
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+        PendingWrite<T, R> pending = new PendingWrite<>(item);
+        if (!queue.offer(pending)) {
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+        acceptedCount.incrementAndGet();
+        return pending.future;
+    }
+
+    /**
+     * 停止接收新记录并把队列中剩余记录全部写出
+     *
+     * @param timeoutMillis 等待刷写线程结束的最长时间
+     */
+    public void shutdown(long timeoutMillis) {
+        // 不中断刷写线程，避免打断进行中的数据库写入；刷写线程最多一个刷写间隔后感知到关闭
+        running = false;
+        try {
+            flusher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭过程中与running检查并发入队的记录，由当前线程补刷
+        List<PendingWrite<T, R>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("写后缓冲[{}]关闭时补刷剩余记录：{}条", name, remaining.size());
+            for (int from = 0; from < remaining.size(); from += maxBatchSize) {
+                flush(remaining.subList(from, Math.min(from + maxBatchSize, remaining.size())));
+            }
+        }
+        log.info("写后缓冲[{}]已关闭，累计写出：{}条，分组提交：{}次", name, flushedRowCount.get(), flushCount.get());
+    }
+
+    /**
+     * 当前队列深度
+     *
+     * @return int 等待刷写的记录数
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 运行指标
+     *
+     * @return Map 队列深度、提交次数、刷写耗时等
+     */
+    public Map<String, Object> getMetrics() {
+        long flushes = flushCount.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("running", running);
+        metrics.put("queueDepth", queue.size());
+        metrics.put("queueCapacity", capacity);
+        metrics.put("maxBatchSize", maxBatchSize);
+        metrics.put("flushIntervalMillis", flushIntervalMillis);
+        metrics.put("acceptedCount", acceptedCount.get());
+        metrics.put("rejectedCount", rejectedCount.get());
+        metrics.put("flushedRowCount", flushedRowCount.get());
+        metrics.put("flushCount", flushes);
+        metrics.put("failedFlushCount", failedFlushCount.get());
+        metrics.put("lastBatchSize", lastBatchSize);
+        metrics.put("lastFlushMillis", TimeUnit.NANOSECONDS.toMillis(lastFlushNanos));
+        metrics.put("maxFlushMillis", TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()));
+        metrics.put("avgFlushMillis", flushes == 0 ? 0.0 : totalFlushNanos.get() / (double) flushes / 1_000_000.0);
+        return metrics;
+    }
+
+    private void runFlushLoop() {
+        List<PendingWrite<T, R>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite<T, R> first = running
+                        ? queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS)
+                        : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 从第一条记录入批开始计时，攒满或到时即提交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingWrite<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite<T, R>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (PendingWrite<T, R> pending : batch) {
+            items.add(pending.item);
+        }
+        long start = System.nanoTime();
+        try {
+            List<R> results = batchWriter.apply(items);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        } catch (Throwable e) {
+            failedFlushCount.incrementAndGet();
+            log.error("写后缓冲[{}]分组提交失败，记录数：{}，异常信息：{}", name, batch.size(), e.getMessage(), e);
+            for (PendingWrite<T, R> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            lastFlushNanos = elapsed;
+            lastBatchSize = batch.size();
+            totalFlushNanos.addAndGet(elapsed);
+            maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+            flushCount.incrementAndGet();
+            flushedRowCount.addAndGet(batch.size());
+        }
+    }
+
+    private static final class PendingWrite<T, R> {
+
+        private final T item;
+
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private PendingWrite(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.sleephelper.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 列表分片工具类
+ * 用于将大批量数据按固定大小切分，控制单条SQL的参数数量
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class ListPartitioner {
+
+    private ListPartitioner() {}
+
+    /**
+     * 按固定大小切分列表
+     * 返回的子列表是原列表的视图，不复制元素
+     *
+     * @param list 原始列表
+     * @param size 每片大小（必须大于0）
+     * @return 分片列表
+     */
+    public static <T> List<List<T>> partition(List<T> list, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("分片大小必须大于0：" + size);
+        }
+        if (list == null || list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<T>> partitions = new ArrayList<>((list.size() + size - 1) / size);
+        for (int from = 0; from < list.size(); from += size) {
+            partitions.add(list.subList(from, Math.min(from + size, list.size())));
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,554 @@
+package com.sleephelper.common;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * 外部API调用限流器
+ * 同时满足三个限制才放行一个请求：
+ * 1. 每分钟请求数令牌桶（容量为每分钟请求数，匀速补充）；
+ * 2. 每分钟token数令牌桶，放行时按预估token数扣减，调用结束后按实际用量退还或补扣；
+ * 3. AIMD并发上限：成功且耗时未超过阈值时（并发已用到上限一半以上）上限加1，
+ *    被限流（429）、超时或服务端错误时上限乘以退避系数；同一轮拥塞中放行的请求只触发一次下调
+ * 不满足时请求按优先级排队（同优先级先到先得），排队超过截止时间以 IllegalStateException 失败，队列满时立即失败；
+ * 令牌不足时由内部定时线程在令牌足够或最早截止时间到达时唤醒队列
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+public class OutboundRateLimiter {
+
+    /**
+     * 请求优先级，声明顺序即放行顺序
+     */
+    public enum Priority {
+
+        /**
+         * 交互请求（聊天），优先放行
+         */
+        INTERACTIVE,
+
+        /**
+         * 后台请求（报告生成）
+         */
+        BACKGROUND
+    }
+
+    /**
+     * 调用结果，决定并发上限如何调整
+     */
+    public enum Outcome {
+
+        /**
+         * 成功
+         */
+        SUCCESS,
+
+        /**
+         * 被对方限流（HTTP 429）
+         */
+        RATE_LIMITED,
+
+        /**
+         * 超时或服务端错误
+         */
+        DROPPED,
+
+        /**
+         * 与对方负载无关的结束（调用方取消、参数错误等），不调整并发上限
+         */
+        IGNORED
+    }
+
+    /**
+     * 限流参数
+     */
+    @Data
+    public static class Settings {
+
+        /**
+         * 每分钟请求数，小于等于0时不限制
+         */
+        private int requestsPerMinute = 600;
+
+        /**
+         * 每分钟token数，小于等于0时不限制
+         */
+        private long tokensPerMinute = 1_000_000L;
+
+        private int initialConcurrency = 20;
+
+        private int minConcurrency = 1;
+
+        private int maxConcurrency = 200;
+
+        /**
+         * 成功调用的耗时超过该值时按拥塞处理（毫秒）
+         */
+        private long latencyThresholdMillis = 20000L;
+
+        /**
+         * 拥塞时并发上限的乘数
+         */
+        private double backoffRatio = 0.5;
+
+        private int maxQueueSize = 1000;
+
+        /**
+         * 排队截止时间（毫秒）
+         */
+        private long queueTimeoutMillis = 10000L;
+    }
+
+    private static final Comparator<Waiter> WAITER_ORDER =
+            Comparator.comparingInt((Waiter waiter) -> waiter.priority.ordinal()).thenComparingLong(waiter -> waiter.sequence);
+
+    private final String name;
+
+    private final Settings settings;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * 唤醒队列的定时线程，测试时为null（由测试调用 dispatchNow）
+     */
+    private final ScheduledExecutorService timer;
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(WAITER_ORDER);
+
+    private final TokenBucket requestBucket;
+
+    private final TokenBucket tokenBucket;
+
+    private long sequence;
+
+    private int limit;
+
+    private int inFlight;
+
+    /**
+     * 最近一次下调并发上限时已放行的请求数，序号不大于它的请求再失败不重复下调
+     */
+    private long decreaseFence;
+
+    /**
+     * 已安排的唤醒时间，没有时为 Long.MAX_VALUE
+     */
+    private long scheduledWakeAt = Long.MAX_VALUE;
+
+    private boolean shutdown;
+
+    private long admittedCount;
+    private long queueFullCount;
+    private long queueTimeoutCount;
+    private long cancelledCount;
+    private long successCount;
+    private long rateLimitedCount;
+    private long droppedCount;
+    private long limitIncreaseCount;
+    private long limitDecreaseCount;
+    private long totalQueueWaitNanos;
+
+    public OutboundRateLimiter(String name, Settings settings) {
+        this(name, settings, System::nanoTime, true);
+    }
+
+    OutboundRateLimiter(String name, Settings settings, LongSupplier nanoClock, boolean startTimer) {
+        if (settings.getMinConcurrency() < 1 || settings.getMaxConcurrency() < settings.getMinConcurrency()) {
+            throw new IllegalArgumentException("并发上限范围不合法：" + settings.getMinConcurrency() + "~" + settings.getMaxConcurrency());
+        }
+        this.name = name;
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.requestBucket = settings.getRequestsPerMinute() > 0 ? new TokenBucket(settings.getRequestsPerMinute(), now) : null;
+        this.tokenBucket = settings.getTokensPerMinute() > 0 ? new TokenBucket(settings.getTokensPerMinute(), now) : null;
+        this.limit = Math.max(settings.getMinConcurrency(), Math.min(settings.getMaxConcurrency(), settings.getInitialConcurrency()));
+        if (startTimer) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name + "-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * 申请一次调用许可
+     *
+     * @param priority 优先级
+     * @param estimatedTokens 预估token数（超过token桶容量时按容量扣减）
+     * @return 放行时完成；排队超时、队列已满或已关闭时以 IllegalStateException 失败；
+     * 取消返回的Future即退出排队
+     */
+    public CompletableFuture<Permit> acquire(Priority priority, long estimatedTokens) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        List<Runnable> completions;
+        synchronized (this) {
+            if (shutdown) {
+                future.completeExceptionally(new IllegalStateException("AI服务已关闭"));
+                return future;
+            }
+            if (queue.size() >= settings.getMaxQueueSize()) {
+                queueFullCount++;
+                future.completeExceptionally(new IllegalStateException("AI服务繁忙，请稍后重试。"));
+                return future;
+            }
+            long now = nanoClock.getAsLong();
+            queue.add(new Waiter(priority, sequence++, Math.max(0, estimatedTokens), now,
+                    now + TimeUnit.MILLISECONDS.toNanos(settings.getQueueTimeoutMillis()), future));
+            completions = dispatch(now);
+        }
+        complete(completions);
+        return future;
+    }
+
+    /**
+     * 立即处理一次队列（过期、放行），定时线程同样调用此方法
+     */
+    void dispatchNow() {
+        List<Runnable> completions;
+        synchronized (this) {
+            scheduledWakeAt = Long.MAX_VALUE;
+            completions = dispatch(nanoClock.getAsLong());
+        }
+        complete(completions);
+    }
+
+    /**
+     * 停止定时线程，排队中的请求以 IllegalStateException 失败
+     */
+    public void shutdown() {
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (Waiter waiter : queue) {
+                completions.add(() -> waiter.future.completeExceptionally(new IllegalStateException("AI服务已关闭")));
+            }
+            queue.clear();
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        complete(completions);
+    }
+
+    /**
+     * 限流器状态
+     *
+     * @return 并发上限、进行中和排队数、剩余令牌及各类计数
+     */
+    public synchronized Map<String, Object> getStats() {
+        long now = nanoClock.getAsLong();
+        int queuedInteractive = 0;
+        for (Waiter waiter : queue) {
+            if (waiter.priority == Priority.INTERACTIVE) {
+                queuedInteractive++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("concurrencyLimit", limit);
+        stats.put("minConcurrency", settings.getMinConcurrency());
+        stats.put("maxConcurrency", settings.getMaxConcurrency());
+        stats.put("inFlight", inFlight);
+        stats.put("queued", queue.size());
+        stats.put("queuedInteractive", queuedInteractive);
+        stats.put("queuedBackground", queue.size() - queuedInteractive);
+        if (requestBucket != null) {
+            requestBucket.refill(now);
+            stats.put("availableRequests", (long) Math.floor(requestBucket.available));
+        }
+        if (tokenBucket != null) {
+            tokenBucket.refill(now);
+            stats.put("availableTokens", (long) Math.floor(tokenBucket.available));
+        }
+        stats.put("admitted", admittedCount);
+        stats.put("queueFull", queueFullCount);
+        stats.put("queueTimeout", queueTimeoutCount);
+        stats.put("cancelled", cancelledCount);
+        stats.put("succeeded", successCount);
+        stats.put("rateLimited", rateLimitedCount);
+        stats.put("dropped", droppedCount);
+        stats.put("limitIncreases", limitIncreaseCount);
+        stats.put("limitDecreases", limitDecreaseCount);
+        stats.put("averageQueueWaitMillis",
+                admittedCount > 0 ? totalQueueWaitNanos / 1_000_000.0 / admittedCount : 0.0);
+        return stats;
+    }
+
+    /**
+     * 处理队列：移除已取消和已过截止时间的请求，按优先级放行，并安排下次唤醒（调用方持有锁）
+     *
+     * @return 需在锁外执行的Future完成动作
+     */
+    private List<Runnable> dispatch(long now) {
+        List<Runnable> completions = new ArrayList<>();
+        long earliestDeadline = Long.MAX_VALUE;
+        Iterator<Waiter> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (waiter.future.isDone()) {
+                iterator.remove();
+                cancelledCount++;
+            } else if (now - waiter.deadline >= 0) {
+                iterator.remove();
+                queueTimeoutCount++;
+                completions.add(() -> waiter.future.completeExceptionally(
+                        new IllegalStateException("AI服务繁忙，排队超时，请稍后重试。")));
+            } else {
+                earliestDeadline = Math.min(earliestDeadline, waiter.deadline);
+            }
+        }
+
+        long refillAt = Long.MAX_VALUE;
+        while (!queue.isEmpty() && inFlight < limit) {
+            Waiter head = queue.peek();
+            long tokens = tokenBucket != null ? Math.min(head.tokens, (long) tokenBucket.capacity) : 0;
+            long waitNanos = 0;
+            if (requestBucket != null) {
+                requestBucket.refill(now);
+                waitNanos = requestBucket.nanosUntil(1);
+            }
+            if (tokenBucket != null) {
+                tokenBucket.refill(now);
+                waitNanos = Math.max(waitNanos, tokenBucket.nanosUntil(tokens));
+            }
+            if (waitNanos > 0) {
+                // 队首令牌不足时整体等待，不让后面的小请求插队
+                refillAt = now + waitNanos;
+                break;
+            }
+            if (requestBucket != null) {
+                requestBucket.available -= 1;
+            }
+            if (tokenBucket != null) {
+                tokenBucket.available -= tokens;
+            }
+            queue.poll();
+            inFlight++;
+            admittedCount++;
+            totalQueueWaitNanos += now - head.enqueuedAt;
+            Permit permit = new Permit(admittedCount, tokens, now, inFlight);
+            completions.add(() -> {
+                if (!head.future.complete(permit)) {
+                    // 放行前调用方已取消
+                    permit.release(Outcome.IGNORED, -1);
+                }
+            });
+        }
+
+        if (!queue.isEmpty()) {
+            scheduleWake(Math.min(refillAt, earliestDeadline), now);
+        }
+        return completions;
+    }
+
+    private void scheduleWake(long wakeAt, long now) {
+        if (timer == null || shutdown || wakeAt == Long.MAX_VALUE || wakeAt >= scheduledWakeAt) {
+            return;
+        }
+        scheduledWakeAt = wakeAt;
+        timer.schedule(this::dispatchNow, Math.max(0, wakeAt - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 调用结束：归还并发名额、按实际用量修正token桶、调整并发上限，再处理队列
+     */
+    private void onRelease(Permit permit, Outcome outcome, long usedTokens) {
+        List<Runnable> completions;
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            inFlight--;
+            if (tokenBucket != null && usedTokens >= 0) {
+                tokenBucket.refill(now);
+                tokenBucket.available = Math.min(tokenBucket.capacity,
+                        tokenBucket.available + permit.reservedTokens - usedTokens);
+            }
+            switch (outcome) {
+                case SUCCESS:
+                    successCount++;
+                    if (permit.responseLatency(now) > TimeUnit.MILLISECONDS.toNanos(settings.getLatencyThresholdMillis())) {
+                        decreaseLimit(permit);
+                    } else if (permit.inFlightAtAdmission * 2 >= limit && limit < settings.getMaxConcurrency()) {
+                        limit++;
+                        limitIncreaseCount++;
+                    }
+                    break;
+                case RATE_LIMITED:
+                    rateLimitedCount++;
+                    decreaseLimit(permit);
+                    if (requestBucket != null) {
+                        // 对方已限流，清空请求令牌，等补充后再放行
+                        requestBucket.available = Math.min(requestBucket.available, 0);
+                    }
+                    break;
+                case DROPPED:
+                    droppedCount++;
+                    decreaseLimit(permit);
+                    break;
+                default:
+                    break;
+            }
+            completions = dispatch(now);
+        }
+        complete(completions);
+    }
+
+    private void decreaseLimit(Permit permit) {
+        if (permit.admissionIndex <= decreaseFence) {
+            return;
+        }
+        int decreased = Math.max(settings.getMinConcurrency(), (int) (limit * settings.getBackoffRatio()));
+        if (decreased < limit) {
+            log.warn("限流器[{}]下调并发上限：{} -> {}", name, limit, decreased);
+            limit = decreased;
+            limitDecreaseCount++;
+        }
+        decreaseFence = admittedCount;
+    }
+
+    private void complete(List<Runnable> completions) {
+        for (Runnable completion : completions) {
+            try {
+                completion.run();
+            } catch (Exception e) {
+                log.error("限流器[{}]通知调用方异常：{}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 调用许可，调用结束后必须释放一次（重复释放忽略）
+     */
+    public final class Permit {
+
+        /**
+         * 放行序号（从1开始）
+         */
+        private final long admissionIndex;
+
+        private final long reservedTokens;
+
+        private final long admittedAt;
+
+        private final int inFlightAtAdmission;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private final AtomicBoolean responded = new AtomicBoolean();
+
+        private volatile long firstResponseAt;
+
+        private Permit(long admissionIndex, long reservedTokens, long admittedAt, int inFlightAtAdmission) {
+            this.admissionIndex = admissionIndex;
+            this.reservedTokens = reservedTokens;
+            this.admittedAt = admittedAt;
+            this.inFlightAtAdmission = inFlightAtAdmission;
+        }
+
+        /**
+         * 记录首次收到响应（重复调用忽略）
+         * 流式调用在整个流期间占用许可，延迟按首个片段计算，流的长短不影响并发上限
+         */
+        public void markFirstResponse() {
+            if (responded.compareAndSet(false, true)) {
+                firstResponseAt = nanoClock.getAsLong();
+            }
+        }
+
+        /**
+         * 放行到首次响应的耗时，未记录首次响应时按放行到释放的耗时
+         */
+        private long responseLatency(long releasedAt) {
+            return (responded.get() ? firstResponseAt : releasedAt) - admittedAt;
+        }
+
+        /**
+         * 释放许可
+         *
+         * @param outcome 调用结果
+         * @param usedTokens 实际消耗的token数，未知时传负数（不修正）
+         */
+        public void release(Outcome outcome, long usedTokens) {
+            if (released.compareAndSet(false, true)) {
+                onRelease(this, outcome, usedTokens);
+            }
+        }
+    }
+
+    /**
+     * 排队中的请求
+     */
+    private static final class Waiter {
+
+        private final Priority priority;
+
+        private final long sequence;
+
+        private final long tokens;
+
+        private final long enqueuedAt;
+
+        private final long deadline;
+
+        private final CompletableFuture<Permit> future;
+
+        private Waiter(Priority priority, long sequence, long tokens, long enqueuedAt, long deadline,
+                       CompletableFuture<Permit> future) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.tokens = tokens;
+            this.enqueuedAt = enqueuedAt;
+            this.deadline = deadline;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 令牌桶：容量为每分钟额度，按纳秒匀速补充；可用量可为负（实际用量超过预估时的欠额）
+     */
+    private static final class TokenBucket {
+
+        private final double capacity;
+
+        private final double refillPerNano;
+
+        private double available;
+
+        private long lastRefillAt;
+
+        private TokenBucket(long perMinute, long now) {
+            this.capacity = perMinute;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+            this.lastRefillAt = now;
+        }
+
+        private void refill(long now) {
+            available = Math.min(capacity, available + (now - lastRefillAt) * refillPerNano);
+            lastRefillAt = now;
+        }
+
+        private long nanosUntil(double amount) {
+            return available >= amount ? 0 : (long) Math.ceil((amount - available) / refillPerNano);
+        }
+    }
+}
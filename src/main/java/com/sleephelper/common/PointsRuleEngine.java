@@ -0,0 +1,243 @@
+package com.sleephelper.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 睡眠积分规则引擎
+ * 规则表（评分分档基础分、深睡每档加分及上限、每日上限）在编译时展开为一张
+ * 按 [睡眠评分][深睡档数] 索引的积分表，evaluate 只做边界归一和一次数组查找，
+ * 不装箱、不分配对象、不打日志；实例不可变，可在线程间共享
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class PointsRuleEngine {
+
+    /**
+     * 睡眠评分上限，评分为负或超过上限按0分计
+     */
+    public static final int MAX_SCORE = 100;
+
+    /**
+     * 默认规则：评分80/70/60分档基础分20/15/10，其余5分；深睡每满30分钟加5分、最多加30分；每日上限50分
+     */
+    public static final PointsRuleEngine DEFAULT = compile(Arrays.asList(80, 70, 60), Arrays.asList(20, 15, 10),
+            5, 30, 5, 30, 50);
+
+    /**
+     * 评分分档，按下限从高到低排列
+     */
+    private final List<ScoreTier> scoreTiers;
+
+    private final int defaultBasePoints;
+
+    private final int deepSleepStepMinutes;
+
+    private final int deepSleepStepPoints;
+
+    private final int deepSleepMaxPoints;
+
+    private final int dailyCap;
+
+    /**
+     * 各评分对应的基础分，下标为评分
+     */
+    private final int[] basePointsByScore;
+
+    /**
+     * 加分达到上限时的深睡档数，更多档数按该值查表
+     */
+    private final int maxSteps;
+
+    /**
+     * 积分表，下标为 评分 * (maxSteps + 1) + 深睡档数，已应用每日上限
+     */
+    private final int[] pointsTable;
+
+    private PointsRuleEngine(List<ScoreTier> scoreTiers, int defaultBasePoints, int deepSleepStepMinutes,
+                             int deepSleepStepPoints, int deepSleepMaxPoints, int dailyCap) {
+        this.scoreTiers = scoreTiers;
+        this.defaultBasePoints = defaultBasePoints;
+        this.deepSleepStepMinutes = deepSleepStepMinutes;
+        this.deepSleepStepPoints = deepSleepStepPoints;
+        this.deepSleepMaxPoints = deepSleepMaxPoints;
+        this.dailyCap = dailyCap;
+
+        basePointsByScore = new int[MAX_SCORE + 1];
+        for (int score = 0; score <= MAX_SCORE; score++) {
+            int base = defaultBasePoints;
+            for (ScoreTier tier : scoreTiers) {
+                if (score >= tier.minScore) {
+                    base = tier.points;
+                    break;
+                }
+            }
+            basePointsByScore[score] = base;
+        }
+
+        maxSteps = deepSleepStepPoints == 0 ? 0
+                : (deepSleepMaxPoints + deepSleepStepPoints - 1) / deepSleepStepPoints;
+        int stride = maxSteps + 1;
+        pointsTable = new int[(MAX_SCORE + 1) * stride];
+        for (int score = 0; score <= MAX_SCORE; score++) {
+            for (int steps = 0; steps <= maxSteps; steps++) {
+                int extra = Math.min(steps * deepSleepStepPoints, deepSleepMaxPoints);
+                pointsTable[score * stride + steps] = Math.min(basePointsByScore[score] + extra, dailyCap);
+            }
+        }
+    }
+
+    /**
+     * 编译积分规则
+     *
+     * @param scoreThresholds 评分分档下限（至少一档，0-100，不能重复，顺序不限）
+     * @param scorePoints 与分档下限一一对应的基础分
+     * @param defaultBasePoints 低于所有分档下限时的基础分
+     * @param deepSleepStepMinutes 深睡加分每档分钟数，必须大于0
+     * @param deepSleepStepPoints 深睡每档加分
+     * @param deepSleepMaxPoints 深睡加分上限
+     * @param dailyCap 每日积分上限
+     * @return PointsRuleEngine 规则引擎
+     */
+    public static PointsRuleEngine compile(List<Integer> scoreThresholds, List<Integer> scorePoints,
+                                           int defaultBasePoints, int deepSleepStepMinutes,
+                                           int deepSleepStepPoints, int deepSleepMaxPoints, int dailyCap) {
+        if (scoreThresholds == null || scorePoints == null || scoreThresholds.isEmpty()
+                || scoreThresholds.size() != scorePoints.size()) {
+            throw new IllegalArgumentException("评分分档不能为空，且分档下限与基础分数量必须一致");
+        }
+        if (deepSleepStepMinutes <= 0) {
+            throw new IllegalArgumentException("深睡加分每档分钟数必须大于0");
+        }
+        if (defaultBasePoints < 0 || deepSleepStepPoints < 0 || deepSleepMaxPoints < 0 || dailyCap < 0) {
+            throw new IllegalArgumentException("积分规则中的分值不能为负数");
+        }
+        List<ScoreTier> tiers = new ArrayList<>(scoreThresholds.size());
+        for (int i = 0; i < scoreThresholds.size(); i++) {
+            Integer minScore = scoreThresholds.get(i);
+            Integer points = scorePoints.get(i);
+            if (minScore == null || minScore < 0 || minScore > MAX_SCORE) {
+                throw new IllegalArgumentException("评分分档下限必须在0-" + MAX_SCORE + "之间：" + minScore);
+            }
+            if (points == null || points < 0) {
+                throw new IllegalArgumentException("分档基础分不能为空或负数：" + points);
+            }
+            tiers.add(new ScoreTier(minScore, points));
+        }
+        tiers.sort(Comparator.comparingInt(ScoreTier::getMinScore).reversed());
+        for (int i = 1; i < tiers.size(); i++) {
+            if (tiers.get(i).minScore == tiers.get(i - 1).minScore) {
+                throw new IllegalArgumentException("评分分档下限重复：" + tiers.get(i).minScore);
+            }
+        }
+        return new PointsRuleEngine(Collections.unmodifiableList(tiers), defaultBasePoints,
+                deepSleepStepMinutes, deepSleepStepPoints, deepSleepMaxPoints, dailyCap);
+    }
+
+    /**
+     * 计算积分
+     *
+     * @param sleepScore 睡眠评分，超出0-100按0分计
+     * @param deepSleepDuration 深睡时长（分钟），为负按0计
+     * @return int 积分
+     */
+    public int evaluate(int sleepScore, int deepSleepDuration) {
+        int score = sleepScore < 0 || sleepScore > MAX_SCORE ? 0 : sleepScore;
+        int steps = deepSleepDuration <= 0 ? 0 : deepSleepDuration / deepSleepStepMinutes;
+        if (steps > maxSteps) {
+            steps = maxSteps;
+        }
+        return pointsTable[score * (maxSteps + 1) + steps];
+    }
+
+    /**
+     * 基础分（评分分档）
+     *
+     * @param sleepScore 睡眠评分，超出0-100按0分计
+     * @return int 基础分
+     */
+    public int basePoints(int sleepScore) {
+        return basePointsByScore[sleepScore < 0 || sleepScore > MAX_SCORE ? 0 : sleepScore];
+    }
+
+    /**
+     * 深睡加分（未应用每日上限）
+     *
+     * @param deepSleepDuration 深睡时长（分钟），为负按0计
+     * @return int 加分
+     */
+    public int extraPoints(int deepSleepDuration) {
+        int steps = deepSleepDuration <= 0 ? 0 : deepSleepDuration / deepSleepStepMinutes;
+        return Math.min(Math.min(steps, maxSteps) * deepSleepStepPoints, deepSleepMaxPoints);
+    }
+
+    public List<ScoreTier> getScoreTiers() {
+        return scoreTiers;
+    }
+
+    public int getDefaultBasePoints() {
+        return defaultBasePoints;
+    }
+
+    /**
+     * 评分无效（为空或超出0-100）时的基础分，即0分对应的基础分
+     */
+    public int getInvalidScoreBasePoints() {
+        return basePointsByScore[0];
+    }
+
+    public int getDeepSleepStepMinutes() {
+        return deepSleepStepMinutes;
+    }
+
+    public int getDeepSleepStepPoints() {
+        return deepSleepStepPoints;
+    }
+
+    public int getDeepSleepMaxPoints() {
+        return deepSleepMaxPoints;
+    }
+
+    public int getDailyCap() {
+        return dailyCap;
+    }
+
+    @Override
+    public String toString() {
+        return "PointsRuleEngine{scoreTiers=" + scoreTiers + ", defaultBasePoints=" + defaultBasePoints
+                + ", deepSleepStepMinutes=" + deepSleepStepMinutes + ", deepSleepStepPoints=" + deepSleepStepPoints
+                + ", deepSleepMaxPoints=" + deepSleepMaxPoints + ", dailyCap=" + dailyCap + '}';
+    }
+
+    /**
+     * 评分分档：评分不低于下限时取该档基础分
+     */
+    public static final class ScoreTier {
+
+        private final int minScore;
+
+        private final int points;
+
+        private ScoreTier(int minScore, int points) {
+            this.minScore = minScore;
+            this.points = points;
+        }
+
+        public int getMinScore() {
+            return minScore;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        @Override
+        public String toString() {
+            return minScore + "+:" + points;
+        }
+    }
+}
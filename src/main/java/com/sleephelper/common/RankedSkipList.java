@@ -0,0 +1,316 @@
+package com.sleephelper.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 带跨度的有序跳表（排行榜）
+ * 按分数从高到低、分数相同按成员升序排列；每层指针记录跨越的节点数，
+ * 更新分数、查询名次、按名次定位均为 O(log n)，取前K名为 O(log n + K)
+ * 读操作共享读锁，写操作独占写锁
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class RankedSkipList {
+
+    private static final int MAX_LEVEL = 32;
+
+    /**
+     * 节点升一层的概率
+     */
+    private static final double LEVEL_PROBABILITY = 0.25;
+
+    private final Node head = new Node(null, 0L, MAX_LEVEL);
+
+    /**
+     * 成员到节点的索引，用于O(1)取得成员当前分数
+     */
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int level = 1;
+
+    /**
+     * 设置成员分数，成员不存在时新增
+     *
+     * @param member 成员
+     * @param score 分数
+     */
+    public void put(String member, long score) {
+        lock.writeLock().lock();
+        try {
+            Node existing = nodes.get(member);
+            if (existing != null) {
+                if (existing.score == score) {
+                    return;
+                }
+                nodes.remove(member);
+                delete(member, existing.score);
+            }
+            nodes.put(member, insert(member, score));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除成员
+     *
+     * @param member 成员
+     * @return boolean 成员是否存在
+     */
+    public boolean remove(String member) {
+        lock.writeLock().lock();
+        try {
+            Node existing = nodes.remove(member);
+            if (existing == null) {
+                return false;
+            }
+            delete(member, existing.score);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 成员名次（从1开始）
+     *
+     * @param member 成员
+     * @return long 名次，成员不存在时返回0
+     */
+    public long rank(String member) {
+        lock.readLock().lock();
+        try {
+            Node target = nodes.get(member);
+            if (target == null) {
+                return 0;
+            }
+            long rank = 0;
+            Node x = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.forward[i] != null && !precedes(target.score, target.member, x.forward[i])) {
+                    rank += x.span[i];
+                    x = x.forward[i];
+                }
+                if (x == target) {
+                    return rank;
+                }
+            }
+            return 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 成员分数
+     *
+     * @param member 成员
+     * @return Long 分数，成员不存在时返回null
+     */
+    public Long score(String member) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(member);
+            return node != null ? node.score : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按名次区间取成员
+     *
+     * @param offset 跳过的名次数（0表示从第1名开始）
+     * @param limit 最多返回条数
+     * @return List 按名次升序的成员及分数
+     */
+    public List<Entry> range(long offset, int limit) {
+        lock.readLock().lock();
+        try {
+            if (offset < 0 || limit <= 0 || offset >= nodes.size()) {
+                return Collections.emptyList();
+            }
+            // 按跨度定位到第 offset + 1 名
+            long target = offset + 1;
+            long traversed = 0;
+            Node x = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.forward[i] != null && traversed + x.span[i] <= target) {
+                    traversed += x.span[i];
+                    x = x.forward[i];
+                }
+                if (traversed == target) {
+                    break;
+                }
+            }
+            List<Entry> entries = new ArrayList<>(Math.min(limit, nodes.size()));
+            long rank = target;
+            while (x != null && entries.size() < limit) {
+                entries.add(new Entry(rank++, x.member, x.score));
+                x = x.forward[0];
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 前K名
+     *
+     * @param limit K
+     * @return List 按名次升序的成员及分数
+     */
+    public List<Entry> top(int limit) {
+        return range(0, limit);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Node insert(String member, long score) {
+        Node[] update = new Node[MAX_LEVEL];
+        long[] rank = new long[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.forward[i] != null && precedes(x.forward[i].score, x.forward[i].member, score, member)) {
+                rank[i] += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = nodes.size();
+            }
+            level = nodeLevel;
+        }
+        Node node = new Node(member, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.forward[i] = update[i].forward[i];
+            update[i].forward[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        return node;
+    }
+
+    private void delete(String member, long score) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && precedes(x.forward[i].score, x.forward[i].member, score, member)) {
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        Node target = x.forward[0];
+        for (int i = 0; i < level; i++) {
+            if (update[i].forward[i] == target) {
+                update[i].span[i] += target.span[i] - 1;
+                update[i].forward[i] = target.forward[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.forward[level - 1] == null) {
+            level--;
+        }
+    }
+
+    /**
+     * 前一组分数、成员是否严格排在后一组之前（分数高者在前，分数相同按成员升序）
+     */
+    private static boolean precedes(long score, String member, long otherScore, String otherMember) {
+        return score > otherScore || (score == otherScore && member.compareTo(otherMember) < 0);
+    }
+
+    /**
+     * 给定分数、成员是否严格排在节点之前
+     */
+    private static boolean precedes(long score, String member, Node node) {
+        return precedes(score, member, node.score, node.member);
+    }
+
+    private static int randomLevel() {
+        int nodeLevel = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (nodeLevel < MAX_LEVEL && random.nextDouble() < LEVEL_PROBABILITY) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+
+    private static final class Node {
+
+        private final String member;
+
+        private final long score;
+
+        private final Node[] forward;
+
+        /**
+         * 各层指针跨越的节点数
+         */
+        private final long[] span;
+
+        private Node(String member, long score, int level) {
+            this.member = member;
+            this.score = score;
+            this.forward = new Node[level];
+            this.span = new long[level];
+        }
+    }
+
+    /**
+     * 名次、成员及分数
+     */
+    public static final class Entry {
+
+        private final long rank;
+
+        private final String member;
+
+        private final long score;
+
+        public Entry(long rank, String member, long score) {
+            this.rank = rank;
+            this.member = member;
+            this.score = score;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public long getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sleephelper.common;
+
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 相同键的并发调用合并（single-flight）
+ * 同一键已有调用进行中时，后到的调用方直接订阅进行中的结果，不再发起新调用；
+ * 调用结束（成功或失败）后移除该键，之后的调用重新发起。结果只在进行中共享，不做缓存
+ * 进行中的调用由第一个订阅者触发，之后即使全部调用方取消也会执行完毕，结果被丢弃
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong executionCount = new AtomicLong();
+
+    /**
+     * 执行调用，相同键的调用进行中时共享其结果
+     *
+     * @param key 调用键，相等的键视为相同调用
+     * @param call 发起调用，只在没有进行中的相同调用时执行
+     * @return 调用结果，订阅时才合并或发起调用
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            requestCount.incrementAndGet();
+            return inFlight.computeIfAbsent(key, k -> {
+                executionCount.incrementAndGet();
+                Mono<V>[] self = newHolder();
+                self[0] = Mono.defer(call)
+                        .doFinally(signal -> inFlight.remove(k, self[0]))
+                        .cache();
+                return self[0];
+            });
+        });
+    }
+
+    /**
+     * @return 进行中的调用数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 合并统计：请求数、实际发起的调用数、被合并的请求数及合并比例（被合并数 / 请求数）
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> getStats() {
+        long requests = requestCount.get();
+        long executions = executionCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests);
+        stats.put("executions", executions);
+        stats.put("coalesced", requests - executions);
+        stats.put("coalescingRatio", requests > 0 ? (double) (requests - executions) / requests : 0.0);
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Mono<V>[] newHolder() {
+        return new Mono[1];
+    }
+}
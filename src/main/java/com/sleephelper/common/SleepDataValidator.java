@@ -0,0 +1,40 @@
+package com.sleephelper.common;
+
+import com.sleephelper.entity.SleepAnalysisSummary;
+
+/**
+ * 睡眠数据校验工具类
+ * 单条新增、批量新增等入口共用同一套校验规则
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class SleepDataValidator {
+
+    private SleepDataValidator() {}
+
+    /**
+     * 校验睡眠数据
+     *
+     * @param sleepData 睡眠数据对象
+     * @return 校验失败时返回错误提示，校验通过返回null
+     */
+    public static String validate(SleepAnalysisSummary sleepData) {
+        if (sleepData == null) {
+            return "睡眠数据不能为空";
+        }
+        if (sleepData.getUserId() == null || sleepData.getUserId().trim().isEmpty()) {
+            return "用户ID不能为空";
+        }
+        if (sleepData.getDateOfSleep() == null) {
+            return "睡眠日期不能为空";
+        }
+        if (sleepData.getTotalSleepDuration() == null || sleepData.getTotalSleepDuration() <= 0) {
+            return "总睡眠时长必须大于0";
+        }
+        if (sleepData.getSleepScore() == null || sleepData.getSleepScore() < 0 || sleepData.getSleepScore() > 100) {
+            return "睡眠评分必须在0-100之间";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package com.sleephelper.common;
+
+import com.sleephelper.entity.SleepStreak;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 连续达标计算
+ * 按日期顺序到达的夜晚只需比较最近达标日期即可 O(1) 更新；
+ * 早于最近达标日期的补录、或把已计入的夜晚改写为不达标时，无法增量判断，需按历史重算
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public final class StreakCalculator {
+
+    /**
+     * 增量更新结果
+     */
+    public enum Outcome {
+
+        /**
+         * 连续记录不变
+         */
+        UNCHANGED,
+
+        /**
+         * 已增量更新
+         */
+        UPDATED,
+
+        /**
+         * 无法增量更新，需按历史重算
+         */
+        RECOMPUTE_REQUIRED
+    }
+
+    private StreakCalculator() {
+    }
+
+    /**
+     * 计入一个夜晚
+     *
+     * @param streak 连续记录，UPDATED时原地修改
+     * @param date 睡眠日期
+     * @param qualifies 该夜晚是否达标
+     * @return 更新结果
+     */
+    public static Outcome apply(SleepStreak streak, LocalDate date, boolean qualifies) {
+        LocalDate last = streak.getLastQualifyingDate();
+        if (last == null || date.isAfter(last)) {
+            if (!qualifies) {
+                // 新日期不达标：当前连续截至最近达标日期，读取时按日期判断是否已中断
+                return Outcome.UNCHANGED;
+            }
+            int current = last != null && date.equals(last.plusDays(1)) ? value(streak.getCurrentStreak()) + 1 : 1;
+            if (current == 1) {
+                streak.setCurrentStartDate(date);
+            }
+            streak.setCurrentStreak(current);
+            streak.setLastQualifyingDate(date);
+            if (current > value(streak.getBestStreak())) {
+                streak.setBestStreak(current);
+                streak.setBestEndDate(date);
+            }
+            return Outcome.UPDATED;
+        }
+        LocalDate start = streak.getCurrentStartDate();
+        if (qualifies && start != null && !date.isBefore(start)) {
+            // 当前连续区间内的夜晚已计入
+            return Outcome.UNCHANGED;
+        }
+        return Outcome.RECOMPUTE_REQUIRED;
+    }
+
+    /**
+     * 按达标日期重算连续记录
+     *
+     * @param streak 连续记录，原地修改
+     * @param qualifyingDates 全部达标日期，升序且不重复
+     */
+    public static void recompute(SleepStreak streak, List<LocalDate> qualifyingDates) {
+        int current = 0;
+        int best = 0;
+        LocalDate start = null;
+        LocalDate last = null;
+        LocalDate bestEnd = null;
+        for (LocalDate date : qualifyingDates) {
+            if (last != null && date.equals(last.plusDays(1))) {
+                current++;
+            } else {
+                current = 1;
+                start = date;
+            }
+            last = date;
+            if (current > best) {
+                best = current;
+                bestEnd = date;
+            }
+        }
+        streak.setCurrentStreak(current);
+        streak.setCurrentStartDate(start);
+        streak.setLastQualifyingDate(last);
+        streak.setBestStreak(best);
+        streak.setBestEndDate(bestEnd);
+    }
+
+    /**
+     * 截至指定日期仍在持续的连续晚数：最近达标日期早于前一天时连续已中断
+     *
+     * @param streak 连续记录
+     * @param today 当前日期
+     * @return 当前连续晚数
+     */
+    public static int currentAsOf(SleepStreak streak, LocalDate today) {
+        LocalDate last = streak.getLastQualifyingDate();
+        if (last == null || last.isBefore(today.minusDays(1))) {
+            return 0;
+        }
+        return value(streak.getCurrentStreak());
+    }
+
+    private static int value(Integer count) {
+        return count != null ? count : 0;
+    }
+}
@@ -2,7 +2,12 @@ package com.sleephelper.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 /**
  * AI相关配置类
@@ -14,15 +19,35 @@ import org.springframework.web.reactive.function.client.WebClient;
 @Configuration
 public class AIConfig {
 
+    /**
+     * 调用百炼API的连接池
+     * 非阻塞调用时并发请求数不再受线程数限制，改由连接数限制：
+     * 默认连接池只有 2×CPU核数 个连接、排队上限为连接数的2倍，超出时请求直接失败，因此按配置放大
+     * 
+     * @param bailianConfig 百炼配置
+     * @return ConnectionProvider 连接池
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider bailianConnectionProvider(BailianConfig bailianConfig) {
+        return ConnectionProvider.builder("bailian")
+                .maxConnections(bailianConfig.getMaxConnections())
+                .pendingAcquireMaxCount(bailianConfig.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(bailianConfig.getTimeout()))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+    }
+
     /**
      * 配置WebClient
      * 用于调用阿里云百炼API
      * 
+     * @param bailianConnectionProvider 百炼连接池
      * @return WebClient HTTP客户端
      */
     @Bean
-    public WebClient.Builder webClientBuilder() {
+    public WebClient.Builder webClientBuilder(ConnectionProvider bailianConnectionProvider) {
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(bailianConnectionProvider)))
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024)); // 10MB
     }
 }
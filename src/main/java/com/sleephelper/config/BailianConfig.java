@@ -54,4 +54,71 @@ public class BailianConfig {
      * 请求超时时间（毫秒）
      */
     private Integer timeout = 30000;
+
+    /**
+     * 流式接口（SSE）的总时长上限（毫秒），不受全局异步请求超时限制；
+     * 片段之间的空闲超时仍为 timeout
+     */
+    private Long streamTimeout = 300000L;
+
+    /**
+     * 连接池最大连接数，即同时进行中的API请求数上限
+     */
+    private Integer maxConnections = 500;
+
+    /**
+     * 连接全部占用时排队等待连接的请求数上限，超出时请求立即失败
+     */
+    private Integer pendingAcquireMaxCount = 1000;
+
+    /**
+     * 是否启用调用限流（令牌桶 + 自适应并发上限 + 优先级排队）
+     */
+    private Boolean limiterEnabled = true;
+
+    /**
+     * 每分钟请求数上限，应不高于百炼账号的RPM配额，小于等于0时不限制
+     */
+    private Integer limiterRequestsPerMinute = 600;
+
+    /**
+     * 每分钟token数上限，应不高于百炼账号的TPM配额，小于等于0时不限制
+     * 放行时按提示词长度加最大生成token数预估，调用结束后按响应中的实际用量修正
+     */
+    private Long limiterTokensPerMinute = 1000000L;
+
+    /**
+     * 并发上限初始值
+     */
+    private Integer limiterInitialConcurrency = 20;
+
+    /**
+     * 并发上限下限
+     */
+    private Integer limiterMinConcurrency = 2;
+
+    /**
+     * 并发上限上限
+     */
+    private Integer limiterMaxConcurrency = 200;
+
+    /**
+     * 成功调用耗时超过该值（毫秒）时下调并发上限
+     */
+    private Long limiterLatencyThresholdMs = 20000L;
+
+    /**
+     * 被限流、超时或服务端错误时并发上限的乘数
+     */
+    private Double limiterBackoffRatio = 0.5;
+
+    /**
+     * 排队等待放行的请求数上限，超出时请求立即失败
+     */
+    private Integer limiterMaxQueueSize = 1000;
+
+    /**
+     * 排队截止时间（毫秒），超过时请求失败
+     */
+    private Long limiterQueueTimeoutMs = 10000L;
 }
@@ -1,5 +1,6 @@
 package com.sleephelper.config;
 
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.annotation.MapperScan;
@@ -9,6 +10,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 
 import javax.sql.DataSource;
+import java.util.Properties;
 
 /**
  * MyBatis 配置类
@@ -41,6 +43,14 @@ public class MybatisConfig {
         // 设置实体类别名包
         sessionFactory.setTypeAliasesPackage("com.sleephelper.entity");
         
+        // 按数据库类型区分方言SQL（如upsert），mapper中通过databaseId选择
+        Properties databaseIds = new Properties();
+        databaseIds.setProperty("MySQL", "mysql");
+        databaseIds.setProperty("H2", "h2");
+        VendorDatabaseIdProvider databaseIdProvider = new VendorDatabaseIdProvider();
+        databaseIdProvider.setProperties(databaseIds);
+        sessionFactory.setDatabaseIdProvider(databaseIdProvider);
+        
         return sessionFactory.getObject();
     }
 }
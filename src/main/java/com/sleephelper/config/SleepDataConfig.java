@@ -0,0 +1,417 @@
+package com.sleephelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 睡眠数据写入配置类
+ * 用于读取application.yml中的sleep.data配置
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "sleep.data")
+public class SleepDataConfig {
+
+    /**
+     * 批量写入每个分片的行数
+     * 每个分片对应一条多行INSERT语句和一次事务提交
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 单次批量请求允许的最大行数
+     */
+    private Integer batchMaxRows = 100000;
+
+    /**
+     * 流式导入（NDJSON）单行最大字节数，超出的行会被拒绝
+     */
+    private Integer streamMaxLineBytes = 64 * 1024;
+
+    /**
+     * 流式导入结果中最多返回的被拒绝行明细条数
+     */
+    private Integer streamMaxReportedRejections = 1000;
+
+    /**
+     * 历史记录分页查询默认每页条数
+     */
+    private Integer pageDefaultSize = 30;
+
+    /**
+     * 历史记录分页查询每页最大条数
+     */
+    private Integer pageMaxSize = 366;
+
+    /**
+     * 是否开启写后缓冲（组提交）
+     * 开启后单条新增先进入内存队列，由后台线程按组合并为一个事务提交
+     */
+    private Boolean writeBehindEnabled = false;
+
+    /**
+     * 写后缓冲队列容量，队列满时退化为同步写入
+     */
+    private Integer writeBehindQueueCapacity = 10000;
+
+    /**
+     * 写后缓冲每组最多提交的行数
+     */
+    private Integer writeBehindMaxBatchSize = 200;
+
+    /**
+     * 写后缓冲刷写间隔（毫秒），从每组第一条记录入队开始计算
+     */
+    private Long writeBehindFlushIntervalMs = 20L;
+
+    /**
+     * 调用方等待所在分组提交的最长时间（毫秒）
+     */
+    private Long writeBehindAwaitTimeoutMs = 5000L;
+
+    /**
+     * 应用关闭时等待缓冲写空的最长时间（毫秒）
+     */
+    private Long writeBehindShutdownTimeoutMs = 10000L;
+
+    /**
+     * 是否开启按用户ID+睡眠日期查询的本地缓存
+     */
+    private Boolean cacheEnabled = true;
+
+    /**
+     * 本地缓存最大条目数，超出后按W-TinyLFU淘汰
+     */
+    private Long cacheMaxSize = 100000L;
+
+    /**
+     * 本地缓存条目写入后的存活时间（秒）
+     */
+    private Long cacheTtlSeconds = 300L;
+
+    /**
+     * 是否开启用户ID+日期的布隆过滤器（睡眠数据、积分各一个），用于直接拦截不存在记录的查询
+     */
+    private Boolean bloomEnabled = true;
+
+    /**
+     * 每个布隆过滤器的预期记录数
+     */
+    private Long bloomExpectedInsertions = 10_000_000L;
+
+    /**
+     * 布隆过滤器目标误判率
+     */
+    private Double bloomFpp = 0.01;
+
+    /**
+     * 每个布隆过滤器位数组的内存上限（字节），超出时按上限分配，实际误判率会高于目标值
+     */
+    private Long bloomMaxMemoryBytes = 16L * 1024 * 1024;
+
+    /**
+     * 构建布隆过滤器时每次从数据库读取的行数
+     */
+    private Integer bloomBuildPageSize = 5000;
+
+    /**
+     * 布隆过滤器保留最近登记键的时长（毫秒），需大于最长的写入事务；
+     * 重建后过滤器尺寸变化时，这段时间内登记的键会补入新过滤器
+     */
+    private Long bloomRecentPutRetentionMs = 600000L;
+
+    /**
+     * 内存中为每个用户保存的最近睡眠晚数
+     */
+    private Integer recentNightsDays = 90;
+
+    /**
+     * 常驻内存的用户数上限，超出后按访问频率淘汰
+     * 保存90晚时每个用户约占用840字节，100万用户约800MB；开启滚动统计时每个窗口另占约250字节
+     */
+    private Integer recentNightsMaxUsers = 100000;
+
+    /**
+     * 是否在写入睡眠数据时增量维护滚动统计
+     */
+    private Boolean rollupEnabled = true;
+
+    /**
+     * 滚动统计的窗口天数，不能超过 recentNightsDays
+     */
+    private List<Integer> rollupWindowDays = new ArrayList<>(Arrays.asList(7, 30, 90));
+
+    /**
+     * 滚动统计异步写回统计表的间隔（毫秒）
+     */
+    private Long rollupFlushIntervalMs = 1000L;
+
+    /**
+     * 滚动统计每条多行upsert最多写回的用户数
+     */
+    private Integer rollupFlushBatchUsers = 50;
+
+    /**
+     * 滚动统计异步更新队列容量，队列满时在写入线程同步更新
+     */
+    private Integer rollupQueueCapacity = 10000;
+
+    /**
+     * 滚动统计后台线程每批处理的睡眠数据条数
+     */
+    private Integer rollupApplyBatchSize = 500;
+
+    /**
+     * 滚动统计攒批等待时间（毫秒）
+     */
+    private Long rollupApplyIntervalMs = 20L;
+
+    /**
+     * 是否定时增量刷新周/月汇总
+     */
+    private Boolean periodRollupEnabled = true;
+
+    /**
+     * 周/月汇总增量刷新间隔（毫秒）
+     */
+    private Long periodRollupIntervalMs = 300000L;
+
+    /**
+     * 增量刷新的处理时间上界比当前时间滞后的秒数
+     * 处理时间在每个分片事务开始时写入，留出余量避免漏掉提交较慢的事务
+     */
+    private Integer periodRollupLagSeconds = 60;
+
+    /**
+     * 增量刷新每次读取的睡眠数据行数
+     */
+    private Integer periodRollupPageSize = 5000;
+
+    /**
+     * 全量重建的并行线程数
+     */
+    private Integer periodRollupRebuildThreads = 4;
+
+    /**
+     * 全量重建时每个用户ID区间包含的用户数
+     */
+    private Integer periodRollupRebuildRangeSize = 1000;
+
+    /**
+     * 是否定时核对用户积分余额
+     */
+    private Boolean pointsReconcileEnabled = true;
+
+    /**
+     * 积分余额对账间隔（毫秒）
+     */
+    private Long pointsReconcileIntervalMs = 3600000L;
+
+    /**
+     * 对账时每页核对的用户数
+     */
+    private Integer pointsReconcilePageSize = 1000;
+
+    /**
+     * 对账发现不一致时是否按积分明细自动校正余额
+     */
+    private Boolean pointsReconcileAutoFix = true;
+
+    /**
+     * 睡眠数据提交后是否异步自动生成睡眠积分
+     */
+    private Boolean pointsAutoGenerateEnabled = true;
+
+    /**
+     * 积分自动生成队列容量，队列满时由补扫处理
+     */
+    private Integer pointsAutoQueueCapacity = 10000;
+
+    /**
+     * 积分自动生成每批最大条数（一个事务）
+     */
+    private Integer pointsAutoMaxBatchSize = 200;
+
+    /**
+     * 积分自动生成攒批等待时间（毫秒）
+     */
+    private Long pointsAutoFlushIntervalMs = 50L;
+
+    /**
+     * 漏生成积分补扫间隔（毫秒）
+     */
+    private Long pointsSweepIntervalMs = 600000L;
+
+    /**
+     * 补扫回看的处理时间范围（小时）
+     */
+    private Integer pointsSweepLookbackHours = 48;
+
+    /**
+     * 补扫处理时间上界滞后秒数，跳过仍在异步队列中的夜晚
+     */
+    private Integer pointsSweepLagSeconds = 60;
+
+    /**
+     * 补扫每批处理的夜晚数
+     */
+    private Integer pointsSweepBatchSize = 500;
+
+    /**
+     * 积分批量回填每个分块（一个事务）覆盖的天数
+     */
+    private Integer pointsBackfillChunkDays = 7;
+
+    /**
+     * 积分规则：睡眠评分分档下限，与 pointsScorePoints 一一对应，顺序不限
+     */
+    private List<Integer> pointsScoreThresholds = new ArrayList<>(Arrays.asList(80, 70, 60));
+
+    /**
+     * 积分规则：各评分分档的基础分
+     */
+    private List<Integer> pointsScorePoints = new ArrayList<>(Arrays.asList(20, 15, 10));
+
+    /**
+     * 积分规则：评分低于所有分档时的基础分
+     */
+    private Integer pointsDefaultBasePoints = 5;
+
+    /**
+     * 积分规则：深睡加分每档分钟数
+     */
+    private Integer pointsDeepSleepStepMinutes = 30;
+
+    /**
+     * 积分规则：深睡每档加分
+     */
+    private Integer pointsDeepSleepStepPoints = 5;
+
+    /**
+     * 积分规则：深睡加分上限
+     */
+    private Integer pointsDeepSleepMaxPoints = 30;
+
+    /**
+     * 积分规则：每日积分上限
+     */
+    private Integer pointsDailyCap = 50;
+
+    /**
+     * 是否开启积分排行榜（日榜、周榜、总榜）
+     */
+    private Boolean leaderboardEnabled = true;
+
+    /**
+     * 排行榜单次查询的最大条数
+     */
+    private Integer leaderboardMaxLimit = 100;
+
+    /**
+     * 排行榜重建时每次读取的用户数
+     */
+    private Integer leaderboardRebuildPageSize = 5000;
+
+    /**
+     * 是否定时把积分流水并入用户快照
+     */
+    private Boolean pointsLedgerSnapshotEnabled = true;
+
+    /**
+     * 积分流水快照间隔（毫秒）
+     */
+    private Long pointsLedgerSnapshotIntervalMs = 3600000L;
+
+    /**
+     * 积分流水快照每个事务并入的流水ID区间大小
+     */
+    private Integer pointsLedgerSnapshotChunkSize = 50000;
+
+    /**
+     * 历史积分补记获得流水时每条SQL覆盖的积分记录ID区间大小
+     */
+    private Integer pointsLedgerSyncPageSize = 5000;
+
+    /**
+     * 是否在睡眠数据写入后更新连续达标记录
+     */
+    private Boolean streakEnabled = true;
+
+    /**
+     * 好眠连续：睡眠评分不低于该值的夜晚计为达标
+     */
+    private Integer streakGoodNightMinScore = 70;
+
+    /**
+     * 规律睡眠连续：总睡眠时长不低于该分钟数的夜晚计为达标
+     */
+    private Integer streakConsistentMinSleepMinutes = 420;
+
+    /**
+     * 连续记录异步更新队列容量，队列满时在写入线程同步更新
+     */
+    private Integer streakQueueCapacity = 10000;
+
+    /**
+     * 连续记录每批最多处理的夜晚数，同一用户在一批内最多按历史重算一次
+     */
+    private Integer streakMaxBatchSize = 500;
+
+    /**
+     * 连续记录攒批等待时间（毫秒）
+     */
+    private Long streakFlushIntervalMs = 200L;
+
+    /**
+     * 按用户批量查询时每条SQL的用户数（IN 列表长度）
+     */
+    private Integer bulkLookupChunkSize = 500;
+
+    /**
+     * 是否开启积分过期
+     */
+    private Boolean pointsExpiryEnabled = true;
+
+    /**
+     * 积分有效天数，积分日期加上该天数当天过期
+     */
+    private Integer pointsExpiryDays = 365;
+
+    /**
+     * 积分过期检查间隔（毫秒）
+     */
+    private Long pointsExpiryIntervalMs = 3600000L;
+
+    /**
+     * 积分过期每个事务处理的积分记录数
+     */
+    private Integer pointsExpiryBatchSize = 500;
+
+    /**
+     * 积分过期时间轮每层格数
+     */
+    private Integer pointsExpiryWheelSize = 32;
+
+    /**
+     * 是否保存并复用AI睡眠报告（sleep_reports表加本地缓存）
+     */
+    private Boolean reportCacheEnabled = true;
+
+    /**
+     * AI睡眠报告本地缓存最大条目数
+     */
+    private Long reportCacheMaxSize = 10000L;
+
+    /**
+     * AI睡眠报告本地缓存条目存活时间（秒）
+     */
+    private Long reportCacheTtlSeconds = 3600L;
+}
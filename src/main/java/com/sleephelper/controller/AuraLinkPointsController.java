@@ -4,6 +4,7 @@ import com.sleephelper.bean.BurnResult;
 import com.sleephelper.bean.ForwarderParams;
 import com.sleephelper.bean.MetaBurnRequest;
 import com.sleephelper.common.Result;
+import com.sleephelper.service.AuraLinkPoints2Service;
 import com.sleephelper.service.AuraLinkPointsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +27,12 @@ public class AuraLinkPointsController {
     @Autowired
     private AuraLinkPointsService auraLinkPointsService;
 
+    /**
+     * 铸造、销毁走带用户校验和积分流水记录的服务
+     */
+    @Autowired
+    private AuraLinkPoints2Service auraLinkPoints2Service;
+
     /**
      * 铸造积分
      * 
@@ -38,7 +45,7 @@ public class AuraLinkPointsController {
                                    @RequestParam BigInteger amount) {
         try {
             log.info("收到铸造积分请求: toAddress={}, amount={}", toAddress, amount);
-            String transactionHash = auraLinkPointsService.mintPoints(toAddress, amount);
+            String transactionHash = auraLinkPoints2Service.mintPoints(toAddress, amount);
             return Result.success(transactionHash, "铸造积分成功");
         } catch (Exception e) {
             log.error("铸造积分失败", e);
@@ -137,7 +144,7 @@ public class AuraLinkPointsController {
     @PostMapping("/burn-meta")
     public Result<BurnResult> relayBurnWithMeta(@RequestBody MetaBurnRequest request) {
         try {
-            BurnResult result = auraLinkPointsService.relayBurnWithMeta(request);
+            BurnResult result = auraLinkPoints2Service.relayBurnWithMeta(request);
             return Result.success("元交易销毁处理完成", result);
         } catch (Exception e) {
             log.error("元交易销毁失败", e);
@@ -156,7 +163,7 @@ public class AuraLinkPointsController {
     public Result<String> burnFromDirect(@RequestParam String from, 
                                        @RequestParam BigInteger amount) {
         try {
-            String transactionHash = auraLinkPointsService.burnFromDirect(from, amount);
+            String transactionHash = auraLinkPoints2Service.burnFromDirect(from, amount);
             return Result.success(transactionHash, "直接销毁成功");
         } catch (Exception e) {
             log.error("直接销毁失败", e);
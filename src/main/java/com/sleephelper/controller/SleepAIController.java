@@ -1,15 +1,27 @@
 package com.sleephelper.controller;
 
 import com.sleephelper.common.Result;
+import com.sleephelper.config.BailianConfig;
+import com.sleephelper.service.BailianService;
 import com.sleephelper.service.SleepAIService;
 import com.sleephelper.service.SleepChatService;
+import com.sleephelper.service.SleepReportService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -31,74 +43,182 @@ public class SleepAIController {
     @Autowired
     private SleepChatService sleepChatService;
 
+    @Autowired
+    private SleepReportService sleepReportService;
+
+    @Autowired
+    private BailianService bailianService;
+
+    @Autowired
+    private BailianConfig bailianConfig;
+
     /**
      * 生成AI睡眠报告
      * POST /api/ai/report
+     * 异步返回，等待大模型响应期间不占用请求线程
      * 
      * @param request 请求参数
      * @return AI生成的睡眠报告
      */
     @PostMapping("/report")
-    public Result<String> generateSleepReport(@RequestBody ReportRequest request) {
+    public Mono<Result<String>> generateSleepReport(@RequestBody ReportRequest request) {
+        log.info("接收到生成AI睡眠报告请求：用户ID={}，睡眠日期={}", 
+                request.getUserId(), request.getDateOfSleep());
+        
+        // 参数校验
+        if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
+            return Mono.just(Result.error("用户ID不能为空"));
+        }
+        if (request.getDateOfSleep() == null) {
+            return Mono.just(Result.error("睡眠日期不能为空"));
+        }
+        
+        // 调用AI服务生成报告
+        return sleepAIService.generateSleepReport(request.getUserId(), request.getDateOfSleep())
+                .map(aiReport -> {
+                    log.info("AI睡眠报告生成成功：用户ID={}，睡眠日期={}，报告长度={}", 
+                            request.getUserId(), request.getDateOfSleep(), aiReport.length());
+                    return Result.success("AI睡眠报告生成成功", aiReport);
+                })
+                .onErrorResume(e -> {
+                    log.error("生成AI睡眠报告异常：{}", e.getMessage(), e);
+                    return Mono.just(Result.error("生成AI睡眠报告失败：" + e.getMessage()));
+                });
+    }
+
+    /**
+     * AI睡眠报告缓存统计
+     * GET /api/ai/report/cache/stats
+     * 
+     * @return 本地缓存与 sleep_reports 表的命中情况
+     */
+    @GetMapping("/report/cache/stats")
+    public Result<Map<String, Object>> getReportCacheStats() {
         try {
-            log.info("接收到生成AI睡眠报告请求：用户ID={}，睡眠日期={}", 
-                    request.getUserId(), request.getDateOfSleep());
-            
-            // 参数校验
-            if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
-                return Result.error("用户ID不能为空");
-            }
-            if (request.getDateOfSleep() == null) {
-                return Result.error("睡眠日期不能为空");
-            }
-            
-            // 调用AI服务生成报告
-            String aiReport = sleepAIService.generateSleepReport(request.getUserId(), request.getDateOfSleep());
-            
-            log.info("AI睡眠报告生成成功：用户ID={}，睡眠日期={}，报告长度={}", 
-                    request.getUserId(), request.getDateOfSleep(), aiReport.length());
-            
-            return Result.success("AI睡眠报告生成成功", aiReport);
-            
+            return Result.success("获取报告缓存统计成功", sleepReportService.getStats());
+        } catch (Exception e) {
+            log.error("获取报告缓存统计异常：{}", e.getMessage(), e);
+            return Result.error("获取报告缓存统计失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * AI请求合并统计
+     * GET /api/ai/coalescing/stats
+     * 
+     * @return 报告生成（按用户和睡眠日期合并）与大模型调用（按提示词合并）的合并统计
+     */
+    @GetMapping("/coalescing/stats")
+    public Result<Map<String, Object>> getCoalescingStats() {
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("report", sleepAIService.getCoalescingStats());
+            stats.put("generateText", bailianService.getCoalescingStats());
+            return Result.success("获取请求合并统计成功", stats);
+        } catch (Exception e) {
+            log.error("获取请求合并统计异常：{}", e.getMessage(), e);
+            return Result.error("获取请求合并统计失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 大模型调用限流统计
+     * GET /api/ai/limiter/stats
+     * 
+     * @return 当前并发上限、进行中和排队（按优先级）请求数、剩余令牌、被限流/超时次数及平均排队耗时
+     */
+    @GetMapping("/limiter/stats")
+    public Result<Map<String, Object>> getLimiterStats() {
+        try {
+            return Result.success("获取调用限流统计成功", bailianService.getLimiterStats());
         } catch (Exception e) {
-            log.error("生成AI睡眠报告异常：{}", e.getMessage(), e);
-            return Result.error("生成AI睡眠报告失败：" + e.getMessage());
+            log.error("获取调用限流统计异常：{}", e.getMessage(), e);
+            return Result.error("获取调用限流统计失败：" + e.getMessage());
         }
     }
 
     /**
      * AI多轮对话
      * POST /api/ai/chat
+     * 异步返回，等待大模型响应期间不占用请求线程
      * 
      * @param request 请求参数
      * @return AI回复
      */
     @PostMapping("/chat")
-    public Result<String> chatWithAI(@RequestBody ChatRequest request) {
-        try {
-            log.info("接收到AI聊天请求：用户ID={}，消息={}", 
-                    request.getUserId(), request.getMessage());
-            
-            // 参数校验
-            if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
-                return Result.error("用户ID不能为空");
-            }
-            if (request.getMessage() == null || request.getMessage().trim().isEmpty()) {
-                return Result.error("消息内容不能为空");
-            }
-            
-            // 调用AI聊天服务
-            String aiResponse = sleepChatService.chatWithUser(request.getUserId(), request.getMessage());
-            
-            log.info("AI聊天回复生成成功：用户ID={}，回复长度={}", 
-                    request.getUserId(), aiResponse.length());
-            
-            return Result.success("AI回复生成成功", aiResponse);
-            
-        } catch (Exception e) {
-            log.error("AI聊天异常：{}", e.getMessage(), e);
-            return Result.error("AI聊天失败：" + e.getMessage());
+    public Mono<Result<String>> chatWithAI(@RequestBody ChatRequest request) {
+        log.info("接收到AI聊天请求：用户ID={}，消息={}", 
+                request.getUserId(), request.getMessage());
+        
+        // 参数校验
+        if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
+            return Mono.just(Result.error("用户ID不能为空"));
+        }
+        if (request.getMessage() == null || request.getMessage().trim().isEmpty()) {
+            return Mono.just(Result.error("消息内容不能为空"));
+        }
+        
+        // 调用AI聊天服务
+        return sleepChatService.chatWithUser(request.getUserId(), request.getMessage())
+                .map(aiResponse -> {
+                    log.info("AI聊天回复生成成功：用户ID={}，回复长度={}", 
+                            request.getUserId(), aiResponse.length());
+                    return Result.success("AI回复生成成功", aiResponse);
+                })
+                .onErrorResume(e -> {
+                    log.error("AI聊天异常：{}", e.getMessage(), e);
+                    return Mono.just(Result.error("AI聊天失败：" + e.getMessage()));
+                });
+    }
+
+    /**
+     * 流式生成AI睡眠报告
+     * POST /api/ai/report/stream
+     * 以 text/event-stream 逐段返回：delta 事件携带新生成的片段，done 事件表示结束，error 事件携带失败原因
+     * 
+     * @param request 请求参数
+     * @return SSE事件流，事件数据为Result
+     */
+    @PostMapping(value = "/report/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSleepReport(@RequestBody ReportRequest request) {
+        log.info("接收到流式生成AI睡眠报告请求：用户ID={}，睡眠日期={}", 
+                request.getUserId(), request.getDateOfSleep());
+        
+        // 参数校验
+        if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
+            return toEmitter(Flux.just(errorEvent("用户ID不能为空")));
+        }
+        if (request.getDateOfSleep() == null) {
+            return toEmitter(Flux.just(errorEvent("睡眠日期不能为空")));
         }
+        
+        return toEmitter(toEvents(sleepAIService.streamSleepReport(request.getUserId(), request.getDateOfSleep()),
+                "AI睡眠报告生成成功", "生成AI睡眠报告失败："));
+    }
+
+    /**
+     * AI多轮对话（流式）
+     * POST /api/ai/chat/stream
+     * 以 text/event-stream 逐段返回：delta 事件携带新生成的片段，done 事件表示结束，error 事件携带失败原因
+     * 
+     * @param request 请求参数
+     * @return SSE事件流，事件数据为Result
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChatWithAI(@RequestBody ChatRequest request) {
+        log.info("接收到AI流式聊天请求：用户ID={}，消息={}", 
+                request.getUserId(), request.getMessage());
+        
+        // 参数校验
+        if (request.getUserId() == null || request.getUserId().trim().isEmpty()) {
+            return toEmitter(Flux.just(errorEvent("用户ID不能为空")));
+        }
+        if (request.getMessage() == null || request.getMessage().trim().isEmpty()) {
+            return toEmitter(Flux.just(errorEvent("消息内容不能为空")));
+        }
+        
+        return toEmitter(toEvents(sleepChatService.streamChatWithUser(request.getUserId(), request.getMessage()),
+                "AI回复生成成功", "AI聊天失败："));
     }
 
     /**
@@ -200,6 +320,53 @@ public class SleepAIController {
         }
     }
 
+    /**
+     * 把文本片段转换为SSE事件：每个片段一个 delta 事件，正常结束时追加 done 事件，失败时以 error 事件结束
+     */
+    private Flux<ServerSentEvent<Result<String>>> toEvents(Flux<String> chunks, String doneMessage, String errorPrefix) {
+        return chunks.map(chunk -> ServerSentEvent.builder(Result.success(chunk)).event("delta").build())
+                .concatWith(Mono.fromSupplier(() -> ServerSentEvent.builder(Result.<String>success(doneMessage, null))
+                        .event("done").build()))
+                .onErrorResume(e -> {
+                    log.error("AI流式输出异常：{}", e.getMessage(), e);
+                    return Mono.just(errorEvent(errorPrefix + e.getMessage()));
+                });
+    }
+
+    /**
+     * 把事件流写入SseEmitter
+     * 流式接口不使用全局异步请求超时（它限制的是整个流的总时长，长回答会被中途截断），
+     * 而是使用单独的总时长上限；两个片段之间的空闲超时由百炼客户端控制。
+     * 客户端断开、出错或超过总时长时取消上游
+     * 
+     * @param events 事件流
+     * @return SseEmitter
+     */
+    private SseEmitter toEmitter(Flux<ServerSentEvent<Result<String>>> events) {
+        SseEmitter emitter = new SseEmitter(bailianConfig.getStreamTimeout());
+        Disposable subscription = events.subscribe(event -> {
+            try {
+                emitter.send(SseEmitter.event().name(event.event()).data(event.data(), MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }, e -> {
+            log.warn("AI流式输出中断：{}", e.getMessage());
+            emitter.completeWithError(e);
+        }, emitter::complete);
+        emitter.onTimeout(() -> {
+            log.warn("AI流式输出超过总时长上限{}ms，已取消", bailianConfig.getStreamTimeout());
+            subscription.dispose();
+        });
+        emitter.onError(e -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+
+    private static ServerSentEvent<Result<String>> errorEvent(String message) {
+        return ServerSentEvent.builder(Result.<String>error(message)).event("error").build();
+    }
+
     /**
      * 睡眠报告生成请求参数
      */
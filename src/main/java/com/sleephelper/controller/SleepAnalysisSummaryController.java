@@ -1,15 +1,32 @@
 package com.sleephelper.controller;
 
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.bean.SleepDataBatchResult;
+import com.sleephelper.bean.SleepDataImportResult;
+import com.sleephelper.bean.SleepDataRowStatus;
+import com.sleephelper.bean.SleepRollupPeriod;
+import com.sleephelper.bean.SleepRollupStats;
+import com.sleephelper.cache.RecentNightsStore;
+import com.sleephelper.cache.SleepRecordBloomFilter;
 import com.sleephelper.common.Result;
+import com.sleephelper.common.SleepDataValidator;
+import com.sleephelper.config.SleepDataConfig;
 import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepPeriodRollup;
+import com.sleephelper.entity.SleepStreak;
 import com.sleephelper.service.SleepAnalysisSummaryService;
+import com.sleephelper.service.SleepPeriodRollupService;
+import com.sleephelper.service.SleepRollupService;
+import com.sleephelper.service.SleepStreakService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 睡眠分析汇总表 控制器
@@ -27,6 +44,29 @@ public class SleepAnalysisSummaryController {
     @Autowired
     private SleepAnalysisSummaryService sleepAnalysisSummaryService;
 
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private SleepRecordBloomFilter sleepRecordBloomFilter;
+
+    @Autowired
+    private RecentNightsStore recentNightsStore;
+
+    @Autowired
+    private SleepRollupService sleepRollupService;
+
+    @Autowired
+    private SleepPeriodRollupService sleepPeriodRollupService;
+
+    @Autowired
+    private SleepStreakService sleepStreakService;
+
+    /**
+     * NDJSON媒体类型（每行一个JSON对象）
+     */
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
     /**
      * 新增睡眠数据
      * POST /api/sleep/data
@@ -41,17 +81,9 @@ public class SleepAnalysisSummaryController {
                     sleepData.getUserId(), sleepData.getDateOfSleep());
             
             // 参数校验
-            if (sleepData.getUserId() == null || sleepData.getUserId().trim().isEmpty()) {
-                return Result.error("用户ID不能为空");
-            }
-            if (sleepData.getDateOfSleep() == null) {
-                return Result.error("睡眠日期不能为空");
-            }
-            if (sleepData.getTotalSleepDuration() == null || sleepData.getTotalSleepDuration() <= 0) {
-                return Result.error("总睡眠时长必须大于0");
-            }
-            if (sleepData.getSleepScore() == null || sleepData.getSleepScore() < 0 || sleepData.getSleepScore() > 100) {
-                return Result.error("睡眠评分必须在0-100之间");
+            String validationError = SleepDataValidator.validate(sleepData);
+            if (validationError != null) {
+                return Result.error(validationError);
             }
             
             // 调用服务层新增数据
@@ -72,6 +104,128 @@ public class SleepAnalysisSummaryController {
         }
     }
 
+    /**
+     * 流式导入睡眠数据
+     * POST /api/sleep/data（Content-Type: application/x-ndjson）
+     * 请求体每行一个JSON对象，逐行解析校验并按分片写入，适用于历史数据回填
+     * 
+     * @param requestBody NDJSON请求体输入流
+     * @return Result<SleepDataImportResult> 导入计数及被拒绝行的字节偏移量
+     */
+    @PostMapping(value = "/data", consumes = NDJSON_MEDIA_TYPE)
+    public Result<SleepDataImportResult> importSleepDataStream(InputStream requestBody) {
+        try {
+            log.info("接收到流式导入睡眠数据请求");
+            
+            // 调用服务层流式导入
+            SleepDataImportResult importResult = sleepAnalysisSummaryService.importSleepDataStream(requestBody);
+            
+            log.info("流式导入睡眠数据完成：行数={}，成功={}，拒绝={}，写入失败={}", importResult.getLineCount(),
+                    importResult.getSuccessCount(), importResult.getRejectedCount(), importResult.getFailedCount());
+            return Result.success("流式导入睡眠数据完成", importResult);
+        } catch (Exception e) {
+            log.error("流式导入睡眠数据异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量新增睡眠数据
+     * POST /api/sleep/data/batch
+     * 逐行校验后按分片写入，返回逐行结果；单行失败不影响其他行
+     * 
+     * @param sleepDataList 睡眠数据列表（JSON数组）
+     * @return Result<SleepDataBatchResult> 统一返回结果
+     */
+    @PostMapping("/data/batch")
+    public Result<SleepDataBatchResult> addSleepDataBatch(@RequestBody List<SleepAnalysisSummary> sleepDataList) {
+        try {
+            log.info("接收到批量新增睡眠数据请求：记录数={}", sleepDataList != null ? sleepDataList.size() : 0);
+            
+            // 参数校验
+            if (sleepDataList == null || sleepDataList.isEmpty()) {
+                return Result.error("睡眠数据列表不能为空");
+            }
+            if (sleepDataList.size() > sleepDataConfig.getBatchMaxRows()) {
+                return Result.error("单次批量新增最多" + sleepDataConfig.getBatchMaxRows() + "条记录");
+            }
+            
+            // 调用服务层批量新增
+            SleepDataBatchResult batchResult = sleepAnalysisSummaryService.addSleepDataBatch(sleepDataList);
+            
+            log.info("批量新增睡眠数据完成：总数={}，成功={}，失败={}", batchResult.getTotal(),
+                    batchResult.getSuccessCount(), batchResult.getInvalidCount() + batchResult.getFailedCount());
+            return Result.success("批量新增睡眠数据完成", batchResult);
+        } catch (Exception e) {
+            log.error("批量新增睡眠数据异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 新增或更新睡眠数据（按用户ID+睡眠日期幂等）
+     * PUT /api/sleep/data
+     * 设备重复上传同一晚的数据时不会报唯一键冲突
+     *
+     * @param sleepData 睡眠数据对象（JSON格式）
+     * @return Result<SleepDataBatchResult.RowResult> 写入结果（INSERTED/UPDATED/UNCHANGED）
+     */
+    @PutMapping("/data")
+    public Result<SleepDataBatchResult.RowResult> upsertSleepData(@RequestBody SleepAnalysisSummary sleepData) {
+        try {
+            log.info("接收到新增或更新睡眠数据请求：用户ID={}，睡眠日期={}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep());
+
+            // 参数校验
+            String validationError = SleepDataValidator.validate(sleepData);
+            if (validationError != null) {
+                return Result.error(validationError);
+            }
+
+            // 调用服务层新增或更新数据
+            SleepDataRowStatus status = sleepAnalysisSummaryService.upsertSleepData(sleepData);
+
+            log.info("新增或更新睡眠数据成功：用户ID={}，睡眠日期={}，结果={}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), status);
+            return Result.success("新增或更新睡眠数据成功", SleepDataBatchResult.RowResult.of(sleepData, status, null));
+        } catch (Exception e) {
+            log.error("新增或更新睡眠数据异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量新增或更新睡眠数据
+     * PUT /api/sleep/data/batch
+     *
+     * @param sleepDataList 睡眠数据列表（JSON数组）
+     * @return Result<SleepDataBatchResult> 统一返回结果
+     */
+    @PutMapping("/data/batch")
+    public Result<SleepDataBatchResult> upsertSleepDataBatch(@RequestBody List<SleepAnalysisSummary> sleepDataList) {
+        try {
+            log.info("接收到批量新增或更新睡眠数据请求：记录数={}", sleepDataList != null ? sleepDataList.size() : 0);
+
+            // 参数校验
+            if (sleepDataList == null || sleepDataList.isEmpty()) {
+                return Result.error("睡眠数据列表不能为空");
+            }
+            if (sleepDataList.size() > sleepDataConfig.getBatchMaxRows()) {
+                return Result.error("单次批量写入最多" + sleepDataConfig.getBatchMaxRows() + "条记录");
+            }
+
+            // 调用服务层批量新增或更新
+            SleepDataBatchResult batchResult = sleepAnalysisSummaryService.upsertSleepDataBatch(sleepDataList);
+
+            log.info("批量新增或更新睡眠数据完成：总数={}，成功={}，失败={}", batchResult.getTotal(),
+                    batchResult.getSuccessCount(), batchResult.getInvalidCount() + batchResult.getFailedCount());
+            return Result.success("批量新增或更新睡眠数据完成", batchResult);
+        } catch (Exception e) {
+            log.error("批量新增或更新睡眠数据异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
     /**
      * 根据用户ID和睡眠日期查询单条睡眠记录
      * GET /api/sleep/data?userId=xxx&dateOfSleep=xxx
@@ -112,27 +266,51 @@ public class SleepAnalysisSummaryController {
     }
 
     /**
-     * 根据用户ID查询所有睡眠记录
-     * GET /api/sleep/data/user/{userId}
+     * 分页查询用户睡眠记录（按睡眠日期倒序）
+     * GET /api/sleep/data/user/{userId}?from=xxx&to=xxx&pageToken=xxx&pageSize=xxx
+     * 下一页请求携带上一页返回的nextPageToken，from/to需与首页保持一致
      * 
      * @param userId 用户ID
-     * @return Result<List<SleepAnalysisSummary>> 统一返回结果
+     * @param from 起始日期（含，格式：yyyy-MM-dd），可选
+     * @param to 结束日期（含，格式：yyyy-MM-dd），可选
+     * @param pageToken 分页令牌，第一页不传
+     * @param pageSize 每页条数，不传使用默认值
+     * @return Result<CursorPage<SleepAnalysisSummary>> 统一返回结果
      */
     @GetMapping("/data/user/{userId}")
-    public Result<List<SleepAnalysisSummary>> getSleepDataByUserId(@PathVariable("userId") String userId) {
+    public Result<CursorPage<SleepAnalysisSummary>> getSleepDataByUserId(
+            @PathVariable("userId") String userId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to,
+            @RequestParam(value = "pageToken", required = false) String pageToken,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
         try {
-            log.info("接收到查询用户所有睡眠数据请求：用户ID={}", userId);
+            log.info("接收到查询用户睡眠数据请求：用户ID={}，起始日期={}，结束日期={}，每页条数={}", userId, from, to, pageSize);
             
             // 参数校验
             if (userId == null || userId.trim().isEmpty()) {
                 return Result.error("用户ID不能为空");
             }
+            if (from != null && to != null && from.isAfter(to)) {
+                return Result.error("起始日期不能晚于结束日期");
+            }
+            if (pageSize == null) {
+                pageSize = sleepDataConfig.getPageDefaultSize();
+            }
+            if (pageSize < 1 || pageSize > sleepDataConfig.getPageMaxSize()) {
+                return Result.error("每页条数必须在1-" + sleepDataConfig.getPageMaxSize() + "之间");
+            }
             
-            // 调用服务层查询数据
-            List<SleepAnalysisSummary> sleepDataList = sleepAnalysisSummaryService.getSleepDataByUserId(userId);
+            // 调用服务层分页查询数据
+            CursorPage<SleepAnalysisSummary> page = sleepAnalysisSummaryService.getSleepDataPage(
+                    userId, from, to, pageToken, pageSize);
             
-            log.info("查询用户睡眠数据成功：用户ID={}，记录数={}", userId, sleepDataList.size());
-            return Result.success("查询用户睡眠数据成功", sleepDataList);
+            log.info("查询用户睡眠数据成功：用户ID={}，记录数={}，是否有下一页={}", 
+                    userId, page.getItems().size(), page.isHasMore());
+            return Result.success("查询用户睡眠数据成功", page);
+        } catch (IllegalArgumentException e) {
+            log.warn("查询用户睡眠数据参数错误：{}", e.getMessage());
+            return Result.error(e.getMessage());
         } catch (Exception e) {
             log.error("查询用户睡眠数据异常：{}", e.getMessage(), e);
             return Result.error("系统异常：" + e.getMessage());
@@ -166,6 +344,236 @@ public class SleepAnalysisSummaryController {
         }
     }
 
+    /**
+     * 查询用户最近7/30/90天的滚动统计
+     * GET /api/sleep/stats/{userId}
+     * 窗口以用户最新一晚为终点，直接读取写入时增量维护的统计表，不扫描睡眠数据
+     * 
+     * @param userId 用户ID
+     * @return Result<SleepRollupStats> 各窗口各指标的计数、平均值、最值、方差
+     */
+    @GetMapping("/stats/{userId}")
+    public Result<SleepRollupStats> getRollupStats(@PathVariable String userId) {
+        try {
+            return Result.success("查询滚动统计成功", sleepRollupService.getRollupStats(userId));
+        } catch (Exception e) {
+            log.error("查询滚动统计异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用户周/月汇总
+     * GET /api/sleep/rollups/user/{userId}?period=WEEK&from=xxx&to=xxx
+     * 直接读取汇总表，数据由定时任务增量刷新，最多滞后一个刷新间隔
+     * 
+     * @param userId 用户ID
+     * @param period 汇总周期（WEEK/MONTH），默认WEEK
+     * @param from 周期起始日期下界（含，格式：yyyy-MM-dd），可选
+     * @param to 周期起始日期上界（含，格式：yyyy-MM-dd），可选
+     * @return Result<List<SleepPeriodRollup>> 汇总列表（按周期升序）
+     */
+    @GetMapping("/rollups/user/{userId}")
+    public Result<List<SleepPeriodRollup>> getUserPeriodRollups(
+            @PathVariable("userId") String userId,
+            @RequestParam(value = "period", defaultValue = "WEEK") SleepRollupPeriod period,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to) {
+        try {
+            if (from != null && to != null && from.isAfter(to)) {
+                return Result.error("起始日期不能晚于结束日期");
+            }
+            return Result.success("查询用户周/月汇总成功", sleepPeriodRollupService.getUserRollups(userId, period, from, to));
+        } catch (Exception e) {
+            log.error("查询用户周/月汇总异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询全体用户周/月汇总
+     * GET /api/sleep/rollups/global?period=MONTH&from=xxx&to=xxx
+     * 
+     * @param period 汇总周期（WEEK/MONTH），默认WEEK
+     * @param from 周期起始日期下界（含，格式：yyyy-MM-dd），可选
+     * @param to 周期起始日期上界（含，格式：yyyy-MM-dd），可选
+     * @return Result<List<SleepPeriodRollup>> 汇总列表（按周期升序）
+     */
+    @GetMapping("/rollups/global")
+    public Result<List<SleepPeriodRollup>> getGlobalPeriodRollups(
+            @RequestParam(value = "period", defaultValue = "WEEK") SleepRollupPeriod period,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to) {
+        try {
+            if (from != null && to != null && from.isAfter(to)) {
+                return Result.error("起始日期不能晚于结束日期");
+            }
+            return Result.success("查询全体用户周/月汇总成功", sleepPeriodRollupService.getGlobalRollups(period, from, to));
+        } catch (Exception e) {
+            log.error("查询全体用户周/月汇总异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 立即增量刷新周/月汇总
+     * POST /api/sleep/rollups/refresh
+     * 
+     * @return Result<Map<String, Object>> 处理记录数、刷新用户周期数、新水位
+     */
+    @PostMapping("/rollups/refresh")
+    public Result<Map<String, Object>> refreshPeriodRollups() {
+        try {
+            log.info("接收到增量刷新周/月汇总请求");
+            return Result.success("增量刷新周/月汇总成功", sleepPeriodRollupService.refreshIncremental());
+        } catch (Exception e) {
+            log.error("增量刷新周/月汇总异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按用户ID区间并行全量重建周/月汇总
+     * POST /api/sleep/rollups/rebuild
+     * 
+     * @return Result<Map<String, Object>> 区间数、线程数、耗时、新水位
+     */
+    @PostMapping("/rollups/rebuild")
+    public Result<Map<String, Object>> rebuildPeriodRollups() {
+        try {
+            log.info("接收到全量重建周/月汇总请求");
+            return Result.success("全量重建周/月汇总成功", sleepPeriodRollupService.rebuildAll());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("全量重建周/月汇总异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用户连续达标记录
+     * GET /api/sleep/streaks/{userId}
+     * 按主键读取写入时增量维护的连续记录，不扫描睡眠数据
+     * 
+     * @param userId 用户ID
+     * @return Result<List<SleepStreak>> 各连续类型的当前连续、最长连续
+     */
+    @GetMapping("/streaks/{userId}")
+    public Result<List<SleepStreak>> getStreaks(@PathVariable String userId) {
+        try {
+            return Result.success("查询连续达标记录成功", sleepStreakService.getStreaks(userId));
+        } catch (Exception e) {
+            log.error("查询连续达标记录异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按用户全部睡眠数据重算连续达标记录
+     * POST /api/sleep/streaks/{userId}/recompute
+     * 
+     * @param userId 用户ID
+     * @return Result<List<SleepStreak>> 重算后的连续记录
+     */
+    @PostMapping("/streaks/{userId}/recompute")
+    public Result<List<SleepStreak>> recomputeStreaks(@PathVariable String userId) {
+        try {
+            log.info("接收到重算连续达标记录请求，用户ID：{}", userId);
+            return Result.success("重算连续达标记录成功", sleepStreakService.recompute(userId));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("重算连续达标记录异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询本地缓存统计
+     * GET /api/sleep/data/cache/stats
+     * 
+     * @return Result<Map<String, Object>> 命中、未命中、淘汰次数等
+     */
+    @GetMapping("/data/cache/stats")
+    public Result<Map<String, Object>> getCacheStats() {
+        try {
+            return Result.success("查询缓存统计成功", sleepAnalysisSummaryService.getCacheStats());
+        } catch (Exception e) {
+            log.error("查询缓存统计异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询布隆过滤器统计
+     * GET /api/sleep/bloom/stats
+     * 
+     * @return Result<Map<String, Object>> 位数、内存占用、估算误判率、拦截次数等
+     */
+    @GetMapping("/bloom/stats")
+    public Result<Map<String, Object>> getBloomFilterStats() {
+        try {
+            return Result.success("查询布隆过滤器统计成功", sleepRecordBloomFilter.getStats());
+        } catch (Exception e) {
+            log.error("查询布隆过滤器统计异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库重建布隆过滤器（睡眠数据、睡眠积分）
+     * POST /api/sleep/bloom/rebuild
+     * 重建期间旧过滤器继续生效，新写入同时记入新旧过滤器
+     * 
+     * @return Result<Map<String, Object>> 重建后的过滤器统计
+     */
+    @PostMapping("/bloom/rebuild")
+    public Result<Map<String, Object>> rebuildBloomFilter() {
+        try {
+            log.info("接收到重建布隆过滤器请求");
+            Map<String, Object> stats = sleepRecordBloomFilter.rebuild();
+            return Result.success("重建布隆过滤器成功", stats);
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("重建布隆过滤器异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询最近睡眠数据内存序列的占用统计
+     * GET /api/sleep/recent/stats
+     * 
+     * @return Result<Map<String, Object>> 已加载用户数、单用户及总内存占用估算
+     */
+    @GetMapping("/recent/stats")
+    public Result<Map<String, Object>> getRecentNightsStats() {
+        try {
+            return Result.success("查询最近睡眠数据内存统计成功", recentNightsStore.getStats());
+        } catch (Exception e) {
+            log.error("查询最近睡眠数据内存统计异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询写后缓冲运行指标
+     * GET /api/sleep/data/write-buffer/metrics
+     * 
+     * @return Result<Map<String, Object>> 队列深度、分组提交次数、刷写耗时等
+     */
+    @GetMapping("/data/write-buffer/metrics")
+    public Result<Map<String, Object>> getWriteBufferMetrics() {
+        try {
+            return Result.success("查询写后缓冲指标成功", sleepAnalysisSummaryService.getWriteBufferMetrics());
+        } catch (Exception e) {
+            log.error("查询写后缓冲指标异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
     /**
      * 健康检查接口
      * GET /api/sleep/health
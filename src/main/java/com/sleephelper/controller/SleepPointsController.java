@@ -1,8 +1,18 @@
 package com.sleephelper.controller;
 
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.bean.LeaderboardEntry;
+import com.sleephelper.bean.LeaderboardPeriod;
+import com.sleephelper.bean.PointsLedgerBalance;
 import com.sleephelper.common.Result;
+import com.sleephelper.config.SleepDataConfig;
 import com.sleephelper.entity.SleepPoints;
+import com.sleephelper.service.PointsExpiryService;
+import com.sleephelper.service.PointsLeaderboardService;
+import com.sleephelper.service.PointsLedgerService;
+import com.sleephelper.service.SleepPointsAutoService;
 import com.sleephelper.service.SleepPointsService;
+import com.sleephelper.service.UserPointsBalanceService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -10,6 +20,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 睡眠积分表 控制器
@@ -27,6 +38,24 @@ public class SleepPointsController {
     @Autowired
     private SleepPointsService sleepPointsService;
 
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private UserPointsBalanceService userPointsBalanceService;
+
+    @Autowired
+    private SleepPointsAutoService sleepPointsAutoService;
+
+    @Autowired
+    private PointsLeaderboardService pointsLeaderboardService;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private PointsExpiryService pointsExpiryService;
+
     /**
      * 生成睡眠积分
      * POST /api/points/generate
@@ -65,28 +94,52 @@ public class SleepPointsController {
     }
 
     /**
-     * 查询积分历史记录
-     * GET /api/points/history?userId=xxx
+     * 分页查询积分历史记录（按日期倒序）
+     * GET /api/points/history?userId=xxx&from=xxx&to=xxx&pageToken=xxx&pageSize=xxx
+     * 下一页请求携带上一页返回的nextPageToken，from/to需与首页保持一致
      * 
      * @param userId 用户ID
-     * @return Result<List<SleepPoints>> 统一返回结果
+     * @param from 起始日期（含，格式：yyyy-MM-dd），可选
+     * @param to 结束日期（含，格式：yyyy-MM-dd），可选
+     * @param pageToken 分页令牌，第一页不传
+     * @param pageSize 每页条数，不传使用默认值
+     * @return Result<CursorPage<SleepPoints>> 统一返回结果
      */
     @GetMapping("/history")
-    public Result<List<SleepPoints>> getSleepPointsHistory(@RequestParam("userId") String userId) {
+    public Result<CursorPage<SleepPoints>> getSleepPointsHistory(
+            @RequestParam("userId") String userId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to,
+            @RequestParam(value = "pageToken", required = false) String pageToken,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
         try {
-            log.info("接收到查询积分历史请求：用户ID={}", userId);
+            log.info("接收到查询积分历史请求：用户ID={}，起始日期={}，结束日期={}，每页条数={}", userId, from, to, pageSize);
             
             // 参数校验
             if (userId == null || userId.trim().isEmpty()) {
                 return Result.error("用户ID不能为空");
             }
+            if (from != null && to != null && from.isAfter(to)) {
+                return Result.error("起始日期不能晚于结束日期");
+            }
+            if (pageSize == null) {
+                pageSize = sleepDataConfig.getPageDefaultSize();
+            }
+            if (pageSize < 1 || pageSize > sleepDataConfig.getPageMaxSize()) {
+                return Result.error("每页条数必须在1-" + sleepDataConfig.getPageMaxSize() + "之间");
+            }
             
-            // 调用服务层查询积分历史
-            List<SleepPoints> pointsHistory = sleepPointsService.getSleepPointsHistory(userId);
+            // 调用服务层分页查询积分历史
+            CursorPage<SleepPoints> page = sleepPointsService.getSleepPointsHistoryPage(
+                    userId, from, to, pageToken, pageSize);
             
-            log.info("查询积分历史成功：用户ID={}，记录数={}", userId, pointsHistory.size());
+            log.info("查询积分历史成功：用户ID={}，记录数={}，是否有下一页={}", 
+                    userId, page.getItems().size(), page.isHasMore());
             
-            return Result.success("查询积分历史成功", pointsHistory);
+            return Result.success("查询积分历史成功", page);
+        } catch (IllegalArgumentException e) {
+            log.warn("查询积分历史参数错误：{}", e.getMessage());
+            return Result.error(e.getMessage());
         } catch (Exception e) {
             log.error("查询积分历史异常：{}", e.getMessage(), e);
             return Result.error("查询积分历史失败：" + e.getMessage());
@@ -122,6 +175,268 @@ public class SleepPointsController {
         }
     }
 
+    /**
+     * 按积分明细核对所有用户的积分余额
+     * POST /api/points/balance/reconcile
+     * 
+     * @return Result<Map<String, Object>> 核对用户数、不一致数、校正数
+     */
+    @PostMapping("/balance/reconcile")
+    public Result<Map<String, Object>> reconcileBalance() {
+        try {
+            log.info("接收到积分余额对账请求");
+            return Result.success("积分余额对账完成", userPointsBalanceService.reconcile());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分余额对账异常：{}", e.getMessage(), e);
+            return Result.error("积分余额对账失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按睡眠日期区间批量回填积分（新用户导入或积分规则调整后使用）
+     * POST /api/points/backfill?from=xxx&to=xxx
+     * 
+     * @param from 起始睡眠日期（含，格式：yyyy-MM-dd）
+     * @param to 结束睡眠日期（含，格式：yyyy-MM-dd）
+     * @return Result<Map<String, Object>> 分块数、新生成积分记录数、耗时
+     */
+    @PostMapping("/backfill")
+    public Result<Map<String, Object>> backfillSleepPoints(
+            @RequestParam("from") @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam("to") @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to) {
+        try {
+            log.info("接收到积分回填请求：{} 至 {}", from, to);
+            return Result.success("积分回填完成", sleepPointsService.backfillSleepPoints(from, to));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分回填异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询积分自动生成运行指标
+     * GET /api/points/auto/metrics
+     * 
+     * @return Result<Map<String, Object>> 异步队列深度、生成数、丢弃数、补扫统计
+     */
+    @GetMapping("/auto/metrics")
+    public Result<Map<String, Object>> getAutoGenerateMetrics() {
+        try {
+            return Result.success("查询积分自动生成指标成功", sleepPointsAutoService.getMetrics());
+        } catch (Exception e) {
+            log.error("查询积分自动生成指标异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 补扫已写入睡眠数据但未生成积分的夜晚
+     * POST /api/points/auto/sweep
+     * 
+     * @return Result<Map<String, Object>> 扫描数、新生成数
+     */
+    @PostMapping("/auto/sweep")
+    public Result<Map<String, Object>> sweepMissingPoints() {
+        try {
+            log.info("接收到睡眠积分补扫请求");
+            return Result.success("睡眠积分补扫完成", sleepPointsAutoService.sweep());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("睡眠积分补扫异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询积分排行榜前N名
+     * GET /api/points/leaderboard?period=DAILY&limit=10
+     * 
+     * @param period 排行榜周期（DAILY/WEEKLY/ALL_TIME），默认ALL_TIME
+     * @param limit 条数，默认10
+     * @return Result<List<LeaderboardEntry>> 按名次升序的排行榜条目
+     */
+    @GetMapping("/leaderboard")
+    public Result<List<LeaderboardEntry>> getLeaderboard(
+            @RequestParam(value = "period", defaultValue = "ALL_TIME") LeaderboardPeriod period,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        try {
+            if (limit < 1 || limit > sleepDataConfig.getLeaderboardMaxLimit()) {
+                return Result.error("条数必须在1-" + sleepDataConfig.getLeaderboardMaxLimit() + "之间");
+            }
+            return Result.success("查询积分排行榜成功", pointsLeaderboardService.getLeaderboard(period, limit));
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("查询积分排行榜异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用户在积分排行榜中的名次
+     * GET /api/points/rank?userId=xxx&period=WEEKLY
+     * 
+     * @param userId 用户ID
+     * @param period 排行榜周期（DAILY/WEEKLY/ALL_TIME），默认ALL_TIME
+     * @return Result<LeaderboardEntry> 名次及周期内积分，未上榜时data为空
+     */
+    @GetMapping("/rank")
+    public Result<LeaderboardEntry> getRank(
+            @RequestParam("userId") String userId,
+            @RequestParam(value = "period", defaultValue = "ALL_TIME") LeaderboardPeriod period) {
+        try {
+            if (userId == null || userId.trim().isEmpty()) {
+                return Result.error("用户ID不能为空");
+            }
+            LeaderboardEntry entry = pointsLeaderboardService.getRank(period, userId);
+            if (entry == null) {
+                return Result.success("该用户暂无排名", null);
+            }
+            return Result.success("查询用户排名成功", entry);
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("查询用户排名异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 从积分明细重建积分排行榜
+     * POST /api/points/leaderboard/rebuild
+     * 
+     * @return Result<Map<String, Object>> 各排行榜上榜用户数及耗时
+     */
+    @PostMapping("/leaderboard/rebuild")
+    public Result<Map<String, Object>> rebuildLeaderboard() {
+        try {
+            log.info("接收到积分排行榜重建请求");
+            return Result.success("积分排行榜重建完成", pointsLeaderboardService.rebuild());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分排行榜重建异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用户积分流水余额（快照 + 快照之后的流水）
+     * GET /api/points/ledger/balance?userId=xxx
+     * 
+     * @param userId 用户ID
+     * @return Result<PointsLedgerBalance> 累计获得、铸造、销毁及可铸造、链上数量
+     */
+    @GetMapping("/ledger/balance")
+    public Result<PointsLedgerBalance> getLedgerBalance(@RequestParam("userId") String userId) {
+        try {
+            if (userId == null || userId.trim().isEmpty()) {
+                return Result.error("用户ID不能为空");
+            }
+            return Result.success("查询积分流水余额成功", pointsLedgerService.getBalance(userId));
+        } catch (Exception e) {
+            log.error("查询积分流水余额异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 把新流水并入用户快照
+     * POST /api/points/ledger/snapshot
+     * 
+     * @return Result<Map<String, Object>> 并入的流水区间、影响用户数、耗时
+     */
+    @PostMapping("/ledger/snapshot")
+    public Result<Map<String, Object>> snapshotLedger() {
+        try {
+            log.info("接收到积分流水快照请求");
+            return Result.success("积分流水快照完成", pointsLedgerService.snapshot());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分流水快照异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 为流水上线前已存在的积分记录补记获得流水
+     * POST /api/points/ledger/sync
+     * 
+     * @return Result<Map<String, Object>> 新增流水条数、耗时
+     */
+    @PostMapping("/ledger/sync")
+    public Result<Map<String, Object>> syncLedger() {
+        try {
+            log.info("接收到历史积分补记流水请求");
+            return Result.success("历史积分补记流水完成", pointsLedgerService.syncEarnedFromPoints());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("历史积分补记流水异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 立即处理已到期的积分
+     * POST /api/points/expiry/run
+     * 
+     * @return Result<Map<String, Object>> 到期日期数、过期记录数、过期积分、耗时
+     */
+    @PostMapping("/expiry/run")
+    public Result<Map<String, Object>> runPointsExpiry() {
+        try {
+            log.info("接收到积分过期处理请求");
+            return Result.success("积分过期处理完成", pointsExpiryService.expireDue());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分过期处理异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按积分表重建积分过期时间轮
+     * POST /api/points/expiry/rebuild
+     * 
+     * @return Result<Map<String, Object>> 登记的到期日数、已到期日期数、耗时
+     */
+    @PostMapping("/expiry/rebuild")
+    public Result<Map<String, Object>> rebuildPointsExpiry() {
+        try {
+            log.info("接收到重建积分过期时间轮请求");
+            return Result.success("重建积分过期时间轮成功", pointsExpiryService.rebuild());
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("重建积分过期时间轮异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询积分过期统计
+     * GET /api/points/expiry/stats
+     * 
+     * @return Result<Map<String, Object>> 待到期日期数、时间轮层数、累计过期记录数及积分
+     */
+    @GetMapping("/expiry/stats")
+    public Result<Map<String, Object>> getPointsExpiryStats() {
+        try {
+            return Result.success("查询积分过期统计成功", pointsExpiryService.getStats());
+        } catch (Exception e) {
+            log.error("查询积分过期统计异常：{}", e.getMessage(), e);
+            return Result.error("系统异常：" + e.getMessage());
+        }
+    }
+
     /**
      * 根据用户ID和日期查询单条积分记录
      * GET /api/points/record?userId=xxx&date=xxx
@@ -0,0 +1,59 @@
+package com.sleephelper.entity;
+
+import com.sleephelper.bean.PointsLedgerEntryType;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 积分流水表实体类
+ * 对应数据库表：points_ledger
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class PointsLedgerEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID（流水序号）
+     */
+    private Long id;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 流水类型
+     */
+    private PointsLedgerEntryType entryType;
+
+    /**
+     * 变动数量（正数）
+     */
+    private Long amount;
+
+    /**
+     * 来源标识：积分日期或交易哈希
+     */
+    private String refId;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createdAt;
+
+    public PointsLedgerEntry() {}
+
+    public PointsLedgerEntry(String userId, PointsLedgerEntryType entryType, long amount, String refId) {
+        this.userId = userId;
+        this.entryType = entryType;
+        this.amount = amount;
+        this.refId = refId;
+    }
+}
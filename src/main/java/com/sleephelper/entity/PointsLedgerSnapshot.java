@@ -0,0 +1,59 @@
+package com.sleephelper.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 用户积分快照表实体类
+ * 对应数据库表：points_ledger_snapshot
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class PointsLedgerSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 快照覆盖到的流水ID（含）
+     */
+    private Long lastEntryId;
+
+    /**
+     * 累计获得积分
+     */
+    private Long earnedTotal;
+
+    /**
+     * 累计铸造上链数量
+     */
+    private Long mintedTotal;
+
+    /**
+     * 累计销毁数量
+     */
+    private Long burnedTotal;
+
+    /**
+     * 累计过期积分
+     */
+    private Long expiredTotal;
+
+    /**
+     * 快照覆盖的流水条数
+     */
+    private Integer entryCount;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
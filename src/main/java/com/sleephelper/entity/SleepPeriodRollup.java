@@ -0,0 +1,126 @@
+package com.sleephelper.entity;
+
+import com.sleephelper.bean.SleepRollupPeriod;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 睡眠周/月汇总实体类
+ * 对应数据库表：sleep_period_rollups（用户汇总）、sleep_global_period_rollups（全体用户汇总）
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepPeriodRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID，全体用户汇总为null
+     */
+    private String userId;
+
+    /**
+     * 周期类型（WEEK/MONTH）
+     */
+    private String periodType;
+
+    /**
+     * 周期起始日期
+     */
+    private LocalDate periodStart;
+
+    /**
+     * 周期内有记录的用户数，仅全体用户汇总有值
+     */
+    private Integer userCount;
+
+    /**
+     * 周期内有记录的晚数
+     */
+    private Integer nightCount;
+
+    /**
+     * 总睡眠时长合计（分钟）
+     */
+    private Long totalSleepSum;
+
+    /**
+     * 深度睡眠时长合计（分钟）
+     */
+    private Long deepSleepSum;
+
+    /**
+     * 有深度睡眠数据的晚数
+     */
+    private Integer deepSleepCount;
+
+    /**
+     * REM睡眠时长合计（分钟）
+     */
+    private Long remSleepSum;
+
+    /**
+     * 有REM睡眠数据的晚数
+     */
+    private Integer remSleepCount;
+
+    /**
+     * 睡眠评分合计
+     */
+    private Long sleepScoreSum;
+
+    /**
+     * 有睡眠评分的晚数
+     */
+    private Integer sleepScoreCount;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+
+    /**
+     * 周期结束日期（含）
+     */
+    public LocalDate getPeriodEnd() {
+        return periodType == null || periodStart == null
+                ? null : SleepRollupPeriod.valueOf(periodType).endOf(periodStart);
+    }
+
+    /**
+     * 平均总睡眠时长（分钟）
+     */
+    public Double getAverageTotalSleep() {
+        return average(totalSleepSum, nightCount);
+    }
+
+    /**
+     * 平均深度睡眠时长（分钟）
+     */
+    public Double getAverageDeepSleep() {
+        return average(deepSleepSum, deepSleepCount);
+    }
+
+    /**
+     * 平均REM睡眠时长（分钟）
+     */
+    public Double getAverageRemSleep() {
+        return average(remSleepSum, remSleepCount);
+    }
+
+    /**
+     * 平均睡眠评分
+     */
+    public Double getAverageSleepScore() {
+        return average(sleepScoreSum, sleepScoreCount);
+    }
+
+    private static Double average(Long sum, Integer count) {
+        return sum == null || count == null || count == 0 ? null : (double) sum / count;
+    }
+}
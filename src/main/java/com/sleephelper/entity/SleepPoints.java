@@ -42,4 +42,9 @@ public class SleepPoints implements Serializable {
      * 创建时间
      */
     private LocalDateTime createdAt;
+
+    /**
+     * 过期时间，未过期时为null
+     */
+    private LocalDateTime expiredAt;
 }
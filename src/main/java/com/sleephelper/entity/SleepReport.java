@@ -0,0 +1,60 @@
+package com.sleephelper.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * AI睡眠报告表实体类
+ * 对应数据库表：sleep_reports
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    private Long id;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 睡眠日期
+     */
+    private LocalDate dateOfSleep;
+
+    /**
+     * 睡眠数据与模板版本的SHA-256摘要（十六进制）
+     */
+    private String fingerprint;
+
+    /**
+     * 报告模板版本
+     */
+    private String templateVersion;
+
+    /**
+     * GZIP压缩的报告内容（UTF-8）
+     */
+    private byte[] reportGz;
+
+    /**
+     * 报告字符数
+     */
+    private Integer reportLength;
+
+    /**
+     * 生成时间
+     */
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,70 @@
+package com.sleephelper.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 睡眠数据滚动统计表实体类
+ * 对应数据库表：sleep_rollups
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 窗口天数
+     */
+    private Integer windowDays;
+
+    /**
+     * 指标（SleepMetric枚举名）
+     */
+    private String metric;
+
+    /**
+     * 窗口终点（用户最新一晚的睡眠日期）
+     */
+    private LocalDate windowEnd;
+
+    /**
+     * 窗口内有值的晚数
+     */
+    private Integer sampleCount;
+
+    /**
+     * 指标总和
+     */
+    private Long valueSum;
+
+    /**
+     * 指标平方和
+     */
+    private Long valueSumSq;
+
+    /**
+     * 最小值
+     */
+    private Integer minValue;
+
+    /**
+     * 最大值
+     */
+    private Integer maxValue;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,60 @@
+package com.sleephelper.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 用户睡眠连续达标表实体类
+ * 对应数据库表：sleep_streaks
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class SleepStreak implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 连续类型（GOOD_NIGHT/CONSISTENT_SLEEP）
+     */
+    private String streakType;
+
+    /**
+     * 截至最近达标日期的连续达标晚数（查询时若最近达标日期早于昨天则返回0）
+     */
+    private Integer currentStreak;
+
+    /**
+     * 当前连续的起始日期
+     */
+    private LocalDate currentStartDate;
+
+    /**
+     * 最近达标日期
+     */
+    private LocalDate lastQualifyingDate;
+
+    /**
+     * 历史最长连续达标晚数
+     */
+    private Integer bestStreak;
+
+    /**
+     * 历史最长连续的结束日期
+     */
+    private LocalDate bestEndDate;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,39 @@
+package com.sleephelper.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 用户积分余额表实体类
+ * 对应数据库表：user_points_balance
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Data
+public class UserPointsBalance implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 总积分
+     */
+    private Long totalPoints;
+
+    /**
+     * 积分记录数
+     */
+    private Integer recordCount;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
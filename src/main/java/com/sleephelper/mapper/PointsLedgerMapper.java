@@ -0,0 +1,96 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.PointsLedgerEntry;
+import com.sleephelper.entity.PointsLedgerSnapshot;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 积分流水表、用户积分快照表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface PointsLedgerMapper {
+
+    /**
+     * 批量追加流水，同一用户、类型、来源标识已存在时跳过
+     * 
+     * @param entries 流水列表，不能为空
+     * @return 影响行数（新增条数）
+     */
+    int insertBatch(@Param("entries") List<PointsLedgerEntry> entries);
+
+    /**
+     * 积分回填后补记本次回填新增积分的获得流水，必须与回填在同一事务中执行
+     * 
+     * @param from 回填的睡眠日期下界（含）
+     * @param to 回填的睡眠日期上界（不含）
+     * @param createdAt 本次回填写入的创建时间
+     * @return 影响行数
+     */
+    int insertEarnedFromBackfill(@Param("from") LocalDate from,
+                                 @Param("to") LocalDate to,
+                                 @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * 按积分记录ID区间补记获得流水，已记录的跳过
+     * 
+     * @param afterId 积分记录ID下界（不含）
+     * @param toId 积分记录ID上界（含）
+     * @return 影响行数
+     */
+    int insertEarnedFromPoints(@Param("afterId") long afterId, @Param("toId") long toId);
+
+    /**
+     * 积分记录最大ID
+     * 
+     * @return long 最大ID，没有记录时为0
+     */
+    long selectMaxPointsId();
+
+    /**
+     * 已提交的最大流水ID
+     * 
+     * @return long 最大流水ID，没有流水时为0
+     */
+    long selectMaxEntryId();
+
+    /**
+     * 已并入快照的最大流水ID
+     * 
+     * @return long 最大流水ID，没有快照时为0
+     */
+    long selectSnapshotWatermark();
+
+    /**
+     * 把流水ID区间 (fromId, toId] 按用户汇总并入快照，快照已越过 fromId 的用户不重复累加
+     * 
+     * @param fromId 流水ID下界（不含），即当前快照进度
+     * @param toId 流水ID上界（含）
+     * @return 影响行数
+     */
+    int mergeSnapshots(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 根据用户ID查询快照（主键查询）
+     * 
+     * @param userId 用户ID
+     * @return PointsLedgerSnapshot 快照，没有快照时返回null
+     */
+    PointsLedgerSnapshot selectSnapshotByUserId(@Param("userId") String userId);
+
+    /**
+     * 汇总用户在给定流水ID之后的流水
+     * 
+     * @param userId 用户ID
+     * @param afterId 流水ID下界（不含），即用户快照覆盖到的流水ID
+     * @return PointsLedgerSnapshot 各类型合计，lastEntryId 为最大流水ID；没有流水时返回null
+     */
+    PointsLedgerSnapshot selectTailTotals(@Param("userId") String userId, @Param("afterId") long afterId);
+}
@@ -4,6 +4,8 @@ import com.sleephelper.entity.SleepAnalysisSummary;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -23,6 +25,32 @@ public interface SleepAnalysisSummaryMapper {
      */
     int insert(SleepAnalysisSummary sleepAnalysisSummary);
 
+    /**
+     * 批量插入睡眠分析汇总记录
+     * 使用多行VALUES，一条语句完成整批写入，调用方负责控制每批行数
+     *
+     * @param list 睡眠分析汇总列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("list") List<SleepAnalysisSummary> list);
+
+    /**
+     * 按用户ID+睡眠日期新增睡眠分析汇总记录，已存在时不修改
+     * MySQL使用 INSERT IGNORE，H2使用 MERGE ... WHEN NOT MATCHED
+     * 
+     * @param sleepAnalysisSummary 睡眠分析汇总对象
+     * @return 影响行数：1=新增，0=已存在
+     */
+    int insertIfAbsent(SleepAnalysisSummary sleepAnalysisSummary);
+
+    /**
+     * 按用户ID+睡眠日期更新睡眠分析汇总记录，数据未变化时不更新（处理时间保持不变）
+     * 
+     * @param sleepAnalysisSummary 睡眠分析汇总对象
+     * @return 影响行数：1=更新，0=数据未变化或记录不存在
+     */
+    int updateIfChanged(SleepAnalysisSummary sleepAnalysisSummary);
+
     /**
      * 根据ID查询睡眠分析汇总记录
      * 
@@ -41,6 +69,16 @@ public interface SleepAnalysisSummaryMapper {
     SleepAnalysisSummary selectByUserIdAndDate(@Param("userId") String userId, 
                                                @Param("dateOfSleep") String dateOfSleep);
 
+    /**
+     * 根据用户ID列表和睡眠日期批量查询未删除的睡眠记录
+     * 
+     * @param userIds 用户ID列表，不能为空（调用方负责分片）
+     * @param dateOfSleep 睡眠日期
+     * @return List<SleepAnalysisSummary> 睡眠记录列表，每个用户至多一条
+     */
+    List<SleepAnalysisSummary> selectByUserIdsAndDate(@Param("userIds") List<String> userIds,
+                                                      @Param("dateOfSleep") LocalDate dateOfSleep);
+
     /**
      * 查询所有睡眠分析汇总记录
      * 
@@ -56,6 +94,58 @@ public interface SleepAnalysisSummaryMapper {
      */
     List<SleepAnalysisSummary> selectByUserId(@Param("userId") String userId);
 
+    /**
+     * 按睡眠日期倒序分页查询用户睡眠记录（keyset分页）
+     * 走 uk_user_date 索引，以上一页最后一条的日期作为游标，不使用OFFSET
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param before 游标日期，只返回早于该日期的记录，第一页为空
+     * @param limit 最多返回条数
+     * @return List<SleepAnalysisSummary> 睡眠分析汇总列表
+     */
+    List<SleepAnalysisSummary> selectPageByUserId(@Param("userId") String userId,
+                                                  @Param("from") LocalDate from,
+                                                  @Param("to") LocalDate to,
+                                                  @Param("before") LocalDate before,
+                                                  @Param("limit") int limit);
+
+    /**
+     * 按主键顺序分页查询记录的用户ID和日期（仅返回id、用户ID、日期三列）
+     * 用于启动时构建布隆过滤器，按主键游标分页避免一次加载全表
+     * 
+     * @param afterId 上一页最后一条记录的主键ID，第一页传0
+     * @param limit 每页条数
+     * @return List<SleepAnalysisSummary> 仅填充id、用户ID、日期的对象列表
+     */
+    List<SleepAnalysisSummary> selectKeysAfterId(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 按主键顺序分页查询处理时间在 (from, to] 内的记录（仅返回id、用户ID、日期三列）
+     * 用于周/月汇总的增量刷新，走 idx_processed_at 索引
+     * 
+     * @param from 处理时间下界（不含）
+     * @param to 处理时间上界（含）
+     * @param afterId 上一页最后一条记录的主键ID，第一页传0
+     * @param limit 每页条数
+     * @return List<SleepAnalysisSummary> 仅填充id、用户ID、日期的对象列表
+     */
+    List<SleepAnalysisSummary> selectProcessedBetween(@Param("from") LocalDateTime from,
+                                                      @Param("to") LocalDateTime to,
+                                                      @Param("afterId") Long afterId,
+                                                      @Param("limit") int limit);
+
+    /**
+     * 按用户ID顺序分页查询去重后的用户ID
+     * 用于周/月汇总全量重建时划分用户ID区间
+     * 
+     * @param afterUserId 上一页最后一个用户ID，第一页传null
+     * @param limit 每页条数
+     * @return List<String> 用户ID列表（升序）
+     */
+    List<String> selectUserIdsAfter(@Param("afterUserId") String afterUserId, @Param("limit") int limit);
+
     /**
      * 更新睡眠分析汇总记录
      * 
@@ -0,0 +1,111 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.SleepPeriodRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 睡眠周/月汇总表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface SleepPeriodRollupMapper {
+
+    /**
+     * 按用户+周期重新汇总并覆盖用户周/月汇总（一条 INSERT ... SELECT ... GROUP BY 语句）
+     * 
+     * @param periodType 周期类型（WEEK/MONTH）
+     * @param keys 需要重新汇总的用户ID+周期起始日期，不能为空
+     * @return 影响行数
+     */
+    int upsertUserRollupsForKeys(@Param("periodType") String periodType,
+                                 @Param("keys") List<SleepPeriodRollup> keys);
+
+    /**
+     * 重新汇总用户ID区间内所有用户的周/月汇总
+     * 
+     * @param periodType 周期类型（WEEK/MONTH）
+     * @param afterUserId 区间下界（不含），为空表示不限
+     * @param toUserId 区间上界（含），为空表示不限
+     * @return 影响行数
+     */
+    int upsertUserRollupsInRange(@Param("periodType") String periodType,
+                                 @Param("afterUserId") String afterUserId,
+                                 @Param("toUserId") String toUserId);
+
+    /**
+     * 删除用户ID区间内的用户周/月汇总（全量重建前清理）
+     * 
+     * @param afterUserId 区间下界（不含），为空表示不限
+     * @param toUserId 区间上界（含），为空表示不限
+     * @return 影响行数
+     */
+    int deleteUserRollupsInRange(@Param("afterUserId") String afterUserId,
+                                 @Param("toUserId") String toUserId);
+
+    /**
+     * 由用户周/月汇总重新汇总全体用户周/月汇总
+     * 
+     * @param periodType 周期类型（WEEK/MONTH）
+     * @param periodStarts 需要重新汇总的周期起始日期，为空表示全部周期
+     * @return 影响行数
+     */
+    int upsertGlobalRollups(@Param("periodType") String periodType,
+                            @Param("periodStarts") List<LocalDate> periodStarts);
+
+    /**
+     * 删除全部全体用户周/月汇总（全量重建前清理）
+     * 
+     * @return 影响行数
+     */
+    int deleteAllGlobalRollups();
+
+    /**
+     * 查询用户周/月汇总（按周期起始日期升序）
+     * 
+     * @param userId 用户ID
+     * @param periodType 周期类型（WEEK/MONTH）
+     * @param from 周期起始日期下界（含），可为空
+     * @param to 周期起始日期上界（含），可为空
+     * @return List<SleepPeriodRollup> 汇总列表
+     */
+    List<SleepPeriodRollup> selectUserRollups(@Param("userId") String userId,
+                                              @Param("periodType") String periodType,
+                                              @Param("from") LocalDate from,
+                                              @Param("to") LocalDate to);
+
+    /**
+     * 查询全体用户周/月汇总（按周期起始日期升序）
+     * 
+     * @param periodType 周期类型（WEEK/MONTH）
+     * @param from 周期起始日期下界（含），可为空
+     * @param to 周期起始日期上界（含），可为空
+     * @return List<SleepPeriodRollup> 汇总列表
+     */
+    List<SleepPeriodRollup> selectGlobalRollups(@Param("periodType") String periodType,
+                                                @Param("from") LocalDate from,
+                                                @Param("to") LocalDate to);
+
+    /**
+     * 查询任务水位
+     * 
+     * @param jobName 任务名称
+     * @return LocalDateTime 已处理到的处理时间，没有记录时返回null
+     */
+    LocalDateTime selectWatermark(@Param("jobName") String jobName);
+
+    /**
+     * 新增或更新任务水位
+     * 
+     * @param jobName 任务名称
+     * @param watermark 已处理到的处理时间
+     * @return 影响行数
+     */
+    int upsertWatermark(@Param("jobName") String jobName, @Param("watermark") LocalDateTime watermark);
+}
@@ -1,10 +1,13 @@
 package com.sleephelper.mapper;
 
+import com.sleephelper.common.PointsRuleEngine;
+import com.sleephelper.entity.SleepAnalysisSummary;
 import com.sleephelper.entity.SleepPoints;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -24,6 +27,30 @@ public interface SleepPointsMapper {
      */
     int insert(SleepPoints sleepPoints);
 
+    /**
+     * 插入睡眠积分记录，用户ID+日期已存在时不做修改
+     * 依赖 uk_user_date 唯一索引，重复投递的同一晚不会重复生成积分
+     * 
+     * @param sleepPoints 睡眠积分对象
+     * @return 影响行数：1=新增，0=已存在
+     */
+    int insertIfAbsent(SleepPoints sleepPoints);
+
+    /**
+     * 读取睡眠数据并计算、写入当晚积分（一条 INSERT ... SELECT）
+     * 积分在SQL中按规则引擎展开的表达式计算；睡眠数据不存在或积分已存在时不写入
+     * 
+     * @param userId 用户ID
+     * @param date 睡眠日期
+     * @param createdAt 创建时间
+     * @param rules 积分规则
+     * @return int 影响行数：1=新增，0=睡眠数据不存在或积分已存在
+     */
+    int insertFromSummary(@Param("userId") String userId,
+                          @Param("date") LocalDate date,
+                          @Param("createdAt") LocalDateTime createdAt,
+                          @Param("rules") PointsRuleEngine rules);
+
     /**
      * 根据ID查询睡眠积分记录
      * 
@@ -42,6 +69,16 @@ public interface SleepPointsMapper {
     SleepPoints selectByUserIdAndDate(@Param("userId") String userId, 
                                      @Param("date") String date);
 
+    /**
+     * 根据用户ID列表和日期批量查询未删除的积分记录
+     * 
+     * @param userIds 用户ID列表，不能为空（调用方负责分片）
+     * @param date 积分日期
+     * @return List<SleepPoints> 积分记录列表，每个用户至多一条
+     */
+    List<SleepPoints> selectByUserIdsAndDate(@Param("userIds") List<String> userIds,
+                                             @Param("date") LocalDate date);
+
     /**
      * 根据用户ID查询积分历史记录
      * 
@@ -51,7 +88,24 @@ public interface SleepPointsMapper {
     List<SleepPoints> selectByUserId(@Param("userId") String userId);
 
     /**
-     * 计算用户当前总积分
+     * 按积分日期倒序分页查询用户积分历史（keyset分页）
+     * 走 uk_user_date 索引，以上一页最后一条的日期作为游标，不使用OFFSET
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param before 游标日期，只返回早于该日期的记录，第一页为空
+     * @param limit 最多返回条数
+     * @return List<SleepPoints> 积分历史列表
+     */
+    List<SleepPoints> selectPageByUserId(@Param("userId") String userId,
+                                         @Param("from") LocalDate from,
+                                         @Param("to") LocalDate to,
+                                         @Param("before") LocalDate before,
+                                         @Param("limit") int limit);
+
+    /**
+     * 计算用户当前总积分（不含已过期积分）
      * 
      * @param userId 用户ID
      * @return Integer 总积分数量
@@ -65,6 +119,78 @@ public interface SleepPointsMapper {
      */
     List<SleepPoints> selectAll();
 
+    /**
+     * 按主键顺序分页查询记录的用户ID和日期（仅返回id、用户ID、日期三列）
+     * 用于启动时构建布隆过滤器，按主键游标分页避免一次加载全表
+     * 
+     * @param afterId 上一页最后一条记录的主键ID，第一页传0
+     * @param limit 每页条数
+     * @return List<SleepPoints> 仅填充id、用户ID、日期的对象列表
+     */
+    List<SleepPoints> selectKeysAfterId(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 查询处理时间在 [from, to) 内、尚未生成积分的睡眠数据
+     * 用于补偿事件丢失（队列已满、写入失败、进程重启）的情况
+     * 
+     * @param from 处理时间下界（含）
+     * @param to 处理时间上界（不含）
+     * @param limit 最多返回条数
+     * @return List<SleepAnalysisSummary> 睡眠数据列表
+     */
+    List<SleepAnalysisSummary> selectNightsWithoutPoints(@Param("from") LocalDateTime from,
+                                                         @Param("to") LocalDateTime to,
+                                                         @Param("limit") int limit);
+
+    /**
+     * 查询睡眠日期在 [from, to) 内、尚未生成积分的夜晚（回填前登记布隆过滤器用）
+     * 
+     * @param from 睡眠日期下界（含）
+     * @param to 睡眠日期上界（不含）
+     * @return List<SleepPoints> 仅填充用户ID、日期的对象列表
+     */
+    List<SleepPoints> selectNightKeysWithoutPoints(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    /**
+     * 按睡眠日期区间批量回填积分（一条 INSERT ... SELECT）
+     * 积分在SQL中按规则引擎展开的表达式计算，已有积分的夜晚跳过
+     * 
+     * @param from 睡眠日期下界（含）
+     * @param to 睡眠日期上界（不含）
+     * @param createdAt 本次回填写入的创建时间
+     * @param rules 积分规则
+     * @return int 新生成的积分记录数
+     */
+    int backfillPoints(@Param("from") LocalDate from,
+                       @Param("to") LocalDate to,
+                       @Param("createdAt") LocalDateTime createdAt,
+                       @Param("rules") PointsRuleEngine rules);
+
+    /**
+     * 查询存在未过期积分的积分日期
+     * 
+     * @return List<LocalDate> 积分日期列表
+     */
+    List<LocalDate> selectUnexpiredDates();
+
+    /**
+     * 按积分日期查询并锁定一批未过期积分（需在事务内调用）
+     * 
+     * @param date 积分日期
+     * @param limit 最大条数
+     * @return List<SleepPoints> 按ID升序的积分记录
+     */
+    List<SleepPoints> selectUnexpiredByDateForUpdate(@Param("date") LocalDate date, @Param("limit") int limit);
+
+    /**
+     * 标记积分已过期，已过期的记录不再修改
+     * 
+     * @param ids 积分记录ID列表，不能为空
+     * @param expiredAt 过期时间
+     * @return int 本次标记的条数
+     */
+    int markExpired(@Param("ids") List<Long> ids, @Param("expiredAt") LocalDateTime expiredAt);
+
     /**
      * 更新睡眠积分记录
      * 
@@ -0,0 +1,34 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.SleepReport;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+
+/**
+ * AI睡眠报告表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface SleepReportMapper {
+
+    /**
+     * 根据用户ID和睡眠日期查询报告
+     * 
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @return 报告，不存在时返回null
+     */
+    SleepReport selectByUserIdAndDate(@Param("userId") String userId, @Param("dateOfSleep") LocalDate dateOfSleep);
+
+    /**
+     * 保存报告，同一用户同一睡眠日期已有报告时覆盖
+     * 
+     * @param sleepReport 报告
+     * @return 影响行数
+     */
+    int upsert(SleepReport sleepReport);
+}
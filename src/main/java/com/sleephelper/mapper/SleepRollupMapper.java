@@ -0,0 +1,33 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.SleepRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 睡眠数据滚动统计表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface SleepRollupMapper {
+
+    /**
+     * 查询用户所有窗口、所有指标的滚动统计（按主键前缀查询）
+     * 
+     * @param userId 用户ID
+     * @return List<SleepRollup> 滚动统计列表
+     */
+    List<SleepRollup> selectByUserId(@Param("userId") String userId);
+
+    /**
+     * 批量新增或覆盖滚动统计（一条多行语句）
+     * 
+     * @param rows 滚动统计列表，不能为空
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("rows") List<SleepRollup> rows);
+}
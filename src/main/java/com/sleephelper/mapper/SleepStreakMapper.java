@@ -0,0 +1,60 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepStreak;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 用户睡眠连续达标表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface SleepStreakMapper {
+
+    /**
+     * 查询用户的全部连续记录
+     * 
+     * @param userId 用户ID
+     * @return 连续记录列表
+     */
+    List<SleepStreak> selectByUserId(@Param("userId") String userId);
+
+    /**
+     * 查询并锁定用户的一种连续记录（需在事务内调用）
+     * 
+     * @param userId 用户ID
+     * @param streakType 连续类型
+     * @return 连续记录
+     */
+    SleepStreak selectForUpdate(@Param("userId") String userId, @Param("streakType") String streakType);
+
+    /**
+     * 初始化连续记录，已存在时不做修改
+     * 
+     * @param userId 用户ID
+     * @param streakType 连续类型
+     * @return 影响行数
+     */
+    int insertIfAbsent(@Param("userId") String userId, @Param("streakType") String streakType);
+
+    /**
+     * 更新连续记录
+     * 
+     * @param sleepStreak 连续记录
+     * @return 影响行数
+     */
+    int update(SleepStreak sleepStreak);
+
+    /**
+     * 按睡眠日期升序查询用户全部夜晚（仅日期、总睡眠时长、睡眠评分）
+     * 
+     * @param userId 用户ID
+     * @return 睡眠数据列表
+     */
+    List<SleepAnalysisSummary> selectNightsForStreak(@Param("userId") String userId);
+}
@@ -4,6 +4,8 @@ import com.sleephelper.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * 用户表 Mapper 接口
  * 
@@ -20,6 +22,13 @@ public interface UserMapper {
      */
     User selectById(@Param("id") String id);
 
+    /**
+     * 根据用户ID列表批量查询用户信息
+     * @param ids 用户ID列表，不能为空（调用方负责分片）
+     * @return 用户信息列表
+     */
+    List<User> selectByIds(@Param("ids") List<String> ids);
+
     /**
      * 根据钱包地址查询用户信息
      * @param walletAddress 钱包地址
@@ -0,0 +1,126 @@
+package com.sleephelper.mapper;
+
+import com.sleephelper.entity.UserPointsBalance;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 用户积分余额表 Mapper 接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Mapper
+public interface UserPointsBalanceMapper {
+
+    /**
+     * 根据用户ID查询余额（主键查询）
+     * 
+     * @param userId 用户ID
+     * @return UserPointsBalance 余额，没有记录时返回null
+     */
+    UserPointsBalance selectByUserId(@Param("userId") String userId);
+
+    /**
+     * 批量查询余额
+     * 
+     * @param userIds 用户ID列表，不能为空
+     * @return List<UserPointsBalance> 余额列表
+     */
+    List<UserPointsBalance> selectByUserIds(@Param("userIds") List<String> userIds);
+
+    /**
+     * 新增一条积分记录后累加余额，必须与积分记录的插入在同一事务中、且在插入之后执行
+     * 余额行已存在时累加积分并把记录数加1；不存在时按积分明细初始化（已包含刚插入的记录）
+     * 
+     * @param userId 用户ID
+     * @param points 新增的积分
+     * @return 影响行数
+     */
+    int addPoints(@Param("userId") String userId, @Param("points") int points);
+
+    /**
+     * 余额行不存在时按积分明细初始化，已存在时不做修改
+     * 
+     * @param userId 用户ID
+     * @return 影响行数，用户没有积分记录时为0
+     */
+    int initFromLedger(@Param("userId") String userId);
+
+    /**
+     * 批量回填积分后，按积分明细重算本次回填涉及用户的余额，必须与回填在同一事务中执行
+     * 
+     * @param from 回填的睡眠日期下界（含）
+     * @param to 回填的睡眠日期上界（不含）
+     * @param createdAt 本次回填写入的创建时间
+     * @return 影响行数
+     */
+    int refreshBackfilledUsers(@Param("from") LocalDate from,
+                               @Param("to") LocalDate to,
+                               @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * 按用户ID顺序分页汇总积分明细（对账用）
+     * 
+     * @param afterUserId 上一页最后一个用户ID，第一页传null
+     * @param limit 每页用户数
+     * @return List<UserPointsBalance> 每个用户的积分合计和记录数
+     */
+    List<UserPointsBalance> selectLedgerTotalsAfter(@Param("afterUserId") String afterUserId,
+                                                    @Param("limit") int limit);
+
+    /**
+     * 按用户ID顺序分页汇总睡眠日期区间内的积分明细（排行榜重建用）
+     * 
+     * @param from 睡眠日期下界（含）
+     * @param to 睡眠日期上界（不含）
+     * @param afterUserId 上一页最后一个用户ID，第一页传null
+     * @param limit 每页用户数
+     * @return List<UserPointsBalance> 每个用户区间内的积分合计和记录数
+     */
+    List<UserPointsBalance> selectLedgerTotalsBetween(@Param("from") LocalDate from,
+                                                      @Param("to") LocalDate to,
+                                                      @Param("afterUserId") String afterUserId,
+                                                      @Param("limit") int limit);
+
+    /**
+     * 汇总单个用户睡眠日期区间内的积分
+     * 
+     * @param userId 用户ID
+     * @param from 睡眠日期下界（含）
+     * @param to 睡眠日期上界（不含）
+     * @return long 积分合计，没有记录时为0
+     */
+    long sumLedgerPointsBetween(@Param("userId") String userId,
+                                @Param("from") LocalDate from,
+                                @Param("to") LocalDate to);
+
+    /**
+     * 按积分记录扣减过期积分，必须与标记过期在同一事务中、且只传入本次标记的记录
+     * 没有余额行的用户不扣减（首次累加时按未过期的积分明细初始化）
+     * 
+     * @param ids 本次过期的积分记录ID列表，不能为空
+     * @return 影响行数
+     */
+    int subtractExpired(@Param("ids") List<Long> ids);
+
+    /**
+     * 校正余额，仅当余额仍等于对账时读到的值才更新，避免覆盖对账期间的新写入
+     * 
+     * @param userId 用户ID
+     * @param expectedPoints 对账时读到的总积分
+     * @param expectedCount 对账时读到的记录数
+     * @param totalPoints 积分明细合计
+     * @param recordCount 积分明细记录数
+     * @return 影响行数，余额已变化时为0
+     */
+    int correctBalance(@Param("userId") String userId,
+                       @Param("expectedPoints") long expectedPoints,
+                       @Param("expectedCount") int expectedCount,
+                       @Param("totalPoints") long totalPoints,
+                       @Param("recordCount") int recordCount);
+}
@@ -16,7 +16,7 @@ public interface AuraLinkPoints2Service {
 	//BigInteger getBalance(String userAddress) throws Exception;
 
 	/**
-	 * 为指定地址铸造代币。
+	 * 为指定地址铸造代币，成功后为该用户追加铸造流水。
 	 * @param toAddress 接收地址（0x开头）
 	 * @param amount 铸造数量（基础单位，将在实现中乘以 10^18）
 	 * @return 交易哈希
@@ -55,19 +55,21 @@ public interface AuraLinkPoints2Service {
 
 	/**
 	 * 转发客户端已完成 EIP-712 签名的销毁元交易。
+	 * 销毁成功后为该地址对应的用户追加销毁流水。
 	 * @param request 元交易请求（包含 from、amount、nonce、gas、signature）
 	 * @return 业务结果（成功标记、交易哈希、消息）
 	 */
-	//BurnResult relayBurnWithMeta(MetaBurnRequest request);
+	BurnResult relayBurnWithMeta(MetaBurnRequest request);
 
 	/**
 	 * 直接调用合约的 burnFrom 进行销毁（非元交易）。
+	 * 销毁成功后为该地址对应的用户追加销毁流水。
 	 * @param from 被销毁代币的地址
 	 * @param amount 销毁数量（基础单位，将在实现中乘以 10^18）
 	 * @return 交易哈希
 	 * @throws Exception 链上回滚或网络异常
 	 */
-	//String burnFromDirect(String from, BigInteger amount) throws Exception;
+	String burnFromDirect(String from, BigInteger amount) throws Exception;
 
 	/**
 	 * 获取前端发起 EIP-712 签名所需的 Forwarder 参数（域、nonce、gas、functionData 等）。
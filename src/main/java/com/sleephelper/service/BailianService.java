@@ -2,24 +2,42 @@ package com.sleephelper.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sleephelper.common.OutboundRateLimiter;
+import com.sleephelper.common.OutboundRateLimiter.Outcome;
+import com.sleephelper.common.OutboundRateLimiter.Priority;
+import com.sleephelper.common.SingleFlight;
 import com.sleephelper.config.BailianConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * 阿里云百炼大模型服务类
  * 负责调用阿里云百炼API进行文本生成
+ * 所有调用先经过限流器放行（请求数/token数令牌桶 + 自适应并发上限），超出时按优先级排队，聊天优先于报告生成
  * 
  * @author SleepHelper
  * @since 2024-01-01
@@ -36,56 +54,229 @@ public class BailianService {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_EVENT_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    /**
+     * 调用百炼API的客户端，启动时按配置创建一次，所有请求共用同一连接池
+     */
+    private WebClient webClient;
+
+    /**
+     * 提示词相同的进行中调用
+     */
+    private final SingleFlight<String, String> textFlights = new SingleFlight<>();
+
+    /**
+     * 调用限流器，未启用时为null
+     */
+    private OutboundRateLimiter limiter;
+
+    /**
+     * 按配置创建客户端（在共享的Builder副本上设置，避免重复追加默认请求头）和限流器
+     */
+    @PostConstruct
+    public void init() {
+        webClient = webClientBuilder.clone()
+                .baseUrl(bailianConfig.getEndpoint())
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + bailianConfig.getApiKey())
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+        if (Boolean.TRUE.equals(bailianConfig.getLimiterEnabled())) {
+            OutboundRateLimiter.Settings settings = new OutboundRateLimiter.Settings();
+            settings.setRequestsPerMinute(bailianConfig.getLimiterRequestsPerMinute());
+            settings.setTokensPerMinute(bailianConfig.getLimiterTokensPerMinute());
+            settings.setInitialConcurrency(bailianConfig.getLimiterInitialConcurrency());
+            settings.setMinConcurrency(bailianConfig.getLimiterMinConcurrency());
+            settings.setMaxConcurrency(bailianConfig.getLimiterMaxConcurrency());
+            settings.setLatencyThresholdMillis(bailianConfig.getLimiterLatencyThresholdMs());
+            settings.setBackoffRatio(bailianConfig.getLimiterBackoffRatio());
+            settings.setMaxQueueSize(bailianConfig.getLimiterMaxQueueSize());
+            settings.setQueueTimeoutMillis(bailianConfig.getLimiterQueueTimeoutMs());
+            limiter = new OutboundRateLimiter("bailian", settings);
+        }
+    }
+
+    /**
+     * 停止限流器，排队中的调用以失败结束
+     */
+    @PreDestroy
+    public void destroy() {
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
     /**
      * 调用阿里云百炼API生成文本
+     * 返回的Mono在订阅时发起请求，等待响应期间不占用线程；调用失败时以友好提示文本结束，不会以错误结束
      * 
      * @param prompt 输入提示词
+     * @param priority 限流排队优先级
      * @return 生成的文本内容
      */
-    public String generateText(String prompt) {
-        try {
+    public Mono<String> generateText(String prompt, Priority priority) {
+        return generateTextOrError(prompt, priority).onErrorResume(e -> Mono.just(e.getMessage()));
+    }
+
+    /**
+     * 调用阿里云百炼API生成文本，调用失败时以 IllegalStateException 结束（异常信息为友好提示）
+     * 供需要区分生成结果与失败提示的调用方使用（如只缓存成功生成的报告）
+     * 提示词相同的并发调用合并为一次API调用，共享同一结果（用户重复点击、客户端重试时不重复计费），
+     * 合并后的调用按第一个调用方的优先级排队
+     * 
+     * @param prompt 输入提示词
+     * @param priority 限流排队优先级
+     * @return 生成的文本内容
+     */
+    public Mono<String> generateTextOrError(String prompt, Priority priority) {
+        return textFlights.execute(prompt, () -> requestText(prompt, priority));
+    }
+
+    /**
+     * 文本生成调用合并统计
+     * 
+     * @return 请求数、实际调用数、被合并的请求数及合并比例
+     */
+    public Map<String, Object> getCoalescingStats() {
+        return textFlights.getStats();
+    }
+
+    /**
+     * 调用限流器状态
+     * 
+     * @return 并发上限、进行中和排队数、剩余令牌及各类计数，未启用时只有 enabled=false
+     */
+    public Map<String, Object> getLimiterStats() {
+        if (limiter == null) {
+            return Map.of("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(limiter.getStats());
+        return stats;
+    }
+
+    /**
+     * 经限流器放行后发起一次文本生成调用
+     * 
+     * @param prompt 输入提示词
+     * @param priority 限流排队优先级
+     * @return 生成的文本内容，失败（含排队超时）时以 IllegalStateException 结束
+     */
+    private Mono<String> requestText(String prompt, Priority priority) {
+        return withPermit(prompt, priority, usedTokens -> Mono.defer(() -> {
             log.info("开始调用阿里云百炼API，模型：{}，提示词长度：{}", bailianConfig.getModel(), prompt.length());
 
             // 构建请求体
-            Map<String, Object> requestBody = buildRequestBody(prompt);
-
-            // 创建WebClient
-            WebClient webClient = webClientBuilder
-                    .baseUrl(bailianConfig.getEndpoint())
-                    .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + bailianConfig.getApiKey())
-                    .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                    .build();
+            Map<String, Object> requestBody = buildRequestBody(prompt, false);
 
             // 发送请求
-            String response = webClient.post()
+            return webClient.post()
                     .bodyValue(requestBody)
                     .retrieve()
                     .bodyToMono(String.class)
-                    .timeout(Duration.ofMillis(bailianConfig.getTimeout()))
-                    .block();
-
+                    .timeout(Duration.ofMillis(bailianConfig.getTimeout()));
+        }).map(response -> {
             // 解析响应
-            String generatedText = parseResponse(response);
-            
+            String generatedText = parseResponse(response, usedTokens);
+
             log.info("阿里云百炼API调用成功，生成文本长度：{}", generatedText.length());
             return generatedText;
+        }).flux()).singleOrEmpty().onErrorMap(e -> !(e instanceof IllegalStateException), this::toFriendlyError);
+    }
 
-        } catch (WebClientResponseException e) {
-            log.error("阿里云百炼API调用失败，HTTP状态码：{}，响应体：{}", e.getStatusCode(), e.getResponseBodyAsString());
-            return handleApiError(e);
-        } catch (Exception e) {
-            log.error("阿里云百炼API调用异常：{}", e.getMessage(), e);
-            return "抱歉，AI服务暂时不可用，请稍后重试。";
+    /**
+     * 以SSE流式调用阿里云百炼API，逐段返回生成的文本
+     * 使用增量输出模式，每个元素是新生成的片段；两个片段之间超过请求超时时间未收到数据时以超时结束
+     * 调用失败时以 IllegalStateException 结束，异常信息为友好提示，已发出的片段不会撤回
+     * 
+     * @param prompt 输入提示词
+     * @param priority 限流排队优先级
+     * @return 生成的文本片段
+     */
+    public Flux<String> streamText(String prompt, Priority priority) {
+        return withPermit(prompt, priority, usedTokens -> Flux.defer(() -> {
+            log.info("开始流式调用阿里云百炼API，模型：{}，提示词长度：{}", bailianConfig.getModel(), prompt.length());
+            long start = System.currentTimeMillis();
+            AtomicBoolean firstChunk = new AtomicBoolean(true);
+            AtomicInteger length = new AtomicInteger();
+
+            return webClient.post()
+                    .header("X-DashScope-SSE", "enable")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(buildRequestBody(prompt, true))
+                    .retrieve()
+                    .bodyToFlux(SSE_EVENT_TYPE)
+                    .timeout(Duration.ofMillis(bailianConfig.getTimeout()))
+                    .map(event -> parseChunk(event, usedTokens))
+                    .filter(chunk -> !chunk.isEmpty())
+                    .doOnNext(chunk -> {
+                        if (firstChunk.compareAndSet(true, false)) {
+                            log.info("阿里云百炼API首个片段返回，耗时：{}ms", System.currentTimeMillis() - start);
+                        }
+                        length.addAndGet(chunk.length());
+                    })
+                    .doOnComplete(() -> log.info("阿里云百炼API流式调用完成，生成文本长度：{}，耗时：{}ms",
+                            length.get(), System.currentTimeMillis() - start));
+        })).onErrorMap(e -> !(e instanceof IllegalStateException), this::toFriendlyError);
+    }
+
+    /**
+     * 取得限流许可后执行调用，调用结束（完成、失败或取消）时按结果释放许可
+     * 预估token数为提示词长度加最大生成token数，调用方把响应中的实际用量写入 usedTokens 后按实际用量修正
+     * 并发上限按放行到首个元素的延迟调整，流式调用不会因生成时间长而被判为过载
+     * 许可已取得但订阅方在调用开始前取消时，许可被Reactor丢弃，此时按 IGNORED 释放，避免占用并发名额
+     * 
+     * @param prompt 输入提示词
+     * @param priority 限流排队优先级
+     * @param call 实际调用，入参为实际token用量（未知时保持-1）
+     * @return 调用结果，排队超时或队列已满时以 IllegalStateException 结束
+     */
+    private <T> Flux<T> withPermit(String prompt, Priority priority, Function<AtomicLong, Flux<T>> call) {
+        if (limiter == null) {
+            return call.apply(new AtomicLong(-1));
+        }
+        long estimatedTokens = (long) prompt.length() + bailianConfig.getMaxTokens();
+        return Mono.fromFuture(() -> limiter.acquire(priority, estimatedTokens))
+                .doOnDiscard(OutboundRateLimiter.Permit.class, permit -> permit.release(Outcome.IGNORED, -1))
+                .flatMapMany(permit -> {
+                    AtomicLong usedTokens = new AtomicLong(-1);
+                    AtomicReference<Throwable> error = new AtomicReference<>();
+                    return call.apply(usedTokens)
+                            .doOnNext(item -> permit.markFirstResponse())
+                            .doOnError(error::set)
+                            .doFinally(signal -> permit.release(outcomeOf(signal, error.get()), usedTokens.get()));
+                });
+    }
+
+    /**
+     * 按调用结束信号和异常判断调用结果：429为被限流，超时和5xx为过载，其余错误与对方负载无关
+     */
+    private Outcome outcomeOf(SignalType signal, Throwable error) {
+        if (signal == SignalType.ON_COMPLETE) {
+            return Outcome.SUCCESS;
+        }
+        if (signal != SignalType.ON_ERROR || error == null) {
+            return Outcome.IGNORED;
+        }
+        if (error instanceof WebClientResponseException responseException) {
+            if (responseException.getStatusCode().value() == 429) {
+                return Outcome.RATE_LIMITED;
+            }
+            return responseException.getStatusCode().is5xxServerError() ? Outcome.DROPPED : Outcome.IGNORED;
         }
+        return error instanceof TimeoutException ? Outcome.DROPPED : Outcome.IGNORED;
     }
 
     /**
      * 构建请求体
      * 
      * @param prompt 输入提示词
+     * @param incremental 是否增量输出（流式调用时每个事件只包含新生成的片段）
      * @return 请求体Map
      */
-    private Map<String, Object> buildRequestBody(String prompt) {
+    private Map<String, Object> buildRequestBody(String prompt, boolean incremental) {
         Map<String, Object> requestBody = new HashMap<>();
         
         // 模型参数
@@ -93,6 +284,9 @@ public class BailianService {
         parameters.put("temperature", bailianConfig.getTemperature());
         parameters.put("top_p", bailianConfig.getTopP());
         parameters.put("max_tokens", bailianConfig.getMaxTokens());
+        if (incremental) {
+            parameters.put("incremental_output", true);
+        }
         
         // 消息内容
         Map<String, Object> message = new HashMap<>();
@@ -110,41 +304,118 @@ public class BailianService {
      * 解析API响应
      * 
      * @param response API响应字符串
+     * @param usedTokens 写入响应中的实际token用量
      * @return 生成的文本内容
+     * @throws IllegalStateException API返回错误或无法解析时抛出，异常信息为友好提示
      */
-    private String parseResponse(String response) {
+    private String parseResponse(String response, AtomicLong usedTokens) {
+        JsonNode rootNode;
         try {
-            JsonNode rootNode = objectMapper.readTree(response);
-            
-            // 检查是否有错误
-            if (rootNode.has("error")) {
-                String errorMessage = rootNode.get("error").get("message").asText();
-                log.error("阿里云百炼API返回错误：{}", errorMessage);
-                return "抱歉，AI服务返回错误：" + errorMessage;
-            }
-            
-            // 提取生成的文本
-            JsonNode outputNode = rootNode.path("output");
-            if (outputNode.has("text")) {
-                return outputNode.get("text").asText();
-            }
-            
-            // 尝试从choices中提取
-            JsonNode choicesNode = rootNode.path("output").path("choices");
-            if (choicesNode.isArray() && choicesNode.size() > 0) {
-                JsonNode firstChoice = choicesNode.get(0);
-                if (firstChoice.has("message") && firstChoice.get("message").has("content")) {
-                    return firstChoice.get("message").get("content").asText();
-                }
-            }
-            
-            log.warn("无法从API响应中提取文本内容，原始响应：{}", response);
-            return "抱歉，无法解析AI响应内容。";
-            
+            rootNode = objectMapper.readTree(response);
         } catch (Exception e) {
             log.error("解析阿里云百炼API响应失败：{}", e.getMessage(), e);
-            return "抱歉，AI响应解析失败。";
+            throw new IllegalStateException("抱歉，AI响应解析失败。", e);
+        }
+        
+        recordUsage(rootNode, usedTokens);
+
+        // 检查是否有错误
+        if (rootNode.has("error")) {
+            String errorMessage = rootNode.get("error").get("message").asText();
+            log.error("阿里云百炼API返回错误：{}", errorMessage);
+            throw new IllegalStateException("抱歉，AI服务返回错误：" + errorMessage);
+        }
+        
+        // 提取生成的文本
+        String text = extractText(rootNode);
+        if (text == null) {
+            log.warn("无法从API响应中提取文本内容，原始响应：{}", response);
+            throw new IllegalStateException("抱歉，无法解析AI响应内容。");
+        }
+        return text;
+    }
+
+    /**
+     * 解析流式响应的一个SSE事件
+     * 
+     * @param event SSE事件，数据为一段响应JSON
+     * @param usedTokens 写入截至本事件的实际token用量
+     * @return 本事件新生成的文本片段，没有文本时为空串
+     */
+    private String parseChunk(ServerSentEvent<String> event, AtomicLong usedTokens) {
+        String data = event.data();
+        if (data == null || data.isBlank()) {
+            return "";
+        }
+        JsonNode rootNode;
+        try {
+            rootNode = objectMapper.readTree(data);
+        } catch (Exception e) {
+            log.error("解析阿里云百炼API流式响应失败：{}，原始数据：{}", e.getMessage(), data);
+            throw new IllegalStateException("抱歉，AI响应解析失败。", e);
+        }
+        if ("error".equals(event.event()) || rootNode.has("error")) {
+            String errorMessage = rootNode.has("error")
+                    ? rootNode.path("error").path("message").asText()
+                    : rootNode.path("message").asText();
+            log.error("阿里云百炼API流式返回错误：{}", errorMessage);
+            throw new IllegalStateException("抱歉，AI服务返回错误：" + errorMessage);
+        }
+        recordUsage(rootNode, usedTokens);
+        String text = extractText(rootNode);
+        return text != null ? text : "";
+    }
+
+    /**
+     * 记录响应中的token用量：优先 usage.total_tokens，其次 input_tokens + output_tokens，都没有时不记录
+     * 
+     * @param rootNode 响应JSON
+     * @param usedTokens 实际token用量
+     */
+    private void recordUsage(JsonNode rootNode, AtomicLong usedTokens) {
+        JsonNode usageNode = rootNode.path("usage");
+        if (usageNode.has("total_tokens")) {
+            usedTokens.set(usageNode.get("total_tokens").asLong());
+        } else if (usageNode.has("input_tokens") && usageNode.has("output_tokens")) {
+            usedTokens.set(usageNode.get("input_tokens").asLong() + usageNode.get("output_tokens").asLong());
+        }
+    }
+
+    /**
+     * 从响应JSON中提取文本：优先 output.text，其次 output.choices[0].message.content
+     * 
+     * @param rootNode 响应JSON
+     * @return 文本内容，没有时返回null
+     */
+    private String extractText(JsonNode rootNode) {
+        JsonNode outputNode = rootNode.path("output");
+        if (outputNode.has("text")) {
+            return outputNode.get("text").asText();
+        }
+        JsonNode choicesNode = outputNode.path("choices");
+        if (choicesNode.isArray() && choicesNode.size() > 0) {
+            JsonNode firstChoice = choicesNode.get(0);
+            if (firstChoice.has("message") && firstChoice.get("message").has("content")) {
+                return firstChoice.get("message").get("content").asText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把调用异常转换为携带友好提示的 IllegalStateException
+     * 
+     * @param e 调用异常
+     * @return 异常信息为友好提示的 IllegalStateException
+     */
+    private IllegalStateException toFriendlyError(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            log.error("阿里云百炼API调用失败，HTTP状态码：{}，响应体：{}",
+                    responseException.getStatusCode(), responseException.getResponseBodyAsString());
+            return new IllegalStateException(handleApiError(responseException), e);
         }
+        log.error("阿里云百炼API调用异常：{}", e.getMessage(), e);
+        return new IllegalStateException("抱歉，AI服务暂时不可用，请稍后重试。", e);
     }
 
     /**
@@ -0,0 +1,35 @@
+package com.sleephelper.service;
+
+import java.util.Map;
+
+/**
+ * 积分过期 服务接口
+ * 积分日期加上有效天数即为到期日；到期日登记在按天计时的分层时间轮中，
+ * 到期后按积分日期分批标记过期、扣减余额并记录过期流水，不扫描整张积分表
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface PointsExpiryService {
+
+    /**
+     * 把时间轮推进到今天，处理全部已到期的积分日期
+     * 
+     * @return Map 到期日期数、过期记录数、过期积分、失败日期数、耗时
+     */
+    Map<String, Object> expireDue();
+
+    /**
+     * 按积分表中未过期积分的日期重建时间轮
+     * 
+     * @return Map 登记的到期日数、其中已到期的日期数、耗时
+     */
+    Map<String, Object> rebuild();
+
+    /**
+     * 查询时间轮及累计过期统计
+     * 
+     * @return Map 是否开启、有效天数、待到期日期数、时间轮层数、累计过期记录数及积分
+     */
+    Map<String, Object> getStats();
+}
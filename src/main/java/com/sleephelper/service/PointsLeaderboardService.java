@@ -0,0 +1,49 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.LeaderboardEntry;
+import com.sleephelper.bean.LeaderboardPeriod;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 积分排行榜 服务接口
+ * 日榜、周榜、总榜保存在内存有序跳表中，由积分写入实时更新，启动时及周期切换时从积分明细重建
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface PointsLeaderboardService {
+
+    /**
+     * 查询排行榜前N名
+     * 
+     * @param period 排行榜周期
+     * @param limit 条数
+     * @return List<LeaderboardEntry> 按名次升序的排行榜条目
+     */
+    List<LeaderboardEntry> getLeaderboard(LeaderboardPeriod period, int limit);
+
+    /**
+     * 查询用户名次
+     * 
+     * @param period 排行榜周期
+     * @param userId 用户ID
+     * @return LeaderboardEntry 名次及周期内积分，用户未上榜时返回null
+     */
+    LeaderboardEntry getRank(LeaderboardPeriod period, String userId);
+
+    /**
+     * 从积分明细重建所有排行榜
+     * 
+     * @return Map 各排行榜的周期起始日期、上榜用户数及耗时
+     */
+    Map<String, Object> rebuild();
+
+    /**
+     * 排行榜统计
+     * 
+     * @return Map 是否开启、各排行榜的周期起始日期及上榜用户数
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,73 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.PointsLedgerBalance;
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.entity.PointsLedgerEntry;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 积分流水 服务接口
+ * 流水只追加不修改；定时把新流水按用户汇总进快照，余额 = 快照 + 快照之后的少量流水
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface PointsLedgerService {
+
+    /**
+     * 追加一条流水，同一用户、类型、来源标识已记录时跳过
+     * 
+     * @param userId 用户ID
+     * @param entryType 流水类型
+     * @param amount 数量（正数）
+     * @param refId 来源标识：积分日期或交易哈希
+     * @return boolean 是否新增
+     */
+    boolean append(String userId, PointsLedgerEntryType entryType, long amount, String refId);
+
+    /**
+     * 批量追加流水，按批大小分片，每片一条SQL
+     * 在调用方事务中执行时与调用方一起提交或回滚
+     * 
+     * @param entries 流水列表
+     * @return int 新增条数
+     */
+    int appendBatch(List<PointsLedgerEntry> entries);
+
+    /**
+     * 积分回填后补记本次回填新增积分的获得流水
+     * 必须在回填积分的同一事务中、回填之后调用
+     * 
+     * @param from 回填的睡眠日期下界（含）
+     * @param to 回填的睡眠日期上界（不含）
+     * @param createdAt 本次回填写入的创建时间
+     * @return int 新增条数
+     */
+    int appendBackfilled(LocalDate from, LocalDate to, LocalDateTime createdAt);
+
+    /**
+     * 查询用户流水余额（快照 + 快照之后的流水）
+     * 
+     * @param userId 用户ID
+     * @return PointsLedgerBalance 各类型累计及可铸造、链上数量
+     */
+    PointsLedgerBalance getBalance(String userId);
+
+    /**
+     * 把快照进度之后、已提交且之前没有未提交流水的流水按用户并入快照
+     * 
+     * @return Map 快照进度、并入的流水区间及影响用户数、耗时
+     */
+    Map<String, Object> snapshot();
+
+    /**
+     * 为流水上线前已存在的积分记录补记获得流水，已记录的跳过
+     * 
+     * @return Map 扫描的积分记录ID上界、新增条数、耗时
+     */
+    Map<String, Object> syncEarnedFromPoints();
+}
@@ -1,14 +1,21 @@
 package com.sleephelper.service;
 
 import com.sleephelper.ai.PromptTemplates;
+import com.sleephelper.cache.RecentNightsStore;
+import com.sleephelper.common.OutboundRateLimiter.Priority;
+import com.sleephelper.common.SingleFlight;
 import com.sleephelper.entity.SleepAnalysisSummary;
 import com.sleephelper.service.SleepAnalysisSummaryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 
 /**
  * 睡眠AI服务类
@@ -27,46 +34,151 @@ public class SleepAIService {
     @Autowired
     private SleepAnalysisSummaryService sleepAnalysisSummaryService;
 
+    @Autowired
+    private SleepReportService sleepReportService;
+
+    @Autowired
+    private RecentNightsStore recentNightsStore;
+
+    /**
+     * 同一用户同一睡眠日期进行中的报告生成
+     */
+    private final SingleFlight<String, String> reportFlights = new SingleFlight<>();
+
     /**
      * 生成AI睡眠报告
+     * 睡眠数据未变化时直接返回已生成的报告；否则调用大模型生成，成功生成的报告在后台保存供后续复用。
+     * 同一用户同一睡眠日期的并发请求（重复点击、客户端重试）合并为一次生成，共享同一结果。
+     * 睡眠数据和已生成报告在订阅时同步查询（走缓存，耗时短），之后等待大模型响应期间不占用线程
      * 
      * @param userId 用户ID
      * @param dateOfSleep 睡眠日期
-     * @return AI生成的睡眠报告
+     * @return AI生成的睡眠报告，失败时为提示文本或兜底报告
      */
-    public String generateSleepReport(String userId, LocalDate dateOfSleep) {
-        try {
+    public Mono<String> generateSleepReport(String userId, LocalDate dateOfSleep) {
+        return reportFlights.execute(userId + '|' + dateOfSleep, () -> buildSleepReport(userId, dateOfSleep));
+    }
+
+    /**
+     * 睡眠报告生成调用合并统计
+     * 
+     * @return 请求数、实际生成数、被合并的请求数及合并比例
+     */
+    public Map<String, Object> getCoalescingStats() {
+        return reportFlights.getStats();
+    }
+
+    /**
+     * 生成一次AI睡眠报告（查询睡眠数据、复用或生成报告）
+     * 
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @return AI生成的睡眠报告，失败时为提示文本或兜底报告
+     */
+    private Mono<String> buildSleepReport(String userId, LocalDate dateOfSleep) {
+        return Mono.defer(() -> {
             log.info("开始生成AI睡眠报告，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
             
             // 1. 获取用户睡眠数据
-            SleepAnalysisSummary sleepData = sleepAnalysisSummaryService.getSleepDataByUserIdAndDate(userId, dateOfSleep);
+            SleepAnalysisSummary sleepData = findSleepData(userId, dateOfSleep);
             if (sleepData == null) {
                 log.warn("未找到睡眠数据，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
-                return generateDefaultReport();
+                return Mono.just(generateDefaultReport());
             }
             
-            // 2. 构建Prompt
-            String prompt = PromptTemplates.getSleepReportPrompt(
-                sleepData.getSleepScore(),
-                sleepData.getDeepSleepDuration(),
-                sleepData.getTotalSleepDuration(),
-                dateOfSleep.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日"))
-            );
-            
-            log.debug("生成睡眠报告Prompt: {}", prompt);
+            // 2. 睡眠数据未变化时复用已生成的报告
+            String cachedReport = sleepReportService.getCachedReport(sleepData);
+            if (cachedReport != null) {
+                log.info("复用已生成的AI睡眠报告，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
+                return Mono.just(cachedReport);
+            }
             
-            // 3. 调用阿里云百炼生成报告
-            String aiReport = bailianService.generateText(prompt);
+            // 3. 调用阿里云百炼生成报告，只保存成功生成的报告
+            return bailianService.generateTextOrError(buildReportPrompt(sleepData, dateOfSleep), Priority.BACKGROUND)
+                    .doOnNext(aiReport -> {
+                        log.info("AI睡眠报告生成成功，用户ID: {}, 报告长度: {} 字符", userId, aiReport.length());
+                        saveReportInBackground(sleepData, aiReport);
+                    })
+                    .onErrorResume(IllegalStateException.class, e -> Mono.just(e.getMessage()));
+        }).onErrorResume(e -> {
+            log.error("生成AI睡眠报告失败，用户ID: {}, 睡眠日期: {}, 错误: {}", 
+                    userId, dateOfSleep, e.getMessage(), e);
+            return Mono.just(generateErrorReport());
+        });
+    }
+
+    /**
+     * 流式生成AI睡眠报告，逐段返回
+     * 没有睡眠数据时一次返回默认报告，睡眠数据未变化时一次返回已生成的报告；
+     * 完整生成结束后在后台保存拼接好的报告
+     * 
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @return 报告片段，失败时以 IllegalStateException 结束
+     */
+    public Flux<String> streamSleepReport(String userId, LocalDate dateOfSleep) {
+        return Flux.defer(() -> {
+            log.info("开始流式生成AI睡眠报告，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
             
-            log.info("AI睡眠报告生成成功，用户ID: {}, 报告长度: {} 字符", userId, aiReport.length());
+            SleepAnalysisSummary sleepData = findSleepData(userId, dateOfSleep);
+            if (sleepData == null) {
+                log.warn("未找到睡眠数据，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
+                return Flux.just(generateDefaultReport());
+            }
             
-            return aiReport;
+            String cachedReport = sleepReportService.getCachedReport(sleepData);
+            if (cachedReport != null) {
+                log.info("复用已生成的AI睡眠报告，用户ID: {}, 睡眠日期: {}", userId, dateOfSleep);
+                return Flux.just(cachedReport);
+            }
             
-        } catch (Exception e) {
-            log.error("生成AI睡眠报告失败，用户ID: {}, 睡眠日期: {}, 错误: {}", 
-                    userId, dateOfSleep, e.getMessage(), e);
-            return generateErrorReport();
-        }
+            StringBuilder aiReport = new StringBuilder();
+            return bailianService.streamText(buildReportPrompt(sleepData, dateOfSleep), Priority.BACKGROUND)
+                    .doOnNext(aiReport::append)
+                    .doOnComplete(() -> saveReportInBackground(sleepData, aiReport.toString()));
+        }).doOnError(e -> log.error("流式生成AI睡眠报告失败，用户ID: {}, 睡眠日期: {}, 错误: {}", 
+                userId, dateOfSleep, e.getMessage()));
+    }
+
+    /**
+     * 查询生成报告所需的睡眠数据：最近N晚从内存序列读取，不在其中时（较早的日期或刚提交尚未计入）查询数据库
+     * 
+     * @param userId 用户ID
+     * @param dateOfSleep 睡眠日期
+     * @return 睡眠数据，不存在时返回null
+     */
+    private SleepAnalysisSummary findSleepData(String userId, LocalDate dateOfSleep) {
+        SleepAnalysisSummary sleepData = recentNightsStore.getNight(userId, dateOfSleep);
+        return sleepData != null ? sleepData : sleepAnalysisSummaryService.getSleepDataByUserIdAndDate(userId, dateOfSleep);
+    }
+
+    /**
+     * 构建报告Prompt
+     * 
+     * @param sleepData 睡眠数据
+     * @param dateOfSleep 睡眠日期
+     * @return 报告Prompt
+     */
+    private String buildReportPrompt(SleepAnalysisSummary sleepData, LocalDate dateOfSleep) {
+        String prompt = PromptTemplates.getSleepReportPrompt(
+            sleepData.getSleepScore(),
+            sleepData.getDeepSleepDuration(),
+            sleepData.getTotalSleepDuration(),
+            dateOfSleep.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日"))
+        );
+        
+        log.debug("生成睡眠报告Prompt: {}", prompt);
+        return prompt;
+    }
+
+    /**
+     * 在后台线程保存生成的报告，不阻塞响应所在的网络线程
+     * 
+     * @param sleepData 生成报告时使用的睡眠数据
+     * @param aiReport 报告内容
+     */
+    private void saveReportInBackground(SleepAnalysisSummary sleepData, String aiReport) {
+        Schedulers.boundedElastic().schedule(() -> sleepReportService.saveReport(sleepData, aiReport));
     }
 
     /**
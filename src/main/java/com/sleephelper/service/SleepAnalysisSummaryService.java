@@ -1,9 +1,17 @@
 package com.sleephelper.service;
 
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.bean.SleepDataBatchResult;
+import com.sleephelper.bean.SleepDataImportResult;
+import com.sleephelper.bean.SleepDataRowStatus;
 import com.sleephelper.entity.SleepAnalysisSummary;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 睡眠分析汇总表 服务接口
@@ -21,6 +29,65 @@ public interface SleepAnalysisSummaryService {
      */
     boolean addSleepData(SleepAnalysisSummary sleepData);
 
+    /**
+     * 提交一条睡眠数据写入，返回写入完成时的Future
+     * 开启写后缓冲时进入队列按组提交；未开启或队列已满时同步写入，返回已完成的Future
+     *
+     * @param sleepData 睡眠数据对象
+     * @return CompletableFuture<SleepDataBatchResult.RowResult> 所在事务提交后完成
+     */
+    CompletableFuture<SleepDataBatchResult.RowResult> submitSleepData(SleepAnalysisSummary sleepData);
+
+    /**
+     * 获取按用户ID+睡眠日期查询的本地缓存统计
+     *
+     * @return Map<String, Object> 命中、未命中、淘汰次数等
+     */
+    Map<String, Object> getCacheStats();
+
+    /**
+     * 获取写后缓冲运行指标（队列深度、刷写耗时等）
+     *
+     * @return Map<String, Object> 指标，未开启写后缓冲时仅返回enabled=false
+     */
+    Map<String, Object> getWriteBufferMetrics();
+
+    /**
+     * 批量新增睡眠数据
+     * 按配置的分片大小切分，每个分片一条多行INSERT并单独提交
+     *
+     * @param sleepDataList 睡眠数据列表
+     * @return SleepDataBatchResult 逐行写入结果
+     */
+    SleepDataBatchResult addSleepDataBatch(List<SleepAnalysisSummary> sleepDataList);
+
+    /**
+     * 新增或更新睡眠数据（按用户ID+睡眠日期幂等）
+     * 重复上传同一晚的数据不会报唯一键冲突，无需先查询是否存在
+     *
+     * @param sleepData 睡眠数据对象
+     * @return SleepDataRowStatus 新增、更新或数据未变化
+     */
+    SleepDataRowStatus upsertSleepData(SleepAnalysisSummary sleepData);
+
+    /**
+     * 批量新增或更新睡眠数据
+     *
+     * @param sleepDataList 睡眠数据列表
+     * @return SleepDataBatchResult 逐行结果
+     */
+    SleepDataBatchResult upsertSleepDataBatch(List<SleepAnalysisSummary> sleepDataList);
+
+    /**
+     * 流式导入睡眠数据（NDJSON，每行一个JSON对象）
+     * 逐行解析校验，按分片写入，内存占用与输入大小无关
+     *
+     * @param inputStream NDJSON输入流
+     * @return SleepDataImportResult 导入计数及被拒绝行的位置
+     * @throws IOException 读取输入流失败
+     */
+    SleepDataImportResult importSleepDataStream(InputStream inputStream) throws IOException;
+
     /**
      * 根据用户ID和睡眠日期查询睡眠记录
      * 
@@ -30,6 +97,16 @@ public interface SleepAnalysisSummaryService {
      */
     SleepAnalysisSummary getSleepDataByUserIdAndDate(String userId, LocalDate dateOfSleep);
 
+    /**
+     * 批量查询多个用户同一睡眠日期的睡眠记录
+     * 按配置的分片大小每片一条 IN 查询，不经过本地缓存，适用于按用户批量处理的定时任务
+     * 
+     * @param userIds 用户ID列表
+     * @param dateOfSleep 睡眠日期
+     * @return Map<String, SleepAnalysisSummary> 用户ID到睡眠记录，没有记录的用户不在结果中
+     */
+    Map<String, SleepAnalysisSummary> getSleepDataByUserIdsAndDate(List<String> userIds, LocalDate dateOfSleep);
+
     /**
      * 批量插入模拟测试数据
      * 
@@ -44,4 +121,17 @@ public interface SleepAnalysisSummaryService {
      * @return List<SleepAnalysisSummary> 睡眠记录列表
      */
     List<SleepAnalysisSummary> getSleepDataByUserId(String userId);
+
+    /**
+     * 按睡眠日期倒序分页查询用户睡眠记录
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param pageToken 分页令牌，第一页为空
+     * @param pageSize 每页条数
+     * @return CursorPage<SleepAnalysisSummary> 当前页记录及下一页令牌
+     */
+    CursorPage<SleepAnalysisSummary> getSleepDataPage(String userId, LocalDate from, LocalDate to,
+                                                      String pageToken, int pageSize);
 }
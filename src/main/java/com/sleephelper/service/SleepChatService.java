@@ -2,9 +2,12 @@ package com.sleephelper.service;
 
 import com.sleephelper.ai.ChatContextManager;
 import com.sleephelper.ai.PromptTemplates;
+import com.sleephelper.common.OutboundRateLimiter.Priority;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * 睡眠AI聊天服务类
@@ -25,24 +28,25 @@ public class SleepChatService {
 
     /**
      * 处理用户聊天消息
+     * 等待大模型响应期间不占用线程，收到回复后保存对话记录
      * 
      * @param userId 用户ID
      * @param userMessage 用户消息
-     * @return AI回复
+     * @return AI回复，失败时为兜底回复
      */
-    public String chatWithUser(String userId, String userMessage) {
-        try {
+    public Mono<String> chatWithUser(String userId, String userMessage) {
+        return Mono.defer(() -> {
             log.info("处理用户聊天消息，用户ID: {}, 消息: {}", userId, userMessage);
             
             // 1. 参数验证
             if (userId == null || userId.trim().isEmpty()) {
                 log.warn("用户ID为空");
-                return "抱歉，无法识别您的身份，请重新登录。";
+                return Mono.just("抱歉，无法识别您的身份，请重新登录。");
             }
             
             if (userMessage == null || userMessage.trim().isEmpty()) {
                 log.warn("用户消息为空");
-                return "您好！我是您的睡眠健康助手，有什么睡眠问题可以咨询我。";
+                return Mono.just("您好！我是您的睡眠健康助手，有什么睡眠问题可以咨询我。");
             }
             
             // 2. 获取历史对话记录
@@ -54,20 +58,60 @@ public class SleepChatService {
             log.debug("聊天Prompt: {}", prompt);
             
             // 4. 调用阿里云百炼生成回复
-            String aiResponse = bailianService.generateText(prompt);
+            return bailianService.generateText(prompt, Priority.INTERACTIVE)
+                    .doOnNext(aiResponse -> {
+                        // 5. 保存对话记录
+                        chatContextManager.addConversation(userId, userMessage.trim(), aiResponse);
+                        
+                        log.info("AI聊天回复生成成功，用户ID: {}, 回复长度: {} 字符", userId, aiResponse.length());
+                    });
+        }).onErrorResume(e -> {
+            log.error("处理用户聊天消息失败，用户ID: {}, 消息: {}, 错误: {}", 
+                    userId, userMessage, e.getMessage(), e);
+            return Mono.just(generateErrorResponse());
+        });
+    }
+
+    /**
+     * 流式处理用户聊天消息，逐段返回AI回复
+     * 回复完整结束后才保存拼接好的完整回复；中途失败或客户端断开时不保存
+     * 
+     * @param userId 用户ID
+     * @param userMessage 用户消息
+     * @return AI回复片段，失败时以 IllegalStateException 结束
+     */
+    public Flux<String> streamChatWithUser(String userId, String userMessage) {
+        return Flux.defer(() -> {
+            log.info("流式处理用户聊天消息，用户ID: {}, 消息: {}", userId, userMessage);
             
-            // 5. 保存对话记录
-            chatContextManager.addConversation(userId, userMessage.trim(), aiResponse);
+            // 1. 参数验证
+            if (userId == null || userId.trim().isEmpty()) {
+                log.warn("用户ID为空");
+                return Flux.just("抱歉，无法识别您的身份，请重新登录。");
+            }
             
-            log.info("AI聊天回复生成成功，用户ID: {}, 回复长度: {} 字符", userId, aiResponse.length());
+            if (userMessage == null || userMessage.trim().isEmpty()) {
+                log.warn("用户消息为空");
+                return Flux.just("您好！我是您的睡眠健康助手，有什么睡眠问题可以咨询我。");
+            }
             
-            return aiResponse;
+            // 2. 获取历史对话记录并构建Prompt
+            String history = chatContextManager.getFormattedHistory(userId);
+            String prompt = PromptTemplates.getChatPrompt(userMessage.trim(), history);
+            log.debug("聊天Prompt: {}", prompt);
             
-        } catch (Exception e) {
-            log.error("处理用户聊天消息失败，用户ID: {}, 消息: {}, 错误: {}", 
-                    userId, userMessage, e.getMessage(), e);
-            return generateErrorResponse();
-        }
+            // 3. 流式调用阿里云百炼，同时拼接完整回复
+            StringBuilder aiResponse = new StringBuilder();
+            return bailianService.streamText(prompt, Priority.INTERACTIVE)
+                    .doOnNext(aiResponse::append)
+                    .doOnComplete(() -> {
+                        // 4. 保存对话记录
+                        chatContextManager.addConversation(userId, userMessage.trim(), aiResponse.toString());
+                        
+                        log.info("AI聊天流式回复完成，用户ID: {}, 回复长度: {} 字符", userId, aiResponse.length());
+                    });
+        }).doOnError(e -> log.error("流式处理用户聊天消息失败，用户ID: {}, 消息: {}, 错误: {}", 
+                userId, userMessage, e.getMessage()));
     }
 
     /**
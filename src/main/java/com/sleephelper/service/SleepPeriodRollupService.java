@@ -0,0 +1,54 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.SleepRollupPeriod;
+import com.sleephelper.entity.SleepPeriodRollup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 睡眠周/月汇总 服务接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface SleepPeriodRollupService {
+
+    /**
+     * 增量刷新周/月汇总
+     * 只处理处理时间晚于水位的睡眠数据，重新汇总其所在的用户周期及全体用户周期
+     * 
+     * @return Map 处理的记录数、刷新的用户周期数、新水位等
+     */
+    Map<String, Object> refreshIncremental();
+
+    /**
+     * 全量重建周/月汇总
+     * 按用户ID区间划分任务并行重建用户汇总，完成后重建全体用户汇总
+     * 
+     * @return Map 区间数、耗时、新水位等
+     */
+    Map<String, Object> rebuildAll();
+
+    /**
+     * 查询用户周/月汇总
+     * 
+     * @param userId 用户ID
+     * @param period 汇总周期
+     * @param from 周期起始日期下界（含），可为空
+     * @param to 周期起始日期上界（含），可为空
+     * @return List<SleepPeriodRollup> 汇总列表（按周期升序）
+     */
+    List<SleepPeriodRollup> getUserRollups(String userId, SleepRollupPeriod period, LocalDate from, LocalDate to);
+
+    /**
+     * 查询全体用户周/月汇总
+     * 
+     * @param period 汇总周期
+     * @param from 周期起始日期下界（含），可为空
+     * @param to 周期起始日期上界（含），可为空
+     * @return List<SleepPeriodRollup> 汇总列表（按周期升序）
+     */
+    List<SleepPeriodRollup> getGlobalRollups(SleepRollupPeriod period, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,27 @@
+package com.sleephelper.service;
+
+import java.util.Map;
+
+/**
+ * 睡眠积分自动生成 服务接口
+ * 睡眠数据提交后异步批量生成积分，并定时补扫漏生成的夜晚
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface SleepPointsAutoService {
+
+    /**
+     * 补扫最近一段时间内已写入睡眠数据但没有积分记录的夜晚，并为其生成积分
+     * 
+     * @return Map 扫描行数、新生成积分数、耗时
+     */
+    Map<String, Object> sweep();
+
+    /**
+     * 自动生成运行指标
+     * 
+     * @return Map 是否开启、异步队列指标、补扫统计
+     */
+    Map<String, Object> getMetrics();
+}
@@ -1,9 +1,12 @@
 package com.sleephelper.service;
 
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.entity.SleepAnalysisSummary;
 import com.sleephelper.entity.SleepPoints;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 睡眠积分表 服务接口
@@ -23,6 +26,26 @@ public interface SleepPointsService {
      */
     SleepPoints generateSleepPoints(String userId, LocalDate dateOfSleep);
 
+    /**
+     * 按已写入的睡眠数据批量生成睡眠积分（一个事务）
+     * 直接使用传入的睡眠数据计算积分，不再查询睡眠数据；已存在的积分记录保持不变，可重复调用
+     * 
+     * @param nights 已写入数据库的睡眠数据
+     * @return List<SleepPoints> 与入参顺序一致，新生成的积分记录；已存在时为null
+     */
+    List<SleepPoints> generateSleepPointsBatch(List<SleepAnalysisSummary> nights);
+
+    /**
+     * 按睡眠日期区间批量回填积分
+     * 按配置的天数分块，每块一条 INSERT ... SELECT 在数据库中按同一规则计算积分并写入，
+     * 已有积分的夜晚跳过，每块一个事务并同步重算涉及用户的余额
+     * 
+     * @param from 起始睡眠日期（含）
+     * @param to 结束睡眠日期（含）
+     * @return Map 分块数、新生成积分记录数、耗时
+     */
+    Map<String, Object> backfillSleepPoints(LocalDate from, LocalDate to);
+
     /**
      * 根据用户ID和日期查询积分记录
      * 
@@ -32,6 +55,16 @@ public interface SleepPointsService {
      */
     SleepPoints getSleepPointsByUserIdAndDate(String userId, LocalDate date);
 
+    /**
+     * 批量查询多个用户同一日期的积分记录
+     * 按配置的分片大小每片一条 IN 查询，适用于按用户批量处理的定时任务
+     * 
+     * @param userIds 用户ID列表
+     * @param date 积分日期
+     * @return Map<String, SleepPoints> 用户ID到积分记录，没有记录的用户不在结果中
+     */
+    Map<String, SleepPoints> getSleepPointsByUserIdsAndDate(List<String> userIds, LocalDate date);
+
     /**
      * 根据用户ID查询积分历史记录
      * 
@@ -40,6 +73,19 @@ public interface SleepPointsService {
      */
     List<SleepPoints> getSleepPointsHistory(String userId);
 
+    /**
+     * 按日期倒序分页查询用户积分历史
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param pageToken 分页令牌，第一页为空
+     * @param pageSize 每页条数
+     * @return CursorPage<SleepPoints> 当前页记录及下一页令牌
+     */
+    CursorPage<SleepPoints> getSleepPointsHistoryPage(String userId, LocalDate from, LocalDate to,
+                                                      String pageToken, int pageSize);
+
     /**
      * 计算用户当前总积分
      * 
@@ -57,4 +103,14 @@ public interface SleepPointsService {
      * @return Integer 计算出的积分
      */
     Integer calculatePoints(Integer sleepScore, Integer deepSleepDuration);
+
+    /**
+     * 计算睡眠积分（基本类型，不装箱、不打日志）
+     * 评分超出0-100按0分计，深睡时长为负按0计
+     * 
+     * @param sleepScore 睡眠评分
+     * @param deepSleepDuration 深睡时长（分钟）
+     * @return int 计算出的积分
+     */
+    int calculatePoints(int sleepScore, int deepSleepDuration);
 }
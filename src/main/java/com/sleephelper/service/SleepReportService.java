@@ -0,0 +1,38 @@
+package com.sleephelper.service;
+
+import com.sleephelper.entity.SleepAnalysisSummary;
+
+import java.util.Map;
+
+/**
+ * AI睡眠报告存储 服务接口
+ * 按用户ID、睡眠日期保存生成的报告，并以睡眠数据字段和报告模板版本的摘要判断报告是否仍然有效
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface SleepReportService {
+
+    /**
+     * 查询与睡眠数据对应的已生成报告：先查本地缓存，未命中再查 sleep_reports 表
+     * 
+     * @param sleepData 睡眠数据
+     * @return 报告内容；没有报告、摘要不一致、未开启或查询失败时返回null
+     */
+    String getCachedReport(SleepAnalysisSummary sleepData);
+
+    /**
+     * 保存生成的报告（压缩后写入 sleep_reports 表并放入本地缓存），失败只记录日志
+     * 
+     * @param sleepData 生成报告时使用的睡眠数据
+     * @param report 报告内容
+     */
+    void saveReport(SleepAnalysisSummary sleepData, String report);
+
+    /**
+     * 报告缓存统计信息
+     * 
+     * @return 本地缓存命中情况、表命中情况、保存数和压缩率
+     */
+    Map<String, Object> getStats();
+}
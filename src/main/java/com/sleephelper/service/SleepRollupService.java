@@ -0,0 +1,30 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.SleepRollupStats;
+import com.sleephelper.entity.SleepAnalysisSummary;
+
+/**
+ * 睡眠数据滚动统计 服务接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface SleepRollupService {
+
+    /**
+     * 睡眠数据（新增或更新）提交后调用，放入队列后由后台线程更新最近睡眠数据内存序列和滚动统计
+     * 统计更新失败只记录日志，不影响已提交的写入
+     * 
+     * @param sleepData 已写入数据库的睡眠数据
+     */
+    void onSleepDataCommitted(SleepAnalysisSummary sleepData);
+
+    /**
+     * 查询用户以今天为终点的各窗口滚动统计
+     * 最新一晚是今天时直接读取统计表（尚未写回的用户读取内存中的最新统计），否则按最近N晚的内存序列计算
+     * 
+     * @param userId 用户ID
+     * @return SleepRollupStats 滚动统计
+     */
+    SleepRollupStats getRollupStats(String userId);
+}
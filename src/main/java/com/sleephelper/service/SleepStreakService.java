@@ -0,0 +1,31 @@
+package com.sleephelper.service;
+
+import com.sleephelper.entity.SleepStreak;
+
+import java.util.List;
+
+/**
+ * 睡眠连续达标 服务接口
+ * 每个用户每种连续类型保存一行，睡眠数据提交后异步攒批增量更新，查询直接按主键读取
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface SleepStreakService {
+
+    /**
+     * 查询用户的连续达标记录（每种连续类型一条），尚未统计的用户先按历史重算
+     * 
+     * @param userId 用户ID
+     * @return 连续记录列表，当前连续已中断时 currentStreak 为0
+     */
+    List<SleepStreak> getStreaks(String userId);
+
+    /**
+     * 按用户全部睡眠数据重算连续达标记录
+     * 
+     * @param userId 用户ID
+     * @return 重算后的连续记录列表
+     */
+    List<SleepStreak> recompute(String userId);
+}
@@ -0,0 +1,50 @@
+package com.sleephelper.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 用户积分余额 服务接口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public interface UserPointsBalanceService {
+
+    /**
+     * 新增一条积分记录后累加余额
+     * 必须在插入积分记录的同一事务中、插入之后调用
+     * 
+     * @param userId 用户ID
+     * @param points 新增的积分
+     */
+    void addPoints(String userId, int points);
+
+    /**
+     * 批量回填积分后按积分明细重算涉及用户的余额
+     * 必须在回填积分的同一事务中、回填之后调用
+     * 
+     * @param from 回填的睡眠日期下界（含）
+     * @param to 回填的睡眠日期上界（不含）
+     * @param createdAt 本次回填写入的创建时间
+     * @return int 影响行数
+     */
+    int refreshBackfilledUsers(LocalDate from, LocalDate to, LocalDateTime createdAt);
+
+    /**
+     * 查询用户当前总积分（主键查询一行）
+     * 余额行不存在时按积分明细初始化一次
+     * 
+     * @param userId 用户ID
+     * @return long 总积分，没有积分记录时为0
+     */
+    long getTotalPoints(String userId);
+
+    /**
+     * 按积分明细核对所有用户的余额，不一致时记录日志并按配置校正
+     * 
+     * @return Map 核对用户数、不一致数、校正数等
+     */
+    Map<String, Object> reconcile();
+}
@@ -2,6 +2,9 @@ package com.sleephelper.service;
 
 import com.sleephelper.entity.User;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 用户服务接口
  * 
@@ -17,6 +20,13 @@ public interface UserService {
      */
     User getUserById(String id);
     
+    /**
+     * 根据用户ID列表批量查询用户信息，按配置的分片大小每片一条 IN 查询
+     * @param ids 用户ID列表
+     * @return 用户ID到用户信息的映射，不存在的用户不在结果中
+     */
+    Map<String, User> getUsersByIds(List<String> ids);
+    
     /**
      * 根据钱包地址查询用户信息
      * @param walletAddress 钱包地址
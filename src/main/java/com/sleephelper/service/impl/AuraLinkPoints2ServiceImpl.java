@@ -1,12 +1,15 @@
 package com.sleephelper.service.impl;
 
+import com.sleephelper.bean.BurnResult;
+import com.sleephelper.bean.MetaBurnRequest;
+import com.sleephelper.bean.PointsLedgerEntryType;
 import com.sleephelper.config.BlockchainConfig;
-import com.sleephelper.entity.SleepPoints;
 import com.sleephelper.entity.User;
-import com.sleephelper.mapper.SleepPointsMapper;
 import com.sleephelper.mapper.UserMapper;
 import com.sleephelper.service.AuraLinkPoints2Service;
 import com.sleephelper.service.AuraLinkPointsService;
+import com.sleephelper.service.PointsLedgerService;
+import com.sleephelper.service.UserPointsBalanceService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,7 +18,6 @@ import org.web3j.protocol.Web3j;
 import org.web3j.protocol.http.HttpService;
 
 import java.math.BigInteger;
-import java.util.List;
 
 /**
  * AuraLink积分服务实现类
@@ -31,7 +33,7 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
     private UserMapper userMapper;
 
     @Autowired
-    private SleepPointsMapper sleepPointsMapper;
+    private UserPointsBalanceService userPointsBalanceService;
 
     @Autowired
     private BlockchainConfig blockchainConfig;
@@ -39,6 +41,9 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
     @Autowired
     private AuraLinkPointsService auraLinkPointsService;
 
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
     private Web3j web3j;
     private Credentials credentials;
 
@@ -77,12 +82,8 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
                 throw new Exception("用户地址不存在: " + toAddress);
             }
 
-            // 2. 获取用户的总积分
-            List<SleepPoints> userPoints = sleepPointsMapper.selectByUserId(user.getId());
-            BigInteger totalPoints = userPoints.stream()
-                    .mapToInt(SleepPoints::getPoints)
-                    .mapToObj(BigInteger::valueOf)
-                    .reduce(BigInteger.ZERO, BigInteger::add);
+            // 2. 获取用户的总积分（读取积分余额表）
+            BigInteger totalPoints = BigInteger.valueOf(userPointsBalanceService.getTotalPoints(user.getId()));
 
             // 3. 验证铸造数量是否合理（不能超过用户总积分的2倍）
             if (amount.compareTo(totalPoints.multiply(BigInteger.valueOf(2))) > 0) {
@@ -95,6 +96,9 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
             String transactionHash = auraLinkPointsService.mintPoints(toAddress, amount);
 
             log.info("成功为用户 {} 铸造 {} 积分，交易哈希: {}", toAddress, amount, transactionHash);
+
+            // 5. 追加铸造流水
+            appendLedger(user.getId(), PointsLedgerEntryType.MINTED, amount, transactionHash);
             return transactionHash;
 
         } catch (Exception e) {
@@ -103,6 +107,67 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
         }
     }
 
+    @Override
+    public BurnResult relayBurnWithMeta(MetaBurnRequest request) {
+        BurnResult result = auraLinkPointsService.relayBurnWithMeta(request);
+        // 链上服务未返回结果或未返回交易哈希时按失败处理，不能当作已销毁
+        if (result == null) {
+            log.warn("元交易销毁未返回结果，地址: {}，数量: {}", request.getFrom(), request.getAmount());
+            return BurnResult.failure("元交易销毁未返回结果");
+        }
+        if (result.isSuccess() && isBlank(result.getTransactionHash())) {
+            log.warn("元交易销毁未返回交易哈希，地址: {}，数量: {}", request.getFrom(), request.getAmount());
+            return BurnResult.failure("元交易销毁未返回交易哈希");
+        }
+        if (result.isSuccess()) {
+            appendBurnLedger(request.getFrom(), request.getAmount(), result.getTransactionHash());
+        }
+        return result;
+    }
+
+    @Override
+    public String burnFromDirect(String from, BigInteger amount) throws Exception {
+        String transactionHash = auraLinkPointsService.burnFromDirect(from, amount);
+        if (isBlank(transactionHash)) {
+            throw new Exception("直接销毁未返回交易哈希");
+        }
+        appendBurnLedger(from, amount, transactionHash);
+        return transactionHash;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * 为销毁地址对应的用户追加销毁流水，地址未绑定用户时只记录日志
+     */
+    private void appendBurnLedger(String fromAddress, BigInteger amount, String transactionHash) {
+        User user = userMapper.selectByWalletAddress(fromAddress);
+        if (user == null) {
+            log.warn("销毁地址未绑定用户，不记录积分流水，地址: {}，交易哈希: {}", fromAddress, transactionHash);
+            return;
+        }
+        appendLedger(user.getId(), PointsLedgerEntryType.BURNED, amount, transactionHash);
+    }
+
+    /**
+     * 链上交易成功后追加流水
+     * 交易已上链无法回滚，追加失败时只记录日志（含交易哈希），不影响接口结果
+     */
+    private void appendLedger(String userId, PointsLedgerEntryType entryType, BigInteger amount, String transactionHash) {
+        if (transactionHash == null || transactionHash.isEmpty()) {
+            log.warn("交易哈希为空，不记录积分流水，用户ID: {}，类型: {}，数量: {}", userId, entryType, amount);
+            return;
+        }
+        try {
+            pointsLedgerService.append(userId, entryType, amount.longValueExact(), transactionHash);
+        } catch (Exception e) {
+            log.error("追加积分流水失败，用户ID: {}，类型: {}，数量: {}，交易哈希: {}，异常信息: {}",
+                    userId, entryType, amount, transactionHash, e.getMessage(), e);
+        }
+    }
+
     /**
      * 执行实际的代币铸造操作
      * 注意：这是一个模拟实现，实际需要与智能合约交互
@@ -152,20 +217,6 @@ public class AuraLinkPoints2ServiceImpl implements AuraLinkPoints2Service {
         return true;
     }
 
-    @Override
-    public BurnResult relayBurnWithMeta(MetaBurnRequest request) {
-        // 空壳实现
-        log.info("处理元交易销毁请求: {}", request);
-        return BurnResult.failure("功能暂未实现");
-    }
-
-    @Override
-    public String burnFromDirect(String from, BigInteger amount) throws Exception {
-        // 空壳实现
-        log.info("直接销毁用户 {} 的 {} 代币", from, amount);
-        return "0x" + System.currentTimeMillis() + "burn" + amount.toString();
-    }
-
     @Override
     public ForwarderParams getBurnForwarderParams(String userAddress, BigInteger amount) throws Exception {
         // 空壳实现
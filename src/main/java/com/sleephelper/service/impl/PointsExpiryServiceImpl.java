@@ -0,0 +1,338 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.bean.SleepPointsEarnedEvent;
+import com.sleephelper.common.DayTimingWheel;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.PointsLedgerEntry;
+import com.sleephelper.entity.SleepPoints;
+import com.sleephelper.mapper.SleepPointsMapper;
+import com.sleephelper.mapper.UserPointsBalanceMapper;
+import com.sleephelper.service.PointsExpiryService;
+import com.sleephelper.service.PointsLeaderboardService;
+import com.sleephelper.service.PointsLedgerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 积分过期 服务实现类
+ * 时间轮只登记到期日（每个积分日期一个），内存占用与有效天数成正比，与积分记录数无关；
+ * 到期的积分日期按配置的批大小分批处理，每批一个事务：锁定未过期记录、标记过期、扣减余额、追加过期流水；
+ * 某个日期处理失败时重新登记，下次检查时重试；启动时在后台按积分表中未过期积分的日期重建时间轮
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class PointsExpiryServiceImpl implements PointsExpiryService {
+
+    @Autowired
+    private SleepPointsMapper sleepPointsMapper;
+
+    @Autowired
+    private UserPointsBalanceMapper userPointsBalanceMapper;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private PointsLeaderboardService pointsLeaderboardService;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 当前生效的时间轮，尚未构建时为null；读写均持有 wheelLock
+     */
+    private DayTimingWheel wheel;
+
+    private final Object wheelLock = new Object();
+
+    /**
+     * 重建锁，同一时间只有一次重建
+     */
+    private final Object rebuildLock = new Object();
+
+    /**
+     * 重建期间登记的到期日，重建完成后并入新时间轮
+     */
+    private volatile Set<Long> addedDuringRebuild;
+
+    /**
+     * 过期处理是否正在执行
+     */
+    private final AtomicBoolean expiring = new AtomicBoolean();
+
+    private final AtomicLong expiredRecordCount = new AtomicLong();
+
+    private final AtomicLong expiredPointsTotal = new AtomicLong();
+
+    private volatile LocalDateTime lastRunAt;
+
+    /**
+     * 应用启动完成后在后台重建时间轮，重建完成前的过期检查会同步重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled())) {
+            log.info("积分过期未开启");
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("启动时重建积分过期时间轮失败，将在首次过期检查时重建，异常信息：{}", e.getMessage(), e);
+            }
+        }, "points-expiry-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 积分写入事务提交后登记到期日（无事务时立即执行）
+     *
+     * @param event 积分已生成事件
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPointsEarned(SleepPointsEarnedEvent event) {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled()) || event.getDate() == null) {
+            return;
+        }
+        long expiryDay = expiryDayOf(event.getDate());
+        Set<Long> buffered = addedDuringRebuild;
+        if (buffered != null) {
+            buffered.add(expiryDay);
+        }
+        synchronized (wheelLock) {
+            if (wheel != null) {
+                wheel.add(expiryDay);
+            }
+        }
+    }
+
+    /**
+     * 定时过期检查，上一次检查未结束时跳过
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.points-expiry-interval-ms:3600000}",
+            initialDelayString = "${sleep.data.points-expiry-interval-ms:3600000}")
+    public void scheduledExpire() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled())) {
+            return;
+        }
+        try {
+            expireDue();
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分过期检查异常：{}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> expireDue() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled())) {
+            throw new IllegalStateException("积分过期未开启");
+        }
+        if (!expiring.compareAndSet(false, true)) {
+            throw new IllegalStateException("积分过期正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            boolean ready;
+            synchronized (wheelLock) {
+                ready = wheel != null;
+            }
+            if (!ready) {
+                rebuild();
+            }
+            List<Long> dueDays;
+            synchronized (wheelLock) {
+                dueDays = wheel.advanceTo(LocalDate.now().toEpochDay());
+            }
+
+            long expiredRecords = 0;
+            long expiredPoints = 0;
+            int failedDays = 0;
+            for (Long expiryDay : dueDays) {
+                LocalDate grantDate = LocalDate.ofEpochDay(expiryDay - sleepDataConfig.getPointsExpiryDays());
+                try {
+                    long[] expired = expireGrantDate(grantDate);
+                    expiredRecords += expired[0];
+                    expiredPoints += expired[1];
+                } catch (Exception e) {
+                    failedDays++;
+                    synchronized (wheelLock) {
+                        wheel.add(expiryDay);
+                    }
+                    log.error("积分过期失败，下次检查时重试，积分日期：{}，异常信息：{}", grantDate, e.getMessage(), e);
+                }
+            }
+            expiredRecordCount.addAndGet(expiredRecords);
+            expiredPointsTotal.addAndGet(expiredPoints);
+            lastRunAt = LocalDateTime.now();
+            if (expiredRecords > 0) {
+                refreshLeaderboard();
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("dueDays", dueDays.size());
+            result.put("expiredRecords", expiredRecords);
+            result.put("expiredPoints", expiredPoints);
+            result.put("failedDays", failedDays);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("积分过期检查完成：{}", result);
+            return result;
+        } finally {
+            expiring.set(false);
+        }
+    }
+
+    @Override
+    public Map<String, Object> rebuild() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled())) {
+            throw new IllegalStateException("积分过期未开启");
+        }
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            Set<Long> buffered = ConcurrentHashMap.newKeySet();
+            addedDuringRebuild = buffered;
+            DayTimingWheel rebuilt;
+            int dueDays = 0;
+            try {
+                long today = LocalDate.now().toEpochDay();
+                rebuilt = new DayTimingWheel(sleepDataConfig.getPointsExpiryWheelSize(), today);
+                for (LocalDate date : sleepPointsMapper.selectUnexpiredDates()) {
+                    long expiryDay = expiryDayOf(date);
+                    rebuilt.add(expiryDay);
+                    if (expiryDay <= today) {
+                        dueDays++;
+                    }
+                }
+                synchronized (wheelLock) {
+                    addedDuringRebuild = null;
+                    for (Long expiryDay : buffered) {
+                        rebuilt.add(expiryDay);
+                    }
+                    wheel = rebuilt;
+                }
+            } finally {
+                addedDuringRebuild = null;
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("pendingDays", rebuilt.size());
+            result.put("dueDays", dueDays);
+            result.put("levels", rebuilt.levelCount());
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("积分过期时间轮重建完成：{}", result);
+            return result;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled()));
+        stats.put("expiryDays", sleepDataConfig.getPointsExpiryDays());
+        synchronized (wheelLock) {
+            stats.put("ready", wheel != null);
+            if (wheel != null) {
+                stats.put("currentDay", LocalDate.ofEpochDay(wheel.getCurrentDay()));
+                stats.put("pendingDays", wheel.size());
+                stats.put("levels", wheel.levelCount());
+            }
+        }
+        stats.put("expiredRecords", expiredRecordCount.get());
+        stats.put("expiredPoints", expiredPointsTotal.get());
+        stats.put("lastRunAt", lastRunAt);
+        return stats;
+    }
+
+    /**
+     * 分批过期一个积分日期的全部未过期积分，每批一个事务
+     *
+     * @return 过期记录数、过期积分
+     */
+    private long[] expireGrantDate(LocalDate grantDate) {
+        int batchSize = sleepDataConfig.getPointsExpiryBatchSize();
+        long[] total = new long[2];
+        List<SleepPoints> batch;
+        do {
+            batch = transactionTemplate.execute(status -> expireBatch(grantDate, batchSize));
+            if (batch == null) {
+                batch = Collections.emptyList();
+            }
+            total[0] += batch.size();
+            for (SleepPoints row : batch) {
+                total[1] += row.getPoints() != null ? row.getPoints() : 0;
+            }
+        } while (batch.size() == batchSize);
+        if (total[0] > 0) {
+            log.info("积分日期已过期，积分日期：{}，记录数：{}，积分：{}", grantDate, total[0], total[1]);
+        }
+        return total;
+    }
+
+    /**
+     * 锁定一批未过期积分，标记过期、扣减余额并追加过期流水（调用方开启事务）
+     */
+    private List<SleepPoints> expireBatch(LocalDate grantDate, int batchSize) {
+        List<SleepPoints> rows = sleepPointsMapper.selectUnexpiredByDateForUpdate(grantDate, batchSize);
+        if (rows.isEmpty()) {
+            return rows;
+        }
+        List<Long> ids = new ArrayList<>(rows.size());
+        List<PointsLedgerEntry> entries = new ArrayList<>(rows.size());
+        for (SleepPoints row : rows) {
+            ids.add(row.getId());
+            entries.add(new PointsLedgerEntry(row.getUserId(), PointsLedgerEntryType.EXPIRED,
+                    row.getPoints() != null ? row.getPoints() : 0, row.getDate().toString()));
+        }
+        sleepPointsMapper.markExpired(ids, LocalDateTime.now());
+        userPointsBalanceMapper.subtractExpired(ids);
+        pointsLedgerService.appendBatch(entries);
+        return rows;
+    }
+
+    /**
+     * 过期后重建排行榜（总榜按余额排名），失败只记录日志
+     */
+    private void refreshLeaderboard() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())) {
+            return;
+        }
+        try {
+            pointsLeaderboardService.rebuild();
+        } catch (Exception e) {
+            log.error("积分过期后重建排行榜失败，异常信息：{}", e.getMessage(), e);
+        }
+    }
+
+    private long expiryDayOf(LocalDate grantDate) {
+        return grantDate.toEpochDay() + sleepDataConfig.getPointsExpiryDays();
+    }
+}
@@ -0,0 +1,283 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.LeaderboardEntry;
+import com.sleephelper.bean.LeaderboardPeriod;
+import com.sleephelper.bean.SleepPointsEarnedEvent;
+import com.sleephelper.common.RankedSkipList;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.UserPointsBalance;
+import com.sleephelper.mapper.UserPointsBalanceMapper;
+import com.sleephelper.service.PointsLeaderboardService;
+import com.sleephelper.service.UserPointsBalanceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 积分排行榜 服务实现类
+ * 每个周期一个有序跳表，前N名和名次查询均为 O(log n)；
+ * 积分写入提交后按用户重新读取周期内积分（绝对值），重复或乱序的事件不会导致累加错误；
+ * 日期进入新周期后，首次查询时从积分明细重建该周期的排行榜
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class PointsLeaderboardServiceImpl implements PointsLeaderboardService {
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private UserPointsBalanceMapper userPointsBalanceMapper;
+
+    @Autowired
+    private UserPointsBalanceService userPointsBalanceService;
+
+    /**
+     * 各周期当前生效的排行榜，尚未构建时没有条目
+     */
+    private final Map<LeaderboardPeriod, Board> boards = new ConcurrentHashMap<>();
+
+    /**
+     * 重建期间有积分写入的用户，重建完成后按新排行榜重新读取
+     */
+    private final Map<LeaderboardPeriod, Set<String>> touchedDuringRebuild = new ConcurrentHashMap<>();
+
+    /**
+     * 各周期的重建锁
+     */
+    private final Map<LeaderboardPeriod, Object> rebuildLocks = new EnumMap<>(LeaderboardPeriod.class);
+
+    private static final int USER_LOCK_STRIPES = 256;
+
+    /**
+     * 按用户ID分段的刷新锁，同一用户的读取和写入排行榜串行执行
+     */
+    private final Object[] userLocks = new Object[USER_LOCK_STRIPES];
+
+    public PointsLeaderboardServiceImpl() {
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            rebuildLocks.put(period, new Object());
+        }
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 应用启动完成后在后台构建排行榜，构建完成前的查询会同步构建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())) {
+            log.info("积分排行榜未开启");
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("启动时构建积分排行榜失败，将在首次查询时重建，异常信息：{}", e.getMessage(), e);
+            }
+        }, "points-leaderboard-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 积分写入事务提交后更新排行榜（无事务时立即执行）
+     *
+     * @param event 积分已生成事件
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPointsEarned(SleepPointsEarnedEvent event) {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())
+                || event.getUserId() == null || event.getDate() == null) {
+            return;
+        }
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            try {
+                Set<String> touched = touchedDuringRebuild.get(period);
+                if (touched != null) {
+                    touched.add(event.getUserId());
+                }
+                Board board = boards.get(period);
+                if (board != null && period.contains(board.periodStart, event.getDate())) {
+                    refreshUser(period, board, event.getUserId());
+                }
+            } catch (Exception e) {
+                // 排行榜不影响积分写入，下次重建时修正
+                log.error("更新积分排行榜失败，周期：{}，用户ID：{}，异常信息：{}",
+                        period, event.getUserId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public List<LeaderboardEntry> getLeaderboard(LeaderboardPeriod period, int limit) {
+        Board board = currentBoard(period);
+        List<RankedSkipList.Entry> top = board.ranking.top(limit);
+        List<LeaderboardEntry> entries = new ArrayList<>(top.size());
+        for (RankedSkipList.Entry entry : top) {
+            entries.add(new LeaderboardEntry(entry.getRank(), entry.getMember(), entry.getScore()));
+        }
+        log.debug("查询积分排行榜，周期：{}，条数：{}", period, entries.size());
+        return entries;
+    }
+
+    @Override
+    public LeaderboardEntry getRank(LeaderboardPeriod period, String userId) {
+        Board board = currentBoard(period);
+        long rank = board.ranking.rank(userId);
+        if (rank == 0) {
+            return null;
+        }
+        Long points = board.ranking.score(userId);
+        return new LeaderboardEntry(rank, userId, points != null ? points : 0L);
+    }
+
+    @Override
+    public Map<String, Object> rebuild() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())) {
+            throw new IllegalStateException("积分排行榜未开启");
+        }
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            synchronized (rebuildLocks.get(period)) {
+                rebuild(period, period.startOf(today));
+            }
+        }
+        Map<String, Object> result = getStats();
+        result.put("elapsedMillis", System.currentTimeMillis() - start);
+        log.info("积分排行榜重建完成：{}", result);
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled()));
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            Board board = boards.get(period);
+            Map<String, Object> boardStats = new LinkedHashMap<>();
+            boardStats.put("ready", board != null);
+            if (board != null) {
+                boardStats.put("periodStart", board.periodStart);
+                boardStats.put("users", board.ranking.size());
+            }
+            stats.put(period.name(), boardStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 取当前周期的排行榜，尚未构建或已跨周期时同步重建
+     */
+    private Board currentBoard(LeaderboardPeriod period) {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())) {
+            throw new IllegalStateException("积分排行榜未开启");
+        }
+        LocalDate periodStart = period.startOf(LocalDate.now());
+        Board board = boards.get(period);
+        if (board != null && Objects.equals(board.periodStart, periodStart)) {
+            return board;
+        }
+        synchronized (rebuildLocks.get(period)) {
+            board = boards.get(period);
+            if (board != null && Objects.equals(board.periodStart, periodStart)) {
+                return board;
+            }
+            return rebuild(period, periodStart);
+        }
+    }
+
+    /**
+     * 从积分明细构建一个周期的排行榜并替换当前排行榜（调用方持有该周期的重建锁）
+     * 构建期间有积分写入的用户在替换后重新读取，避免读到构建前的旧值
+     */
+    private Board rebuild(LeaderboardPeriod period, LocalDate periodStart) {
+        Set<String> touched = ConcurrentHashMap.newKeySet();
+        touchedDuringRebuild.put(period, touched);
+        Board board;
+        try {
+            board = new Board(periodStart);
+            int pageSize = sleepDataConfig.getLeaderboardRebuildPageSize();
+            String lastUserId = null;
+            List<UserPointsBalance> page;
+            do {
+                page = periodStart == null
+                        ? userPointsBalanceMapper.selectLedgerTotalsAfter(lastUserId, pageSize)
+                        : userPointsBalanceMapper.selectLedgerTotalsBetween(periodStart, period.endOf(periodStart),
+                                lastUserId, pageSize);
+                for (UserPointsBalance row : page) {
+                    if (row.getTotalPoints() != null && row.getTotalPoints() > 0) {
+                        board.ranking.put(row.getUserId(), row.getTotalPoints());
+                    }
+                    lastUserId = row.getUserId();
+                }
+            } while (page.size() == pageSize);
+            boards.put(period, board);
+        } finally {
+            touchedDuringRebuild.remove(period);
+        }
+        for (String userId : touched) {
+            refreshUser(period, board, userId);
+        }
+        log.info("积分排行榜构建完成，周期：{}，起始日期：{}，上榜用户数：{}，构建期间更新用户数：{}",
+                period, periodStart, board.ranking.size(), touched.size());
+        return board;
+    }
+
+    /**
+     * 重新读取用户在排行榜周期内的积分并写入排行榜
+     * 读取和写入在用户锁内完成：并发的提交事件中后读取的一方看到的积分不少于先读取的一方，
+     * 且最后写入，先读到的旧值不会覆盖新值
+     */
+    private void refreshUser(LeaderboardPeriod period, Board board, String userId) {
+        synchronized (userLocks[(userId.hashCode() & 0x7fffffff) % userLocks.length]) {
+            long points = board.periodStart == null
+                    ? userPointsBalanceService.getTotalPoints(userId)
+                    : userPointsBalanceMapper.sumLedgerPointsBetween(userId, board.periodStart,
+                            period.endOf(board.periodStart));
+            if (points > 0) {
+                board.ranking.put(userId, points);
+            } else {
+                board.ranking.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * 一个周期的排行榜
+     */
+    private static final class Board {
+
+        /**
+         * 周期起始日期，总榜为null
+         */
+        private final LocalDate periodStart;
+
+        private final RankedSkipList ranking = new RankedSkipList();
+
+        private Board(LocalDate periodStart) {
+            this.periodStart = periodStart;
+        }
+    }
+}
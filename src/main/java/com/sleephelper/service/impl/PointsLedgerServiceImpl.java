@@ -0,0 +1,252 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.PointsLedgerBalance;
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.common.ListPartitioner;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.PointsLedgerEntry;
+import com.sleephelper.entity.PointsLedgerSnapshot;
+import com.sleephelper.mapper.PointsLedgerMapper;
+import com.sleephelper.service.PointsLedgerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 积分流水 服务实现类
+ * 快照按流水ID区间推进：每个区间在一个事务内按用户汇总并入快照，并把用户的快照进度设为区间上界；
+ * 快照上界不能越过尚未提交的流水（否则提交后永远不会被并入）：每次追加在写入前登记当时的最大流水ID，
+ * 所在事务结束后注销；快照先读最大流水ID，再取进行中追加登记的最小值，两者较小者为上界。
+ * 自增ID按分配顺序递增，进行中追加分配的ID都大于其登记值，因此上界以内的流水都已提交；
+ * 登记只在本进程内有效，流水须经本服务写入
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class PointsLedgerServiceImpl implements PointsLedgerService {
+
+    @Autowired
+    private PointsLedgerMapper pointsLedgerMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 快照是否正在执行
+     */
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    /**
+     * 历史积分补记是否正在执行
+     */
+    private final AtomicBoolean syncing = new AtomicBoolean();
+
+    /**
+     * 进行中的追加：登记序号到登记时的最大流水ID
+     */
+    private final Map<Long, Long> inFlightAppends = new ConcurrentHashMap<>();
+
+    private final AtomicLong appendSequence = new AtomicLong();
+
+    @Override
+    public boolean append(String userId, PointsLedgerEntryType entryType, long amount, String refId) {
+        return appendBatch(Collections.singletonList(new PointsLedgerEntry(userId, entryType, amount, refId))) > 0;
+    }
+
+    @Override
+    public int appendBatch(List<PointsLedgerEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (PointsLedgerEntry entry : entries) {
+            if (entry.getUserId() == null || entry.getEntryType() == null
+                    || entry.getAmount() == null || entry.getAmount() < 0) {
+                throw new IllegalArgumentException("积分流水无效：" + entry);
+            }
+            if (entry.getCreatedAt() == null) {
+                entry.setCreatedAt(now);
+            }
+        }
+        int inserted = tracked(() -> {
+            int count = 0;
+            for (List<PointsLedgerEntry> chunk : ListPartitioner.partition(entries, sleepDataConfig.getBatchSize())) {
+                count += pointsLedgerMapper.insertBatch(chunk);
+            }
+            return count;
+        });
+        log.debug("追加积分流水，提交：{}条，新增：{}条", entries.size(), inserted);
+        return inserted;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int appendBackfilled(LocalDate from, LocalDate to, LocalDateTime createdAt) {
+        return tracked(() -> pointsLedgerMapper.insertEarnedFromBackfill(from, to, createdAt));
+    }
+
+    @Override
+    public PointsLedgerBalance getBalance(String userId) {
+        PointsLedgerSnapshot snapshot = pointsLedgerMapper.selectSnapshotByUserId(userId);
+        long snapshotEntryId = snapshot != null ? snapshot.getLastEntryId() : 0L;
+        PointsLedgerSnapshot tail = pointsLedgerMapper.selectTailTotals(userId, snapshotEntryId);
+
+        PointsLedgerBalance balance = new PointsLedgerBalance();
+        balance.setUserId(userId);
+        balance.setSnapshotEntryId(snapshotEntryId);
+        balance.setLastEntryId(tail != null ? tail.getLastEntryId() : snapshotEntryId);
+        balance.setTailEntryCount(tail != null ? tail.getEntryCount() : 0);
+        balance.setEarnedTotal(total(snapshot, tail, PointsLedgerSnapshot::getEarnedTotal));
+        balance.setMintedTotal(total(snapshot, tail, PointsLedgerSnapshot::getMintedTotal));
+        balance.setBurnedTotal(total(snapshot, tail, PointsLedgerSnapshot::getBurnedTotal));
+        balance.setExpiredTotal(total(snapshot, tail, PointsLedgerSnapshot::getExpiredTotal));
+        balance.setAvailablePoints(balance.getEarnedTotal() - balance.getMintedTotal() - balance.getExpiredTotal());
+        balance.setOnChainPoints(balance.getMintedTotal() - balance.getBurnedTotal());
+        return balance;
+    }
+
+    /**
+     * 定时快照，上一次快照未结束时跳过
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.points-ledger-snapshot-interval-ms:3600000}",
+            initialDelayString = "${sleep.data.points-ledger-snapshot-interval-ms:3600000}")
+    public void scheduledSnapshot() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsLedgerSnapshotEnabled())) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        } catch (Exception e) {
+            log.error("积分流水快照异常：{}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> snapshot() {
+        if (!snapshotting.compareAndSet(false, true)) {
+            throw new IllegalStateException("积分流水快照正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long watermark = pointsLedgerMapper.selectSnapshotWatermark();
+            // 先读最大流水ID再读进行中追加的登记值，顺序不能颠倒
+            long cutoff = pointsLedgerMapper.selectMaxEntryId();
+            for (Long registeredMaxId : inFlightAppends.values()) {
+                cutoff = Math.min(cutoff, registeredMaxId);
+            }
+            int chunkSize = sleepDataConfig.getPointsLedgerSnapshotChunkSize();
+            int chunks = 0;
+            long mergedUsers = 0;
+            long fromId = watermark;
+            while (fromId < cutoff) {
+                long chunkFrom = fromId;
+                long chunkTo = Math.min(chunkFrom + chunkSize, cutoff);
+                Integer merged = transactionTemplate.execute(status -> pointsLedgerMapper.mergeSnapshots(chunkFrom, chunkTo));
+                mergedUsers += merged != null ? merged : 0;
+                chunks++;
+                fromId = chunkTo;
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("fromEntryId", watermark);
+            result.put("toEntryId", Math.max(watermark, cutoff));
+            result.put("chunks", chunks);
+            result.put("mergedUsers", mergedUsers);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("积分流水快照完成：{}", result);
+            return result;
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    @Override
+    public Map<String, Object> syncEarnedFromPoints() {
+        if (!syncing.compareAndSet(false, true)) {
+            throw new IllegalStateException("历史积分补记正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long maxId = pointsLedgerMapper.selectMaxPointsId();
+            int pageSize = sleepDataConfig.getPointsLedgerSyncPageSize();
+            long inserted = 0;
+            for (long afterId = 0; afterId < maxId; afterId += pageSize) {
+                long pageFrom = afterId;
+                inserted += tracked(() -> pointsLedgerMapper.insertEarnedFromPoints(pageFrom, Math.min(pageFrom + pageSize, maxId)));
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("maxPointsId", maxId);
+            result.put("insertedCount", inserted);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("历史积分补记获得流水完成：{}", result);
+            return result;
+        } finally {
+            syncing.set(false);
+        }
+    }
+
+    /**
+     * 执行一次流水写入：写入前登记当前最大流水ID，所在事务结束（提交或回滚）后注销，无事务时写入后注销
+     * 
+     * @param insert 写入操作
+     * @return 写入结果
+     */
+    private <T> T tracked(Supplier<T> insert) {
+        long token = appendSequence.incrementAndGet();
+        inFlightAppends.put(token, pointsLedgerMapper.selectMaxEntryId());
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        if (inTransaction) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlightAppends.remove(token);
+                }
+            });
+        }
+        try {
+            return insert.get();
+        } finally {
+            if (!inTransaction) {
+                inFlightAppends.remove(token);
+            }
+        }
+    }
+
+    private static long total(PointsLedgerSnapshot snapshot, PointsLedgerSnapshot tail,
+                              Function<PointsLedgerSnapshot, Long> field) {
+        long total = 0;
+        if (snapshot != null && field.apply(snapshot) != null) {
+            total += field.apply(snapshot);
+        }
+        if (tail != null && field.apply(tail) != null) {
+            total += field.apply(tail);
+        }
+        return total;
+    }
+}
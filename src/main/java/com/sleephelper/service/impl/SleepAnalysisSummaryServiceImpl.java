@@ -1,17 +1,50 @@
 package com.sleephelper.service.impl;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.bean.NightRecordedEvent;
+import com.sleephelper.bean.SleepDataBatchResult;
+import com.sleephelper.bean.SleepDataImportResult;
+import com.sleephelper.bean.SleepDataRowStatus;
+import com.sleephelper.cache.SleepDataCache;
+import com.sleephelper.cache.SleepRecordBloomFilter;
+import com.sleephelper.common.ChunkedLookup;
+import com.sleephelper.common.DatePageToken;
+import com.sleephelper.common.GroupCommitBuffer;
+import com.sleephelper.common.ListPartitioner;
+import com.sleephelper.common.SleepDataValidator;
+import com.sleephelper.config.SleepDataConfig;
 import com.sleephelper.entity.SleepAnalysisSummary;
 import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
 import com.sleephelper.service.SleepAnalysisSummaryService;
+import com.sleephelper.service.SleepRollupService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * 睡眠分析汇总表 服务实现类
@@ -26,23 +59,96 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
     @Autowired
     private SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper;
 
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SleepDataCache sleepDataCache;
+
+    @Autowired
+    private SleepRecordBloomFilter sleepRecordBloomFilter;
+
+    @Autowired
+    private SleepRollupService sleepRollupService;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 流式导入时每次从输入流读取的字节数
+     */
+    private static final int STREAM_READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 写后缓冲，未开启时为null
+     */
+    private GroupCommitBuffer<SleepAnalysisSummary, SleepDataBatchResult.RowResult> writeBuffer;
+
+    /**
+     * 按配置启动写后缓冲，每组记录复用批量写入的分片逻辑（一条多行INSERT、一个事务）
+     */
+    @PostConstruct
+    public void initWriteBuffer() {
+        if (Boolean.TRUE.equals(sleepDataConfig.getWriteBehindEnabled())) {
+            writeBuffer = new GroupCommitBuffer<>("sleep-data-write-behind",
+                    sleepDataConfig.getWriteBehindQueueCapacity(),
+                    sleepDataConfig.getWriteBehindMaxBatchSize(),
+                    sleepDataConfig.getWriteBehindFlushIntervalMs(),
+                    this::insertChunk);
+            log.info("睡眠数据写后缓冲已开启，队列容量：{}，每组最大行数：{}，刷写间隔：{}ms",
+                    sleepDataConfig.getWriteBehindQueueCapacity(), sleepDataConfig.getWriteBehindMaxBatchSize(),
+                    sleepDataConfig.getWriteBehindFlushIntervalMs());
+        }
+    }
+
+    /**
+     * 应用关闭时停止接收并写空缓冲
+     */
+    @PreDestroy
+    public void shutdownWriteBuffer() {
+        if (writeBuffer != null) {
+            writeBuffer.shutdown(sleepDataConfig.getWriteBehindShutdownTimeoutMs());
+        }
+    }
+
     /**
      * 新增睡眠数据
+     * 开启写后缓冲时等待所在分组提交后返回，与其他请求合并为一个事务；否则单独写入
      * 
      * @param sleepData 睡眠数据对象
      * @return boolean 是否新增成功
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean addSleepData(SleepAnalysisSummary sleepData) {
         try {
             // 设置数据处理时间为当前时间
             sleepData.setProcessedAt(LocalDateTime.now());
             
-            // 保存到数据库
-            int result = sleepAnalysisSummaryMapper.insert(sleepData);
+            if (writeBuffer != null) {
+                SleepDataBatchResult.RowResult rowResult = awaitWrite(submitSleepData(sleepData));
+                if (rowResult.getStatus() == SleepDataRowStatus.FAILED) {
+                    throw new RuntimeException(rowResult.getMessage());
+                }
+                log.info("新增睡眠数据成功（组提交），用户ID：{}，睡眠日期：{}", 
+                        sleepData.getUserId(), sleepData.getDateOfSleep());
+                return true;
+            }
+            
+            // 先登记到布隆过滤器，再保存到数据库
+            sleepRecordBloomFilter.putSleepData(sleepData.getUserId(), sleepData.getDateOfSleep());
+            Integer result = transactionTemplate.execute(status -> sleepAnalysisSummaryMapper.insert(sleepData));
+            sleepDataCache.invalidate(sleepData.getUserId(), sleepData.getDateOfSleep());
+            if (result != null && result > 0) {
+                onSleepDataCommitted(sleepData);
+            }
             
-            if (result > 0) {
+            if (result != null && result > 0) {
                 log.info("新增睡眠数据成功，用户ID：{}，睡眠日期：{}", 
                         sleepData.getUserId(), sleepData.getDateOfSleep());
                 return true;
@@ -58,6 +164,488 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
         }
     }
 
+    /**
+     * 提交一条睡眠数据写入
+     * 队列已满或未开启写后缓冲时在调用线程同步写入
+     * 
+     * @param sleepData 睡眠数据对象
+     * @return CompletableFuture<SleepDataBatchResult.RowResult> 所在事务提交后完成
+     */
+    @Override
+    public CompletableFuture<SleepDataBatchResult.RowResult> submitSleepData(SleepAnalysisSummary sleepData) {
+        if (writeBuffer != null) {
+            CompletableFuture<SleepDataBatchResult.RowResult> future = writeBuffer.offer(sleepData);
+            if (future != null) {
+                return future;
+            }
+            log.warn("睡眠数据写后缓冲已满，改为同步写入，用户ID：{}，睡眠日期：{}", 
+                    sleepData.getUserId(), sleepData.getDateOfSleep());
+        }
+        return CompletableFuture.completedFuture(insertChunk(Collections.singletonList(sleepData)).get(0));
+    }
+
+    /**
+     * 获取按用户ID+睡眠日期查询的本地缓存统计
+     * 
+     * @return Map<String, Object> 命中、未命中、淘汰次数等
+     */
+    @Override
+    public Map<String, Object> getCacheStats() {
+        return sleepDataCache.getStats();
+    }
+
+    /**
+     * 获取写后缓冲运行指标
+     * 
+     * @return Map<String, Object> 指标
+     */
+    @Override
+    public Map<String, Object> getWriteBufferMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", writeBuffer != null);
+        if (writeBuffer != null) {
+            metrics.putAll(writeBuffer.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 等待写后缓冲中的记录提交
+     * 
+     * @param future 写入Future
+     * @return SleepDataBatchResult.RowResult 单行结果
+     */
+    private SleepDataBatchResult.RowResult awaitWrite(CompletableFuture<SleepDataBatchResult.RowResult> future) {
+        try {
+            return future.get(sleepDataConfig.getWriteBehindAwaitTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待睡眠数据写入超时，写入结果未知");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待睡眠数据写入被中断");
+        }
+    }
+
+    /**
+     * 批量新增睡眠数据
+     * 先逐行校验，再将通过校验的记录按分片写入，每个分片一条多行INSERT并单独提交，
+     * 避免超大批量占用单个长事务
+     * 
+     * @param sleepDataList 睡眠数据列表
+     * @return SleepDataBatchResult 逐行写入结果
+     */
+    @Override
+    public SleepDataBatchResult addSleepDataBatch(List<SleepAnalysisSummary> sleepDataList) {
+        SleepDataBatchResult batchResult = writeBatch(sleepDataList, this::insertChunk);
+        log.info("批量新增睡眠数据完成，总数：{}，成功：{}，校验失败：{}，写入失败：{}，分片数：{}",
+                batchResult.getTotal(), batchResult.getSuccessCount(), batchResult.getInvalidCount(),
+                batchResult.getFailedCount(), batchResult.getChunkCount());
+        return batchResult;
+    }
+
+    /**
+     * 新增或更新睡眠数据（按用户ID+睡眠日期幂等）
+     * 先按唯一键插入，已存在时只在数据变化时更新，无需先查询是否存在
+     * 
+     * @param sleepData 睡眠数据对象
+     * @return SleepDataRowStatus 新增、更新或数据未变化
+     */
+    @Override
+    public SleepDataRowStatus upsertSleepData(SleepAnalysisSummary sleepData) {
+        try {
+            sleepData.setProcessedAt(LocalDateTime.now());
+            sleepRecordBloomFilter.putSleepData(sleepData.getUserId(), sleepData.getDateOfSleep());
+            SleepDataRowStatus status = transactionTemplate.execute(txStatus -> upsertRow(sleepData));
+            // 提交后再失效缓存，避免并发读取在提交前把旧值重新写回缓存
+            sleepDataCache.invalidate(sleepData.getUserId(), sleepData.getDateOfSleep());
+            if (isWritten(status)) {
+                onSleepDataCommitted(sleepData);
+            }
+            log.info("新增或更新睡眠数据完成，用户ID：{}，睡眠日期：{}，结果：{}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), status);
+            return status;
+        } catch (Exception e) {
+            log.error("新增或更新睡眠数据异常，用户ID：{}，睡眠日期：{}，异常信息：{}", 
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量新增或更新睡眠数据
+     * 每行先插入、已存在时按需更新，按分片在同一事务中执行
+     * 
+     * @param sleepDataList 睡眠数据列表
+     * @return SleepDataBatchResult 逐行结果（新增、更新、未变化或失败）
+     */
+    @Override
+    public SleepDataBatchResult upsertSleepDataBatch(List<SleepAnalysisSummary> sleepDataList) {
+        SleepDataBatchResult batchResult = writeBatch(sleepDataList, this::upsertChunk);
+        log.info("批量新增或更新睡眠数据完成，总数：{}，成功：{}，校验失败：{}，写入失败：{}，分片数：{}",
+                batchResult.getTotal(), batchResult.getSuccessCount(), batchResult.getInvalidCount(),
+                batchResult.getFailedCount(), batchResult.getChunkCount());
+        return batchResult;
+    }
+
+    /**
+     * 校验并按分片写入一批睡眠数据
+     * 
+     * @param sleepDataList 睡眠数据列表
+     * @param chunkWriter 分片写入方法，返回与分片顺序一致的单行结果
+     * @return SleepDataBatchResult 逐行写入结果，顺序与输入一致
+     */
+    private SleepDataBatchResult writeBatch(List<SleepAnalysisSummary> sleepDataList,
+                                            Function<List<SleepAnalysisSummary>, List<SleepDataBatchResult.RowResult>> chunkWriter) {
+        SleepDataBatchResult batchResult = new SleepDataBatchResult();
+        batchResult.setTotal(sleepDataList.size());
+        
+        // 1. 逐行校验，记录未通过校验的行
+        SleepDataBatchResult.RowResult[] rowResults = new SleepDataBatchResult.RowResult[sleepDataList.size()];
+        List<SleepAnalysisSummary> validList = new ArrayList<>(sleepDataList.size());
+        List<Integer> validIndexes = new ArrayList<>(sleepDataList.size());
+        for (int i = 0; i < sleepDataList.size(); i++) {
+            SleepAnalysisSummary sleepData = sleepDataList.get(i);
+            String error = SleepDataValidator.validate(sleepData);
+            if (error != null) {
+                rowResults[i] = SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.INVALID, error);
+                rowResults[i].setIndex(i);
+                continue;
+            }
+            validList.add(sleepData);
+            validIndexes.add(i);
+        }
+        
+        // 2. 按分片写入
+        int offset = 0;
+        for (List<SleepAnalysisSummary> chunk : ListPartitioner.partition(validList, sleepDataConfig.getBatchSize())) {
+            List<SleepDataBatchResult.RowResult> chunkResults = chunkWriter.apply(chunk);
+            for (int j = 0; j < chunk.size(); j++) {
+                int index = validIndexes.get(offset + j);
+                rowResults[index] = chunkResults.get(j);
+                rowResults[index].setIndex(index);
+            }
+            offset += chunk.size();
+            batchResult.setChunkCount(batchResult.getChunkCount() + 1);
+        }
+        
+        for (SleepDataBatchResult.RowResult rowResult : rowResults) {
+            batchResult.addRow(rowResult);
+        }
+        return batchResult;
+    }
+
+    /**
+     * 流式导入睡眠数据（NDJSON，每行一个JSON对象）
+     * 在请求线程中边读边写：每攒满一个分片就同步写库，写库期间暂停读取，
+     * 由TCP流控对上传端形成背压；已写入的对象随即释放，堆内存占用保持平稳
+     * 
+     * @param inputStream NDJSON输入流
+     * @return SleepDataImportResult 导入计数及被拒绝行的位置
+     * @throws IOException 读取输入流失败
+     */
+    @Override
+    public SleepDataImportResult importSleepDataStream(InputStream inputStream) throws IOException {
+        StreamImportContext context = new StreamImportContext();
+        byte[] readBuffer = new byte[STREAM_READ_BUFFER_SIZE];
+        int n;
+        while ((n = inputStream.read(readBuffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                context.accept(readBuffer[i]);
+            }
+        }
+        context.finish();
+        
+        SleepDataImportResult importResult = context.importResult;
+        log.info("流式导入睡眠数据完成，行数：{}，字节数：{}，成功：{}，拒绝：{}，写入失败：{}，分片数：{}",
+                importResult.getLineCount(), importResult.getBytesRead(), importResult.getSuccessCount(),
+                importResult.getRejectedCount(), importResult.getFailedCount(), importResult.getBatchCount());
+        return importResult;
+    }
+
+    /**
+     * 流式导入的解析状态
+     * 只持有一行的字节缓冲和一个分片的待写记录
+     */
+    private class StreamImportContext {
+
+        private final SleepDataImportResult importResult = new SleepDataImportResult();
+        private final int batchSize = sleepDataConfig.getBatchSize();
+        private final int maxLineBytes = sleepDataConfig.getStreamMaxLineBytes();
+
+        private final List<SleepAnalysisSummary> batch = new ArrayList<>(batchSize);
+        private final long[] batchLineNumbers = new long[batchSize];
+        private final long[] batchOffsets = new long[batchSize];
+
+        private byte[] lineBuffer = new byte[Math.min(maxLineBytes, 8 * 1024)];
+        private int lineLength;
+        private boolean lineOversized;
+        private long lineStart;
+        private long lineNumber;
+        private long offset;
+
+        /**
+         * 接收一个字节，遇到换行符时处理当前行
+         */
+        void accept(byte b) {
+            offset++;
+            if (b == '\n') {
+                endLine();
+                lineStart = offset;
+                return;
+            }
+            if (lineOversized) {
+                return;
+            }
+            if (lineLength == maxLineBytes) {
+                lineOversized = true;
+                return;
+            }
+            if (lineLength == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, Math.min(lineBuffer.length * 2, maxLineBytes));
+            }
+            lineBuffer[lineLength++] = b;
+        }
+
+        /**
+         * 输入结束：处理最后一行（无换行结尾）并写入剩余分片
+         */
+        void finish() {
+            if (offset > lineStart) {
+                endLine();
+            }
+            flushBatch();
+            importResult.setBytesRead(offset);
+        }
+
+        private void endLine() {
+            lineNumber++;
+            int length = lineLength;
+            boolean oversized = lineOversized;
+            lineLength = 0;
+            lineOversized = false;
+            
+            // 去掉行尾的\r及空白，跳过空行
+            while (length > 0 && Character.isWhitespace(lineBuffer[length - 1])) {
+                length--;
+            }
+            if (length == 0 && !oversized) {
+                return;
+            }
+            importResult.setLineCount(importResult.getLineCount() + 1);
+            
+            if (oversized) {
+                reject("单行超过" + maxLineBytes + "字节");
+                return;
+            }
+            
+            SleepAnalysisSummary sleepData;
+            try (JsonParser parser = objectMapper.getFactory().createParser(lineBuffer, 0, length)) {
+                sleepData = objectMapper.readValue(parser, SleepAnalysisSummary.class);
+                if (parser.nextToken() != null) {
+                    reject("每行只能包含一个JSON对象");
+                    return;
+                }
+            } catch (JsonProcessingException e) {
+                reject("JSON解析失败：" + e.getOriginalMessage());
+                return;
+            } catch (IOException e) {
+                reject("JSON解析失败：" + e.getMessage());
+                return;
+            }
+            
+            String error = SleepDataValidator.validate(sleepData);
+            if (error != null) {
+                reject(error);
+                return;
+            }
+            
+            batchLineNumbers[batch.size()] = lineNumber;
+            batchOffsets[batch.size()] = lineStart;
+            batch.add(sleepData);
+            if (batch.size() == batchSize) {
+                flushBatch();
+            }
+        }
+
+        private void flushBatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<SleepDataBatchResult.RowResult> results = insertChunk(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                SleepDataBatchResult.RowResult rowResult = results.get(i);
+                if (rowResult.getStatus() != SleepDataRowStatus.FAILED) {
+                    importResult.setSuccessCount(importResult.getSuccessCount() + 1);
+                } else {
+                    importResult.setFailedCount(importResult.getFailedCount() + 1);
+                    recordRejectedLine(batchLineNumbers[i], batchOffsets[i], rowResult.getMessage());
+                }
+            }
+            batch.clear();
+            importResult.setBatchCount(importResult.getBatchCount() + 1);
+            log.debug("流式导入进度，已读取行数：{}，已读取字节数：{}，成功：{}，拒绝：{}，写入失败：{}",
+                    importResult.getLineCount(), offset, importResult.getSuccessCount(),
+                    importResult.getRejectedCount(), importResult.getFailedCount());
+        }
+
+        private void reject(String reason) {
+            importResult.setRejectedCount(importResult.getRejectedCount() + 1);
+            recordRejectedLine(lineNumber, lineStart, reason);
+        }
+
+        private void recordRejectedLine(long rejectedLineNumber, long byteOffset, String reason) {
+            if (importResult.getRejectedLines().size() < sleepDataConfig.getStreamMaxReportedRejections()) {
+                importResult.getRejectedLines().add(
+                        new SleepDataImportResult.RejectedLine(rejectedLineNumber, byteOffset, reason));
+            } else {
+                importResult.setRejectedLinesTruncated(true);
+            }
+        }
+    }
+
+    /**
+     * 在独立事务中写入一个分片
+     * 优先使用一条多行INSERT；若整片失败（如个别行唯一键冲突），在同一事务内逐行重试以得到逐行结果
+     * 
+     * @param chunk 分片数据
+     * @return 与分片顺序一致的单行结果
+     */
+    private List<SleepDataBatchResult.RowResult> insertChunk(List<SleepAnalysisSummary> chunk) {
+        registerKeys(chunk);
+        stampProcessedAt(chunk);
+        List<SleepDataBatchResult.RowResult> chunkResults = transactionTemplate.execute(status -> {
+            List<SleepDataBatchResult.RowResult> results = new ArrayList<>(chunk.size());
+            try {
+                sleepAnalysisSummaryMapper.insertBatch(chunk);
+                for (SleepAnalysisSummary sleepData : chunk) {
+                    results.add(SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.INSERTED, null));
+                }
+                return results;
+            } catch (DataAccessException e) {
+                log.warn("分片批量写入失败，改为逐行写入，分片行数：{}，异常信息：{}", chunk.size(), e.getMessage());
+            }
+            
+            for (SleepAnalysisSummary sleepData : chunk) {
+                try {
+                    int result = sleepAnalysisSummaryMapper.insert(sleepData);
+                    results.add(result > 0
+                            ? SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.INSERTED, null)
+                            : SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.FAILED, "新增睡眠数据失败"));
+                } catch (DuplicateKeyException e) {
+                    results.add(SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.FAILED, "该用户该日期的睡眠数据已存在"));
+                } catch (DataAccessException e) {
+                    results.add(SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.FAILED,
+                            "新增睡眠数据异常：" + e.getMostSpecificCause().getMessage()));
+                }
+            }
+            return results;
+        });
+        afterChunkCommit(chunk, chunkResults);
+        return chunkResults;
+    }
+
+    /**
+     * 在独立事务中逐行upsert一个分片
+     * 
+     * @param chunk 分片数据
+     * @return 与分片顺序一致的单行结果
+     */
+    private List<SleepDataBatchResult.RowResult> upsertChunk(List<SleepAnalysisSummary> chunk) {
+        registerKeys(chunk);
+        stampProcessedAt(chunk);
+        List<SleepDataBatchResult.RowResult> chunkResults = transactionTemplate.execute(status -> {
+            List<SleepDataBatchResult.RowResult> results = new ArrayList<>(chunk.size());
+            for (SleepAnalysisSummary sleepData : chunk) {
+                try {
+                    SleepDataRowStatus rowStatus = upsertRow(sleepData);
+                    results.add(SleepDataBatchResult.RowResult.of(sleepData, rowStatus, null));
+                } catch (DataAccessException e) {
+                    results.add(SleepDataBatchResult.RowResult.of(sleepData, SleepDataRowStatus.FAILED,
+                            "新增或更新睡眠数据异常：" + e.getMostSpecificCause().getMessage()));
+                }
+            }
+            return results;
+        });
+        afterChunkCommit(chunk, chunkResults);
+        return chunkResults;
+    }
+
+    /**
+     * 写入前把分片中的用户ID+日期登记到布隆过滤器
+     * 
+     * @param chunk 分片数据
+     */
+    private void registerKeys(List<SleepAnalysisSummary> chunk) {
+        for (SleepAnalysisSummary sleepData : chunk) {
+            sleepRecordBloomFilter.putSleepData(sleepData.getUserId(), sleepData.getDateOfSleep());
+        }
+    }
+
+    /**
+     * 在分片事务开始前设置处理时间
+     * 组提交排队、批量前面的分片和流式读取都可能耗时较长，处理时间须紧挨着提交，
+     * 否则提交时已落后于周/月汇总的增量水位而被漏掉
+     * 
+     * @param chunk 分片数据
+     */
+    private void stampProcessedAt(List<SleepAnalysisSummary> chunk) {
+        LocalDateTime now = LocalDateTime.now();
+        for (SleepAnalysisSummary sleepData : chunk) {
+            sleepData.setProcessedAt(now);
+        }
+    }
+
+    /**
+     * 分片提交后使缓存中对应的记录失效，并把新增或更新的记录同步到滚动统计、发布夜晚已记录事件
+     * 
+     * @param chunk 分片数据
+     * @param chunkResults 与分片顺序一致的单行结果
+     */
+    private void afterChunkCommit(List<SleepAnalysisSummary> chunk, List<SleepDataBatchResult.RowResult> chunkResults) {
+        for (int i = 0; i < chunk.size(); i++) {
+            SleepAnalysisSummary sleepData = chunk.get(i);
+            sleepDataCache.invalidate(sleepData.getUserId(), sleepData.getDateOfSleep());
+            if (isWritten(chunkResults.get(i).getStatus())) {
+                onSleepDataCommitted(sleepData);
+            }
+        }
+    }
+
+    /**
+     * 是否实际写入了数据：数据未变化和写入失败的行不触发滚动统计、积分等后续处理
+     */
+    private static boolean isWritten(SleepDataRowStatus status) {
+        return status == SleepDataRowStatus.INSERTED || status == SleepDataRowStatus.UPDATED;
+    }
+
+    /**
+     * 睡眠数据提交后的通知：更新滚动统计，并发布夜晚已记录事件（由积分自动生成消费）
+     * 
+     * @param sleepData 已提交的睡眠数据
+     */
+    private void onSleepDataCommitted(SleepAnalysisSummary sleepData) {
+        sleepRollupService.onSleepDataCommitted(sleepData);
+        applicationEventPublisher.publishEvent(new NightRecordedEvent(sleepData));
+    }
+
+    /**
+     * 新增或更新一行（调用方负责事务）
+     * 先按唯一键插入，已存在时只在数据变化时更新；两条语句的影响行数都不依赖连接的useAffectedRows参数
+     * 
+     * @param sleepData 睡眠数据对象
+     * @return SleepDataRowStatus 新增、更新或数据未变化
+     */
+    private SleepDataRowStatus upsertRow(SleepAnalysisSummary sleepData) {
+        if (sleepAnalysisSummaryMapper.insertIfAbsent(sleepData) > 0) {
+            return SleepDataRowStatus.INSERTED;
+        }
+        return sleepAnalysisSummaryMapper.updateIfChanged(sleepData) > 0
+                ? SleepDataRowStatus.UPDATED : SleepDataRowStatus.UNCHANGED;
+    }
+
     /**
      * 根据用户ID和睡眠日期查询睡眠记录
      * 
@@ -68,8 +656,15 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
     @Override
     public SleepAnalysisSummary getSleepDataByUserIdAndDate(String userId, LocalDate dateOfSleep) {
         try {
-            // 使用自定义的Mapper方法查询
-            SleepAnalysisSummary result = sleepAnalysisSummaryMapper.selectByUserIdAndDate(userId, dateOfSleep.toString());
+            // 布隆过滤器判定一定不存在时不再访问数据库
+            if (!sleepRecordBloomFilter.mightContainSleepData(userId, dateOfSleep)) {
+                log.debug("布隆过滤器判定睡眠数据不存在，用户ID：{}，睡眠日期：{}", userId, dateOfSleep);
+                return null;
+            }
+            
+            // 先查本地缓存，未命中再使用自定义的Mapper方法查询
+            SleepAnalysisSummary result = sleepDataCache.get(userId, dateOfSleep,
+                    () -> sleepAnalysisSummaryMapper.selectByUserIdAndDate(userId, dateOfSleep.toString()));
             
             if (result != null) {
                 log.info("查询睡眠数据成功，用户ID：{}，睡眠日期：{}", userId, dateOfSleep);
@@ -85,18 +680,44 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
         }
     }
 
+    /**
+     * 批量查询多个用户同一睡眠日期的睡眠记录
+     * 布隆过滤器判定一定不存在的用户不参与查询；不读写本地缓存，避免批量任务挤掉在线查询的热点数据
+     * 
+     * @param userIds 用户ID列表
+     * @param dateOfSleep 睡眠日期
+     * @return Map<String, SleepAnalysisSummary> 用户ID到睡眠记录
+     */
+    @Override
+    public Map<String, SleepAnalysisSummary> getSleepDataByUserIdsAndDate(List<String> userIds, LocalDate dateOfSleep) {
+        if (userIds == null || userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> candidates = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            if (userId != null && sleepRecordBloomFilter.mightContainSleepData(userId, dateOfSleep)) {
+                candidates.add(userId);
+            }
+        }
+        Map<String, SleepAnalysisSummary> result = ChunkedLookup.lookup(candidates, sleepDataConfig.getBulkLookupChunkSize(),
+                chunk -> sleepAnalysisSummaryMapper.selectByUserIdsAndDate(chunk, dateOfSleep),
+                SleepAnalysisSummary::getUserId);
+        log.debug("批量查询睡眠数据，睡眠日期：{}，请求用户数：{}，查询用户数：{}，命中：{}",
+                dateOfSleep, userIds.size(), candidates.size(), result.size());
+        return result;
+    }
+
     /**
      * 批量插入模拟测试数据
+     * 与批量接口走同一分片写入路径，提交后同样失效缓存、更新滚动统计并发布夜晚已记录事件
      * 
      * @return boolean 是否插入成功
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean initTestData() {
         try {
             List<SleepAnalysisSummary> testDataList = new ArrayList<>();
             LocalDate today = LocalDate.now();
-            LocalDateTime now = LocalDateTime.now();
             
             // 生成5条测试数据，覆盖不同用户和日期
             for (int i = 1; i <= 5; i++) {
@@ -107,19 +728,14 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
                 testData.setDeepSleepDuration(60 + i * 10); // 60-110分钟
                 testData.setRemSleepDuration(90 + i * 5); // 90-115分钟
                 testData.setSleepScore(70 + i * 4); // 70-90分
-                testData.setProcessedAt(now);
                 
                 testDataList.add(testData);
             }
             
-            // 批量保存
+            // 批量保存（与批量接口相同的多行INSERT路径，一次数据库往返）
             boolean allSuccess = true;
-            for (SleepAnalysisSummary testData : testDataList) {
-                int result = sleepAnalysisSummaryMapper.insert(testData);
-                if (result <= 0) {
-                    allSuccess = false;
-                    break;
-                }
+            for (SleepDataBatchResult.RowResult rowResult : insertChunk(testDataList)) {
+                allSuccess &= rowResult.getStatus() == SleepDataRowStatus.INSERTED;
             }
             
             if (allSuccess) {
@@ -155,4 +771,34 @@ public class SleepAnalysisSummaryServiceImpl implements SleepAnalysisSummaryServ
             throw e;
         }
     }
+
+    /**
+     * 按睡眠日期倒序分页查询用户睡眠记录
+     * 多查一条用于判断是否还有下一页
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param pageToken 分页令牌，第一页为空
+     * @param pageSize 每页条数
+     * @return CursorPage<SleepAnalysisSummary> 当前页记录及下一页令牌
+     */
+    @Override
+    public CursorPage<SleepAnalysisSummary> getSleepDataPage(String userId, LocalDate from, LocalDate to,
+                                                             String pageToken, int pageSize) {
+        try {
+            LocalDate before = DatePageToken.decode(pageToken);
+            List<SleepAnalysisSummary> rows = sleepAnalysisSummaryMapper.selectPageByUserId(
+                    userId, from, to, before, pageSize + 1);
+            CursorPage<SleepAnalysisSummary> page = CursorPage.of(rows, pageSize, SleepAnalysisSummary::getDateOfSleep);
+            
+            log.info("分页查询用户睡眠数据成功，用户ID：{}，记录数：{}，是否有下一页：{}", 
+                    userId, page.getItems().size(), page.isHasMore());
+            
+            return page;
+        } catch (Exception e) {
+            log.error("分页查询用户睡眠数据异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            throw e;
+        }
+    }
 }
\ No newline at end of file
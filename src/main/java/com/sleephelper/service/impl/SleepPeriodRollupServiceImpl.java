@@ -0,0 +1,271 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.SleepRollupPeriod;
+import com.sleephelper.common.ListPartitioner;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepPeriodRollup;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import com.sleephelper.mapper.SleepPeriodRollupMapper;
+import com.sleephelper.service.SleepPeriodRollupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 睡眠周/月汇总 服务实现类
+ * 增量刷新按主键分页读取处理时间在 (水位, 当前时间 - 滞后时间] 内的记录，对涉及的用户周期
+ * 整体重新汇总（覆盖写入，重复执行结果不变），再由用户汇总重新汇总涉及的全体用户周期，最后推进水位；
+ * 中途失败时水位不变，下次从原水位重新处理。物理删除的记录不会产生新的处理时间，需要全量重建才能反映
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class SleepPeriodRollupServiceImpl implements SleepPeriodRollupService {
+
+    /**
+     * 增量刷新任务在水位表中的名称
+     */
+    private static final String INCREMENTAL_JOB = "sleep_period_rollup";
+
+    /**
+     * 没有水位记录时的初始水位，首次增量刷新会处理全部带处理时间的记录
+     */
+    private static final LocalDateTime INITIAL_WATERMARK = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Autowired
+    private SleepPeriodRollupMapper sleepPeriodRollupMapper;
+
+    @Autowired
+    private SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 增量刷新与全量重建互斥
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * 定时增量刷新，上一次刷新或全量重建未结束时跳过
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.period-rollup-interval-ms:300000}",
+            initialDelayString = "${sleep.data.period-rollup-interval-ms:300000}")
+    public void scheduledRefresh() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPeriodRollupEnabled())) {
+            return;
+        }
+        if (!refreshLock.tryLock()) {
+            log.info("周/月汇总正在刷新或重建，跳过本次定时刷新");
+            return;
+        }
+        try {
+            refreshIncremental();
+        } catch (Exception e) {
+            log.error("定时增量刷新周/月汇总异常，异常信息：{}", e.getMessage(), e);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Object> refreshIncremental() {
+        refreshLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            LocalDateTime stored = sleepPeriodRollupMapper.selectWatermark(INCREMENTAL_JOB);
+            LocalDateTime from = stored != null ? stored : INITIAL_WATERMARK;
+            LocalDateTime to = LocalDateTime.now().minusSeconds(sleepDataConfig.getPeriodRollupLagSeconds());
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("from", from);
+            if (!to.isAfter(from)) {
+                result.put("processedRows", 0);
+                result.put("watermark", from);
+                return result;
+            }
+
+            int pageSize = sleepDataConfig.getPeriodRollupPageSize();
+            Map<SleepRollupPeriod, Set<LocalDate>> touchedPeriods = new EnumMap<>(SleepRollupPeriod.class);
+            long processedRows = 0;
+            long refreshedUserPeriods = 0;
+            long afterId = 0L;
+            List<SleepAnalysisSummary> page;
+            do {
+                page = sleepAnalysisSummaryMapper.selectProcessedBetween(from, to, afterId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                refreshedUserPeriods += refreshUserPeriods(page, touchedPeriods);
+                processedRows += page.size();
+                afterId = page.get(page.size() - 1).getId();
+            } while (page.size() == pageSize);
+
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Map.Entry<SleepRollupPeriod, Set<LocalDate>> entry : touchedPeriods.entrySet()) {
+                    for (List<LocalDate> chunk : ListPartitioner.partition(
+                            new ArrayList<>(entry.getValue()), sleepDataConfig.getBatchSize())) {
+                        sleepPeriodRollupMapper.upsertGlobalRollups(entry.getKey().name(), chunk);
+                    }
+                }
+                sleepPeriodRollupMapper.upsertWatermark(INCREMENTAL_JOB, to);
+            });
+
+            log.info("增量刷新周/月汇总完成，处理记录数：{}，刷新用户周期数：{}，水位：{} -> {}，耗时：{}ms",
+                    processedRows, refreshedUserPeriods, from, to, System.currentTimeMillis() - start);
+            result.put("processedRows", processedRows);
+            result.put("refreshedUserPeriods", refreshedUserPeriods);
+            result.put("watermark", to);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            return result;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Object> rebuildAll() {
+        refreshLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            // 重建期间写入的记录处理时间晚于该水位，之后由增量刷新补上
+            LocalDateTime watermark = LocalDateTime.now().minusSeconds(sleepDataConfig.getPeriodRollupLagSeconds());
+            int rangeSize = sleepDataConfig.getPeriodRollupRebuildRangeSize();
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(sleepDataConfig.getPeriodRollupRebuildThreads(),
+                    runnable -> new Thread(runnable, "sleep-period-rollup-rebuild-" + threadIndex.incrementAndGet()));
+            int rangeCount = 0;
+            try {
+                // 区间首尾相接：(上一区间上界, 本区间上界]，最后一个区间不设上界，不会漏掉重建期间新增的用户
+                List<Future<?>> futures = new ArrayList<>();
+                String afterUserId = null;
+                List<String> userIds;
+                do {
+                    userIds = sleepAnalysisSummaryMapper.selectUserIdsAfter(afterUserId, rangeSize);
+                    String rangeAfter = afterUserId;
+                    String rangeTo = userIds.size() == rangeSize ? userIds.get(userIds.size() - 1) : null;
+                    futures.add(executor.submit(() -> rebuildRange(rangeAfter, rangeTo)));
+                    afterUserId = rangeTo;
+                } while (userIds.size() == rangeSize);
+                rangeCount = futures.size();
+
+                int failedRanges = 0;
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failedRanges++;
+                        log.error("重建用户周/月汇总区间失败，异常信息：{}", e.getCause().getMessage(), e.getCause());
+                    }
+                }
+                if (failedRanges > 0) {
+                    throw new IllegalStateException("全量重建周/月汇总失败，失败区间数：" + failedRanges + "/" + rangeCount);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("全量重建周/月汇总被中断", e);
+            } finally {
+                executor.shutdown();
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                sleepPeriodRollupMapper.deleteAllGlobalRollups();
+                for (SleepRollupPeriod period : SleepRollupPeriod.values()) {
+                    sleepPeriodRollupMapper.upsertGlobalRollups(period.name(), null);
+                }
+                sleepPeriodRollupMapper.upsertWatermark(INCREMENTAL_JOB, watermark);
+            });
+
+            long elapsed = System.currentTimeMillis() - start;
+            log.info("全量重建周/月汇总完成，用户ID区间数：{}，水位：{}，耗时：{}ms", rangeCount, watermark, elapsed);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("rangeCount", rangeCount);
+            result.put("threads", sleepDataConfig.getPeriodRollupRebuildThreads());
+            result.put("watermark", watermark);
+            result.put("elapsedMillis", elapsed);
+            return result;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public List<SleepPeriodRollup> getUserRollups(String userId, SleepRollupPeriod period, LocalDate from, LocalDate to) {
+        return sleepPeriodRollupMapper.selectUserRollups(userId, period.name(), from, to);
+    }
+
+    @Override
+    public List<SleepPeriodRollup> getGlobalRollups(SleepRollupPeriod period, LocalDate from, LocalDate to) {
+        return sleepPeriodRollupMapper.selectGlobalRollups(period.name(), from, to);
+    }
+
+    /**
+     * 重新汇总一页记录涉及的用户周期，并记下涉及的全体用户周期
+     * 
+     * @param page 一页变更记录
+     * @param touchedPeriods 涉及的全体用户周期，按周期类型累积
+     * @return int 刷新的用户周期数
+     */
+    private int refreshUserPeriods(List<SleepAnalysisSummary> page, Map<SleepRollupPeriod, Set<LocalDate>> touchedPeriods) {
+        int refreshed = 0;
+        for (SleepRollupPeriod period : SleepRollupPeriod.values()) {
+            Map<String, SleepPeriodRollup> keys = new LinkedHashMap<>();
+            Set<LocalDate> periodStarts = touchedPeriods.computeIfAbsent(period, p -> new TreeSet<>());
+            for (SleepAnalysisSummary row : page) {
+                LocalDate periodStart = period.startOf(row.getDateOfSleep());
+                periodStarts.add(periodStart);
+                keys.computeIfAbsent(row.getUserId() + '|' + periodStart, k -> {
+                    SleepPeriodRollup key = new SleepPeriodRollup();
+                    key.setUserId(row.getUserId());
+                    key.setPeriodType(period.name());
+                    key.setPeriodStart(periodStart);
+                    return key;
+                });
+            }
+            for (List<SleepPeriodRollup> chunk : ListPartitioner.partition(
+                    new ArrayList<>(keys.values()), sleepDataConfig.getBatchSize())) {
+                sleepPeriodRollupMapper.upsertUserRollupsForKeys(period.name(), chunk);
+            }
+            refreshed += keys.size();
+        }
+        return refreshed;
+    }
+
+    /**
+     * 在一个事务内重建用户ID区间 (afterUserId, toUserId] 的周/月汇总
+     */
+    private void rebuildRange(String afterUserId, String toUserId) {
+        long start = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            sleepPeriodRollupMapper.deleteUserRollupsInRange(afterUserId, toUserId);
+            for (SleepRollupPeriod period : SleepRollupPeriod.values()) {
+                sleepPeriodRollupMapper.upsertUserRollupsInRange(period.name(), afterUserId, toUserId);
+            }
+        });
+        log.debug("重建用户周/月汇总区间完成：({}, {}]，耗时：{}ms", afterUserId, toUserId, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,196 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.NightRecordedEvent;
+import com.sleephelper.common.GroupCommitBuffer;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepPoints;
+import com.sleephelper.mapper.SleepPointsMapper;
+import com.sleephelper.service.SleepPointsAutoService;
+import com.sleephelper.service.SleepPointsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 睡眠积分自动生成 服务实现类
+ * 消费睡眠数据提交后发布的 NightRecordedEvent，经组提交缓冲攒批后一个事务写入一批积分；
+ * 投递至少一次：队列已满、写入失败或进程退出丢失的事件由定时补扫兜底，
+ * 重复投递由 sleep_points 的 uk_user_date 唯一键去重
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class SleepPointsAutoServiceImpl implements SleepPointsAutoService {
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private SleepPointsService sleepPointsService;
+
+    @Autowired
+    private SleepPointsMapper sleepPointsMapper;
+
+    /**
+     * 异步生成缓冲，未开启时为null
+     */
+    private GroupCommitBuffer<SleepAnalysisSummary, SleepPoints> generateBuffer;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private final AtomicLong failedEventCount = new AtomicLong();
+    private final AtomicLong sweepCount = new AtomicLong();
+    private final AtomicLong sweptCreatedCount = new AtomicLong();
+
+    @PostConstruct
+    public void initGenerateBuffer() {
+        if (Boolean.TRUE.equals(sleepDataConfig.getPointsAutoGenerateEnabled())) {
+            generateBuffer = new GroupCommitBuffer<>("sleep-points-auto",
+                    sleepDataConfig.getPointsAutoQueueCapacity(),
+                    sleepDataConfig.getPointsAutoMaxBatchSize(),
+                    sleepDataConfig.getPointsAutoFlushIntervalMs(),
+                    sleepPointsService::generateSleepPointsBatch);
+            log.info("睡眠积分自动生成已开启，队列容量：{}，每批最大条数：{}，刷写间隔：{}ms",
+                    sleepDataConfig.getPointsAutoQueueCapacity(), sleepDataConfig.getPointsAutoMaxBatchSize(),
+                    sleepDataConfig.getPointsAutoFlushIntervalMs());
+        }
+    }
+
+    /**
+     * 应用关闭时停止接收并写空队列，未写出的事件由下次启动后的补扫处理
+     */
+    @PreDestroy
+    public void shutdownGenerateBuffer() {
+        if (generateBuffer != null) {
+            generateBuffer.shutdown(sleepDataConfig.getWriteBehindShutdownTimeoutMs());
+        }
+    }
+
+    /**
+     * 睡眠数据提交后入队，不阻塞写入线程
+     * 
+     * @param event 夜晚已记录事件
+     */
+    @EventListener
+    public void onNightRecorded(NightRecordedEvent event) {
+        SleepAnalysisSummary sleepData = event.getSleepData();
+        if (generateBuffer == null || sleepData.getUserId() == null || sleepData.getDateOfSleep() == null) {
+            return;
+        }
+        CompletableFuture<SleepPoints> future = generateBuffer.offer(sleepData);
+        if (future == null) {
+            droppedEventCount.incrementAndGet();
+            log.warn("积分自动生成队列已满，留待补扫，用户ID：{}，睡眠日期：{}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep());
+            return;
+        }
+        future.whenComplete((created, e) -> {
+            if (e != null) {
+                failedEventCount.incrementAndGet();
+                log.error("自动生成睡眠积分失败，留待补扫，用户ID：{}，睡眠日期：{}，异常信息：{}",
+                        sleepData.getUserId(), sleepData.getDateOfSleep(), e.getMessage());
+            } else if (created != null) {
+                createdCount.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 定时补扫，上一次补扫未结束时跳过
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.points-sweep-interval-ms:600000}",
+            initialDelayString = "${sleep.data.points-sweep-interval-ms:600000}")
+    public void scheduledSweep() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsAutoGenerateEnabled())) {
+            return;
+        }
+        try {
+            Map<String, Object> result = sweep();
+            if (((Number) result.get("createdCount")).longValue() > 0) {
+                log.warn("睡眠积分补扫发现漏生成的夜晚：{}", result);
+            }
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        } catch (Exception e) {
+            log.error("定时补扫睡眠积分异常，异常信息：{}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            throw new IllegalStateException("睡眠积分补扫正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int batchSize = sleepDataConfig.getPointsSweepBatchSize();
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime from = now.minusHours(sleepDataConfig.getPointsSweepLookbackHours());
+            // 上界滞后若干秒，跳过刚提交、仍在异步队列中等待写出的夜晚
+            LocalDateTime to = now.minusSeconds(sleepDataConfig.getPointsSweepLagSeconds());
+            long scanned = 0;
+            long created = 0;
+            List<SleepAnalysisSummary> nights;
+            do {
+                nights = sleepPointsMapper.selectNightsWithoutPoints(from, to, batchSize);
+                if (nights.isEmpty()) {
+                    break;
+                }
+                scanned += nights.size();
+                long batchCreated = sleepPointsService.generateSleepPointsBatch(nights).stream()
+                        .filter(Objects::nonNull).count();
+                created += batchCreated;
+                // 已生成的夜晚不会再被查出；整批都未新增说明剩余记录无法处理，避免空转
+                if (batchCreated == 0) {
+                    break;
+                }
+            } while (nights.size() == batchSize);
+
+            sweepCount.incrementAndGet();
+            sweptCreatedCount.addAndGet(created);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("from", from);
+            result.put("to", to);
+            result.put("scannedCount", scanned);
+            result.put("createdCount", created);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("睡眠积分补扫完成：{}", result);
+            return result;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", generateBuffer != null);
+        metrics.put("createdCount", createdCount.get());
+        metrics.put("droppedEventCount", droppedEventCount.get());
+        metrics.put("failedEventCount", failedEventCount.get());
+        metrics.put("sweepCount", sweepCount.get());
+        metrics.put("sweptCreatedCount", sweptCreatedCount.get());
+        if (generateBuffer != null) {
+            metrics.put("buffer", generateBuffer.getMetrics());
+        }
+        return metrics;
+    }
+}
@@ -1,18 +1,39 @@
 package com.sleephelper.service.impl;
 
+import com.sleephelper.bean.CursorPage;
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.bean.SleepPointsEarnedEvent;
+import com.sleephelper.cache.SleepRecordBloomFilter;
+import com.sleephelper.common.ChunkedLookup;
+import com.sleephelper.common.DatePageToken;
+import com.sleephelper.common.PointsRuleEngine;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.PointsLedgerEntry;
 import com.sleephelper.entity.SleepAnalysisSummary;
 import com.sleephelper.entity.SleepPoints;
 import com.sleephelper.mapper.SleepPointsMapper;
-import com.sleephelper.service.SleepAnalysisSummaryService;
+import com.sleephelper.service.PointsExpiryService;
+import com.sleephelper.service.PointsLeaderboardService;
+import com.sleephelper.service.PointsLedgerService;
 import com.sleephelper.service.SleepPointsService;
+import com.sleephelper.service.UserPointsBalanceService;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 睡眠积分表 服务实现类
@@ -28,15 +49,63 @@ public class SleepPointsServiceImpl implements SleepPointsService {
     private SleepPointsMapper sleepPointsMapper;
 
     @Autowired
-    private SleepAnalysisSummaryService sleepAnalysisSummaryService;
+    private SleepRecordBloomFilter sleepRecordBloomFilter;
+
+    @Autowired
+    private UserPointsBalanceService userPointsBalanceService;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private PointsLeaderboardService pointsLeaderboardService;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private PointsExpiryService pointsExpiryService;
+
+    /**
+     * 积分回填是否正在执行
+     */
+    private final AtomicBoolean backfilling = new AtomicBoolean();
+
+    /**
+     * 积分规则，启动时按配置编译；直接构造（未经Spring注入）时使用默认规则
+     */
+    private volatile PointsRuleEngine pointsRuleEngine = PointsRuleEngine.DEFAULT;
+
+    /**
+     * 按配置编译积分规则，配置无效时启动失败
+     */
+    @PostConstruct
+    public void initPointsRules() {
+        pointsRuleEngine = PointsRuleEngine.compile(
+                sleepDataConfig.getPointsScoreThresholds(),
+                sleepDataConfig.getPointsScorePoints(),
+                sleepDataConfig.getPointsDefaultBasePoints(),
+                sleepDataConfig.getPointsDeepSleepStepMinutes(),
+                sleepDataConfig.getPointsDeepSleepStepPoints(),
+                sleepDataConfig.getPointsDeepSleepMaxPoints(),
+                sleepDataConfig.getPointsDailyCap());
+        log.info("睡眠积分规则已加载：{}", pointsRuleEngine);
+    }
 
     /**
      * 生成睡眠积分
-     * 根据用户ID和睡眠日期，从睡眠数据中计算积分并存储
+     * 一条 INSERT ... SELECT 读取睡眠数据、计算积分并写入，积分已存在时不修改（uk_user_date去重），
+     * 随后读回已存储的记录；并发请求同一晚时只有一个写入成功，其余直接返回该记录，不抛重复键异常
      * 
      * @param userId 用户ID
      * @param dateOfSleep 睡眠日期
-     * @return SleepPoints 生成的积分记录
+     * @return SleepPoints 已存储的积分记录（本次生成或已存在）
      */
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -44,40 +113,30 @@ public class SleepPointsServiceImpl implements SleepPointsService {
         try {
             log.info("开始生成睡眠积分，用户ID：{}，睡眠日期：{}", userId, dateOfSleep);
             
-            // 1. 查询睡眠数据
-            SleepAnalysisSummary sleepData = sleepAnalysisSummaryService.getSleepDataByUserIdAndDate(userId, dateOfSleep);
-            if (sleepData == null) {
+            // 1. 先登记到布隆过滤器，再读取睡眠数据并写入积分
+            sleepRecordBloomFilter.putSleepPoints(userId, dateOfSleep);
+            int inserted = sleepPointsMapper.insertFromSummary(userId, dateOfSleep, LocalDateTime.now(), pointsRuleEngine);
+            
+            // 2. 读回已存储的记录
+            SleepPoints sleepPoints = sleepPointsMapper.selectByUserIdAndDate(userId, dateOfSleep.toString());
+            if (sleepPoints == null) {
                 log.warn("未找到睡眠数据，无法生成积分，用户ID：{}，睡眠日期：{}", userId, dateOfSleep);
                 throw new RuntimeException("未找到对应的睡眠数据，无法生成积分");
             }
-            
-            // 2. 检查是否已经生成过积分
-            SleepPoints existingPoints = getSleepPointsByUserIdAndDate(userId, dateOfSleep);
-            if (existingPoints != null) {
-                log.warn("该日期的积分已存在，用户ID：{}，睡眠日期：{}，现有积分：{}", 
-                        userId, dateOfSleep, existingPoints.getPoints());
-                return existingPoints;
+            if (inserted <= 0) {
+                log.info("该日期的积分已存在，用户ID：{}，睡眠日期：{}，现有积分：{}", 
+                        userId, dateOfSleep, sleepPoints.getPoints());
+                return sleepPoints;
             }
             
-            // 3. 计算积分
-            Integer calculatedPoints = calculatePoints(sleepData.getSleepScore(), sleepData.getDeepSleepDuration());
-            
-            // 4. 创建积分记录
-            SleepPoints sleepPoints = new SleepPoints();
-            sleepPoints.setUserId(userId);
-            sleepPoints.setDate(dateOfSleep);
-            sleepPoints.setPoints(calculatedPoints);
-            sleepPoints.setCreatedAt(LocalDateTime.now());
-            
-            // 5. 保存积分记录
-            int saveResult = sleepPointsMapper.insert(sleepPoints);
-            if (saveResult <= 0) {
-                log.error("保存积分记录失败，用户ID：{}，睡眠日期：{}", userId, dateOfSleep);
-                throw new RuntimeException("保存积分记录失败");
-            }
+            // 3. 同一事务内累加用户积分余额、追加获得流水，提交后更新排行榜
+            userPointsBalanceService.addPoints(userId, sleepPoints.getPoints());
+            pointsLedgerService.append(userId, PointsLedgerEntryType.EARNED, sleepPoints.getPoints(), dateOfSleep.toString());
+            applicationEventPublisher.publishEvent(
+                    new SleepPointsEarnedEvent(userId, dateOfSleep, sleepPoints.getPoints()));
             
             log.info("睡眠积分生成成功，用户ID：{}，睡眠日期：{}，积分：{}", 
-                    userId, dateOfSleep, calculatedPoints);
+                    userId, dateOfSleep, sleepPoints.getPoints());
             
             return sleepPoints;
         } catch (Exception e) {
@@ -87,6 +146,118 @@ public class SleepPointsServiceImpl implements SleepPointsService {
         }
     }
 
+    /**
+     * 按已写入的睡眠数据批量生成睡眠积分
+     * 每晚一条 insertIfAbsent，依赖 uk_user_date 去重，只为新插入的记录累加余额
+     * 
+     * @param nights 已写入数据库的睡眠数据
+     * @return List<SleepPoints> 与入参顺序一致，新生成的积分记录；已存在时为null
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<SleepPoints> generateSleepPointsBatch(List<SleepAnalysisSummary> nights) {
+        List<SleepPoints> results = new ArrayList<>(nights.size());
+        List<PointsLedgerEntry> ledgerEntries = new ArrayList<>();
+        int created = 0;
+        for (SleepAnalysisSummary night : nights) {
+            SleepPoints sleepPoints = new SleepPoints();
+            sleepPoints.setUserId(night.getUserId());
+            sleepPoints.setDate(night.getDateOfSleep());
+            Integer sleepScore = night.getSleepScore();
+            Integer deepSleepDuration = night.getDeepSleepDuration();
+            sleepPoints.setPoints(calculatePoints(sleepScore != null ? sleepScore : -1,
+                    deepSleepDuration != null ? deepSleepDuration : -1));
+            sleepPoints.setCreatedAt(LocalDateTime.now());
+            
+            sleepRecordBloomFilter.putSleepPoints(night.getUserId(), night.getDateOfSleep());
+            if (sleepPointsMapper.insertIfAbsent(sleepPoints) > 0) {
+                userPointsBalanceService.addPoints(night.getUserId(), sleepPoints.getPoints());
+                ledgerEntries.add(new PointsLedgerEntry(night.getUserId(), PointsLedgerEntryType.EARNED,
+                        sleepPoints.getPoints(), night.getDateOfSleep().toString()));
+                applicationEventPublisher.publishEvent(new SleepPointsEarnedEvent(
+                        night.getUserId(), night.getDateOfSleep(), sleepPoints.getPoints()));
+                results.add(sleepPoints);
+                created++;
+            } else {
+                results.add(null);
+            }
+        }
+        // 本批新生成积分的获得流水合并为一条SQL追加
+        pointsLedgerService.appendBatch(ledgerEntries);
+        log.info("批量生成睡眠积分完成，睡眠数据：{}条，新生成：{}条", nights.size(), created);
+        return results;
+    }
+
+    @Override
+    public Map<String, Object> backfillSleepPoints(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException("回填日期范围无效");
+        }
+        if (!backfilling.compareAndSet(false, true)) {
+            throw new IllegalStateException("积分回填正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int chunkDays = sleepDataConfig.getPointsBackfillChunkDays();
+            LocalDate end = to.plusDays(1);
+            int chunks = 0;
+            long inserted = 0;
+            LocalDate chunkFrom = from;
+            while (chunkFrom.isBefore(end)) {
+                LocalDate chunkStart = chunkFrom;
+                LocalDate chunkEnd = chunkStart.plusDays(chunkDays).isBefore(end) ? chunkStart.plusDays(chunkDays) : end;
+                Integer chunkInserted = transactionTemplate.execute(status -> backfillChunk(chunkStart, chunkEnd));
+                inserted += chunkInserted != null ? chunkInserted : 0;
+                chunks++;
+                log.debug("积分回填分块完成，日期：[{}, {})，新生成：{}条", chunkStart, chunkEnd, chunkInserted);
+                chunkFrom = chunkEnd;
+            }
+
+            // 回填不逐条发布积分事件，写入后整体重建排行榜和积分过期时间轮
+            if (inserted > 0 && Boolean.TRUE.equals(sleepDataConfig.getLeaderboardEnabled())) {
+                pointsLeaderboardService.rebuild();
+            }
+            if (inserted > 0 && Boolean.TRUE.equals(sleepDataConfig.getPointsExpiryEnabled())) {
+                pointsExpiryService.rebuild();
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("from", from);
+            result.put("to", to);
+            result.put("chunks", chunks);
+            result.put("insertedCount", inserted);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            log.info("睡眠积分回填完成：{}", result);
+            return result;
+        } finally {
+            backfilling.set(false);
+        }
+    }
+
+    /**
+     * 回填一个日期分块（在调用方事务中执行）
+     * 先把待回填的夜晚登记到布隆过滤器，再一条SQL写入积分，最后重算涉及用户的余额并补记获得流水
+     * 
+     * @param from 睡眠日期下界（含）
+     * @param to 睡眠日期上界（不含）
+     * @return int 新生成的积分记录数
+     */
+    private int backfillChunk(LocalDate from, LocalDate to) {
+        if (Boolean.TRUE.equals(sleepDataConfig.getBloomEnabled())) {
+            for (SleepPoints key : sleepPointsMapper.selectNightKeysWithoutPoints(from, to)) {
+                sleepRecordBloomFilter.putSleepPoints(key.getUserId(), key.getDate());
+            }
+        }
+        // 以秒为精度，与created_at列精度一致，重算余额时按该值找出本块写入的记录
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        int inserted = sleepPointsMapper.backfillPoints(from, to, createdAt, pointsRuleEngine);
+        if (inserted > 0) {
+            userPointsBalanceService.refreshBackfilledUsers(from, to, createdAt);
+            pointsLedgerService.appendBackfilled(from, to, createdAt);
+        }
+        return inserted;
+    }
+
     /**
      * 根据用户ID和日期查询积分记录
      * 
@@ -97,6 +268,12 @@ public class SleepPointsServiceImpl implements SleepPointsService {
     @Override
     public SleepPoints getSleepPointsByUserIdAndDate(String userId, LocalDate date) {
         try {
+            // 布隆过滤器判定一定不存在时不再访问数据库
+            if (!sleepRecordBloomFilter.mightContainSleepPoints(userId, date)) {
+                log.debug("布隆过滤器判定积分记录不存在，用户ID：{}，日期：{}", userId, date);
+                return null;
+            }
+            
             SleepPoints result = sleepPointsMapper.selectByUserIdAndDate(userId, date.toString());
             
             if (result != null) {
@@ -113,6 +290,32 @@ public class SleepPointsServiceImpl implements SleepPointsService {
         }
     }
 
+    /**
+     * 批量查询多个用户同一日期的积分记录
+     * 布隆过滤器判定一定不存在的用户不参与查询
+     * 
+     * @param userIds 用户ID列表
+     * @param date 积分日期
+     * @return Map<String, SleepPoints> 用户ID到积分记录
+     */
+    @Override
+    public Map<String, SleepPoints> getSleepPointsByUserIdsAndDate(List<String> userIds, LocalDate date) {
+        if (userIds == null || userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> candidates = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            if (userId != null && sleepRecordBloomFilter.mightContainSleepPoints(userId, date)) {
+                candidates.add(userId);
+            }
+        }
+        Map<String, SleepPoints> result = ChunkedLookup.lookup(candidates, sleepDataConfig.getBulkLookupChunkSize(),
+                chunk -> sleepPointsMapper.selectByUserIdsAndDate(chunk, date), SleepPoints::getUserId);
+        log.debug("批量查询积分记录，日期：{}，请求用户数：{}，查询用户数：{}，命中：{}",
+                date, userIds.size(), candidates.size(), result.size());
+        return result;
+    }
+
     /**
      * 根据用户ID查询积分历史记录
      * 
@@ -134,7 +337,37 @@ public class SleepPointsServiceImpl implements SleepPointsService {
     }
 
     /**
-     * 计算用户当前总积分
+     * 按日期倒序分页查询用户积分历史
+     * 多查一条用于判断是否还有下一页
+     * 
+     * @param userId 用户ID
+     * @param from 起始日期（含），可为空
+     * @param to 结束日期（含），可为空
+     * @param pageToken 分页令牌，第一页为空
+     * @param pageSize 每页条数
+     * @return CursorPage<SleepPoints> 当前页记录及下一页令牌
+     */
+    @Override
+    public CursorPage<SleepPoints> getSleepPointsHistoryPage(String userId, LocalDate from, LocalDate to,
+                                                             String pageToken, int pageSize) {
+        try {
+            LocalDate before = DatePageToken.decode(pageToken);
+            List<SleepPoints> rows = sleepPointsMapper.selectPageByUserId(userId, from, to, before, pageSize + 1);
+            CursorPage<SleepPoints> page = CursorPage.of(rows, pageSize, SleepPoints::getDate);
+            
+            log.info("分页查询积分历史成功，用户ID：{}，记录数：{}，是否有下一页：{}", 
+                    userId, page.getItems().size(), page.isHasMore());
+            
+            return page;
+        } catch (Exception e) {
+            log.error("分页查询积分历史异常，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 查询用户当前总积分
+     * 读取积分余额表（主键查询一行），不再对积分明细求和
      * 
      * @param userId 用户ID
      * @return Integer 总积分数量
@@ -142,7 +375,7 @@ public class SleepPointsServiceImpl implements SleepPointsService {
     @Override
     public Integer getCurrentTotalPoints(String userId) {
         try {
-            Integer totalPoints = sleepPointsMapper.calculateTotalPoints(userId);
+            Integer totalPoints = Math.toIntExact(userPointsBalanceService.getTotalPoints(userId));
             
             log.info("计算用户总积分成功，用户ID：{}，总积分：{}", userId, totalPoints);
             
@@ -155,7 +388,7 @@ public class SleepPointsServiceImpl implements SleepPointsService {
 
     /**
      * 计算睡眠积分
-     * 积分规则：
+     * 积分规则由配置编译为规则引擎（默认规则如下）：
      * - 基础分：睡眠总分≥80分→20SP；70-79分→15SP；60-69分→10SP；<60分→5SP
      * - 额外分：深睡时长每满30分钟→+5SP（最多加30SP）
      * - 每日上限：50SP
@@ -166,46 +399,35 @@ public class SleepPointsServiceImpl implements SleepPointsService {
      */
     @Override
     public Integer calculatePoints(Integer sleepScore, Integer deepSleepDuration) {
-        try {
-            // 参数校验
-            if (sleepScore == null || sleepScore < 0 || sleepScore > 100) {
-                log.warn("睡眠评分无效：{}，使用默认值0", sleepScore);
-                sleepScore = 0;
-            }
-            if (deepSleepDuration == null || deepSleepDuration < 0) {
-                log.warn("深睡时长无效：{}，使用默认值0", deepSleepDuration);
-                deepSleepDuration = 0;
-            }
-            
-            // 1. 计算基础分
-            int basePoints = 0;
-            if (sleepScore >= 80) {
-                basePoints = 20;
-            } else if (sleepScore >= 70) {
-                basePoints = 15;
-            } else if (sleepScore >= 60) {
-                basePoints = 10;
-            } else {
-                basePoints = 5;
-            }
-            
-            // 2. 计算额外分（深睡时长每满30分钟+5SP，最多加30SP）
-            int extraPoints = Math.min((deepSleepDuration / 30) * 5, 30);
-            
-            // 3. 计算总积分
-            int totalPoints = basePoints + extraPoints;
-            
-            // 4. 应用每日上限（50SP）
-            int finalPoints = Math.min(totalPoints, 50);
-            
-            log.info("积分计算完成，睡眠评分：{}，深睡时长：{}分钟，基础分：{}，额外分：{}，总积分：{}，最终积分：{}", 
-                    sleepScore, deepSleepDuration, basePoints, extraPoints, totalPoints, finalPoints);
-            
-            return finalPoints;
-        } catch (Exception e) {
-            log.error("计算睡眠积分异常，睡眠评分：{}，深睡时长：{}，异常信息：{}", 
-                    sleepScore, deepSleepDuration, e.getMessage(), e);
-            throw e;
+        // 参数校验
+        if (sleepScore == null || sleepScore < 0 || sleepScore > 100) {
+            log.warn("睡眠评分无效：{}，使用默认值0", sleepScore);
+            sleepScore = 0;
         }
+        if (deepSleepDuration == null || deepSleepDuration < 0) {
+            log.warn("深睡时长无效：{}，使用默认值0", deepSleepDuration);
+            deepSleepDuration = 0;
+        }
+        
+        int finalPoints = calculatePoints(sleepScore.intValue(), deepSleepDuration.intValue());
+        if (log.isDebugEnabled()) {
+            log.debug("积分计算完成，睡眠评分：{}，深睡时长：{}分钟，基础分：{}，额外分：{}，最终积分：{}",
+                    sleepScore, deepSleepDuration, pointsRuleEngine.basePoints(sleepScore),
+                    pointsRuleEngine.extraPoints(deepSleepDuration), finalPoints);
+        }
+        return finalPoints;
+    }
+
+    /**
+     * 计算睡眠积分（基本类型，不装箱、不打日志，批量计算用）
+     * 评分超出0-100按0分计，深睡时长为负按0计
+     * 
+     * @param sleepScore 睡眠评分
+     * @param deepSleepDuration 深睡时长（分钟）
+     * @return int 计算出的积分
+     */
+    @Override
+    public int calculatePoints(int sleepScore, int deepSleepDuration) {
+        return pointsRuleEngine.evaluate(sleepScore, deepSleepDuration);
     }
 }
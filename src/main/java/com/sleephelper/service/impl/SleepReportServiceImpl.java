@@ -0,0 +1,229 @@
+package com.sleephelper.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sleephelper.ai.PromptTemplates;
+import com.sleephelper.bean.NightRecordedEvent;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepReport;
+import com.sleephelper.mapper.SleepReportMapper;
+import com.sleephelper.service.SleepReportService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * AI睡眠报告存储 服务实现类
+ * 报告按（用户ID，睡眠日期）保存一份，同时记录生成时睡眠数据字段（评分、深睡时长、总睡眠时长、日期）
+ * 与报告模板版本的摘要；读取时摘要与当前数据一致才算命中，数据变化或模板升级后自然失效。
+ * 表中报告GZIP压缩保存，本地缓存保存解压后的文本；睡眠数据提交后只清除本地缓存，
+ * 表中摘要已不一致的报告读取时不命中，重新生成时按主键覆盖，不在写入线程上删除
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class SleepReportServiceImpl implements SleepReportService {
+
+    @Autowired
+    private SleepReportMapper sleepReportMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    /**
+     * 本地缓存，键为用户ID+睡眠日期；未开启时为null
+     */
+    private Cache<String, CachedReport> cache;
+
+    private final AtomicLong storeHitCount = new AtomicLong();
+
+    private final AtomicLong storeMissCount = new AtomicLong();
+
+    private final AtomicLong savedCount = new AtomicLong();
+
+    private final AtomicLong savedOriginalBytes = new AtomicLong();
+
+    private final AtomicLong savedCompressedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (Boolean.TRUE.equals(sleepDataConfig.getReportCacheEnabled())) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(sleepDataConfig.getReportCacheMaxSize())
+                    .expireAfterWrite(Duration.ofSeconds(sleepDataConfig.getReportCacheTtlSeconds()))
+                    .recordStats()
+                    .build();
+            log.info("AI睡眠报告缓存已开启，最大条目数：{}，存活时间：{}秒",
+                    sleepDataConfig.getReportCacheMaxSize(), sleepDataConfig.getReportCacheTtlSeconds());
+        }
+    }
+
+    @Override
+    public String getCachedReport(SleepAnalysisSummary sleepData) {
+        if (cache == null) {
+            return null;
+        }
+        String fingerprint = fingerprint(sleepData);
+        String key = key(sleepData.getUserId(), sleepData.getDateOfSleep());
+        CachedReport cached = cache.getIfPresent(key);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            return cached.report;
+        }
+        try {
+            SleepReport stored = sleepReportMapper.selectByUserIdAndDate(sleepData.getUserId(), sleepData.getDateOfSleep());
+            if (stored == null || !fingerprint.equals(stored.getFingerprint())) {
+                storeMissCount.incrementAndGet();
+                return null;
+            }
+            String report = decompress(stored.getReportGz());
+            cache.put(key, new CachedReport(fingerprint, report));
+            storeHitCount.incrementAndGet();
+            return report;
+        } catch (Exception e) {
+            log.error("查询已生成的AI睡眠报告失败，用户ID：{}，睡眠日期：{}，异常信息：{}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void saveReport(SleepAnalysisSummary sleepData, String report) {
+        if (cache == null || report == null || report.isEmpty()) {
+            return;
+        }
+        String fingerprint = fingerprint(sleepData);
+        try {
+            byte[] original = report.getBytes(StandardCharsets.UTF_8);
+            SleepReport sleepReport = new SleepReport();
+            sleepReport.setUserId(sleepData.getUserId());
+            sleepReport.setDateOfSleep(sleepData.getDateOfSleep());
+            sleepReport.setFingerprint(fingerprint);
+            sleepReport.setTemplateVersion(PromptTemplates.SLEEP_REPORT_TEMPLATE_VERSION);
+            sleepReport.setReportGz(compress(original));
+            sleepReport.setReportLength(report.length());
+            sleepReport.setCreatedAt(LocalDateTime.now());
+            sleepReportMapper.upsert(sleepReport);
+
+            cache.put(key(sleepData.getUserId(), sleepData.getDateOfSleep()), new CachedReport(fingerprint, report));
+            savedCount.incrementAndGet();
+            savedOriginalBytes.addAndGet(original.length);
+            savedCompressedBytes.addAndGet(sleepReport.getReportGz().length);
+            log.debug("AI睡眠报告已保存，用户ID：{}，睡眠日期：{}，原始字节数：{}，压缩后字节数：{}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), original.length, sleepReport.getReportGz().length);
+        } catch (Exception e) {
+            log.error("保存AI睡眠报告失败，用户ID：{}，睡眠日期：{}，异常信息：{}",
+                    sleepData.getUserId(), sleepData.getDateOfSleep(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 睡眠数据提交后清除本地缓存（内存操作，不访问数据库）
+     *
+     * @param event 夜晚已记录事件
+     */
+    @EventListener
+    public void onNightRecorded(NightRecordedEvent event) {
+        SleepAnalysisSummary night = event.getSleepData();
+        if (cache == null || night.getUserId() == null || night.getDateOfSleep() == null) {
+            return;
+        }
+        cache.invalidate(key(night.getUserId(), night.getDateOfSleep()));
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cache != null);
+        if (cache == null) {
+            return stats;
+        }
+        CacheStats cacheStats = cache.stats();
+        stats.put("size", cache.estimatedSize());
+        stats.put("maxSize", sleepDataConfig.getReportCacheMaxSize());
+        stats.put("ttlSeconds", sleepDataConfig.getReportCacheTtlSeconds());
+        stats.put("hitCount", cacheStats.hitCount());
+        stats.put("missCount", cacheStats.missCount());
+        stats.put("evictionCount", cacheStats.evictionCount());
+        stats.put("storeHitCount", storeHitCount.get());
+        stats.put("storeMissCount", storeMissCount.get());
+        stats.put("savedCount", savedCount.get());
+        long originalBytes = savedOriginalBytes.get();
+        stats.put("compressionRatio", originalBytes > 0 ? (double) savedCompressedBytes.get() / originalBytes : null);
+        stats.put("templateVersion", PromptTemplates.SLEEP_REPORT_TEMPLATE_VERSION);
+        return stats;
+    }
+
+    /**
+     * 睡眠数据中参与报告生成的字段与报告模板版本的SHA-256摘要（十六进制）
+     */
+    static String fingerprint(SleepAnalysisSummary sleepData) {
+        String source = PromptTemplates.SLEEP_REPORT_TEMPLATE_VERSION
+                + '|' + sleepData.getDateOfSleep()
+                + '|' + sleepData.getSleepScore()
+                + '|' + sleepData.getDeepSleepDuration()
+                + '|' + sleepData.getTotalSleepDuration();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持SHA-256摘要算法", e);
+        }
+    }
+
+    static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (OutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    static String decompress(byte[] data) throws IOException {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String key(String userId, LocalDate dateOfSleep) {
+        return userId + '|' + dateOfSleep;
+    }
+
+    /**
+     * 本地缓存的报告及其摘要
+     */
+    private static final class CachedReport {
+
+        private final String fingerprint;
+
+        private final String report;
+
+        private CachedReport(String fingerprint, String report) {
+            this.fingerprint = fingerprint;
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.SleepRollupStats;
+import com.sleephelper.cache.NightRing;
+import com.sleephelper.cache.NightWriteListener;
+import com.sleephelper.cache.RecentNightsStore;
+import com.sleephelper.cache.RollingAggregate;
+import com.sleephelper.cache.SleepMetric;
+import com.sleephelper.common.GroupCommitBuffer;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepRollup;
+import com.sleephelper.mapper.SleepRollupMapper;
+import com.sleephelper.service.SleepRollupService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 睡眠数据滚动统计 服务实现类
+ * 睡眠数据提交后只把数据放入队列，由后台线程按提交顺序更新内存序列和聚合，写入线程不做任何计算和查询；
+ * 各窗口聚合与最近睡眠数据内存序列一起常驻内存：环形存储加载后首次写入时按其完整计算一次，
+ * 之后每次写入按写入前的环形存储做常数次增减，不访问统计表。
+ * 聚合变化后只记下该用户最新的统计行，由定时任务在环形存储锁之外按批写回统计表；
+ * 写回失败的用户保留到下一轮重试；
+ * 查询时窗口以今天为终点，保存的聚合终点（最新一晚）不是今天时按内存序列重新计算该窗口
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class SleepRollupServiceImpl implements SleepRollupService, NightWriteListener {
+
+    private static final SleepMetric[] METRICS = SleepMetric.values();
+
+    @Autowired
+    private SleepRollupMapper sleepRollupMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private RecentNightsStore recentNightsStore;
+
+    /**
+     * 生效的窗口天数（升序，不超过内存序列保存的晚数）
+     */
+    private int[] windows = new int[0];
+
+    /**
+     * 聚合已变化、尚未写回统计表的用户及其最新统计行，同一用户多次写入只保留最后一次
+     */
+    private final ConcurrentHashMap<String, List<SleepRollup>> dirtyRows = new ConcurrentHashMap<>();
+
+    /**
+     * 写回串行执行，同一用户较旧的统计行不会覆盖较新的
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * 异步更新队列，未开启滚动统计时为null
+     */
+    private GroupCommitBuffer<SleepAnalysisSummary, Void> applyBuffer;
+
+    @PostConstruct
+    public void init() {
+        int maxDays = sleepDataConfig.getRecentNightsDays();
+        windows = sleepDataConfig.getRollupWindowDays().stream()
+                .filter(days -> days != null && days > 0)
+                .distinct()
+                .sorted()
+                .filter(days -> {
+                    if (days > maxDays) {
+                        log.warn("滚动统计窗口{}天超过内存序列保存的晚数{}，已忽略", days, maxDays);
+                        return false;
+                    }
+                    return true;
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+        if (Boolean.TRUE.equals(sleepDataConfig.getRollupEnabled()) && windows.length > 0) {
+            applyBuffer = new GroupCommitBuffer<>("sleep-rollup",
+                    sleepDataConfig.getRollupQueueCapacity(),
+                    sleepDataConfig.getRollupApplyBatchSize(),
+                    sleepDataConfig.getRollupApplyIntervalMs(),
+                    this::applyBatch);
+        }
+    }
+
+    /**
+     * 应用关闭时处理完队列并写回剩余的统计
+     */
+    @PreDestroy
+    public void destroy() {
+        if (applyBuffer != null) {
+            applyBuffer.shutdown(sleepDataConfig.getWriteBehindShutdownTimeoutMs());
+        }
+        int flushed = flushDirty();
+        if (flushed > 0) {
+            log.info("应用关闭时写回滚动统计，用户数：{}", flushed);
+        }
+    }
+
+    /**
+     * 定时把聚合已变化的用户写回统计表
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.rollup-flush-interval-ms:1000}",
+            initialDelayString = "${sleep.data.rollup-flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        try {
+            flushDirty();
+        } catch (Exception e) {
+            log.error("定时写回滚动统计异常，异常信息：{}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onSleepDataCommitted(SleepAnalysisSummary sleepData) {
+        if (applyBuffer == null) {
+            // 只更新已加载用户的内存序列，不查询数据库
+            recentNightsStore.record(sleepData);
+            return;
+        }
+        if (applyBuffer.offer(sleepData) == null) {
+            applyBatch(Collections.singletonList(sleepData));
+        }
+    }
+
+    /**
+     * 按提交顺序把一批睡眠数据计入内存序列和聚合，单条失败不影响其他数据
+     *
+     * @param nights 睡眠数据列表
+     * @return 与入参顺序一致的结果（均为null）
+     */
+    public List<Void> applyBatch(List<SleepAnalysisSummary> nights) {
+        for (SleepAnalysisSummary sleepData : nights) {
+            try {
+                recentNightsStore.record(sleepData, this);
+            } catch (Exception e) {
+                // 数据已提交，加载失败时环形存储不会发布，下次写入重新加载并重算
+                log.error("更新滚动统计异常，用户ID：{}，睡眠日期：{}，异常信息：{}",
+                        sleepData.getUserId(), sleepData.getDateOfSleep(), e.getMessage(), e);
+            }
+        }
+        return new ArrayList<>(Collections.nCopies(nights.size(), null));
+    }
+
+    @Override
+    public void beforePut(String userId, NightRing ring, int epochDay, int[] values) {
+        try {
+            RollingAggregate[] aggregates = ring.getAggregates();
+            if (aggregates == null) {
+                // 新加载的环形存储尚未计算聚合
+                aggregates = fromRing(ring);
+            }
+            for (int i = 0; i < aggregates.length; i++) {
+                if (!aggregates[i].isAlignedWith(ring)) {
+                    aggregates[i] = RollingAggregate.fromRing(ring, windows[i]);
+                }
+                aggregates[i].apply(ring, epochDay, values);
+            }
+            ring.setAggregates(aggregates);
+            markDirty(userId, aggregates);
+        } catch (Exception e) {
+            // 聚合可能只更新了一部分，丢弃后下次写入按环形存储重算
+            ring.setAggregates(null);
+            log.error("增量更新滚动统计失败，用户ID：{}，异常信息：{}", userId, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SleepRollupStats getRollupStats(String userId) {
+        // 尚未写回的用户以内存中的最新统计为准
+        List<SleepRollup> rows = dirtyRows.get(userId);
+        if (rows == null) {
+            rows = sleepRollupMapper.selectByUserId(userId);
+        }
+        Map<Integer, SleepRollupStats.Window> windowMap = new HashMap<>();
+        for (SleepRollup row : rows) {
+            SleepRollupStats.Window window = windowMap.computeIfAbsent(row.getWindowDays(), days -> {
+                SleepRollupStats.Window created = new SleepRollupStats.Window();
+                created.setWindowDays(days);
+                return created;
+            });
+            window.setWindowEnd(row.getWindowEnd());
+            window.getMetrics().put(row.getMetric(), SleepRollupStats.MetricStats.of(
+                    row.getSampleCount(), row.getValueSum(), row.getValueSumSq(),
+                    row.getMinValue(), row.getMaxValue()));
+        }
+
+        // 统计窗口以今天为终点；保存的聚合以最新一晚为终点，最新一晚不是今天时按内存序列重新计算
+        LocalDate today = LocalDate.now();
+        SleepRollupStats stats = new SleepRollupStats();
+        stats.setUserId(userId);
+        for (int windowDays : windows) {
+            SleepRollupStats.Window window = windowMap.get(windowDays);
+            if (window == null || !today.equals(window.getWindowEnd())) {
+                window = toWindow(recentNightsStore.aggregate(userId, windowDays, today));
+            }
+            window.setWindowEnd(today);
+            window.setWindowStart(today.minusDays(windowDays - 1L));
+            for (SleepMetric metric : METRICS) {
+                window.getMetrics().putIfAbsent(metric.name(), SleepRollupStats.MetricStats.of(0, 0, 0, null, null));
+            }
+            stats.getWindows().add(window);
+        }
+        return stats;
+    }
+
+    /**
+     * 把聚合已变化的用户按批写回统计表，在环形存储锁之外执行
+     * 写回成功后只移除写回期间没有再变化的用户；某批失败时停止本轮，剩余用户下一轮重试
+     *
+     * @return int 写回的用户数
+     */
+    public int flushDirty() {
+        synchronized (flushLock) {
+            int batchUsers = sleepDataConfig.getRollupFlushBatchUsers();
+            List<Map.Entry<String, List<SleepRollup>>> batch = new ArrayList<>(batchUsers);
+            int flushed = 0;
+            for (Map.Entry<String, List<SleepRollup>> entry : dirtyRows.entrySet()) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                if (batch.size() >= batchUsers) {
+                    if (!writeBatch(batch)) {
+                        return flushed;
+                    }
+                    flushed += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty() && writeBatch(batch)) {
+                flushed += batch.size();
+            }
+            return flushed;
+        }
+    }
+
+    /**
+     * 一条多行upsert写回一批用户的统计行
+     */
+    private boolean writeBatch(List<Map.Entry<String, List<SleepRollup>>> batch) {
+        List<SleepRollup> rows = new ArrayList<>(batch.size() * windows.length * METRICS.length);
+        for (Map.Entry<String, List<SleepRollup>> entry : batch) {
+            rows.addAll(entry.getValue());
+        }
+        try {
+            sleepRollupMapper.upsertBatch(rows);
+        } catch (Exception e) {
+            log.error("写回滚动统计失败，用户数：{}，下一轮重试，异常信息：{}", batch.size(), e.getMessage(), e);
+            return false;
+        }
+        for (Map.Entry<String, List<SleepRollup>> entry : batch) {
+            dirtyRows.remove(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * 按环形存储完整计算各窗口聚合
+     */
+    private RollingAggregate[] fromRing(NightRing ring) {
+        RollingAggregate[] aggregates = new RollingAggregate[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            aggregates[i] = RollingAggregate.fromRing(ring, windows[i]);
+        }
+        return aggregates;
+    }
+
+    /**
+     * 把窗口聚合转换为查询结果
+     */
+    private static SleepRollupStats.Window toWindow(RollingAggregate aggregate) {
+        SleepRollupStats.Window window = new SleepRollupStats.Window();
+        window.setWindowDays(aggregate.getWindowDays());
+        for (SleepMetric metric : METRICS) {
+            window.getMetrics().put(metric.name(), SleepRollupStats.MetricStats.of(
+                    aggregate.getCount(metric), aggregate.getSum(metric), aggregate.getSumOfSquares(metric),
+                    aggregate.getMin(metric) >= 0 ? aggregate.getMin(metric) : null,
+                    aggregate.getMax(metric) >= 0 ? aggregate.getMax(metric) : null));
+        }
+        return window;
+    }
+
+    /**
+     * 记下用户最新的统计行，等待写回
+     */
+    private void markDirty(String userId, RollingAggregate[] aggregates) {
+        List<SleepRollup> rows = new ArrayList<>(aggregates.length * METRICS.length);
+        for (RollingAggregate aggregate : aggregates) {
+            LocalDate windowEnd = aggregate.getWindowEnd() == RollingAggregate.NO_DAY
+                    ? null : LocalDate.ofEpochDay(aggregate.getWindowEnd());
+            for (SleepMetric metric : METRICS) {
+                SleepRollup row = new SleepRollup();
+                row.setUserId(userId);
+                row.setWindowDays(aggregate.getWindowDays());
+                row.setMetric(metric.name());
+                row.setWindowEnd(windowEnd);
+                row.setSampleCount((int) aggregate.getCount(metric));
+                row.setValueSum(aggregate.getSum(metric));
+                row.setValueSumSq(aggregate.getSumOfSquares(metric));
+                row.setMinValue(aggregate.getMin(metric) >= 0 ? aggregate.getMin(metric) : null);
+                row.setMaxValue(aggregate.getMax(metric) >= 0 ? aggregate.getMax(metric) : null);
+                rows.add(row);
+            }
+        }
+        dirtyRows.put(userId, rows);
+    }
+}
@@ -0,0 +1,230 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.bean.NightRecordedEvent;
+import com.sleephelper.bean.SleepStreakType;
+import com.sleephelper.common.GroupCommitBuffer;
+import com.sleephelper.common.StreakCalculator;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepStreak;
+import com.sleephelper.mapper.SleepStreakMapper;
+import com.sleephelper.service.SleepStreakService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 睡眠连续达标 服务实现类
+ * 睡眠数据提交后发布的 NightRecordedEvent 经组提交缓冲攒批后异步处理，不阻塞写入线程；
+ * 一批内按用户分组、同一晚只保留最后一次，每个用户一个事务锁定其连续记录行后按日期升序计入：
+ * 晚于最近达标日期的夜晚 O(1) 更新，乱序补录或改写已计入的夜晚时标记该类型，
+ * 该用户所有夜晚处理完后只读取一次历史重算。按日期倒序补录N晚时重算次数约为 N / 每批条数
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class SleepStreakServiceImpl implements SleepStreakService {
+
+    @Autowired
+    private SleepStreakMapper sleepStreakMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 异步更新缓冲，未开启时为null
+     */
+    private GroupCommitBuffer<SleepAnalysisSummary, Void> applyBuffer;
+
+    @PostConstruct
+    public void initApplyBuffer() {
+        if (Boolean.TRUE.equals(sleepDataConfig.getStreakEnabled())) {
+            applyBuffer = new GroupCommitBuffer<>("sleep-streak",
+                    sleepDataConfig.getStreakQueueCapacity(),
+                    sleepDataConfig.getStreakMaxBatchSize(),
+                    sleepDataConfig.getStreakFlushIntervalMs(),
+                    this::applyBatch);
+        }
+    }
+
+    /**
+     * 应用关闭时停止接收并处理完队列
+     */
+    @PreDestroy
+    public void shutdownApplyBuffer() {
+        if (applyBuffer != null) {
+            applyBuffer.shutdown(sleepDataConfig.getWriteBehindShutdownTimeoutMs());
+        }
+    }
+
+    /**
+     * 睡眠数据提交后入队，队列已满时在当前线程同步更新
+     * 失败时只记录日志，查询前可调用重算修正
+     *
+     * @param event 夜晚已记录事件
+     */
+    @EventListener
+    public void onNightRecorded(NightRecordedEvent event) {
+        SleepAnalysisSummary night = event.getSleepData();
+        if (applyBuffer == null || night.getUserId() == null || night.getDateOfSleep() == null) {
+            return;
+        }
+        CompletableFuture<Void> future = applyBuffer.offer(night);
+        if (future == null) {
+            applyBatch(Collections.singletonList(night));
+        }
+    }
+
+    @Override
+    public List<SleepStreak> getStreaks(String userId) {
+        List<SleepStreak> streaks = sleepStreakMapper.selectByUserId(userId);
+        if (streaks.size() < SleepStreakType.values().length) {
+            log.info("用户尚未统计连续记录，按历史重算，用户ID：{}", userId);
+            return recompute(userId);
+        }
+        return asOfToday(streaks);
+    }
+
+    @Override
+    public List<SleepStreak> recompute(String userId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new IllegalArgumentException("用户ID不能为空");
+        }
+        List<SleepStreak> streaks = transactionTemplate.execute(status -> {
+            List<SleepStreak> locked = new ArrayList<>();
+            for (SleepStreakType type : SleepStreakType.values()) {
+                sleepStreakMapper.insertIfAbsent(userId, type.name());
+                locked.add(sleepStreakMapper.selectForUpdate(userId, type.name()));
+            }
+            recomputeAndSave(userId, locked);
+            return locked;
+        });
+        log.info("重算睡眠连续记录完成，用户ID：{}", userId);
+        return asOfToday(streaks);
+    }
+
+    /**
+     * 处理一批夜晚：按用户分组，每个用户一个事务，单个用户失败不影响其他用户
+     *
+     * @param nights 夜晚列表
+     * @return 与入参顺序一致的结果（均为null）
+     */
+    public List<Void> applyBatch(List<SleepAnalysisSummary> nights) {
+        Map<String, Map<LocalDate, SleepAnalysisSummary>> byUser = new LinkedHashMap<>();
+        for (SleepAnalysisSummary night : nights) {
+            // 同一晚多次写入只保留最后一次
+            byUser.computeIfAbsent(night.getUserId(), userId -> new HashMap<>()).put(night.getDateOfSleep(), night);
+        }
+        for (Map.Entry<String, Map<LocalDate, SleepAnalysisSummary>> entry : byUser.entrySet()) {
+            String userId = entry.getKey();
+            List<SleepAnalysisSummary> userNights = new ArrayList<>(entry.getValue().values());
+            userNights.sort(Comparator.comparing(SleepAnalysisSummary::getDateOfSleep));
+            try {
+                transactionTemplate.executeWithoutResult(status -> applyNights(userId, userNights));
+            } catch (Exception e) {
+                log.error("更新睡眠连续记录失败，用户ID：{}，夜晚数：{}，异常信息：{}",
+                        userId, userNights.size(), e.getMessage(), e);
+            }
+        }
+        return new ArrayList<>(Collections.nCopies(nights.size(), null));
+    }
+
+    /**
+     * 把同一用户的一组夜晚（按日期升序）计入各类型的连续记录（调用方开启事务）
+     * 某类型出现乱序后不再增量计入，处理完后统一重算一次
+     */
+    private void applyNights(String userId, List<SleepAnalysisSummary> nights) {
+        List<SleepStreak> toRecompute = new ArrayList<>();
+        for (SleepStreakType type : SleepStreakType.values()) {
+            // 新建的行可能有启用前的历史数据，按历史重算一次
+            boolean created = sleepStreakMapper.insertIfAbsent(userId, type.name()) > 0;
+            SleepStreak streak = sleepStreakMapper.selectForUpdate(userId, type.name());
+            if (created) {
+                toRecompute.add(streak);
+                continue;
+            }
+            boolean updated = false;
+            for (SleepAnalysisSummary night : nights) {
+                StreakCalculator.Outcome outcome =
+                        StreakCalculator.apply(streak, night.getDateOfSleep(), qualifies(type, night));
+                if (outcome == StreakCalculator.Outcome.RECOMPUTE_REQUIRED) {
+                    toRecompute.add(streak);
+                    updated = false;
+                    break;
+                }
+                updated |= outcome == StreakCalculator.Outcome.UPDATED;
+            }
+            if (updated) {
+                sleepStreakMapper.update(streak);
+            }
+        }
+        if (!toRecompute.isEmpty()) {
+            log.debug("睡眠数据非按日期顺序写入，重算连续记录，用户ID：{}，夜晚数：{}", userId, nights.size());
+            recomputeAndSave(userId, toRecompute);
+        }
+    }
+
+    /**
+     * 读取用户全部夜晚一次，重算并保存各类型的连续记录（调用方持有行锁）
+     */
+    private void recomputeAndSave(String userId, List<SleepStreak> streaks) {
+        List<SleepAnalysisSummary> nights = sleepStreakMapper.selectNightsForStreak(userId);
+        for (SleepStreak streak : streaks) {
+            SleepStreakType type = SleepStreakType.valueOf(streak.getStreakType());
+            List<LocalDate> qualifyingDates = new ArrayList<>();
+            for (SleepAnalysisSummary night : nights) {
+                if (qualifies(type, night)) {
+                    qualifyingDates.add(night.getDateOfSleep());
+                }
+            }
+            StreakCalculator.recompute(streak, qualifyingDates);
+            sleepStreakMapper.update(streak);
+        }
+    }
+
+    /**
+     * 判断夜晚是否达标
+     */
+    private boolean qualifies(SleepStreakType type, SleepAnalysisSummary night) {
+        switch (type) {
+            case GOOD_NIGHT:
+                return night.getSleepScore() != null
+                        && night.getSleepScore() >= sleepDataConfig.getStreakGoodNightMinScore();
+            case CONSISTENT_SLEEP:
+                return night.getTotalSleepDuration() != null
+                        && night.getTotalSleepDuration() >= sleepDataConfig.getStreakConsistentMinSleepMinutes();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 最近达标日期早于昨天时当前连续已中断，返回0
+     */
+    private static List<SleepStreak> asOfToday(List<SleepStreak> streaks) {
+        LocalDate today = LocalDate.now();
+        for (SleepStreak streak : streaks) {
+            streak.setCurrentStreak(StreakCalculator.currentAsOf(streak, today));
+        }
+        return streaks;
+    }
+}
@@ -0,0 +1,179 @@
+package com.sleephelper.service.impl;
+
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.UserPointsBalance;
+import com.sleephelper.mapper.UserPointsBalanceMapper;
+import com.sleephelper.service.UserPointsBalanceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 用户积分余额 服务实现类
+ * 对账按用户ID分页，每页在一个事务内读取积分明细合计和余额（同一快照），
+ * 校正时只在余额仍等于读到的值时更新，对账期间新生成的积分不会被覆盖
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+public class UserPointsBalanceServiceImpl implements UserPointsBalanceService {
+
+    @Autowired
+    private UserPointsBalanceMapper userPointsBalanceMapper;
+
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 对账是否正在执行
+     */
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addPoints(String userId, int points) {
+        int affectedRows = userPointsBalanceMapper.addPoints(userId, points);
+        if (affectedRows <= 0) {
+            throw new IllegalStateException("更新积分余额失败，用户ID：" + userId);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int refreshBackfilledUsers(LocalDate from, LocalDate to, LocalDateTime createdAt) {
+        return userPointsBalanceMapper.refreshBackfilledUsers(from, to, createdAt);
+    }
+
+    @Override
+    public long getTotalPoints(String userId) {
+        UserPointsBalance balance = userPointsBalanceMapper.selectByUserId(userId);
+        if (balance == null) {
+            // 余额表上线前已有积分的用户，首次读取时按积分明细初始化
+            if (userPointsBalanceMapper.initFromLedger(userId) > 0) {
+                log.info("按积分明细初始化用户积分余额，用户ID：{}", userId);
+                balance = userPointsBalanceMapper.selectByUserId(userId);
+            }
+        }
+        return balance != null ? balance.getTotalPoints() : 0L;
+    }
+
+    /**
+     * 定时对账，上一次对账未结束时跳过
+     */
+    @Scheduled(fixedDelayString = "${sleep.data.points-reconcile-interval-ms:3600000}",
+            initialDelayString = "${sleep.data.points-reconcile-interval-ms:3600000}")
+    public void scheduledReconcile() {
+        if (!Boolean.TRUE.equals(sleepDataConfig.getPointsReconcileEnabled())) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        } catch (Exception e) {
+            log.error("定时核对积分余额异常，异常信息：{}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            throw new IllegalStateException("积分余额对账正在执行");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int pageSize = sleepDataConfig.getPointsReconcilePageSize();
+            boolean autoFix = Boolean.TRUE.equals(sleepDataConfig.getPointsReconcileAutoFix());
+            long[] counters = new long[4];
+            String afterUserId = null;
+            List<UserPointsBalance> ledgerTotals;
+            do {
+                String pageAfter = afterUserId;
+                ledgerTotals = transactionTemplate.execute(status -> reconcilePage(pageAfter, pageSize, autoFix, counters));
+                if (ledgerTotals == null || ledgerTotals.isEmpty()) {
+                    break;
+                }
+                afterUserId = ledgerTotals.get(ledgerTotals.size() - 1).getUserId();
+            } while (ledgerTotals.size() == pageSize);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("checkedUsers", counters[0]);
+            result.put("mismatchedUsers", counters[1]);
+            result.put("correctedUsers", counters[2]);
+            result.put("changedDuringCheck", counters[3]);
+            result.put("elapsedMillis", System.currentTimeMillis() - start);
+            if (counters[1] > 0) {
+                log.warn("积分余额对账完成，发现不一致：{}", result);
+            } else {
+                log.info("积分余额对账完成：{}", result);
+            }
+            return result;
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    /**
+     * 核对一页用户
+     * 
+     * @param afterUserId 上一页最后一个用户ID
+     * @param pageSize 每页用户数
+     * @param autoFix 是否自动校正
+     * @param counters 核对数、不一致数、校正数、对账期间余额已变化数
+     * @return List<UserPointsBalance> 本页的积分明细合计
+     */
+    private List<UserPointsBalance> reconcilePage(String afterUserId, int pageSize, boolean autoFix, long[] counters) {
+        List<UserPointsBalance> ledgerTotals = userPointsBalanceMapper.selectLedgerTotalsAfter(afterUserId, pageSize);
+        if (ledgerTotals.isEmpty()) {
+            return ledgerTotals;
+        }
+        Map<String, UserPointsBalance> balances = userPointsBalanceMapper.selectByUserIds(
+                        ledgerTotals.stream().map(UserPointsBalance::getUserId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(UserPointsBalance::getUserId, Function.identity()));
+
+        for (UserPointsBalance ledger : ledgerTotals) {
+            counters[0]++;
+            UserPointsBalance balance = balances.get(ledger.getUserId());
+            if (balance != null && balance.getTotalPoints().equals(ledger.getTotalPoints())
+                    && balance.getRecordCount().equals(ledger.getRecordCount())) {
+                continue;
+            }
+            counters[1]++;
+            log.warn("积分余额与明细不一致，用户ID：{}，余额：{}（{}条），明细合计：{}（{}条）", ledger.getUserId(),
+                    balance != null ? balance.getTotalPoints() : null, balance != null ? balance.getRecordCount() : null,
+                    ledger.getTotalPoints(), ledger.getRecordCount());
+            if (!autoFix) {
+                continue;
+            }
+            int fixed = balance == null
+                    ? userPointsBalanceMapper.initFromLedger(ledger.getUserId())
+                    : userPointsBalanceMapper.correctBalance(ledger.getUserId(), balance.getTotalPoints(),
+                            balance.getRecordCount(), ledger.getTotalPoints(), ledger.getRecordCount());
+            if (fixed > 0) {
+                counters[2]++;
+            } else {
+                counters[3]++;
+            }
+        }
+        return ledgerTotals;
+    }
+}
@@ -1,5 +1,7 @@
 package com.sleephelper.service.impl;
 
+import com.sleephelper.common.ChunkedLookup;
+import com.sleephelper.config.SleepDataConfig;
 import com.sleephelper.entity.User;
 import com.sleephelper.mapper.UserMapper;
 import com.sleephelper.service.UserService;
@@ -8,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -23,6 +27,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private SleepDataConfig sleepDataConfig;
+
     @Override
     public User getUserById(String id) {
         try {
@@ -33,6 +40,12 @@ public class UserServiceImpl implements UserService {
         }
     }
 
+    @Override
+    public Map<String, User> getUsersByIds(List<String> ids) {
+        return ChunkedLookup.lookup(ids, sleepDataConfig.getBulkLookupChunkSize(),
+                userMapper::selectByIds, User::getId);
+    }
+
     @Override
     public User getUserByWalletAddress(String walletAddress) {
         try {
@@ -0,0 +1,30 @@
+-- 积分流水表（只追加）
+-- 每条记录是一次积分变动：睡眠积分生成（EARNED）、上链铸造（MINTED）、链上销毁（BURNED）、积分过期（EXPIRED）；
+-- 同一用户、类型、来源标识只记录一次，重复追加被唯一索引去重
+CREATE TABLE IF NOT EXISTS `points_ledger` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID（流水序号）',
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `entry_type` varchar(16) NOT NULL COMMENT '流水类型：EARNED/MINTED/BURNED/EXPIRED',
+  `amount` bigint(20) NOT NULL COMMENT '变动数量（正数）',
+  `ref_id` varchar(128) DEFAULT NULL COMMENT '来源标识：积分日期或交易哈希',
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_user_type_ref` (`user_id`, `entry_type`, `ref_id`) COMMENT '来源去重索引',
+  KEY `idx_user_id_id` (`user_id`, `id`) COMMENT '按用户读取快照之后的流水',
+  KEY `idx_created_at` (`created_at`) COMMENT '创建时间索引'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='积分流水表';
+
+-- 用户积分快照表
+-- 每个用户一行，记录截至 last_entry_id（含）的各类型累计；余额 = 快照 + 该用户 last_entry_id 之后的流水
+CREATE TABLE IF NOT EXISTS `points_ledger_snapshot` (
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `last_entry_id` bigint(20) NOT NULL DEFAULT '0' COMMENT '快照覆盖到的流水ID（含）',
+  `earned_total` bigint(20) NOT NULL DEFAULT '0' COMMENT '累计获得积分',
+  `minted_total` bigint(20) NOT NULL DEFAULT '0' COMMENT '累计铸造上链数量',
+  `burned_total` bigint(20) NOT NULL DEFAULT '0' COMMENT '累计销毁数量',
+  `expired_total` bigint(20) NOT NULL DEFAULT '0' COMMENT '累计过期积分',
+  `entry_count` int(11) NOT NULL DEFAULT '0' COMMENT '快照覆盖的流水条数',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`),
+  KEY `idx_last_entry_id` (`last_entry_id`) COMMENT '快照进度索引'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户积分快照表';
@@ -15,7 +15,8 @@ CREATE TABLE IF NOT EXISTS `sleep_analysis_summaries` (
   UNIQUE KEY `uk_user_date` (`user_id`, `date_of_sleep`, `deleted`) COMMENT '用户ID和睡眠日期唯一索引',
   KEY `idx_user_id` (`user_id`) COMMENT '用户ID索引',
   KEY `idx_date_of_sleep` (`date_of_sleep`) COMMENT '睡眠日期索引',
-  KEY `idx_sleep_score` (`sleep_score`) COMMENT '睡眠评分索引'
+  KEY `idx_sleep_score` (`sleep_score`) COMMENT '睡眠评分索引',
+  KEY `idx_processed_at` (`processed_at`) COMMENT '处理时间索引（周/月汇总增量刷新）'
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='睡眠分析汇总表';
 
 -- 创建数据库（如果不存在）
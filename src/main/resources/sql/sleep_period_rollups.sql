@@ -0,0 +1,45 @@
+-- 用户睡眠周/月汇总表
+-- 由定时任务按 sleep_analysis_summaries.processed_at 增量刷新，也可按用户ID区间并行全量重建
+CREATE TABLE IF NOT EXISTS `sleep_period_rollups` (
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `period_type` varchar(10) NOT NULL COMMENT '周期类型（WEEK/MONTH）',
+  `period_start` date NOT NULL COMMENT '周期起始日期（周一或每月1日）',
+  `night_count` int(11) NOT NULL DEFAULT '0' COMMENT '周期内有记录的晚数',
+  `total_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '总睡眠时长合计（分钟）',
+  `deep_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '深度睡眠时长合计（分钟）',
+  `deep_sleep_count` int(11) NOT NULL DEFAULT '0' COMMENT '有深度睡眠数据的晚数',
+  `rem_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT 'REM睡眠时长合计（分钟）',
+  `rem_sleep_count` int(11) NOT NULL DEFAULT '0' COMMENT '有REM睡眠数据的晚数',
+  `sleep_score_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '睡眠评分合计',
+  `sleep_score_count` int(11) NOT NULL DEFAULT '0' COMMENT '有睡眠评分的晚数',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`, `period_type`, `period_start`),
+  KEY `idx_period` (`period_type`, `period_start`) COMMENT '周期索引（全局汇总）'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户睡眠周/月汇总表';
+
+-- 全体用户睡眠周/月汇总表
+-- 由用户周/月汇总表按周期再汇总得到
+CREATE TABLE IF NOT EXISTS `sleep_global_period_rollups` (
+  `period_type` varchar(10) NOT NULL COMMENT '周期类型（WEEK/MONTH）',
+  `period_start` date NOT NULL COMMENT '周期起始日期（周一或每月1日）',
+  `user_count` int(11) NOT NULL DEFAULT '0' COMMENT '周期内有记录的用户数',
+  `night_count` int(11) NOT NULL DEFAULT '0' COMMENT '周期内记录总晚数',
+  `total_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '总睡眠时长合计（分钟）',
+  `deep_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '深度睡眠时长合计（分钟）',
+  `deep_sleep_count` int(11) NOT NULL DEFAULT '0' COMMENT '有深度睡眠数据的晚数',
+  `rem_sleep_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT 'REM睡眠时长合计（分钟）',
+  `rem_sleep_count` int(11) NOT NULL DEFAULT '0' COMMENT '有REM睡眠数据的晚数',
+  `sleep_score_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '睡眠评分合计',
+  `sleep_score_count` int(11) NOT NULL DEFAULT '0' COMMENT '有睡眠评分的晚数',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`period_type`, `period_start`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='全体用户睡眠周/月汇总表';
+
+-- 汇总任务水位表
+-- 记录增量任务已处理到的 processed_at
+CREATE TABLE IF NOT EXISTS `sleep_rollup_watermarks` (
+  `job_name` varchar(50) NOT NULL COMMENT '任务名称',
+  `watermark` datetime NOT NULL COMMENT '已处理到的处理时间（含）',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`job_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='汇总任务水位表';
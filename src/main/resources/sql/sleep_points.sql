@@ -7,9 +7,11 @@ CREATE TABLE IF NOT EXISTS `sleep_points` (
   `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `deleted` tinyint(1) NOT NULL DEFAULT '0' COMMENT '逻辑删除标志（0：未删除，1：已删除）',
+  `expired_at` datetime DEFAULT NULL COMMENT '过期时间（NULL：未过期），过期的积分不再计入余额',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_user_date` (`user_id`, `date`, `deleted`) COMMENT '用户ID和日期唯一索引',
   KEY `idx_user_id` (`user_id`) COMMENT '用户ID索引',
   KEY `idx_date` (`date`) COMMENT '日期索引',
+  KEY `idx_date_expired_at` (`date`, `expired_at`) COMMENT '按积分日期过期及启动时汇总未过期日期',
   KEY `idx_points` (`points`) COMMENT '积分索引'
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='睡眠积分表';
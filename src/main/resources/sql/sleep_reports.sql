@@ -0,0 +1,15 @@
+-- AI睡眠报告表
+-- 每个用户每个睡眠日期一行，保存最近一次生成的报告（GZIP压缩）；
+-- fingerprint 为生成时睡眠数据字段与报告模板版本的摘要，与当前数据不一致时视为失效
+CREATE TABLE IF NOT EXISTS `sleep_reports` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `date_of_sleep` date NOT NULL COMMENT '睡眠日期',
+  `fingerprint` char(64) NOT NULL COMMENT '睡眠数据与模板版本的SHA-256摘要（十六进制）',
+  `template_version` varchar(20) NOT NULL COMMENT '报告模板版本',
+  `report_gz` mediumblob NOT NULL COMMENT 'GZIP压缩的报告内容（UTF-8）',
+  `report_length` int(11) NOT NULL COMMENT '报告字符数',
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '生成时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_user_date` (`user_id`, `date_of_sleep`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI睡眠报告表';
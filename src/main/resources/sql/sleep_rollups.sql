@@ -0,0 +1,15 @@
+-- 睡眠数据滚动统计表
+-- 每个用户每个窗口每个指标一行，窗口以该用户最新一晚为终点
+CREATE TABLE IF NOT EXISTS `sleep_rollups` (
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `window_days` int(11) NOT NULL COMMENT '窗口天数（7/30/90）',
+  `metric` varchar(20) NOT NULL COMMENT '指标（TOTAL_SLEEP/DEEP_SLEEP/REM_SLEEP/SLEEP_SCORE）',
+  `window_end` date DEFAULT NULL COMMENT '窗口终点（用户最新一晚的睡眠日期）',
+  `sample_count` int(11) NOT NULL DEFAULT '0' COMMENT '窗口内有值的晚数',
+  `value_sum` bigint(20) NOT NULL DEFAULT '0' COMMENT '指标总和',
+  `value_sum_sq` bigint(20) NOT NULL DEFAULT '0' COMMENT '指标平方和（用于计算方差）',
+  `min_value` int(11) DEFAULT NULL COMMENT '最小值',
+  `max_value` int(11) DEFAULT NULL COMMENT '最大值',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`, `window_days`, `metric`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='睡眠数据滚动统计表';
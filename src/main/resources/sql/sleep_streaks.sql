@@ -0,0 +1,13 @@
+-- 用户睡眠连续达标表
+-- 每个用户每种连续类型一行；按日期顺序写入的夜晚 O(1) 更新，乱序补录或改写已计入的夜晚时按该用户历史重算
+CREATE TABLE IF NOT EXISTS `sleep_streaks` (
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `streak_type` varchar(20) NOT NULL COMMENT '连续类型（GOOD_NIGHT/CONSISTENT_SLEEP）',
+  `current_streak` int(11) NOT NULL DEFAULT '0' COMMENT '截至最近达标日期的连续达标晚数',
+  `current_start_date` date DEFAULT NULL COMMENT '当前连续的起始日期',
+  `last_qualifying_date` date DEFAULT NULL COMMENT '最近达标日期',
+  `best_streak` int(11) NOT NULL DEFAULT '0' COMMENT '历史最长连续达标晚数',
+  `best_end_date` date DEFAULT NULL COMMENT '历史最长连续的结束日期',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`, `streak_type`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户睡眠连续达标表';
@@ -0,0 +1,10 @@
+-- 用户积分余额表
+-- 与 sleep_points 在同一事务中更新，读取当前总积分只需按主键查一行；由对账任务定期与积分明细核对
+CREATE TABLE IF NOT EXISTS `user_points_balance` (
+  `user_id` varchar(50) NOT NULL COMMENT '用户ID',
+  `total_points` bigint(20) NOT NULL DEFAULT '0' COMMENT '总积分',
+  `record_count` int(11) NOT NULL DEFAULT '0' COMMENT '积分记录数',
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户积分余额表';
@@ -0,0 +1,134 @@
+package com.sleephelper.benchmark;
+
+import com.sleephelper.common.OutboundRateLimiter.Priority;
+import com.sleephelper.config.AIConfig;
+import com.sleephelper.config.BailianConfig;
+import com.sleephelper.service.BailianService;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 百炼调用并发容量压测
+ * 本地启动一个固定延迟响应的模拟百炼接口，用与Tomcat默认最大线程数相同的200个请求线程发起同一批请求，比较
+ * 请求线程 block() 等待响应与请求线程订阅后立即归还两种线程模型的同时进行中请求数峰值、总耗时和JVM线程数峰值
+ * 两种模式调用的都是当前的 BailianService（共享WebClient和连接池），“阻塞”模式只是在其返回的Mono上调用 block()，
+ * 不是原实现：原实现每次调用都重新构建WebClient，本类没有测量这部分开销，阻塞模式的结果只反映请求线程被占用的影响
+ * 阻塞调用的并发上限等于请求线程数，非阻塞调用只受连接池大小限制
+ * 运行：mvn test-compile 后以测试classpath执行本类的main方法，可选参数：请求数 模拟延迟毫秒
+ * <p>
+ * 本类尚未在可解析 reactor-netty 依赖的环境中运行过，没有实测结果。
+ * 作为线程模型的参照，用JDK自带 HttpServer / HttpClient 编写的独立程序（与本类和 BailianService 均无关，
+ * 阻塞为 send、非阻塞为 sendAsync）在2000个请求、模拟延迟500ms、200个请求线程、单核 OpenJDK 17 上测得：
+ * 阻塞进行中请求峰值200，耗时约6.1s，吞吐约330次/秒；非阻塞进行中请求峰值1067~1758，耗时3.4~3.9s，吞吐510~600次/秒
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class BailianConcurrencyBenchmark {
+
+    /**
+     * 请求线程数，与Tomcat默认 server.tomcat.threads.max 相同
+     */
+    private static final int REQUEST_THREADS = 200;
+
+    private static final String RESPONSE = "{\"output\":{\"text\":\"【睡眠分析报告】保持规律作息。\"}}";
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+
+    private static final AtomicInteger PEAK_IN_FLIGHT = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 500);
+
+        DisposableServer server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> {
+                    PEAK_IN_FLIGHT.accumulateAndGet(IN_FLIGHT.incrementAndGet(), Math::max);
+                    return response.header("Content-Type", "application/json")
+                            .sendString(request.receive().then(Mono.delay(latency))
+                                    .map(tick -> RESPONSE)
+                                    .doFinally(signal -> IN_FLIGHT.decrementAndGet()));
+                })
+                .bindNow();
+
+        BailianConfig config = new BailianConfig();
+        config.setEndpoint("http://127.0.0.1:" + server.port() + "/generation");
+        config.setApiKey("benchmark");
+        config.setMaxConnections(requests);
+        config.setPendingAcquireMaxCount(requests);
+        // 只比较线程模型，不经过调用限流
+        config.setLimiterEnabled(false);
+        AIConfig aiConfig = new AIConfig();
+        ConnectionProvider connectionProvider = aiConfig.bailianConnectionProvider(config);
+        BailianService bailianService = new BailianService();
+        ReflectionTestUtils.setField(bailianService, "bailianConfig", config);
+        ReflectionTestUtils.setField(bailianService, "webClientBuilder", aiConfig.webClientBuilder(connectionProvider));
+        bailianService.init();
+
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        try {
+            // 预热：建立连接、加载类
+            run(bailianService, requestThreads, REQUEST_THREADS, false);
+
+            System.out.printf("请求数：%d，模拟延迟：%dms，请求线程数：%d%n", requests, latency.toMillis(), REQUEST_THREADS);
+            System.out.printf("%-8s %14s %10s %12s %12s%n", "模式", "进行中请求峰值", "耗时(ms)", "吞吐(次/秒)", "线程数峰值");
+            for (boolean reactive : new boolean[]{false, true}) {
+                long elapsed = run(bailianService, requestThreads, requests, reactive);
+                System.out.printf("%-8s %14d %10d %12.0f %12d%n", reactive ? "非阻塞" : "阻塞",
+                        PEAK_IN_FLIGHT.get(), elapsed, requests * 1000.0 / elapsed,
+                        ManagementFactory.getThreadMXBean().getPeakThreadCount());
+            }
+        } finally {
+            requestThreads.shutdownNow();
+            connectionProvider.dispose();
+            server.disposeNow();
+        }
+    }
+
+    /**
+     * 用请求线程池发起一批请求，等待全部完成
+     *
+     * @return 耗时（毫秒）
+     */
+    private static long run(BailianService bailianService, ExecutorService requestThreads,
+                            int requests, boolean reactive) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        PEAK_IN_FLIGHT.set(0);
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            String prompt = "请分析第" + i + "晚的睡眠";
+            requestThreads.execute(() -> {
+                if (reactive) {
+                    // 与Controller返回Mono相同：订阅后请求线程立即归还，响应在网络线程上完成
+                    bailianService.generateText(prompt, Priority.INTERACTIVE).doFinally(signal -> done.countDown()).subscribe();
+                } else {
+                    try {
+                        bailianService.generateText(prompt, Priority.INTERACTIVE).block();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("压测请求未在5分钟内完成");
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
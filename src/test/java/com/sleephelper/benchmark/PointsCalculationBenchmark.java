@@ -0,0 +1,158 @@
+package com.sleephelper.benchmark;
+
+import com.sleephelper.common.PointsRuleEngine;
+import com.sleephelper.service.impl.SleepPointsServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 睡眠积分计算基准测试
+ * 每次调用计算1000万次积分，比较原实现（装箱参数、硬编码分档、每次调用打日志）、
+ * 现在的装箱重载和规则引擎的基本类型重载
+ * 输入取有效范围内的随机值；原实现的日志改为输出到未开启的级别，只计入参数装箱和级别判断，
+ * 结果是原实现耗时的下限（线上原实现每次调用都会写一行INFO日志）
+ * 运行：mvn test-compile 后以测试classpath执行本类的main方法
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointsCalculationBenchmark {
+
+    private static final int EVALUATIONS = 10_000_000;
+
+    /**
+     * 输入样本数（2的幂，按位与取下标）
+     */
+    private static final int SAMPLES = 4096;
+
+    private static final Logger LEGACY_LOG = LoggerFactory.getLogger("benchmark.legacy.points");
+
+    private final int[] scores = new int[SAMPLES];
+
+    private final int[] deepSleeps = new int[SAMPLES];
+
+    private final Integer[] boxedScores = new Integer[SAMPLES];
+
+    private final Integer[] boxedDeepSleeps = new Integer[SAMPLES];
+
+    private SleepPointsServiceImpl sleepPointsService;
+
+    private PointsRuleEngine engine;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            scores[i] = random.nextInt(101);
+            deepSleeps[i] = random.nextInt(241);
+            boxedScores[i] = scores[i];
+            boxedDeepSleeps[i] = deepSleeps[i];
+        }
+        // 与应用默认日志级别（INFO）一致，装箱重载的DEBUG日志不输出
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SleepPointsServiceImpl.class))
+                .setLevel(ch.qos.logback.classic.Level.INFO);
+        sleepPointsService = new SleepPointsServiceImpl();
+        engine = PointsRuleEngine.DEFAULT;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public long legacyBoxed() {
+        long sum = 0;
+        for (int i = 0; i < EVALUATIONS; i++) {
+            int index = i & (SAMPLES - 1);
+            sum += legacyCalculatePoints(boxedScores[index], boxedDeepSleeps[index]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public long serviceBoxed() {
+        long sum = 0;
+        for (int i = 0; i < EVALUATIONS; i++) {
+            int index = i & (SAMPLES - 1);
+            sum += sleepPointsService.calculatePoints(boxedScores[index], boxedDeepSleeps[index]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public long servicePrimitive() {
+        long sum = 0;
+        for (int i = 0; i < EVALUATIONS; i++) {
+            int index = i & (SAMPLES - 1);
+            sum += sleepPointsService.calculatePoints(scores[index], deepSleeps[index]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public long enginePrimitive() {
+        long sum = 0;
+        for (int i = 0; i < EVALUATIONS; i++) {
+            int index = i & (SAMPLES - 1);
+            sum += engine.evaluate(scores[index], deepSleeps[index]);
+        }
+        return sum;
+    }
+
+    /**
+     * 规则引擎上线前的 calculatePoints 实现
+     */
+    private static Integer legacyCalculatePoints(Integer sleepScore, Integer deepSleepDuration) {
+        if (sleepScore == null || sleepScore < 0 || sleepScore > 100) {
+            sleepScore = 0;
+        }
+        if (deepSleepDuration == null || deepSleepDuration < 0) {
+            deepSleepDuration = 0;
+        }
+        int basePoints;
+        if (sleepScore >= 80) {
+            basePoints = 20;
+        } else if (sleepScore >= 70) {
+            basePoints = 15;
+        } else if (sleepScore >= 60) {
+            basePoints = 10;
+        } else {
+            basePoints = 5;
+        }
+        int extraPoints = Math.min((deepSleepDuration / 30) * 5, 30);
+        int totalPoints = basePoints + extraPoints;
+        int finalPoints = Math.min(totalPoints, 50);
+        LEGACY_LOG.trace("积分计算完成，睡眠评分：{}，深睡时长：{}分钟，基础分：{}，额外分：{}，总积分：{}，最终积分：{}",
+                sleepScore, deepSleepDuration, basePoints, extraPoints, totalPoints, finalPoints);
+        return finalPoints;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PointsCalculationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
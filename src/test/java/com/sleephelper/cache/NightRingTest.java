@@ -0,0 +1,81 @@
+package com.sleephelper.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 最近N晚环形存储测试类
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class NightRingTest {
+
+    private static final int DAY = (int) LocalDate.of(2024, 3, 1).toEpochDay();
+
+    /**
+     * 测试区间聚合及缺失值处理
+     */
+    @Test
+    public void testAggregates() {
+        NightRing ring = new NightRing(7);
+        ring.put(DAY, 480, 90, 100, 85);
+        ring.put(DAY + 1, 420, null, 80, 70);
+        ring.put(DAY + 3, 450, 60, null, null);
+
+        assertEquals(3, ring.count(SleepMetric.TOTAL_SLEEP, DAY, DAY + 6));
+        assertEquals(1350, ring.sum(SleepMetric.TOTAL_SLEEP, DAY, DAY + 6));
+        assertEquals(2, ring.count(SleepMetric.DEEP_SLEEP, DAY, DAY + 6));
+        assertEquals(150, ring.sum(SleepMetric.DEEP_SLEEP, DAY, DAY + 6));
+        assertEquals(70, ring.min(SleepMetric.SLEEP_SCORE, DAY, DAY + 6));
+        assertEquals(85, ring.max(SleepMetric.SLEEP_SCORE, DAY, DAY + 6));
+        assertEquals(870, ring.sum(SleepMetric.TOTAL_SLEEP, DAY + 1, DAY + 3));
+    }
+
+    /**
+     * 测试窗口前移后旧数据被淘汰，且早于窗口的写入被忽略
+     */
+    @Test
+    public void testWindowAdvance() {
+        NightRing ring = new NightRing(7);
+        for (int i = 0; i < 7; i++) {
+            ring.put(DAY + i, 400 + i, 60, 90, 80);
+        }
+        ring.put(DAY + 9, 500, 60, 90, 80);
+
+        // 窗口变为 [DAY+3, DAY+9]，DAY+7、DAY+8 无数据
+        assertEquals(5, ring.count(SleepMetric.TOTAL_SLEEP, DAY, DAY + 9));
+        assertEquals(403, ring.min(SleepMetric.TOTAL_SLEEP, DAY, DAY + 9));
+
+        ring.put(DAY + 1, 600, 60, 90, 80);
+        assertEquals(500, ring.max(SleepMetric.TOTAL_SLEEP, DAY, DAY + 9));
+        assertEquals(LocalDate.ofEpochDay(DAY + 9), ring.getLatestDate());
+    }
+
+    /**
+     * 测试遍历按日期升序且覆盖写入生效
+     */
+    @Test
+    public void testForEachAndOverwrite() {
+        NightRing ring = new NightRing(30);
+        ring.put(DAY + 2, 450, 70, 90, 75);
+        ring.put(DAY, 400, 60, 80, 70);
+        ring.put(DAY + 2, 470, 75, 95, 78);
+
+        int[] visited = new int[4];
+        ring.forEach(DAY, DAY + 29, (epochDay, total, deep, rem, score) -> {
+            visited[visited[3]] = epochDay;
+            visited[3]++;
+            if (epochDay == DAY + 2) {
+                assertEquals(470, total);
+                assertEquals(78, score);
+            }
+        });
+        assertEquals(2, visited[3]);
+        assertEquals(DAY, visited[0]);
+        assertEquals(DAY + 2, visited[1]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.sleephelper.cache;
+
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 最近睡眠数据内存序列加载测试类
+ * 加载在锁外执行：加载期间有并发写入时不发布，下次访问重新加载到最新数据
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class RecentNightsStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private RecentNightsStore store;
+
+    private SleepAnalysisSummaryMapper mapper;
+
+    private final List<SleepAnalysisSummary> rows = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        SleepDataConfig config = new SleepDataConfig();
+        config.setRecentNightsDays(7);
+        mapper = mock(SleepAnalysisSummaryMapper.class);
+        when(mapper.selectPageByUserId(anyString(), isNull(), isNull(), isNull(), any()))
+                .thenAnswer(invocation -> new ArrayList<>(rows));
+
+        store = new RecentNightsStore();
+        ReflectionTestUtils.setField(store, "sleepDataConfig", config);
+        ReflectionTestUtils.setField(store, "sleepAnalysisSummaryMapper", mapper);
+        store.init();
+    }
+
+    /**
+     * 测试加载一次后常驻内存，后续写入直接更新
+     */
+    @Test
+    public void testLoadedOnceThenUpdatedInMemory() {
+        rows.add(night(DAY, 420));
+        assertEquals(420, store.sum("user1", SleepMetric.TOTAL_SLEEP, DAY, DAY));
+
+        store.record(night(DAY.plusDays(1), 480));
+        assertEquals(900, store.sum("user1", SleepMetric.TOTAL_SLEEP, DAY, DAY.plusDays(1)));
+        verify(mapper, times(1)).selectPageByUserId(anyString(), isNull(), isNull(), isNull(), any());
+    }
+
+    /**
+     * 测试加载查询之后提交的写入：本次加载不发布，下次访问重新加载
+     */
+    @Test
+    public void testLoadRacingWithWriteIsNotPublished() {
+        rows.add(night(DAY, 420));
+        when(mapper.selectPageByUserId(anyString(), isNull(), isNull(), isNull(), any())).thenAnswer(invocation -> {
+            List<SleepAnalysisSummary> snapshot = new ArrayList<>(rows);
+            // 查询返回后另一个写入提交
+            rows.add(night(DAY.plusDays(1), 480));
+            store.record(night(DAY.plusDays(1), 480));
+            return snapshot;
+        });
+        assertEquals(420, store.sum("user1", SleepMetric.TOTAL_SLEEP, DAY, DAY.plusDays(1)));
+        assertEquals(1L, store.getStats().get("discardedLoadCount"));
+
+        when(mapper.selectPageByUserId(anyString(), isNull(), isNull(), isNull(), any()))
+                .thenAnswer(invocation -> new ArrayList<>(rows));
+        assertEquals(900, store.sum("user1", SleepMetric.TOTAL_SLEEP, DAY, DAY.plusDays(1)));
+    }
+
+    /**
+     * 测试读取单晚数据：不在内存序列中的日期返回null，由调用方回退到数据库
+     */
+    @Test
+    public void testGetNight() {
+        SleepAnalysisSummary stored = night(DAY, 420);
+        stored.setSleepScore(85);
+        rows.add(stored);
+
+        SleepAnalysisSummary found = store.getNight("user1", DAY);
+        assertEquals(420, found.getTotalSleepDuration());
+        assertEquals(85, found.getSleepScore());
+        assertNull(found.getDeepSleepDuration());
+        assertNull(store.getNight("user1", DAY.minusDays(1)));
+        assertNull(store.getNight("user1", DAY.minusDays(30)));
+    }
+
+    private static SleepAnalysisSummary night(LocalDate date, int totalSleep) {
+        SleepAnalysisSummary night = new SleepAnalysisSummary();
+        night.setUserId("user1");
+        night.setDateOfSleep(date);
+        night.setTotalSleepDuration(totalSleep);
+        return night;
+    }
+}
@@ -0,0 +1,114 @@
+package com.sleephelper.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 滚动窗口增量聚合测试类
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class RollingAggregateTest {
+
+    private static final int DAY = (int) LocalDate.of(2024, 3, 1).toEpochDay();
+
+    /**
+     * 测试新增、覆盖及窗口前移后的计数、总和、最值和方差
+     */
+    @Test
+    public void testApply() {
+        NightRing ring = new NightRing(7);
+        RollingAggregate aggregate = new RollingAggregate(3);
+
+        write(ring, aggregate, DAY, 480, 90, 100, 80);
+        write(ring, aggregate, DAY + 1, 420, 60, 90, 70);
+        write(ring, aggregate, DAY + 2, 450, null, 80, 90);
+        assertEquals(3, aggregate.getCount(SleepMetric.TOTAL_SLEEP));
+        assertEquals(1350, aggregate.getSum(SleepMetric.TOTAL_SLEEP));
+        assertEquals(2, aggregate.getCount(SleepMetric.DEEP_SLEEP));
+        assertEquals(70, aggregate.getMin(SleepMetric.SLEEP_SCORE));
+        assertEquals(90, aggregate.getMax(SleepMetric.SLEEP_SCORE));
+
+        // 覆盖最小值所在的一晚，最小值需要重新计算
+        write(ring, aggregate, DAY + 1, 500, 60, 90, 85);
+        assertEquals(80, aggregate.getMin(SleepMetric.SLEEP_SCORE));
+        assertEquals(1430, aggregate.getSum(SleepMetric.TOTAL_SLEEP));
+
+        // 窗口前移一天，第一晚移出窗口
+        write(ring, aggregate, DAY + 3, 400, 50, 70, 60);
+        assertEquals(DAY + 3, aggregate.getWindowEnd());
+        assertEquals(3, aggregate.getCount(SleepMetric.TOTAL_SLEEP));
+        assertEquals(1350, aggregate.getSum(SleepMetric.TOTAL_SLEEP));
+        assertEquals(60, aggregate.getMin(SleepMetric.SLEEP_SCORE));
+        assertEquals(90, aggregate.getMax(SleepMetric.SLEEP_SCORE));
+        assertEquals(500L * 500 + 450L * 450 + 400L * 400, aggregate.getSumOfSquares(SleepMetric.TOTAL_SLEEP));
+
+        // 早于窗口的补录不影响聚合
+        write(ring, aggregate, DAY, 300, 30, 30, 10);
+        assertEquals(1350, aggregate.getSum(SleepMetric.TOTAL_SLEEP));
+
+        // 间隔超过窗口天数，旧数据全部移出
+        write(ring, aggregate, DAY + 10, 360, null, null, null);
+        assertEquals(1, aggregate.getCount(SleepMetric.TOTAL_SLEEP));
+        assertEquals(0, aggregate.getCount(SleepMetric.SLEEP_SCORE));
+        assertEquals(-1, aggregate.getMin(SleepMetric.SLEEP_SCORE));
+    }
+
+    /**
+     * 测试随机写入序列下增量结果与完整重算一致
+     */
+    @Test
+    public void testMatchesFullRecompute() {
+        Random random = new Random(42);
+        NightRing ring = new NightRing(30);
+        RollingAggregate weekly = new RollingAggregate(7);
+        RollingAggregate monthly = new RollingAggregate(30);
+
+        int latest = DAY;
+        for (int i = 0; i < 2000; i++) {
+            int day = random.nextInt(10) < 7 ? latest + random.nextInt(3) : latest - random.nextInt(40);
+            latest = Math.max(latest, day);
+            int[] values = NightRing.normalize(300 + random.nextInt(300),
+                    random.nextInt(5) == 0 ? null : random.nextInt(150),
+                    random.nextInt(5) == 0 ? null : random.nextInt(150),
+                    random.nextInt(5) == 0 ? null : random.nextInt(101));
+            weekly.apply(ring, day, values);
+            monthly.apply(ring, day, values);
+            put(ring, day, values);
+
+            assertSame(ring, weekly, 7);
+            assertSame(ring, monthly, 30);
+        }
+    }
+
+    private static void write(NightRing ring, RollingAggregate aggregate, int day,
+                              int total, Integer deep, Integer rem, Integer score) {
+        aggregate.apply(ring, day, NightRing.normalize(total, deep, rem, score));
+        ring.put(day, total, deep, rem, score);
+    }
+
+    private static void put(NightRing ring, int day, int[] values) {
+        ring.put(day, values[0], orNull(values[1]), orNull(values[2]), orNull(values[3]));
+    }
+
+    private static Integer orNull(int value) {
+        return value < 0 ? null : value;
+    }
+
+    private static void assertSame(NightRing ring, RollingAggregate incremental, int windowDays) {
+        RollingAggregate expected = RollingAggregate.fromRing(ring, windowDays);
+        assertEquals(expected.getWindowEnd(), incremental.getWindowEnd());
+        for (SleepMetric metric : SleepMetric.values()) {
+            assertEquals(expected.getCount(metric), incremental.getCount(metric), metric.name());
+            assertEquals(expected.getSum(metric), incremental.getSum(metric), metric.name());
+            assertEquals(expected.getSumOfSquares(metric), incremental.getSumOfSquares(metric), metric.name());
+            assertEquals(expected.getMin(metric), incremental.getMin(metric), metric.name());
+            assertEquals(expected.getMax(metric), incremental.getMax(metric), metric.name());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sleephelper.cache;
+
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import com.sleephelper.mapper.SleepPointsMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 睡眠记录布隆过滤器重建测试类
+ * 模拟先登记键、记录在重建扫描之后才提交的情况（扫描结果不含该记录），重建后不能漏判
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SleepRecordBloomFilterTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 1);
+
+    private SleepRecordBloomFilter bloomFilter;
+
+    private SleepDataConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        config = new SleepDataConfig();
+        config.setBloomExpectedInsertions(1000L);
+        SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper = mock(SleepAnalysisSummaryMapper.class);
+        SleepPointsMapper sleepPointsMapper = mock(SleepPointsMapper.class);
+        when(sleepAnalysisSummaryMapper.selectKeysAfterId(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+        when(sleepPointsMapper.selectKeysAfterId(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+
+        bloomFilter = new SleepRecordBloomFilter();
+        ReflectionTestUtils.setField(bloomFilter, "sleepDataConfig", config);
+        ReflectionTestUtils.setField(bloomFilter, "sleepAnalysisSummaryMapper", sleepAnalysisSummaryMapper);
+        ReflectionTestUtils.setField(bloomFilter, "sleepPointsMapper", sleepPointsMapper);
+    }
+
+    /**
+     * 测试首次构建前登记的键在构建完成后仍然可能存在
+     */
+    @Test
+    public void testPutBeforeFirstBuildIsKept() {
+        bloomFilter.putSleepData("user1", DATE);
+        bloomFilter.rebuild();
+
+        assertTrue(bloomFilter.mightContainSleepData("user1", DATE));
+        assertFalse(bloomFilter.mightContainSleepData("user2", DATE));
+    }
+
+    /**
+     * 测试重建前登记、扫描时尚未提交的键在重建后仍然可能存在
+     */
+    @Test
+    public void testPutBeforeRebuildIsMerged() {
+        bloomFilter.rebuild();
+        bloomFilter.putSleepPoints("user1", DATE);
+        bloomFilter.rebuild();
+
+        assertTrue(bloomFilter.mightContainSleepPoints("user1", DATE));
+    }
+
+    /**
+     * 测试过滤器尺寸变化时补入最近登记的键
+     */
+    @Test
+    public void testRecentPutsReplayedWhenSizeChanges() {
+        bloomFilter.rebuild();
+        bloomFilter.putSleepData("user1", DATE);
+        config.setBloomExpectedInsertions(100_000L);
+        bloomFilter.rebuild();
+
+        assertTrue(bloomFilter.mightContainSleepData("user1", DATE));
+    }
+
+    /**
+     * 测试重建不合并旧过滤器：超过保留时长且数据库中已不存在的键随重建清除，元素数不重复累计
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRebuildDropsStaleKeys() throws InterruptedException {
+        config.setBloomRecentPutRetentionMs(0L);
+        bloomFilter.rebuild();
+        bloomFilter.putSleepData("user1", DATE);
+        Thread.sleep(2);
+        bloomFilter.rebuild();
+
+        assertFalse(bloomFilter.mightContainSleepData("user1", DATE));
+        assertEquals(0L, ((Map<String, Object>) bloomFilter.getStats().get("sleepData")).get("insertions"));
+    }
+
+    /**
+     * 测试过滤器未开启时不登记，未构建时最近登记的键也按保留时长清理
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecentPutsBoundedWhenNotBuilt() throws InterruptedException {
+        config.setBloomEnabled(false);
+        bloomFilter.putSleepData("user1", DATE);
+        assertEquals(0, ((Map<String, Object>) bloomFilter.getStats().get("sleepData")).get("recentPuts"));
+
+        config.setBloomEnabled(true);
+        config.setBloomRecentPutRetentionMs(0L);
+        bloomFilter.putSleepData("user1", DATE);
+        Thread.sleep(2);
+        bloomFilter.putSleepData("user2", DATE);
+        assertEquals(1, ((Map<String, Object>) bloomFilter.getStats().get("sleepData")).get("recentPuts"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器测试类
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class BloomFilterTest {
+
+    /**
+     * 测试已添加的元素不会漏判，且误判率接近目标值
+     */
+    @Test
+    public void testNoFalseNegativesAndFppNearTarget() {
+        BloomFilter filter = BloomFilter.create(100_000, 0.01, 1024 * 1024);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put("user" + (i % 5000) + "|" + (19000 + i / 5000));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain("user" + (i % 5000) + "|" + (19000 + i / 5000)));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("missing" + i + "|" + i)) {
+                falsePositives++;
+            }
+        }
+        // 目标误判率1%，留出统计波动余量
+        assertTrue(falsePositives < 2000, "误判次数过多：" + falsePositives);
+    }
+
+    /**
+     * 测试位数组不超过内存上限
+     */
+    @Test
+    public void testMemoryBudgetIsRespected() {
+        BloomFilter filter = BloomFilter.create(10_000_000, 0.001, 4096);
+        assertTrue(filter.getMemoryBytes() <= 4096);
+        assertEquals(0, filter.getBitSize() % 64);
+    }
+}
@@ -0,0 +1,62 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片批量查询工具类测试类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class ChunkedLookupTest {
+
+    /**
+     * 测试按分片大小查询，去掉重复和null的键，没有结果的键不在映射中
+     */
+    @Test
+    public void testLookupInChunks() {
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            keys.add("user" + i);
+        }
+        keys.add("user0");
+        keys.add(null);
+
+        Map<String, String> result = ChunkedLookup.lookup(keys, 250, chunk -> {
+            assertFalse(chunk.contains(null));
+            chunkSizes.add(chunk.size());
+            List<String> rows = new ArrayList<>();
+            for (String key : chunk) {
+                if (!key.endsWith("7")) {
+                    rows.add(key);
+                }
+            }
+            return rows;
+        }, row -> row);
+
+        assertEquals(Arrays.asList(250, 250, 250, 250, 1), chunkSizes);
+        assertEquals(901, result.size());
+        assertEquals("user0", result.get("user0"));
+        assertNull(result.get("user7"));
+    }
+
+    /**
+     * 测试空键不发起查询
+     */
+    @Test
+    public void testEmptyKeysSkipQuery() {
+        Map<String, String> result = ChunkedLookup.lookup(Collections.emptyList(), 100, chunk -> {
+            throw new AssertionError("不应发起查询");
+        }, row -> row);
+        assertTrue(result.isEmpty());
+    }
+}
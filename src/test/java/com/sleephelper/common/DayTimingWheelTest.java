@@ -0,0 +1,83 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按天计时的分层时间轮测试类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class DayTimingWheelTest {
+
+    /**
+     * 测试超出第0层的到期日逐层下放，在到期当天取出；已过期的到期日登记后立即可取出
+     */
+    @Test
+    public void testCascadeAcrossLevels() {
+        DayTimingWheel wheel = new DayTimingWheel(4, 100);
+        assertTrue(wheel.add(102));
+        assertTrue(wheel.add(117));
+        assertTrue(wheel.add(465));
+        assertFalse(wheel.add(117));
+        assertTrue(wheel.add(90));
+        assertTrue(wheel.levelCount() >= 3);
+        assertEquals(4, wheel.size());
+
+        assertEquals(Collections.singletonList(90L), wheel.advanceTo(101));
+        assertEquals(Collections.singletonList(102L), wheel.advanceTo(116));
+        assertEquals(Collections.singletonList(117L), wheel.advanceTo(117));
+        assertTrue(wheel.advanceTo(464).isEmpty());
+        assertEquals(Collections.singletonList(465L), wheel.advanceTo(500));
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * 随机登记和推进后与有序集合逐次比对取出的到期日
+     */
+    @Test
+    public void testMatchesSortedReference() {
+        for (int seed = 0; seed < 50; seed++) {
+            Random random = new Random(seed);
+            int wheelSize = 2 + random.nextInt(8);
+            long now = random.nextInt(100_000);
+            DayTimingWheel wheel = new DayTimingWheel(wheelSize, now);
+            TreeSet<Long> reference = new TreeSet<>();
+            for (int step = 0; step < 2000; step++) {
+                if (random.nextInt(10) < 6) {
+                    long day = now + random.nextInt(1000) - 20;
+                    assertEquals(reference.add(day), wheel.add(day));
+                } else {
+                    now += random.nextInt(30);
+                    List<Long> expected = new ArrayList<>(reference.headSet(now, true));
+                    reference.removeAll(expected);
+                    assertEquals(expected, wheel.advanceTo(now), "种子：" + seed + "，步骤：" + step);
+                    assertEquals(reference.size(), wheel.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * 测试清空后按新日期重新登记
+     */
+    @Test
+    public void testReset() {
+        DayTimingWheel wheel = new DayTimingWheel(32, 0);
+        wheel.add(400);
+        wheel.reset(1000);
+        assertEquals(0, wheel.size());
+        assertEquals(1000, wheel.getCurrentDay());
+        wheel.add(1001);
+        assertEquals(Arrays.asList(1001L), wheel.advanceTo(1001));
+    }
+}
@@ -0,0 +1,102 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 写后缓冲（组提交）测试类
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class GroupCommitBufferTest {
+
+    /**
+     * 测试多条记录合并为一组提交，且各自Future拿到对应结果
+     */
+    @Test
+    public void testGroupsWritesIntoBatches() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        GroupCommitBuffer<Integer, String> buffer = new GroupCommitBuffer<>("test", 100, 10, 200,
+                items -> {
+                    batchSizes.add(items.size());
+                    List<String> results = new ArrayList<>();
+                    for (Integer item : items) {
+                        results.add("ok-" + item);
+                    }
+                    return results;
+                });
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(buffer.offer(i));
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals("ok-" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        buffer.shutdown(1000);
+
+        // 每组不超过10条，25条至少分3组
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 10));
+        assertTrue(batchSizes.size() >= 3);
+        assertEquals(25L, buffer.getMetrics().get("flushedRowCount"));
+    }
+
+    /**
+     * 测试队列已满时返回null，由调用方同步写入
+     */
+    @Test
+    public void testOfferReturnsNullWhenQueueFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test-full", 2, 1, 10,
+                items -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return items;
+                });
+
+        // 第一条被刷写线程取走并阻塞，后两条占满队列
+        CompletableFuture<Integer> first = buffer.offer(1);
+        Thread.sleep(100);
+        assertNotNull(buffer.offer(2));
+        assertNotNull(buffer.offer(3));
+        assertNull(buffer.offer(4));
+        assertEquals(1L, buffer.getMetrics().get("rejectedCount"));
+
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        buffer.shutdown(1000);
+    }
+
+    /**
+     * 测试关闭时写空队列，且关闭后不再接收新记录
+     */
+    @Test
+    public void testShutdownDrainsQueue() throws Exception {
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test-drain", 100, 50, 1000,
+                items -> items);
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(buffer.offer(i));
+        }
+        buffer.shutdown(5000);
+
+        for (CompletableFuture<Integer> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertNull(buffer.offer(99));
+        assertEquals(0, buffer.getQueueDepth());
+    }
+}
@@ -0,0 +1,224 @@
+package com.sleephelper.common;
+
+import com.sleephelper.common.OutboundRateLimiter.Outcome;
+import com.sleephelper.common.OutboundRateLimiter.Permit;
+import com.sleephelper.common.OutboundRateLimiter.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 外部API调用限流器测试类
+ * 使用可控时钟、不启动定时线程，由测试调用 dispatchNow 模拟唤醒
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class OutboundRateLimiterTest {
+
+    private final long[] now = {0L};
+
+    private OutboundRateLimiter newLimiter(OutboundRateLimiter.Settings settings) {
+        return new OutboundRateLimiter("test", settings, () -> now[0], false);
+    }
+
+    private OutboundRateLimiter.Settings unlimitedRate(int concurrency) {
+        OutboundRateLimiter.Settings settings = new OutboundRateLimiter.Settings();
+        settings.setRequestsPerMinute(0);
+        settings.setTokensPerMinute(0);
+        settings.setInitialConcurrency(concurrency);
+        settings.setMinConcurrency(1);
+        settings.setMaxConcurrency(10);
+        return settings;
+    }
+
+    private void advanceMillis(long millis) {
+        now[0] += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * 测试并发上限占满后排队，名额释放时交互请求先于更早排队的后台请求放行
+     */
+    @Test
+    public void testInteractiveServedBeforeBackground() throws Exception {
+        OutboundRateLimiter limiter = newLimiter(unlimitedRate(1));
+
+        CompletableFuture<Permit> running = limiter.acquire(Priority.BACKGROUND, 0);
+        CompletableFuture<Permit> background = limiter.acquire(Priority.BACKGROUND, 0);
+        CompletableFuture<Permit> interactive = limiter.acquire(Priority.INTERACTIVE, 0);
+        assertTrue(running.isDone());
+        assertFalse(background.isDone());
+        assertFalse(interactive.isDone());
+        assertEquals(1, limiter.getStats().get("queuedInteractive"));
+        assertEquals(1, limiter.getStats().get("queuedBackground"));
+
+        running.get().release(Outcome.IGNORED, -1);
+        assertTrue(interactive.isDone());
+        assertFalse(background.isDone());
+
+        interactive.get().release(Outcome.IGNORED, -1);
+        assertTrue(background.isDone());
+    }
+
+    /**
+     * 测试请求数令牌桶耗尽后排队，令牌按时间补充后放行
+     */
+    @Test
+    public void testRequestBucketRefill() {
+        OutboundRateLimiter.Settings settings = unlimitedRate(10);
+        settings.setRequestsPerMinute(2);
+        settings.setQueueTimeoutMillis(60_000);
+        OutboundRateLimiter limiter = newLimiter(settings);
+
+        assertTrue(limiter.acquire(Priority.INTERACTIVE, 0).isDone());
+        assertTrue(limiter.acquire(Priority.INTERACTIVE, 0).isDone());
+        CompletableFuture<Permit> third = limiter.acquire(Priority.INTERACTIVE, 0);
+        assertFalse(third.isDone());
+
+        // 每分钟2个，30秒补充1个
+        advanceMillis(29_000);
+        limiter.dispatchNow();
+        assertFalse(third.isDone());
+        advanceMillis(2_000);
+        limiter.dispatchNow();
+        assertTrue(third.isDone());
+        assertFalse(third.isCompletedExceptionally());
+    }
+
+    /**
+     * 测试token桶按预估扣减、按实际用量退还
+     */
+    @Test
+    public void testTokenBucketRefundsUnusedTokens() throws Exception {
+        OutboundRateLimiter.Settings settings = unlimitedRate(10);
+        settings.setTokensPerMinute(1000);
+        OutboundRateLimiter limiter = newLimiter(settings);
+
+        CompletableFuture<Permit> first = limiter.acquire(Priority.INTERACTIVE, 800);
+        assertTrue(first.isDone());
+        CompletableFuture<Permit> second = limiter.acquire(Priority.INTERACTIVE, 800);
+        assertFalse(second.isDone());
+
+        // 实际只用了100，退还700后剩余900
+        first.get().release(Outcome.SUCCESS, 100);
+        assertTrue(second.isDone());
+        assertEquals(100L, limiter.getStats().get("availableTokens"));
+    }
+
+    /**
+     * 测试排队超过截止时间以 IllegalStateException 失败，队列满时立即失败
+     */
+    @Test
+    public void testQueueDeadlineAndCapacity() {
+        OutboundRateLimiter.Settings settings = unlimitedRate(1);
+        settings.setQueueTimeoutMillis(1000);
+        settings.setMaxQueueSize(1);
+        OutboundRateLimiter limiter = newLimiter(settings);
+
+        assertTrue(limiter.acquire(Priority.INTERACTIVE, 0).isDone());
+        CompletableFuture<Permit> queued = limiter.acquire(Priority.INTERACTIVE, 0);
+        CompletableFuture<Permit> rejected = limiter.acquire(Priority.INTERACTIVE, 0);
+        assertTrue(rejected.isCompletedExceptionally());
+
+        advanceMillis(999);
+        limiter.dispatchNow();
+        assertFalse(queued.isDone());
+        advanceMillis(1);
+        limiter.dispatchNow();
+        ExecutionException error = assertThrows(ExecutionException.class, queued::get);
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertEquals(1L, limiter.getStats().get("queueFull"));
+        assertEquals(1L, limiter.getStats().get("queueTimeout"));
+    }
+
+    /**
+     * 测试并发上限：用满时成功加1，被限流时减半，同一轮拥塞中早先放行的请求再被限流不重复下调
+     */
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() throws Exception {
+        OutboundRateLimiter limiter = newLimiter(unlimitedRate(4));
+
+        Permit[] permits = new Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = limiter.acquire(Priority.INTERACTIVE, 0).get();
+        }
+        permits[3].release(Outcome.SUCCESS, -1);
+        assertEquals(5, limiter.getStats().get("concurrencyLimit"));
+
+        permits[0].release(Outcome.RATE_LIMITED, -1);
+        assertEquals(2, limiter.getStats().get("concurrencyLimit"));
+        permits[1].release(Outcome.RATE_LIMITED, -1);
+        assertEquals(2, limiter.getStats().get("concurrencyLimit"));
+
+        // 下调后放行的请求超时，再次下调
+        Permit later = limiter.acquire(Priority.INTERACTIVE, 0).get();
+        later.release(Outcome.DROPPED, -1);
+        assertEquals(1, limiter.getStats().get("concurrencyLimit"));
+        permits[2].release(Outcome.IGNORED, -1);
+        assertEquals(0, limiter.getStats().get("inFlight"));
+    }
+
+    /**
+     * 测试成功但耗时超过阈值时下调并发上限，重复释放只生效一次
+     */
+    @Test
+    public void testSlowSuccessDecreasesLimit() throws Exception {
+        OutboundRateLimiter.Settings settings = unlimitedRate(4);
+        settings.setLatencyThresholdMillis(1000);
+        OutboundRateLimiter limiter = newLimiter(settings);
+
+        Permit permit = limiter.acquire(Priority.BACKGROUND, 0).get();
+        advanceMillis(1001);
+        permit.release(Outcome.SUCCESS, -1);
+        permit.release(Outcome.SUCCESS, -1);
+        assertEquals(2, limiter.getStats().get("concurrencyLimit"));
+        assertEquals(0, limiter.getStats().get("inFlight"));
+        assertEquals(1L, limiter.getStats().get("succeeded"));
+    }
+
+    /**
+     * 测试流式调用按首个片段计算延迟：首个片段及时返回时，流持续再久也不下调并发上限
+     */
+    @Test
+    public void testLongStreamJudgedByFirstResponse() throws Exception {
+        OutboundRateLimiter.Settings settings = unlimitedRate(4);
+        settings.setLatencyThresholdMillis(1000);
+        OutboundRateLimiter limiter = newLimiter(settings);
+
+        Permit fast = limiter.acquire(Priority.INTERACTIVE, 0).get();
+        advanceMillis(200);
+        fast.markFirstResponse();
+        advanceMillis(30000);
+        fast.markFirstResponse();
+        fast.release(Outcome.SUCCESS, -1);
+        assertEquals(4, limiter.getStats().get("concurrencyLimit"));
+
+        Permit slow = limiter.acquire(Priority.INTERACTIVE, 0).get();
+        advanceMillis(1500);
+        slow.markFirstResponse();
+        slow.release(Outcome.SUCCESS, -1);
+        assertEquals(2, limiter.getStats().get("concurrencyLimit"));
+    }
+
+    /**
+     * 测试排队中取消的请求不占用放行名额
+     */
+    @Test
+    public void testCancelledWaiterSkipped() throws Exception {
+        OutboundRateLimiter limiter = newLimiter(unlimitedRate(1));
+
+        Permit running = limiter.acquire(Priority.INTERACTIVE, 0).get();
+        CompletableFuture<Permit> cancelled = limiter.acquire(Priority.INTERACTIVE, 0);
+        CompletableFuture<Permit> waiting = limiter.acquire(Priority.INTERACTIVE, 0);
+        cancelled.cancel(false);
+
+        running.release(Outcome.SUCCESS, -1);
+        assertTrue(waiting.isDone());
+        assertEquals(1, limiter.getStats().get("inFlight"));
+        assertEquals(1L, limiter.getStats().get("cancelled"));
+    }
+}
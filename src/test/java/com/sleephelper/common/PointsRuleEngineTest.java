@@ -0,0 +1,92 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 睡眠积分规则引擎测试类
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class PointsRuleEngineTest {
+
+    /**
+     * 测试默认规则与原硬编码规则逐点一致（含超出范围的评分和负数深睡时长）
+     */
+    @Test
+    public void testDefaultRulesMatchHardCodedRules() {
+        PointsRuleEngine engine = PointsRuleEngine.DEFAULT;
+        for (int score = -10; score <= 110; score++) {
+            for (int deep = -60; deep <= 600; deep++) {
+                assertEquals(hardCodedPoints(score, deep), engine.evaluate(score, deep),
+                        "评分：" + score + "，深睡：" + deep);
+            }
+        }
+        assertEquals(50, engine.evaluate(100, Integer.MAX_VALUE));
+        assertEquals(5, engine.evaluate(Integer.MIN_VALUE, Integer.MIN_VALUE));
+    }
+
+    /**
+     * 测试自定义规则：分档乱序配置、加分不整除上限、每日上限截断
+     */
+    @Test
+    public void testCustomRules() {
+        PointsRuleEngine engine = PointsRuleEngine.compile(Arrays.asList(50, 90), Arrays.asList(8, 12),
+                2, 45, 4, 10, 20);
+        assertEquals(2, engine.evaluate(49, 0));
+        assertEquals(8, engine.evaluate(50, 44));
+        assertEquals(12, engine.evaluate(89, 45));
+        assertEquals(20, engine.evaluate(90, 90));
+        // 加分上限10：3档为12，截断为10
+        assertEquals(18, engine.evaluate(60, 135));
+        assertEquals(20, engine.evaluate(95, 10_000));
+        assertEquals(2, engine.evaluate(101, 0));
+        assertEquals(90, engine.getScoreTiers().get(0).getMinScore());
+    }
+
+    /**
+     * 测试最低分档下限为0时，无效评分按该档计
+     */
+    @Test
+    public void testZeroThresholdAppliesToInvalidScores() {
+        PointsRuleEngine engine = PointsRuleEngine.compile(Arrays.asList(0, 80), Arrays.asList(3, 20),
+                1, 30, 0, 0, 50);
+        assertEquals(3, engine.evaluate(-1, 0));
+        assertEquals(3, engine.getInvalidScoreBasePoints());
+        assertEquals(20, engine.evaluate(80, 600));
+    }
+
+    /**
+     * 测试无效规则配置
+     */
+    @Test
+    public void testInvalidRulesRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PointsRuleEngine.compile(Collections.emptyList(), Collections.emptyList(), 5, 30, 5, 30, 50));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointsRuleEngine.compile(Arrays.asList(80, 70), Collections.singletonList(20), 5, 30, 5, 30, 50));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointsRuleEngine.compile(Arrays.asList(80, 80), Arrays.asList(20, 15), 5, 30, 5, 30, 50));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointsRuleEngine.compile(Collections.singletonList(101), Collections.singletonList(20), 5, 30, 5, 30, 50));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointsRuleEngine.compile(Collections.singletonList(80), Collections.singletonList(20), 5, 0, 5, 30, 50));
+    }
+
+    private static int hardCodedPoints(int sleepScore, int deepSleepDuration) {
+        if (sleepScore < 0 || sleepScore > 100) {
+            sleepScore = 0;
+        }
+        if (deepSleepDuration < 0) {
+            deepSleepDuration = 0;
+        }
+        int basePoints = sleepScore >= 80 ? 20 : sleepScore >= 70 ? 15 : sleepScore >= 60 ? 10 : 5;
+        int extraPoints = Math.min((deepSleepDuration / 30) * 5, 30);
+        return Math.min(basePoints + extraPoints, 50);
+    }
+}
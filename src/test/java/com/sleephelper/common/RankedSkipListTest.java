@@ -0,0 +1,112 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 有序跳表测试类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class RankedSkipListTest {
+
+    /**
+     * 测试排序规则：分数从高到低，分数相同按成员升序
+     */
+    @Test
+    public void testOrderingAndRank() {
+        RankedSkipList list = new RankedSkipList();
+        list.put("user_b", 30);
+        list.put("user_a", 30);
+        list.put("user_c", 50);
+        list.put("user_d", 10);
+
+        List<RankedSkipList.Entry> top = list.top(10);
+        assertEquals(4, top.size());
+        assertEquals("user_c", top.get(0).getMember());
+        assertEquals("user_a", top.get(1).getMember());
+        assertEquals("user_b", top.get(2).getMember());
+        assertEquals("user_d", top.get(3).getMember());
+        assertEquals(3, top.get(2).getRank());
+
+        assertEquals(1, list.rank("user_c"));
+        assertEquals(4, list.rank("user_d"));
+        assertEquals(0, list.rank("user_x"));
+        assertEquals(Long.valueOf(30), list.score("user_b"));
+        assertNull(list.score("user_x"));
+    }
+
+    /**
+     * 测试更新分数后名次随之变化，移除后名次前移
+     */
+    @Test
+    public void testUpdateAndRemove() {
+        RankedSkipList list = new RankedSkipList();
+        list.put("user_a", 10);
+        list.put("user_b", 20);
+        list.put("user_c", 30);
+
+        list.put("user_a", 40);
+        assertEquals(1, list.rank("user_a"));
+        assertEquals(3, list.rank("user_b"));
+        assertEquals(3, list.size());
+
+        assertTrue(list.remove("user_c"));
+        assertFalse(list.remove("user_c"));
+        assertEquals(2, list.rank("user_b"));
+        assertEquals(2, list.size());
+
+        assertTrue(list.range(2, 10).isEmpty());
+        assertTrue(list.top(0).isEmpty());
+    }
+
+    /**
+     * 随机增删改后与排序列表逐项比对名次及区间查询
+     */
+    @Test
+    public void testMatchesSortedReference() {
+        RankedSkipList list = new RankedSkipList();
+        Map<String, Long> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String member = "user_" + random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                assertEquals(reference.remove(member) != null, list.remove(member));
+            } else {
+                long score = random.nextInt(200);
+                reference.put(member, score);
+                list.put(member, score);
+            }
+        }
+
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(reference.entrySet());
+        sorted.sort(Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue).reversed()
+                .thenComparing(Map.Entry::getKey));
+        assertEquals(sorted.size(), list.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(i + 1, list.rank(sorted.get(i).getKey()), "成员：" + sorted.get(i).getKey());
+        }
+
+        List<RankedSkipList.Entry> all = list.top(sorted.size() + 10);
+        assertEquals(sorted.size(), all.size());
+        for (int offset = 0; offset < sorted.size(); offset += 37) {
+            List<RankedSkipList.Entry> page = list.range(offset, 25);
+            for (int i = 0; i < page.size(); i++) {
+                Map.Entry<String, Long> expected = sorted.get(offset + i);
+                assertEquals(offset + i + 1, page.get(i).getRank());
+                assertEquals(expected.getKey(), page.get(i).getMember());
+                assertEquals(expected.getValue().longValue(), page.get(i).getScore());
+            }
+            assertEquals(Math.min(25, sorted.size() - offset), page.size());
+        }
+    }
+}
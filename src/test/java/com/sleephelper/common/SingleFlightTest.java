@@ -0,0 +1,92 @@
+package com.sleephelper.common;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 相同键并发调用合并测试类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SingleFlightTest {
+
+    /**
+     * 测试相同键的并发调用只执行一次并共享结果，结束后再次调用重新执行
+     */
+    @Test
+    public void testConcurrentCallsShareOneExecution() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+        List<String> results = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            flights.execute("user1|2024-01-01", () -> {
+                calls.incrementAndGet();
+                return response.asMono();
+            }).subscribe(results::add);
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flights.inFlightCount());
+
+        response.tryEmitValue("报告");
+        assertEquals(List.of("报告", "报告", "报告"), results);
+        assertEquals(0, flights.inFlightCount());
+
+        assertEquals("新报告", flights.execute("user1|2024-01-01", () -> {
+            calls.incrementAndGet();
+            return Mono.just("新报告");
+        }).block());
+        assertEquals(2, calls.get());
+        assertEquals(4L, flights.getStats().get("requests"));
+        assertEquals(2L, flights.getStats().get("executions"));
+        assertEquals(0.5, (Double) flights.getStats().get("coalescingRatio"), 1e-9);
+    }
+
+    /**
+     * 测试不同键互不合并
+     */
+    @Test
+    public void testDifferentKeysRunSeparately() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        List<String> results = new ArrayList<>();
+
+        flights.execute("user1|2024-01-01", first::asMono).subscribe(results::add);
+        flights.execute("user2|2024-01-01", second::asMono).subscribe(results::add);
+        assertEquals(2, flights.inFlightCount());
+
+        second.tryEmitValue("用户2报告");
+        first.tryEmitValue("用户1报告");
+        assertEquals(List.of("用户2报告", "用户1报告"), results);
+        assertEquals(0L, flights.getStats().get("coalesced"));
+    }
+
+    /**
+     * 测试失败同样共享给全部调用方，失败后移除，下次调用重新执行
+     */
+    @Test
+    public void testFailureIsSharedAndNotRetained() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        Sinks.One<String> response = Sinks.one();
+        List<Throwable> errors = new ArrayList<>();
+
+        flights.execute("prompt", response::asMono).subscribe(value -> fail(), errors::add);
+        flights.execute("prompt", response::asMono).subscribe(value -> fail(), errors::add);
+        response.tryEmitError(new IllegalStateException("API调用频率超限，请稍后重试。"));
+
+        assertEquals(2, errors.size());
+        assertSame(errors.get(0), errors.get(1));
+        assertEquals(0, flights.inFlightCount());
+        assertEquals("重试成功", flights.execute("prompt", () -> Mono.just("重试成功")).block());
+    }
+}
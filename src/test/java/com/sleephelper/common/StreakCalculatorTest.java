@@ -0,0 +1,98 @@
+package com.sleephelper.common;
+
+import com.sleephelper.entity.SleepStreak;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 连续达标计算测试类
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class StreakCalculatorTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2024, 1, 1);
+
+    /**
+     * 测试按日期顺序写入：连续、中断后重新计数，最长连续保留
+     */
+    @Test
+    public void testInOrderUpdates() {
+        SleepStreak streak = new SleepStreak();
+        assertEquals(StreakCalculator.Outcome.UPDATED, StreakCalculator.apply(streak, DAY1, true));
+        assertEquals(StreakCalculator.Outcome.UPDATED, StreakCalculator.apply(streak, DAY1.plusDays(1), true));
+        assertEquals(StreakCalculator.Outcome.UPDATED, StreakCalculator.apply(streak, DAY1.plusDays(2), true));
+        assertEquals(StreakCalculator.Outcome.UNCHANGED, StreakCalculator.apply(streak, DAY1.plusDays(3), false));
+        assertEquals(StreakCalculator.Outcome.UPDATED, StreakCalculator.apply(streak, DAY1.plusDays(4), true));
+
+        assertEquals(1, streak.getCurrentStreak());
+        assertEquals(DAY1.plusDays(4), streak.getCurrentStartDate());
+        assertEquals(3, streak.getBestStreak());
+        assertEquals(DAY1.plusDays(2), streak.getBestEndDate());
+
+        assertEquals(1, StreakCalculator.currentAsOf(streak, DAY1.plusDays(5)));
+        assertEquals(0, StreakCalculator.currentAsOf(streak, DAY1.plusDays(6)));
+    }
+
+    /**
+     * 测试乱序补录和改写已计入夜晚时要求重算，当前连续区间内的重复达标不变
+     */
+    @Test
+    public void testOutOfOrderRequiresRecompute() {
+        SleepStreak streak = new SleepStreak();
+        StreakCalculator.apply(streak, DAY1.plusDays(5), true);
+        StreakCalculator.apply(streak, DAY1.plusDays(6), true);
+
+        assertEquals(StreakCalculator.Outcome.UNCHANGED, StreakCalculator.apply(streak, DAY1.plusDays(5), true));
+        assertEquals(StreakCalculator.Outcome.RECOMPUTE_REQUIRED, StreakCalculator.apply(streak, DAY1.plusDays(6), false));
+        assertEquals(StreakCalculator.Outcome.RECOMPUTE_REQUIRED, StreakCalculator.apply(streak, DAY1.plusDays(4), true));
+        assertEquals(StreakCalculator.Outcome.RECOMPUTE_REQUIRED, StreakCalculator.apply(streak, DAY1, false));
+    }
+
+    /**
+     * 随机写入（含乱序和改写）后与全量重算结果一致
+     */
+    @Test
+    public void testMatchesFullRecompute() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            TreeMap<LocalDate, Boolean> nights = new TreeMap<>();
+            SleepStreak streak = new SleepStreak();
+            for (int i = 0; i < 60; i++) {
+                LocalDate date = DAY1.plusDays(random.nextInt(40));
+                boolean qualifies = random.nextInt(4) != 0;
+                nights.put(date, qualifies);
+                if (StreakCalculator.apply(streak, date, qualifies) == StreakCalculator.Outcome.RECOMPUTE_REQUIRED) {
+                    StreakCalculator.recompute(streak, qualifyingDates(nights));
+                }
+
+                SleepStreak expected = new SleepStreak();
+                StreakCalculator.recompute(expected, qualifyingDates(nights));
+                assertEquals(expected.getCurrentStreak() != null ? expected.getCurrentStreak() : 0,
+                        streak.getCurrentStreak() != null ? streak.getCurrentStreak() : 0);
+                assertEquals(expected.getLastQualifyingDate(), streak.getLastQualifyingDate());
+                assertEquals(expected.getCurrentStartDate(), streak.getCurrentStartDate());
+                assertEquals(expected.getBestStreak() != null ? expected.getBestStreak() : 0,
+                        streak.getBestStreak() != null ? streak.getBestStreak() : 0);
+            }
+        }
+    }
+
+    private static List<LocalDate> qualifyingDates(TreeMap<LocalDate, Boolean> nights) {
+        List<LocalDate> dates = new ArrayList<>();
+        nights.forEach((date, qualifies) -> {
+            if (qualifies) {
+                dates.add(date);
+            }
+        });
+        return dates;
+    }
+}
@@ -10,9 +10,17 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
@@ -59,7 +67,7 @@ public class SleepAIControllerTest {
         
         // Mock AI服务返回
         String mockReport = "【睡眠分析报告】\n\n【优势】\n睡眠质量良好\n\n【不足】\n需要改善\n\n【建议】\n1. 保持规律作息\n2. 改善睡眠环境\n3. 睡前放松";
-        when(sleepAIService.generateSleepReport(anyString(), any())).thenReturn(mockReport);
+        when(sleepAIService.generateSleepReport(anyString(), any())).thenReturn(Mono.just(mockReport));
 
         // 构建请求
         String requestJson = """
@@ -69,9 +77,13 @@ public class SleepAIControllerTest {
             }
             """;
 
-        mockMvc.perform(post("/api/ai/report")
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/report")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.code").value(200))
                 .andExpect(jsonPath("$.message").value("AI睡眠报告生成成功"))
@@ -87,7 +99,7 @@ public class SleepAIControllerTest {
         
         // Mock AI聊天服务返回
         String mockResponse = "根据您的睡眠问题，我建议您保持规律的作息时间。";
-        when(sleepChatService.chatWithUser(anyString(), anyString())).thenReturn(mockResponse);
+        when(sleepChatService.chatWithUser(anyString(), anyString())).thenReturn(Mono.just(mockResponse));
 
         // 构建请求
         String requestJson = """
@@ -97,15 +109,82 @@ public class SleepAIControllerTest {
             }
             """;
 
-        mockMvc.perform(post("/api/ai/chat")
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/chat")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.code").value(200))
                 .andExpect(jsonPath("$.message").value("AI回复生成成功"))
                 .andExpect(jsonPath("$.data").value(mockResponse));
     }
 
+    /**
+     * 测试AI流式聊天接口：每个片段一个delta事件，最后是done事件
+     */
+    @Test
+    public void testStreamChatWithAI() throws Exception {
+        setup();
+        
+        when(sleepChatService.streamChatWithUser(anyString(), anyString()))
+                .thenReturn(Flux.just("根据您的睡眠问题，", "建议保持规律作息。"));
+
+        String requestJson = """
+            {
+                "userId": "user001",
+                "message": "我最近总是失眠，怎么办？"
+            }
+            """;
+
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/chat/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        asyncResult.getAsyncResult();
+
+        String body = asyncResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.indexOf("根据您的睡眠问题，") < body.indexOf("建议保持规律作息。"), body);
+        assertTrue(body.contains("event:delta"), body);
+        assertTrue(body.indexOf("event:done") > body.indexOf("建议保持规律作息。"), body);
+        // 流式接口使用单独的总时长上限，而不是全局异步请求超时
+        assertEquals(300000L, asyncResult.getRequest().getAsyncContext().getTimeout());
+    }
+
+    /**
+     * 测试流式聊天中途失败时以error事件结束
+     */
+    @Test
+    public void testStreamChatWithAIError() throws Exception {
+        setup();
+        
+        when(sleepChatService.streamChatWithUser(anyString(), anyString()))
+                .thenReturn(Flux.concat(Flux.just("根据您的睡眠问题，"),
+                        Flux.error(new IllegalStateException("API调用频率超限，请稍后重试。"))));
+
+        String requestJson = """
+            {
+                "userId": "user001",
+                "message": "我最近总是失眠，怎么办？"
+            }
+            """;
+
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/chat/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        asyncResult.getAsyncResult();
+
+        String body = asyncResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.contains("event:error"), body);
+        assertTrue(body.contains("AI聊天失败：API调用频率超限，请稍后重试。"), body);
+        assertFalse(body.contains("event:done"), body);
+    }
+
     /**
      * 测试清空对话历史接口
      */
@@ -199,9 +278,13 @@ public class SleepAIControllerTest {
             }
             """;
 
-        mockMvc.perform(post("/api/ai/report")
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/report")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.code").value(500))
                 .andExpect(jsonPath("$.message").value("用户ID不能为空"));
@@ -221,9 +304,13 @@ public class SleepAIControllerTest {
             }
             """;
 
-        mockMvc.perform(post("/api/ai/chat")
+        MvcResult asyncResult = mockMvc.perform(post("/api/ai/chat")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(requestJson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.code").value(500))
                 .andExpect(jsonPath("$.message").value("消息内容不能为空"));
@@ -12,6 +12,7 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -88,6 +89,191 @@ public class SleepAnalysisSummaryControllerTest {
                 .andExpect(jsonPath("$.message").value("新增睡眠数据成功"));
     }
 
+    /**
+     * 测试批量新增睡眠数据接口
+     */
+    @Test
+    public void testAddSleepDataBatch() throws Exception {
+        setup();
+        
+        SleepAnalysisSummary validData = new SleepAnalysisSummary();
+        validData.setUserId("batch001");
+        validData.setDateOfSleep(LocalDate.now());
+        validData.setTotalSleepDuration(450);
+        validData.setDeepSleepDuration(80);
+        validData.setRemSleepDuration(100);
+        validData.setSleepScore(78);
+
+        SleepAnalysisSummary invalidData = new SleepAnalysisSummary();
+        invalidData.setUserId("batch001");
+        invalidData.setDateOfSleep(LocalDate.now().minusDays(1));
+        invalidData.setTotalSleepDuration(0);
+        invalidData.setSleepScore(78);
+
+        mockMvc.perform(post("/api/sleep/data/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(validData, invalidData))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.total").value(2))
+                .andExpect(jsonPath("$.data.rows[1].status").value("INVALID"))
+                .andExpect(jsonPath("$.data.rows[1].message").value("总睡眠时长必须大于0"));
+    }
+
+    /**
+     * 测试NDJSON流式导入接口
+     */
+    @Test
+    public void testImportSleepDataStream() throws Exception {
+        setup();
+        
+        String validLine = "{\"userId\":\"stream001\",\"dateOfSleep\":\"" + LocalDate.now()
+                + "\",\"totalSleepDuration\":460,\"deepSleepDuration\":85,\"sleepScore\":82}";
+        String malformedLine = "{\"userId\":";
+        String body = validLine + "\n" + malformedLine + "\n";
+
+        mockMvc.perform(post("/api/sleep/data")
+                .contentType("application/x-ndjson")
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.lineCount").value(2))
+                .andExpect(jsonPath("$.data.rejectedCount").value(1))
+                .andExpect(jsonPath("$.data.rejectedLines[0].lineNumber").value(2))
+                .andExpect(jsonPath("$.data.rejectedLines[0].byteOffset").value(validLine.length() + 1));
+    }
+
+    /**
+     * 测试新增或更新睡眠数据接口（重复上传同一晚数据）
+     */
+    @Test
+    public void testUpsertSleepData() throws Exception {
+        setup();
+
+        SleepAnalysisSummary sleepData = new SleepAnalysisSummary();
+        sleepData.setUserId("upsert001");
+        sleepData.setDateOfSleep(LocalDate.now());
+        sleepData.setTotalSleepDuration(470);
+        sleepData.setDeepSleepDuration(90);
+        sleepData.setRemSleepDuration(105);
+        sleepData.setSleepScore(84);
+        String body = objectMapper.writeValueAsString(sleepData);
+
+        mockMvc.perform(put("/api/sleep/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200));
+
+        // 相同数据再次上传不应报唯一键冲突，且数据保持不变
+        mockMvc.perform(put("/api/sleep/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.status").value("UNCHANGED"));
+    }
+
+    /**
+     * 测试分页查询用户睡眠数据接口
+     */
+    @Test
+    public void testGetSleepDataByUserIdPaged() throws Exception {
+        setup();
+
+        mockMvc.perform(get("/api/sleep/data/user/test001")
+                .param("from", LocalDate.now().minusDays(30).toString())
+                .param("to", LocalDate.now().toString())
+                .param("pageSize", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.items").isArray());
+
+        mockMvc.perform(get("/api/sleep/data/user/test001")
+                .param("pageToken", "not-a-token"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("分页令牌无效"));
+    }
+
+    /**
+     * 测试重复查询命中本地缓存
+     */
+    @Test
+    public void testGetSleepDataCacheStats() throws Exception {
+        setup();
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/api/sleep/data")
+                    .param("userId", "user001")
+                    .param("dateOfSleep", LocalDate.now().toString()))
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(get("/api/sleep/data/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.enabled").value(true))
+                .andExpect(jsonPath("$.data.hitCount").isNumber());
+    }
+
+    /**
+     * 测试查询滚动统计接口
+     */
+    @Test
+    public void testGetRollupStats() throws Exception {
+        setup();
+
+        mockMvc.perform(get("/api/sleep/stats/user001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.userId").value("user001"))
+                .andExpect(jsonPath("$.data.windows[0].windowDays").value(7))
+                .andExpect(jsonPath("$.data.windows[0].metrics.SLEEP_SCORE.count").isNumber());
+    }
+
+    /**
+     * 测试增量刷新后查询周/月汇总接口
+     */
+    @Test
+    public void testGetPeriodRollups() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/sleep/rollups/refresh"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.watermark").exists());
+
+        mockMvc.perform(get("/api/sleep/rollups/user/user001").param("period", "MONTH"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data").isArray());
+
+        mockMvc.perform(get("/api/sleep/rollups/global").param("period", "WEEK"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data").isArray());
+    }
+
+    /**
+     * 测试连续达标记录：重算后查询与重算结果一致
+     */
+    @Test
+    public void testGetStreaks() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/sleep/streaks/user001/recompute"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.length()").value(2));
+
+        mockMvc.perform(get("/api/sleep/streaks/user001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data[0].streakType").value("CONSISTENT_SLEEP"))
+                .andExpect(jsonPath("$.data[1].streakType").value("GOOD_NIGHT"))
+                .andExpect(jsonPath("$.data[0].bestStreak").isNumber());
+    }
+
     /**
      * 测试查询睡眠数据接口
      */
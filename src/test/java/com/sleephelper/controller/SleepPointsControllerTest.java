@@ -103,6 +103,129 @@ public class SleepPointsControllerTest {
                 .andExpect(jsonPath("$.message").value("查询当前总积分成功"));
     }
 
+    /**
+     * 测试积分余额对账接口：对账后余额与明细一致
+     */
+    @Test
+    public void testReconcileBalance() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/points/balance/reconcile"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.checkedUsers").isNumber());
+
+        mockMvc.perform(post("/api/points/balance/reconcile"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.mismatchedUsers").value(0));
+    }
+
+    /**
+     * 测试积分自动生成：补扫后再次补扫不会重复生成
+     */
+    @Test
+    public void testAutoGenerateSweep() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/points/auto/sweep"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.scannedCount").isNumber());
+
+        mockMvc.perform(post("/api/points/auto/sweep"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.createdCount").value(0));
+
+        mockMvc.perform(get("/api/points/auto/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.enabled").value(true));
+    }
+
+    /**
+     * 测试积分排行榜：前N名按名次排列，上榜用户的名次与排行榜一致
+     */
+    @Test
+    public void testLeaderboardAndRank() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/points/leaderboard/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.ALL_TIME.ready").value(true));
+
+        for (String period : new String[]{"DAILY", "WEEKLY", "ALL_TIME"}) {
+            mockMvc.perform(get("/api/points/leaderboard")
+                    .param("period", period)
+                    .param("limit", "5"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.code").value(200))
+                    .andExpect(jsonPath("$.data").isArray());
+        }
+
+        mockMvc.perform(get("/api/points/leaderboard")
+                .param("limit", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(500));
+
+        mockMvc.perform(get("/api/points/rank")
+                .param("userId", "user_not_ranked"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.message").value("该用户暂无排名"));
+    }
+
+    /**
+     * 测试积分流水：快照前后查询的流水余额一致
+     */
+    @Test
+    public void testLedgerBalanceAcrossSnapshot() throws Exception {
+        setup();
+
+        String before = mockMvc.perform(get("/api/points/ledger/balance")
+                .param("userId", "user001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(post("/api/points/ledger/snapshot"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200));
+
+        mockMvc.perform(get("/api/points/ledger/balance")
+                .param("userId", "user001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.earnedTotal").value(
+                        objectMapper.readTree(before).path("data").path("earnedTotal").asLong()));
+    }
+
+    /**
+     * 测试积分过期：重建时间轮后处理到期积分，再次处理没有新的过期记录
+     */
+    @Test
+    public void testPointsExpiry() throws Exception {
+        setup();
+
+        mockMvc.perform(post("/api/points/expiry/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.pendingDays").isNumber());
+
+        mockMvc.perform(post("/api/points/expiry/run"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.failedDays").value(0));
+
+        mockMvc.perform(post("/api/points/expiry/run"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.expiredRecords").value(0));
+
+        mockMvc.perform(get("/api/points/expiry/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.ready").value(true));
+    }
+
     /**
      * 测试查询积分记录接口
      */
@@ -0,0 +1,162 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.entity.PointsLedgerEntry;
+import com.sleephelper.entity.PointsLedgerSnapshot;
+import com.sleephelper.mapper.PointsLedgerMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 积分流水SQL测试类
+ * 在H2内存库上执行流水追加、快照合并及历史积分补记SQL
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class PointsLedgerMapperTest {
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:points_ledger_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setDatabaseId("h2");
+        String resource = "mapper/PointsLedgerMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        try (SqlSession session = sqlSessionFactory.openSession(true);
+             Statement statement = session.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE sleep_points ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(50) NOT NULL, date DATE NOT NULL, "
+                    + "points INT NOT NULL DEFAULT 0, created_at TIMESTAMP NOT NULL, deleted TINYINT NOT NULL DEFAULT 0, "
+                    + "expired_at TIMESTAMP NULL, "
+                    + "UNIQUE (user_id, date, deleted))");
+            statement.execute("CREATE TABLE points_ledger ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(50) NOT NULL, entry_type VARCHAR(16) NOT NULL, "
+                    + "amount BIGINT NOT NULL, ref_id VARCHAR(128), created_at TIMESTAMP NOT NULL, "
+                    + "UNIQUE (user_id, entry_type, ref_id))");
+            statement.execute("CREATE TABLE points_ledger_snapshot ("
+                    + "user_id VARCHAR(50) PRIMARY KEY, last_entry_id BIGINT NOT NULL DEFAULT 0, "
+                    + "earned_total BIGINT NOT NULL DEFAULT 0, minted_total BIGINT NOT NULL DEFAULT 0, "
+                    + "burned_total BIGINT NOT NULL DEFAULT 0, expired_total BIGINT NOT NULL DEFAULT 0, "
+                    + "entry_count INT NOT NULL DEFAULT 0, "
+                    + "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    /**
+     * 测试批量追加按用户、类型、来源标识去重
+     */
+    @Test
+    public void testInsertBatchSkipsDuplicates() {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            PointsLedgerMapper mapper = session.getMapper(PointsLedgerMapper.class);
+            assertEquals(3, mapper.insertBatch(Arrays.asList(
+                    entry("user1", PointsLedgerEntryType.EARNED, 20, "2024-01-01"),
+                    entry("user1", PointsLedgerEntryType.EARNED, 15, "2024-01-02"),
+                    entry("user1", PointsLedgerEntryType.MINTED, 30, "0xabc"))));
+            assertEquals(1, mapper.insertBatch(Arrays.asList(
+                    entry("user1", PointsLedgerEntryType.EARNED, 20, "2024-01-01"),
+                    entry("user2", PointsLedgerEntryType.EARNED, 20, "2024-01-01"))));
+
+            PointsLedgerSnapshot tail = mapper.selectTailTotals("user1", 0L);
+            assertEquals(35L, tail.getEarnedTotal());
+            assertEquals(30L, tail.getMintedTotal());
+            assertEquals(0L, tail.getBurnedTotal());
+            assertEquals(3, tail.getEntryCount());
+            assertNull(mapper.selectTailTotals("user3", 0L));
+        }
+    }
+
+    /**
+     * 测试快照分段合并：快照 + 尾部流水与全量汇总一致，重复合并同一区间不会重复累加
+     */
+    @Test
+    public void testSnapshotPlusTailMatchesFullScan() {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            PointsLedgerMapper mapper = session.getMapper(PointsLedgerMapper.class);
+            List<PointsLedgerEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                PointsLedgerEntryType type = PointsLedgerEntryType.values()[i % PointsLedgerEntryType.values().length];
+                entries.add(entry("user" + (i % 4), type, i + 1, "ref" + i));
+            }
+            assertEquals(30, mapper.insertBatch(entries));
+
+            assertEquals(0L, mapper.selectSnapshotWatermark());
+            mapper.mergeSnapshots(0L, 10L);
+            mapper.mergeSnapshots(10L, 20L);
+            // 重复合并已并入的区间
+            mapper.mergeSnapshots(0L, 10L);
+            assertEquals(20L, mapper.selectSnapshotWatermark());
+
+            for (int user = 0; user < 4; user++) {
+                String userId = "user" + user;
+                PointsLedgerSnapshot snapshot = mapper.selectSnapshotByUserId(userId);
+                PointsLedgerSnapshot tail = mapper.selectTailTotals(userId, snapshot.getLastEntryId());
+                PointsLedgerSnapshot full = mapper.selectTailTotals(userId, 0L);
+                assertEquals(full.getEarnedTotal(), snapshot.getEarnedTotal() + tail.getEarnedTotal(), userId);
+                assertEquals(full.getMintedTotal(), snapshot.getMintedTotal() + tail.getMintedTotal(), userId);
+                assertEquals(full.getBurnedTotal(), snapshot.getBurnedTotal() + tail.getBurnedTotal(), userId);
+                assertEquals(full.getExpiredTotal(), snapshot.getExpiredTotal() + tail.getExpiredTotal(), userId);
+                assertEquals(full.getEntryCount().intValue(), snapshot.getEntryCount() + tail.getEntryCount(), userId);
+            }
+        }
+    }
+
+    /**
+     * 测试历史积分补记获得流水，来源标识与实时追加一致，重复补记不新增
+     */
+    @Test
+    public void testInsertEarnedFromPoints() throws Exception {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            try (Statement statement = session.getConnection().createStatement()) {
+                statement.execute("INSERT INTO sleep_points (user_id, date, points, created_at) VALUES "
+                        + "('user1', DATE '2024-01-01', 20, TIMESTAMP '2024-01-02 08:00:00'), "
+                        + "('user1', DATE '2024-01-02', 15, TIMESTAMP '2024-01-03 08:00:00'), "
+                        + "('user2', DATE '2024-01-01', 10, TIMESTAMP '2024-01-02 08:00:00')");
+            }
+            PointsLedgerMapper mapper = session.getMapper(PointsLedgerMapper.class);
+            assertEquals(1, mapper.insertBatch(Arrays.asList(
+                    entry("user1", PointsLedgerEntryType.EARNED, 20, "2024-01-01"))));
+
+            assertEquals(3L, mapper.selectMaxPointsId());
+            assertEquals(1, mapper.insertEarnedFromPoints(0L, 2L));
+            assertEquals(1, mapper.insertEarnedFromPoints(2L, 3L));
+            assertEquals(0, mapper.insertEarnedFromPoints(0L, 3L));
+
+            assertEquals(35L, mapper.selectTailTotals("user1", 0L).getEarnedTotal());
+            assertEquals(10L, mapper.selectTailTotals("user2", 0L).getEarnedTotal());
+        }
+    }
+
+    private static PointsLedgerEntry entry(String userId, PointsLedgerEntryType type, long amount, String refId) {
+        PointsLedgerEntry entry = new PointsLedgerEntry(userId, type, amount, refId);
+        entry.setCreatedAt(LocalDateTime.of(2024, 1, 1, 8, 0));
+        return entry;
+    }
+}
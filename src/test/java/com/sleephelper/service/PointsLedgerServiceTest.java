@@ -0,0 +1,103 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.PointsLedgerEntryType;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.mapper.PointsLedgerMapper;
+import com.sleephelper.service.impl.PointsLedgerServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 积分流水快照上界测试类
+ * 模拟长事务中的追加：事务提交前快照不能越过其登记的最大流水ID，提交后才继续推进
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class PointsLedgerServiceTest {
+
+    private PointsLedgerServiceImpl pointsLedgerService;
+
+    private PointsLedgerMapper pointsLedgerMapper;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        pointsLedgerMapper = mock(PointsLedgerMapper.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        when(pointsLedgerMapper.insertBatch(anyList())).thenReturn(1);
+
+        pointsLedgerService = new PointsLedgerServiceImpl();
+        ReflectionTestUtils.setField(pointsLedgerService, "pointsLedgerMapper", pointsLedgerMapper);
+        ReflectionTestUtils.setField(pointsLedgerService, "sleepDataConfig", new SleepDataConfig());
+        ReflectionTestUtils.setField(pointsLedgerService, "transactionTemplate", transactionTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /**
+     * 测试进行中的追加把快照上界限制在其登记值，事务结束后快照推进到最大流水ID
+     */
+    @Test
+    public void testSnapshotStopsBeforeUncommittedAppend() {
+        // 长事务开始追加时已提交的最大流水ID为5
+        when(pointsLedgerMapper.selectMaxEntryId()).thenReturn(5L);
+        TransactionSynchronizationManager.initSynchronization();
+        pointsLedgerService.append("user1", PointsLedgerEntryType.EARNED, 10, "2024-01-01");
+
+        // 其他事务提交了更大的流水ID，长事务尚未提交
+        when(pointsLedgerMapper.selectMaxEntryId()).thenReturn(8L);
+        Map<String, Object> first = pointsLedgerService.snapshot();
+        assertEquals(5L, first.get("toEntryId"));
+        verify(pointsLedgerMapper).mergeSnapshots(0L, 5L);
+        verify(pointsLedgerMapper, never()).mergeSnapshots(anyLong(), eq(8L));
+
+        // 长事务提交
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        when(pointsLedgerMapper.selectSnapshotWatermark()).thenReturn(5L);
+        Map<String, Object> second = pointsLedgerService.snapshot();
+        assertEquals(8L, second.get("toEntryId"));
+        verify(pointsLedgerMapper).mergeSnapshots(5L, 8L);
+    }
+
+    /**
+     * 测试无事务的追加写入后立即注销，不限制快照上界
+     */
+    @Test
+    public void testAppendWithoutTransactionReleasesImmediately() {
+        when(pointsLedgerMapper.selectMaxEntryId()).thenReturn(3L);
+        pointsLedgerService.append("user1", PointsLedgerEntryType.EARNED, 10, "2024-01-01");
+
+        when(pointsLedgerMapper.selectMaxEntryId()).thenReturn(9L);
+        assertEquals(9L, pointsLedgerService.snapshot().get("toEntryId"));
+    }
+}
@@ -0,0 +1,288 @@
+package com.sleephelper.service;
+
+import com.sleephelper.common.PointsRuleEngine;
+import com.sleephelper.entity.SleepPoints;
+import com.sleephelper.entity.UserPointsBalance;
+import com.sleephelper.mapper.SleepPointsMapper;
+import com.sleephelper.mapper.UserPointsBalanceMapper;
+import com.sleephelper.service.impl.SleepPointsServiceImpl;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 积分SQL计算测试类
+ * 在H2内存库上执行mapper中的回填、单条生成SQL，逐条与 calculatePoints 的计算结果比对；
+ * 并校验积分过期的分批标记与余额扣减
+ * 
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SleepPointsBackfillTest {
+
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+
+    /**
+     * 覆盖各评分档位边界及无效值
+     */
+    private static final Integer[] SCORES = {null, -5, 0, 59, 60, 69, 70, 79, 80, 100, 101};
+
+    /**
+     * 覆盖深睡时长的30分钟边界、加分上限及无效值
+     */
+    private static final Integer[] DEEP_SLEEPS = {null, -10, 0, 29, 30, 59, 60, 179, 180, 181, 400};
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    private final SleepPointsServiceImpl sleepPointsService = new SleepPointsServiceImpl();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:points_backfill_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setDatabaseId("h2");
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.getTypeAliasRegistry().registerAliases("com.sleephelper.entity");
+        for (String resource : new String[]{"mapper/SleepAnalysisSummaryMapper.xml",
+                "mapper/SleepPointsMapper.xml", "mapper/UserPointsBalanceMapper.xml"}) {
+            try (InputStream in = Resources.getResourceAsStream(resource)) {
+                new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+            }
+        }
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        try (SqlSession session = sqlSessionFactory.openSession(true);
+             Statement statement = session.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE sleep_analysis_summaries ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(50) NOT NULL, date_of_sleep DATE NOT NULL, "
+                    + "total_sleep_duration INT NOT NULL, deep_sleep_duration INT, rem_sleep_duration INT, "
+                    + "sleep_score INT, processed_at TIMESTAMP, deleted TINYINT NOT NULL DEFAULT 0, "
+                    + "UNIQUE (user_id, date_of_sleep, deleted))");
+            statement.execute("CREATE TABLE sleep_points ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(50) NOT NULL, date DATE NOT NULL, "
+                    + "points INT NOT NULL DEFAULT 0, created_at TIMESTAMP NOT NULL, deleted TINYINT NOT NULL DEFAULT 0, "
+                    + "expired_at TIMESTAMP NULL, UNIQUE (user_id, date, deleted))");
+            statement.execute("CREATE TABLE user_points_balance ("
+                    + "user_id VARCHAR(50) PRIMARY KEY, total_points BIGINT NOT NULL DEFAULT 0, "
+                    + "record_count INT NOT NULL DEFAULT 0, updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    /**
+     * 测试回填SQL计算的积分与Java计算逐条一致
+     */
+    @Test
+    public void testBackfillMatchesJavaCalculation() throws Exception {
+        List<SleepPoints> rows = backfillGrid(PointsRuleEngine.DEFAULT);
+        for (int i = 0; i < SCORES.length; i++) {
+            for (int j = 0; j < DEEP_SLEEPS.length; j++) {
+                assertEquals(sleepPointsService.calculatePoints(SCORES[i], DEEP_SLEEPS[j]),
+                        rows.get(i * DEEP_SLEEPS.length + j).getPoints(),
+                        "评分：" + SCORES[i] + "，深睡：" + DEEP_SLEEPS[j]);
+            }
+        }
+    }
+
+    /**
+     * 测试自定义规则展开的SQL与规则引擎计算逐条一致
+     */
+    @Test
+    public void testBackfillMatchesCustomRules() throws Exception {
+        PointsRuleEngine rules = PointsRuleEngine.compile(Arrays.asList(0, 65, 90), Arrays.asList(3, 9, 14),
+                1, 45, 4, 10, 20);
+        List<SleepPoints> rows = backfillGrid(rules);
+        for (int i = 0; i < SCORES.length; i++) {
+            for (int j = 0; j < DEEP_SLEEPS.length; j++) {
+                int expected = rules.evaluate(SCORES[i] != null ? SCORES[i] : -1,
+                        DEEP_SLEEPS[j] != null ? DEEP_SLEEPS[j] : -1);
+                assertEquals(expected, rows.get(i * DEEP_SLEEPS.length + j).getPoints(),
+                        "评分：" + SCORES[i] + "，深睡：" + DEEP_SLEEPS[j]);
+            }
+        }
+    }
+
+    /**
+     * 测试回填跳过已有积分和区间外的夜晚，重复执行不再写入，且余额与积分明细一致
+     */
+    @Test
+    public void testBackfillSkipsExistingRowsAndRefreshesBalance() throws Exception {
+        try (SqlSession session = sqlSessionFactory.openSession(false)) {
+            Connection connection = session.getConnection();
+            insertNight(connection, "user1", BASE_DATE, 85, 120);
+            insertNight(connection, "user1", BASE_DATE.plusDays(1), 65, 30);
+            insertNight(connection, "user1", BASE_DATE.plusDays(10), 90, 90);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO sleep_points (user_id, date, points, created_at) "
+                        + "VALUES ('user1', DATE '2024-01-01', 7, TIMESTAMP '2024-01-02 08:00:00')");
+                statement.execute("INSERT INTO user_points_balance (user_id, total_points, record_count) "
+                        + "VALUES ('user1', 7, 1)");
+            }
+
+            SleepPointsMapper mapper = session.getMapper(SleepPointsMapper.class);
+            UserPointsBalanceMapper balanceMapper = session.getMapper(UserPointsBalanceMapper.class);
+            LocalDate to = BASE_DATE.plusDays(7);
+            List<SleepPoints> keys = mapper.selectNightKeysWithoutPoints(BASE_DATE, to);
+            assertEquals(1, keys.size());
+            assertEquals(BASE_DATE.plusDays(1), keys.get(0).getDate());
+
+            LocalDateTime createdAt = now();
+            assertEquals(1, mapper.backfillPoints(BASE_DATE, to, createdAt, PointsRuleEngine.DEFAULT));
+            balanceMapper.refreshBackfilledUsers(BASE_DATE, to, createdAt);
+            session.commit();
+
+            assertEquals(7, mapper.selectByUserIdAndDate("user1", BASE_DATE.toString()).getPoints());
+            assertNull(mapper.selectByUserIdAndDate("user1", BASE_DATE.plusDays(10).toString()));
+            assertEquals(0, mapper.backfillPoints(BASE_DATE, to, now(), PointsRuleEngine.DEFAULT));
+
+            UserPointsBalance balance = balanceMapper.selectByUserId("user1");
+            assertEquals(7L + sleepPointsService.calculatePoints(65, 30), balance.getTotalPoints());
+            assertEquals(2, balance.getRecordCount());
+        }
+    }
+
+    /**
+     * 测试单条生成：首次写入按规则计算，重复执行和睡眠数据不存在时都不写入
+     */
+    @Test
+    public void testInsertFromSummaryIsIdempotent() throws Exception {
+        try (SqlSession session = sqlSessionFactory.openSession(false)) {
+            insertNight(session.getConnection(), "user1", BASE_DATE, 75, 95);
+
+            SleepPointsMapper mapper = session.getMapper(SleepPointsMapper.class);
+            assertEquals(1, mapper.insertFromSummary("user1", BASE_DATE, now(), PointsRuleEngine.DEFAULT));
+            assertEquals(0, mapper.insertFromSummary("user1", BASE_DATE, now(), PointsRuleEngine.DEFAULT));
+            assertEquals(0, mapper.insertFromSummary("user1", BASE_DATE.plusDays(1), now(), PointsRuleEngine.DEFAULT));
+            session.commit();
+
+            assertEquals(sleepPointsService.calculatePoints(75, 95),
+                    mapper.selectByUserIdAndDate("user1", BASE_DATE.toString()).getPoints());
+            assertNull(mapper.selectByUserIdAndDate("user1", BASE_DATE.plusDays(1).toString()));
+        }
+    }
+
+    /**
+     * 测试积分过期：分批锁定并标记一个日期的积分，余额按本批扣减，已过期的记录不再计入余额和对账合计
+     */
+    @Test
+    public void testExpireBatchAdjustsBalance() throws Exception {
+        try (SqlSession session = sqlSessionFactory.openSession(false)) {
+            try (Statement statement = session.getConnection().createStatement()) {
+                statement.execute("INSERT INTO sleep_points (user_id, date, points, created_at) VALUES "
+                        + "('user1', DATE '2024-01-01', 20, TIMESTAMP '2024-01-02 08:00:00'), "
+                        + "('user2', DATE '2024-01-01', 15, TIMESTAMP '2024-01-02 08:00:00'), "
+                        + "('user3', DATE '2024-01-01', 10, TIMESTAMP '2024-01-02 08:00:00'), "
+                        + "('user1', DATE '2024-01-02', 30, TIMESTAMP '2024-01-03 08:00:00')");
+                statement.execute("INSERT INTO user_points_balance (user_id, total_points, record_count) VALUES "
+                        + "('user1', 50, 2), ('user2', 15, 1), ('user3', 10, 1)");
+            }
+            SleepPointsMapper mapper = session.getMapper(SleepPointsMapper.class);
+            UserPointsBalanceMapper balanceMapper = session.getMapper(UserPointsBalanceMapper.class);
+            assertEquals(2, mapper.selectUnexpiredDates().size());
+
+            List<SleepPoints> batch = mapper.selectUnexpiredByDateForUpdate(BASE_DATE, 2);
+            assertEquals(2, batch.size());
+            List<Long> ids = new ArrayList<>();
+            for (SleepPoints row : batch) {
+                ids.add(row.getId());
+            }
+            assertEquals(2, mapper.markExpired(ids, now()));
+            balanceMapper.subtractExpired(ids);
+            session.commit();
+
+            assertEquals(0, mapper.markExpired(ids, now()));
+            assertEquals(30L, balanceMapper.selectByUserId("user1").getTotalPoints());
+            assertEquals(1, balanceMapper.selectByUserId("user1").getRecordCount());
+            assertEquals(0L, balanceMapper.selectByUserId("user2").getTotalPoints());
+            assertEquals(10L, balanceMapper.selectByUserId("user3").getTotalPoints());
+            assertNotNull(mapper.selectByUserIdAndDate("user1", BASE_DATE.toString()).getExpiredAt());
+
+            List<SleepPoints> rest = mapper.selectUnexpiredByDateForUpdate(BASE_DATE, 2);
+            assertEquals(1, rest.size());
+            assertEquals("user3", rest.get(0).getUserId());
+            for (UserPointsBalance ledger : balanceMapper.selectLedgerTotalsAfter(null, 10)) {
+                UserPointsBalance balance = balanceMapper.selectByUserId(ledger.getUserId());
+                assertEquals(balance.getTotalPoints(), ledger.getTotalPoints(), ledger.getUserId());
+            }
+            assertEquals(30, mapper.calculateTotalPoints("user1"));
+        }
+    }
+
+    /**
+     * 写入 评分 × 深睡时长 的全部组合并回填，按 评分下标 * 深睡组合数 + 深睡下标 顺序返回积分记录
+     */
+    private List<SleepPoints> backfillGrid(PointsRuleEngine rules) throws Exception {
+        try (SqlSession session = sqlSessionFactory.openSession(false)) {
+            Connection connection = session.getConnection();
+            for (int i = 0; i < SCORES.length; i++) {
+                for (int j = 0; j < DEEP_SLEEPS.length; j++) {
+                    insertNight(connection, "user" + i, BASE_DATE.plusDays(j), SCORES[i], DEEP_SLEEPS[j]);
+                }
+            }
+
+            SleepPointsMapper mapper = session.getMapper(SleepPointsMapper.class);
+            int inserted = mapper.backfillPoints(BASE_DATE, BASE_DATE.plusDays(DEEP_SLEEPS.length), now(), rules);
+            session.commit();
+            assertEquals(SCORES.length * DEEP_SLEEPS.length, inserted);
+
+            List<SleepPoints> rows = new ArrayList<>();
+            for (int i = 0; i < SCORES.length; i++) {
+                for (int j = 0; j < DEEP_SLEEPS.length; j++) {
+                    SleepPoints row = mapper.selectByUserIdAndDate("user" + i, BASE_DATE.plusDays(j).toString());
+                    assertNotNull(row);
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static void insertNight(Connection connection, String userId, LocalDate date,
+                                    Integer sleepScore, Integer deepSleep) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO sleep_analysis_summaries "
+                + "(user_id, date_of_sleep, total_sleep_duration, deep_sleep_duration, sleep_score) VALUES (?, ?, ?, ?, ?)")) {
+            statement.setString(1, userId);
+            statement.setDate(2, Date.valueOf(date));
+            statement.setInt(3, 480);
+            if (deepSleep != null) {
+                statement.setInt(4, deepSleep);
+            } else {
+                statement.setNull(4, Types.INTEGER);
+            }
+            if (sleepScore != null) {
+                statement.setInt(5, sleepScore);
+            } else {
+                statement.setNull(5, Types.INTEGER);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+}
@@ -0,0 +1,132 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.NightRecordedEvent;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepReport;
+import com.sleephelper.mapper.SleepReportMapper;
+import com.sleephelper.service.impl.SleepReportServiceImpl;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AI睡眠报告存储测试类
+ * 在H2内存库上执行 sleep_reports 的保存、读取和失效删除，校验按睡眠数据摘要判断报告是否有效
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SleepReportServiceTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 1);
+
+    private SqlSession session;
+
+    private SleepReportMapper mapper;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:sleep_reports_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setDatabaseId("h2");
+        String resource = "mapper/SleepReportMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        session = sqlSessionFactory.openSession(true);
+        try (Statement statement = session.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE sleep_reports ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id VARCHAR(50) NOT NULL, date_of_sleep DATE NOT NULL, "
+                    + "fingerprint CHAR(64) NOT NULL, template_version VARCHAR(20) NOT NULL, report_gz BLOB NOT NULL, "
+                    + "report_length INT NOT NULL, created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                    + "UNIQUE (user_id, date_of_sleep))");
+        }
+        mapper = session.getMapper(SleepReportMapper.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        session.close();
+    }
+
+    /**
+     * 测试保存后命中本地缓存，新实例（本地缓存为空）从表中解压读取；表中内容为压缩后的字节
+     */
+    @Test
+    public void testSaveAndLoad() {
+        String report = "【睡眠分析报告】\n\n【优势】\n睡眠评分85分，深睡充足。\n\n".repeat(20);
+        SleepReportService first = newService();
+        assertNull(first.getCachedReport(night(85, 100, 450)));
+        first.saveReport(night(85, 100, 450), report);
+        assertEquals(report, first.getCachedReport(night(85, 100, 450)));
+
+        SleepReportService second = newService();
+        assertEquals(report, second.getCachedReport(night(85, 100, 450)));
+        assertEquals(1L, second.getStats().get("storeHitCount"));
+
+        SleepReport stored = mapper.selectByUserIdAndDate("user1", DATE);
+        assertEquals(report.length(), stored.getReportLength());
+        assertTrue(stored.getReportGz().length < report.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * 测试睡眠数据变化后报告失效：提交事件只清除本地缓存，旧报告按摘要不再命中，重新生成时覆盖
+     */
+    @Test
+    public void testInvalidatedWhenSleepDataChanges() {
+        SleepReportServiceImpl service = newService();
+        service.saveReport(night(85, 100, 450), "旧报告");
+
+        service.onNightRecorded(new NightRecordedEvent(night(85, 100, 450)));
+        assertNotNull(mapper.selectByUserIdAndDate("user1", DATE));
+        assertEquals("旧报告", service.getCachedReport(night(85, 100, 450)));
+
+        assertNull(service.getCachedReport(night(72, 100, 450)));
+        service.onNightRecorded(new NightRecordedEvent(night(72, 100, 450)));
+        assertNotNull(mapper.selectByUserIdAndDate("user1", DATE));
+        assertNull(service.getCachedReport(night(72, 100, 450)));
+
+        service.saveReport(night(72, 100, 450), "新报告");
+        service.saveReport(night(72, 100, 450), "重新生成的报告");
+        assertEquals("重新生成的报告", newService().getCachedReport(night(72, 100, 450)));
+    }
+
+    private SleepReportServiceImpl newService() {
+        SleepReportServiceImpl service = new SleepReportServiceImpl();
+        ReflectionTestUtils.setField(service, "sleepReportMapper", mapper);
+        ReflectionTestUtils.setField(service, "sleepDataConfig", new SleepDataConfig());
+        service.init();
+        return service;
+    }
+
+    private static SleepAnalysisSummary night(int sleepScore, int deepSleepDuration, int totalSleepDuration) {
+        SleepAnalysisSummary night = new SleepAnalysisSummary();
+        night.setUserId("user1");
+        night.setDateOfSleep(DATE);
+        night.setSleepScore(sleepScore);
+        night.setDeepSleepDuration(deepSleepDuration);
+        night.setTotalSleepDuration(totalSleepDuration);
+        return night;
+    }
+}
@@ -0,0 +1,144 @@
+package com.sleephelper.service;
+
+import com.sleephelper.bean.SleepRollupStats;
+import com.sleephelper.cache.RecentNightsStore;
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepRollup;
+import com.sleephelper.mapper.SleepAnalysisSummaryMapper;
+import com.sleephelper.mapper.SleepRollupMapper;
+import com.sleephelper.service.impl.SleepRollupServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 睡眠数据滚动统计测试类
+ * 后台线程只更新内存中的聚合，统计表由 flushDirty 按批写回
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SleepRollupServiceTest {
+
+    private static final LocalDate DAY = LocalDate.now();
+
+    private SleepRollupServiceImpl sleepRollupService;
+
+    private SleepRollupMapper sleepRollupMapper;
+
+    @BeforeEach
+    public void setUp() {
+        SleepDataConfig config = new SleepDataConfig();
+        config.setRecentNightsDays(30);
+        config.setRollupWindowDays(Arrays.asList(7, 30));
+        config.setRollupFlushBatchUsers(1);
+        // 不启动后台队列，测试直接调用 applyBatch
+        config.setRollupEnabled(false);
+
+        SleepAnalysisSummaryMapper sleepAnalysisSummaryMapper = mock(SleepAnalysisSummaryMapper.class);
+        when(sleepAnalysisSummaryMapper.selectPageByUserId(anyString(), isNull(), isNull(), isNull(), any()))
+                .thenAnswer(invocation -> "user1".equals(invocation.getArgument(0))
+                        ? Collections.singletonList(night("user1", DAY.minusDays(1), 420))
+                        : Collections.emptyList());
+        sleepRollupMapper = mock(SleepRollupMapper.class);
+
+        RecentNightsStore recentNightsStore = new RecentNightsStore();
+        ReflectionTestUtils.setField(recentNightsStore, "sleepDataConfig", config);
+        ReflectionTestUtils.setField(recentNightsStore, "sleepAnalysisSummaryMapper", sleepAnalysisSummaryMapper);
+        recentNightsStore.init();
+
+        sleepRollupService = new SleepRollupServiceImpl();
+        ReflectionTestUtils.setField(sleepRollupService, "sleepRollupMapper", sleepRollupMapper);
+        ReflectionTestUtils.setField(sleepRollupService, "sleepDataConfig", config);
+        ReflectionTestUtils.setField(sleepRollupService, "recentNightsStore", recentNightsStore);
+        sleepRollupService.init();
+    }
+
+    /**
+     * 测试写入不访问统计表，查询读取尚未写回的内存统计，写回后只保留最新一次
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWritesStayInMemoryUntilFlush() {
+        // 首次写入加载环形存储，第二次写入增量更新
+        sleepRollupService.applyBatch(Arrays.asList(night("user1", DAY.minusDays(1), 420), night("user1", DAY, 480)));
+        verify(sleepRollupMapper, never()).selectByUserId(anyString());
+        verify(sleepRollupMapper, never()).upsertBatch(anyList());
+
+        SleepRollupStats stats = sleepRollupService.getRollupStats("user1");
+        SleepRollupStats.MetricStats total = stats.getWindows().get(0).getMetrics().get("TOTAL_SLEEP");
+        assertEquals(2L, total.getCount());
+        assertEquals(900L, total.getSum());
+        assertEquals(DAY, stats.getWindows().get(0).getWindowEnd());
+        verify(sleepRollupMapper, never()).selectByUserId(anyString());
+
+        assertEquals(1, sleepRollupService.flushDirty());
+        ArgumentCaptor<List<SleepRollup>> rows = ArgumentCaptor.forClass(List.class);
+        verify(sleepRollupMapper).upsertBatch(rows.capture());
+        // 2个窗口 × 4个指标
+        assertEquals(8, rows.getValue().size());
+        assertEquals(0, sleepRollupService.flushDirty());
+        verify(sleepRollupMapper, times(1)).upsertBatch(anyList());
+    }
+
+    /**
+     * 测试最新一晚早于今天时窗口仍以今天为终点，移出窗口的夜晚不计入
+     */
+    @Test
+    public void testWindowsAnchoredToToday() {
+        sleepRollupService.applyBatch(Arrays.asList(
+                night("user2", DAY.minusDays(20), 400), night("user2", DAY.minusDays(3), 450)));
+
+        SleepRollupStats stats = sleepRollupService.getRollupStats("user2");
+        SleepRollupStats.Window week = stats.getWindows().get(0);
+        assertEquals(DAY, week.getWindowEnd());
+        assertEquals(DAY.minusDays(6), week.getWindowStart());
+        assertEquals(1L, week.getMetrics().get("TOTAL_SLEEP").getCount());
+        assertEquals(450L, week.getMetrics().get("TOTAL_SLEEP").getSum());
+        assertEquals(2L, stats.getWindows().get(1).getMetrics().get("TOTAL_SLEEP").getCount());
+        verify(sleepRollupMapper, never()).selectByUserId(anyString());
+    }
+
+    /**
+     * 测试写回失败的用户保留到下一轮重试
+     */
+    @Test
+    public void testFailedFlushIsRetried() {
+        sleepRollupService.applyBatch(Collections.singletonList(night("user1", DAY, 480)));
+        when(sleepRollupMapper.upsertBatch(anyList())).thenThrow(new IllegalStateException("db down"));
+        assertEquals(0, sleepRollupService.flushDirty());
+
+        doReturn(8).when(sleepRollupMapper).upsertBatch(anyList());
+        assertEquals(1, sleepRollupService.flushDirty());
+        verify(sleepRollupMapper, never()).selectByUserId(eq("user1"));
+    }
+
+    private static SleepAnalysisSummary night(String userId, LocalDate date, int totalSleep) {
+        SleepAnalysisSummary sleepData = new SleepAnalysisSummary();
+        sleepData.setUserId(userId);
+        sleepData.setDateOfSleep(date);
+        sleepData.setTotalSleepDuration(totalSleep);
+        sleepData.setSleepScore(80);
+        return sleepData;
+    }
+}
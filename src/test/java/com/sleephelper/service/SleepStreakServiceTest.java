@@ -0,0 +1,128 @@
+package com.sleephelper.service;
+
+import com.sleephelper.config.SleepDataConfig;
+import com.sleephelper.entity.SleepAnalysisSummary;
+import com.sleephelper.entity.SleepStreak;
+import com.sleephelper.mapper.SleepStreakMapper;
+import com.sleephelper.service.impl.SleepStreakServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 睡眠连续达标批量更新测试类
+ * 按日期倒序补录的一批夜晚对同一用户只重算一次，按日期顺序到达的夜晚不重算
+ *
+ * @author SleepHelper
+ * @since 2024-01-01
+ */
+public class SleepStreakServiceTest {
+
+    private static final LocalDate LAST = LocalDate.of(2024, 1, 10);
+
+    private SleepStreakServiceImpl sleepStreakService;
+
+    private SleepStreakMapper sleepStreakMapper;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        sleepStreakMapper = mock(SleepStreakMapper.class);
+        when(sleepStreakMapper.insertIfAbsent(anyString(), anyString())).thenReturn(0);
+        when(sleepStreakMapper.selectForUpdate(anyString(), anyString())).thenAnswer(invocation -> {
+            SleepStreak streak = new SleepStreak();
+            streak.setUserId(invocation.getArgument(0));
+            streak.setStreakType(invocation.getArgument(1));
+            streak.setCurrentStreak(3);
+            streak.setCurrentStartDate(LAST.minusDays(2));
+            streak.setLastQualifyingDate(LAST);
+            streak.setBestStreak(3);
+            streak.setBestEndDate(LAST);
+            return streak;
+        });
+        when(sleepStreakMapper.selectNightsForStreak(anyString())).thenReturn(new ArrayList<>());
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        sleepStreakService = new SleepStreakServiceImpl();
+        ReflectionTestUtils.setField(sleepStreakService, "sleepStreakMapper", sleepStreakMapper);
+        ReflectionTestUtils.setField(sleepStreakService, "sleepDataConfig", new SleepDataConfig());
+        ReflectionTestUtils.setField(sleepStreakService, "transactionTemplate", transactionTemplate);
+    }
+
+    /**
+     * 测试同一用户按日期倒序补录的一批夜晚只读取一次历史
+     */
+    @Test
+    public void testBackfillRecomputedOncePerBatch() {
+        List<SleepAnalysisSummary> nights = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nights.add(night("user1", LAST.minusDays(2 + i)));
+        }
+        // 同一晚重复投递
+        nights.add(night("user1", LAST.minusDays(3)));
+
+        assertEquals(nights.size(), sleepStreakService.applyBatch(nights).size());
+        verify(sleepStreakMapper, times(1)).selectNightsForStreak("user1");
+        verify(sleepStreakMapper, times(2)).update(any());
+    }
+
+    /**
+     * 测试按日期顺序到达的夜晚增量更新，每个用户每种类型只写一次
+     */
+    @Test
+    public void testInOrderNightsUpdatedIncrementally() {
+        sleepStreakService.applyBatch(Arrays.asList(
+                night("user1", LAST.plusDays(2)),
+                night("user2", LAST.plusDays(1)),
+                night("user1", LAST.plusDays(1))));
+
+        verify(sleepStreakMapper, never()).selectNightsForStreak(anyString());
+        verify(sleepStreakMapper, times(2)).selectForUpdate(eq("user1"), anyString());
+        verify(sleepStreakMapper, times(4)).update(any());
+    }
+
+    /**
+     * 测试单个用户失败不影响同批其他用户
+     */
+    @Test
+    public void testFailedUserDoesNotBlockBatch() {
+        when(sleepStreakMapper.selectForUpdate(eq("broken"), anyString())).thenThrow(new IllegalStateException("lock timeout"));
+
+        sleepStreakService.applyBatch(Arrays.asList(night("broken", LAST.plusDays(1)), night("user1", LAST.plusDays(1))));
+        verify(sleepStreakMapper, times(2)).update(any());
+        assertTrue(sleepStreakService.applyBatch(Collections.emptyList()).isEmpty());
+    }
+
+    private static SleepAnalysisSummary night(String userId, LocalDate date) {
+        SleepAnalysisSummary night = new SleepAnalysisSummary();
+        night.setUserId(userId);
+        night.setDateOfSleep(date);
+        night.setSleepScore(90);
+        night.setTotalSleepDuration(480);
+        return night;
+    }
+}